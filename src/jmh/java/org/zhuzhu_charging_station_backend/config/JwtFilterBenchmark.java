@@ -0,0 +1,67 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.zhuzhu_charging_station_backend.entity.User;
+import org.zhuzhu_charging_station_backend.util.JwtTokenUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT认证过滤器吞吐：对比启用/关闭已验证Token缓存（jwt.cache.max-size=0即关闭）。
+ * 模拟一批活跃用户反复携带各自的Token访问。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JwtFilterBenchmark {
+
+    private static final int ACTIVE_USERS = 1000;
+
+    @Param({"10000", "0"})
+    private int cacheMaxSize;
+
+    private JwtAuthenticationFilter filter;
+    private String[] headers;
+
+    @Setup
+    public void setUp() {
+        JwtTokenUtil jwtTokenUtil = new JwtTokenUtil();
+        ReflectionTestUtils.setField(jwtTokenUtil, "secret", "3K9YBz7F1v3htXwUZ+hLoDYsgknuQhHreYQj5j6q6jU=");
+        ReflectionTestUtils.setField(jwtTokenUtil, "expiration", 86400L);
+        ReflectionTestUtils.setField(jwtTokenUtil, "cacheMaxSize", cacheMaxSize);
+        jwtTokenUtil.init();
+        filter = new JwtAuthenticationFilter(null, jwtTokenUtil);
+
+        headers = new String[ACTIVE_USERS];
+        for (int i = 0; i < ACTIVE_USERS; i++) {
+            User user = new User();
+            user.setUserId(10000000L + i);
+            user.setRoles("USER");
+            headers[i] = "Bearer " + jwtTokenUtil.generateToken(user);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    public Object filter(Cursor cursor) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/orders");
+        request.addHeader("Authorization", headers[cursor.next++ % ACTIVE_USERS]);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        SecurityContextHolder.clearContext();
+        return principal;
+    }
+}
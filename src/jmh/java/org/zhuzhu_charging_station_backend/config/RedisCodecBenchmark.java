@@ -0,0 +1,144 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.zhuzhu_charging_station_backend.entity.ChargingMeter;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 充电中订单、排队中slot的编码/解码耗时：带类型信息的JSON对比二进制格式。
+ * 每个对象的字节数在初始化时打印；benchmark profile 默认带 -prof gc，gc.alloc.rate.norm 即每次调用的分配字节数。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisCodecBenchmark {
+
+    private Jackson2JsonRedisSerializer<Order> orderJson;
+    private Jackson2JsonRedisSerializer<ChargingStationSlot> slotJson;
+    private OrderBinarySerializer orderBinary;
+    private SlotBinarySerializer slotBinary;
+
+    private Order order;
+    private ChargingStationSlot slot;
+    private byte[] orderJsonBytes;
+    private byte[] orderBinaryBytes;
+    private byte[] slotJsonBytes;
+    private byte[] slotBinaryBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RedisConfig config = new RedisConfig();
+        orderJson = new Jackson2JsonRedisSerializer<>(Order.class);
+        orderJson.setObjectMapper(config.redisObjectMapper());
+        slotJson = new Jackson2JsonRedisSerializer<>(ChargingStationSlot.class);
+        slotJson.setObjectMapper(config.redisObjectMapper());
+        orderBinary = new OrderBinarySerializer(orderJson, true);
+        slotBinary = new SlotBinarySerializer(slotJson, true);
+
+        order = chargingOrder();
+        slot = queuedSlot();
+        orderJsonBytes = orderJson.serialize(order);
+        orderBinaryBytes = orderBinary.serialize(order);
+        slotJsonBytes = slotJson.serialize(slot);
+        slotBinaryBytes = slotBinary.serialize(slot);
+        System.out.printf("%norder bytes: json=%d, binary=%d; slot bytes: json=%d, binary=%d%n",
+                orderJsonBytes.length, orderBinaryBytes.length, slotJsonBytes.length, slotBinaryBytes.length);
+    }
+
+    @Benchmark
+    public byte[] encodeOrderJson() {
+        return orderJson.serialize(order);
+    }
+
+    @Benchmark
+    public byte[] encodeOrderBinary() {
+        return orderBinary.serialize(order);
+    }
+
+    @Benchmark
+    public Order decodeOrderJson() {
+        return orderJson.deserialize(orderJsonBytes);
+    }
+
+    @Benchmark
+    public Order decodeOrderBinary() {
+        return orderBinary.deserialize(orderBinaryBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeSlotJson() {
+        return slotJson.serialize(slot);
+    }
+
+    @Benchmark
+    public byte[] encodeSlotBinary() {
+        return slotBinary.serialize(slot);
+    }
+
+    @Benchmark
+    public ChargingStationSlot decodeSlotJson() {
+        return slotJson.deserialize(slotJsonBytes);
+    }
+
+    @Benchmark
+    public ChargingStationSlot decodeSlotBinary() {
+        return slotBinary.deserialize(slotBinaryBytes);
+    }
+
+    private static Order chargingOrder() {
+        Order order = new Order();
+        order.setId("2024061100012345");
+        order.setUserId(10086L);
+        order.setChargingStationId(12L);
+        order.setMode(1);
+        order.setQueueNo("");
+        order.setRecordTime(LocalDateTime.of(2024, 6, 11, 9, 30, 12));
+        order.setStartTime(LocalDateTime.of(2024, 6, 11, 9, 41, 3));
+        order.setStatus(1);
+        order.setChargeAmount(new BigDecimal("45.50"));
+        order.setChargeDuration(1834L);
+        ChargingMeter meter = new ChargingMeter();
+        meter.setChargeAmount(455_000_000L);
+        meter.setActualCharge(152_833_333L);
+        meter.setChargeFee(106_983_333L);
+        meter.setServiceFee(122_266_666L);
+        meter.setPeakCharge(101_000_000L);
+        meter.setNormalCharge(51_833_333L);
+        meter.setPeakChargeFee(101_000_000L);
+        meter.setNormalChargeFee(5_983_333L);
+        meter.setEnergyScale(2);
+        meter.setFeeScale(2);
+        order.setMeter(meter);
+        return order;
+    }
+
+    private static ChargingStationSlot queuedSlot() {
+        ChargingStationStatus status = new ChargingStationStatus();
+        status.setStatus(1);
+        status.setCurrentChargeCount(37);
+        status.setCurrentChargeTime(61_245L);
+        status.setCurrentChargeAmount(512.75);
+        ChargingStationSlot slot = new ChargingStationSlot();
+        slot.setStatus(status);
+        slot.setWaitingTime(7_380L);
+        slot.setRemainingEnergy(1_230_000_000L);
+        List<String> queue = new ArrayList<>();
+        queue.add("2024061100012345");
+        queue.add("2024061100012377");
+        queue.add("2024061100012391");
+        slot.setQueue(queue);
+        return slot;
+    }
+}
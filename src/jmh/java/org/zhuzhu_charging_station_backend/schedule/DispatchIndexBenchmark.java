@@ -0,0 +1,94 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import org.openjdk.jmh.annotations.*;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单分配一轮的内存部分：由slot快照构建 {@link DispatchIndex}，按排队顺序为全部等待订单选桩，
+ * 以及单个订单按桩功率折算等待时长。桩的队列长度和等待时长随机但固定（种子不变），各次运行可比较。
+ * 结果用 benchmark profile 输出的 target/jmh-result.json 对比。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchIndexBenchmark {
+
+    @Param({"100", "1000"})
+    private int stationCount;
+
+    @Param({"200"})
+    private int orderCount;
+
+    private List<Long> ids;
+    private Map<Long, ChargingStation> stations;
+    private Map<Long, ChargingStationSlot> slots;
+    private List<Order> orders;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        ids = new ArrayList<>(stationCount);
+        stations = new HashMap<>();
+        slots = new HashMap<>();
+        for (int i = 0; i < stationCount; i++) {
+            long id = 100_000L + i;
+            ChargingStation station = new ChargingStation();
+            station.setId(id);
+            station.setMode(1);
+            station.setPower(new BigDecimal(random.nextBoolean() ? "0.0167" : "0.0083"));
+            station.setMaxQueueLength(4);
+
+            ChargingStationStatus status = new ChargingStationStatus();
+            status.setStatus(random.nextInt(20) == 0 ? 3 : 1); // 约5%故障
+            ChargingStationSlot slot = new ChargingStationSlot();
+            slot.setStatus(status);
+            List<String> queue = new ArrayList<>();
+            int queued = random.nextInt(3);
+            for (int q = 0; q < queued; q++) {
+                queue.add(String.valueOf(id * 10 + q));
+            }
+            slot.setQueue(queue);
+            slot.setWaitingTime((long) random.nextInt(7200));
+
+            ids.add(id);
+            stations.put(id, station);
+            slots.put(id, slot);
+        }
+        orders = new ArrayList<>(orderCount);
+        for (int i = 0; i < orderCount; i++) {
+            Order order = new Order();
+            order.setId(String.valueOf(1_000_000_000_000_000L + i));
+            order.setMode(1);
+            order.setChargeAmount(BigDecimal.valueOf(5 + random.nextInt(60)));
+            orders.add(order);
+        }
+    }
+
+    @Benchmark
+    public int placeAllOrders() {
+        DispatchIndex index = new DispatchIndex(1, ids, stations, slots);
+        int placed = 0;
+        for (Order order : orders) {
+            if (index.place(order) != null) placed++;
+        }
+        return placed;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long remainingSeconds() {
+        Order order = orders.get(next++ % orders.size());
+        return DispatchIndex.remainingSeconds(order, stations.get(ids.get(0)).getPower());
+    }
+}
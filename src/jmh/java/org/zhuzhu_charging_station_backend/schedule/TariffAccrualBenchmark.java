@@ -0,0 +1,103 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import org.openjdk.jmh.annotations.*;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.util.TariffTimeline;
+
+import java.math.BigDecimal;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每秒计费更新：对比按时间对象比较取电价、全量重算费用的旧做法与查表累加定点增量的 {@link StationTariff}，
+ * 以及剩余充电秒数的BigDecimal除法与定点整除。每次调用推进一秒，时间在一天内循环，覆盖各时段。
+ * benchmark profile 默认带 -prof gc，gc.alloc.rate.norm 即每次调用的分配字节数。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TariffAccrualBenchmark {
+
+    private ChargingStation station;
+    private StationTariff tariff;
+    private Order order;
+    private int secondOfDay;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        station = new ChargingStation();
+        station.setId(1L);
+        station.setPower(new BigDecimal("0.01"));
+        station.setServiceFee(new BigDecimal("0.80"));
+        station.setPeakPrice(new BigDecimal("1.00"));
+        station.setNormalPrice(new BigDecimal("0.70"));
+        station.setValleyPrice(new BigDecimal("0.40"));
+        tariff = StationTariff.compile(station, TariffTimeline.DEFAULT);
+
+        order = new Order();
+        order.setChargeAmount(new BigDecimal("100000.00"));
+        order.setActualCharge(BigDecimal.ZERO);
+        order.setChargeFee(BigDecimal.ZERO);
+        order.setServiceFee(BigDecimal.ZERO);
+        order.setTotalFee(BigDecimal.ZERO);
+        order.setPeakCharge(BigDecimal.ZERO);
+        order.setNormalCharge(BigDecimal.ZERO);
+        order.setValleyCharge(BigDecimal.ZERO);
+        order.setPeakChargeFee(BigDecimal.ZERO);
+        order.setNormalChargeFee(BigDecimal.ZERO);
+        order.setValleyChargeFee(BigDecimal.ZERO);
+    }
+
+    @Benchmark
+    public Order incremental() {
+        tariff.accrue(order, nextSecond());
+        return order;
+    }
+
+    @Benchmark
+    public Order recomputeAtCurrentPrice() {
+        LocalTime now = LocalTime.ofSecondOfDay(nextSecond());
+        order.setActualCharge(order.getActualCharge().add(station.getPower()));
+        BigDecimal unitPrice = legacyUnitPrice(now);
+        order.setChargeFee(order.getActualCharge().multiply(unitPrice));
+        order.setServiceFee(order.getActualCharge().multiply(station.getServiceFee()));
+        order.setTotalFee(order.getChargeFee().add(order.getServiceFee()));
+        return order;
+    }
+
+    @Benchmark
+    public long remainingSecondsFixedPoint() {
+        tariff.accrue(order, nextSecond());
+        return tariff.remainingSeconds(order);
+    }
+
+    @Benchmark
+    public long remainingSecondsBigDecimal() {
+        tariff.accrue(order, nextSecond());
+        return DispatchIndex.remainingSeconds(order, station.getPower());
+    }
+
+    private int nextSecond() {
+        int second = secondOfDay;
+        secondOfDay = second + 1 == TariffTimeline.SECONDS_PER_DAY ? 0 : second + 1;
+        return second;
+    }
+
+    // 改造前的取价方式：每次构造6个时间对象逐段比较
+    private BigDecimal legacyUnitPrice(LocalTime now) {
+        LocalTime peak1Start = LocalTime.of(10, 0), peak1End = LocalTime.of(15, 0);
+        LocalTime peak2Start = LocalTime.of(18, 0), peak2End = LocalTime.of(21, 0);
+        LocalTime valleyStart = LocalTime.of(23, 0), valleyEnd = LocalTime.of(7, 0);
+        if ((!now.isBefore(peak1Start) && now.isBefore(peak1End)) || (!now.isBefore(peak2Start) && now.isBefore(peak2End))) {
+            return station.getPeakPrice();
+        }
+        if (!now.isBefore(valleyStart) || now.isBefore(valleyEnd)) {
+            return station.getValleyPrice();
+        }
+        return station.getNormalPrice();
+    }
+}
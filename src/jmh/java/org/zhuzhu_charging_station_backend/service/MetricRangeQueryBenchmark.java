@@ -0,0 +1,96 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 充电统计区间查询：预先写入一年的合成结算数据（每桩每10分钟一单），
+ * 查询单桩一周的小时桶、全站一年的天桶、全站一天的分钟桶。
+ * 需要本地MySQL且已由应用启动建好 charging_metric 表，连接参数可用 -Dbench.jdbc.* 覆盖。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricRangeQueryBenchmark {
+
+    private static final long STATION_BASE = 999800L;
+    private static final int STATIONS = 10;
+    private static final int ORDER_INTERVAL_MINUTES = 10;
+    private static final int SEED_BATCH_SIZE = 5000;
+    private static final LocalDateTime YEAR_START = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private JdbcTemplate jdbcTemplate;
+    private MetricService metricService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                System.getProperty("bench.jdbc.url", "jdbc:mysql://localhost:3306/charge_db?useSSL=false&serverTimezone=Asia/Shanghai&rewriteBatchedStatements=true"),
+                System.getProperty("bench.jdbc.username", "llzj"),
+                System.getProperty("bench.jdbc.password", "Lxy20040513"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        metricService = new MetricService(jdbcTemplate);
+        cleanUp();
+
+        List<Order> batch = new ArrayList<>(SEED_BATCH_SIZE);
+        LocalDateTime end = YEAR_START.plusYears(1);
+        for (LocalDateTime t = YEAR_START; t.isBefore(end); t = t.plusMinutes(ORDER_INTERVAL_MINUTES)) {
+            for (int s = 0; s < STATIONS; s++) {
+                batch.add(order(STATION_BASE + s, s % 2, t));
+                if (batch.size() >= SEED_BATCH_SIZE) {
+                    metricService.record(batch);
+                    batch.clear();
+                }
+            }
+        }
+        metricService.record(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() {
+        jdbcTemplate.update("DELETE FROM charging_metric WHERE station_id >= ? AND station_id < ?",
+                STATION_BASE, STATION_BASE + STATIONS);
+    }
+
+    @Benchmark
+    public Object stationWeekByHour() {
+        LocalDateTime from = YEAR_START.plusWeeks(20);
+        return metricService.getStationMetrics(STATION_BASE + 3, MetricService.Granularity.HOUR, from, from.plusWeeks(1));
+    }
+
+    @Benchmark
+    public Object totalYearByDay() {
+        return metricService.getTotalMetrics(null, MetricService.Granularity.DAY, YEAR_START, YEAR_START.plusYears(1));
+    }
+
+    @Benchmark
+    public Object fastModeDayByMinute() {
+        LocalDateTime from = YEAR_START.plusDays(200);
+        return metricService.getTotalMetrics(1, MetricService.Granularity.MINUTE, from, from.plusDays(1));
+    }
+
+    private static Order order(Long stationId, int mode, LocalDateTime stopTime) {
+        Order order = new Order();
+        order.setChargingStationId(stationId);
+        order.setMode(mode);
+        order.setStartTime(stopTime.minusMinutes(30));
+        order.setStopTime(stopTime);
+        order.setChargeDuration(1800L);
+        order.setActualCharge(new BigDecimal(mode == 1 ? "15.00" : "3.50"));
+        order.setChargeFee(new BigDecimal(mode == 1 ? "12.00" : "2.80"));
+        order.setServiceFee(new BigDecimal(mode == 1 ? "12.00" : "2.80"));
+        order.setTotalFee(new BigDecimal(mode == 1 ? "24.00" : "5.60"));
+        return order;
+    }
+}
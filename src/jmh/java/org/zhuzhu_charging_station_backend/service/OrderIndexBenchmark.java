@@ -0,0 +1,125 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.zhuzhu_charging_station_backend.config.RedisConfig;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按用户读取缓存订单：用户索引（SMEMBERS + 一次MGET）对比改造前的 KEYS order:* 后逐个GET再按用户过滤。
+ * 缓存中共有 orderCount 个订单，每个用户 {@value #ORDERS_PER_USER} 个，两种方式的结果相同。
+ * 需要本地Redis，默认使用 15 号库（避免与应用数据混在一起），连接参数可用 -Dbench.redis.* 覆盖。
+ * 100万订单时Redis需要数百MB内存，KEYS方式每次操作要逐个GET全部订单（单次可达数分钟），
+ * 只跑较小规模可用 -p orderCount=10000,100000。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderIndexBenchmark {
+
+    private static final int ORDERS_PER_USER = 10;
+    private static final long USER_BASE = 88000000L;
+    private static final String ORDER_ID_PREFIX = "8800";
+    private static final int SEED_BATCH_SIZE = 1000;
+    // 与 OrderCacheService 中的索引key一致
+    private static final String USER_INDEX_PREFIX = "order-index:user:";
+    private static final String ACTIVE_INDEX_KEY = "order-index:active";
+
+    @Param({"10000", "100000", "1000000"})
+    private int orderCount;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate<String, Order> orderRedisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
+    private OrderCacheService orderCacheService;
+    private int userCount;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("bench.redis.host", "localhost"), Integer.getInteger("bench.redis.port", 6379));
+        configuration.setDatabase(Integer.getInteger("bench.redis.database", 15));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        orderRedisTemplate = new RedisConfig().orderRedisTemplate(connectionFactory, "binary");
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        orderCacheService = new OrderCacheService(orderRedisTemplate, stringRedisTemplate);
+
+        userCount = orderCount / ORDERS_PER_USER;
+        List<Order> batch = new ArrayList<>(SEED_BATCH_SIZE);
+        for (int i = 0; i < orderCount; i++) {
+            batch.add(order(i));
+            if (batch.size() >= SEED_BATCH_SIZE) {
+                orderCacheService.saveOrders(batch);
+                batch.clear();
+            }
+        }
+        orderCacheService.saveOrders(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // 按批删除订单和索引，不逐单提交事务
+        List<String> keys = new ArrayList<>(SEED_BATCH_SIZE);
+        for (int i = 0; i < orderCount; i++) {
+            keys.add(orderCacheService.buildOrderKey(order(i).getId()));
+            if (i % ORDERS_PER_USER == 0) keys.add(USER_INDEX_PREFIX + (USER_BASE + i / ORDERS_PER_USER));
+            if (keys.size() >= SEED_BATCH_SIZE) {
+                stringRedisTemplate.delete(keys);
+                keys.clear();
+            }
+        }
+        keys.add(ACTIVE_INDEX_KEY);
+        stringRedisTemplate.delete(keys);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public List<Order> userIndex() {
+        return orderCacheService.getAllOrdersByUser(nextUser());
+    }
+
+    // 改造前的实现
+    @Benchmark
+    public List<Order> keysScan() {
+        Long userId = nextUser();
+        Set<String> keys = orderRedisTemplate.keys("order:*");
+        if (keys == null || keys.isEmpty()) return Collections.emptyList();
+        List<Order> result = new ArrayList<>();
+        for (String key : keys) {
+            Order order = orderRedisTemplate.opsForValue().get(key);
+            if (order != null && Objects.equals(order.getUserId(), userId)) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    private Long nextUser() {
+        return USER_BASE + (next++ % userCount);
+    }
+
+    private static Order order(int index) {
+        Order order = new Order();
+        order.setId(ORDER_ID_PREFIX + String.format("%012d", index));
+        order.setUserId(USER_BASE + index / ORDERS_PER_USER);
+        order.setMode(index % 2);
+        order.setStatus(3);
+        order.setQueueNo("T" + index);
+        order.setRecordTime(LocalDateTime.of(2024, 5, 1, 8, 0).plusSeconds(index));
+        order.setChargeAmount(BigDecimal.valueOf(5 + index % 60));
+        return order;
+    }
+}
@@ -0,0 +1,98 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.zhuzhu_charging_station_backend.config.RedisConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 64个并发提交者对同一个等待队列入队后再移除（提交并取消，队列长度保持在提交者数量以内）：
+ * 改造前每次操作先取 lock:queue:&lt;key&gt; 的Redisson锁再执行一条LPUSH/RPUSH/LREM，
+ * 改造后 {@link QueueService} 每次操作是一次Lua脚本调用。
+ * 需要本地Redis，默认使用 15 号库（避免与应用数据混在一起），连接参数可用 -Dbench.redis.* 覆盖。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class QueueSubmitBenchmark {
+
+    private static final int MODE = 1;
+
+    private final AtomicLong orderSeq = new AtomicLong(9900000000000000L);
+
+    private RedissonClient redissonClient;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private QueueService queueService;
+    private String queueKey;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String host = System.getProperty("bench.redis.host", "localhost");
+        int port = Integer.getInteger("bench.redis.port", 6379);
+        int database = Integer.getInteger("bench.redis.database", 15);
+        // 改造前的队列锁
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://" + host + ":" + port).setDatabase(database);
+        redissonClient = Redisson.create(config);
+
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(host, port);
+        configuration.setDatabase(database);
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        RedisTemplate<String, Long> longRedisTemplate = new RedisConfig().longRedisTemplate(connectionFactory);
+        longRedisTemplate.afterPropertiesSet();
+        queueService = new QueueService(null, null, null);
+        ReflectionTestUtils.setField(queueService, "longRedisTemplate", longRedisTemplate);
+        queueKey = queueService.getQueueKey(MODE);
+        stringRedisTemplate.delete(queueKey);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stringRedisTemplate.delete(queueKey);
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+    }
+
+    // 改造前的实现：每次队列操作都在队列锁内完成
+    @Benchmark
+    public void lockedSubmitAndCancel() {
+        String orderId = String.valueOf(orderSeq.incrementAndGet());
+        withQueueLock(() -> stringRedisTemplate.opsForList().rightPush(queueKey, orderId));
+        withQueueLock(() -> stringRedisTemplate.opsForList().remove(queueKey, 0, orderId));
+    }
+
+    @Benchmark
+    public void scriptSubmitAndCancel() {
+        String orderId = String.valueOf(orderSeq.incrementAndGet());
+        queueService.addOrderToQueueWithLock(MODE, orderId);
+        queueService.removeOrderFromQueueWithLock(MODE, orderId);
+    }
+
+    private void withQueueLock(Runnable command) {
+        RLock lock = redissonClient.getLock("lock:queue:" + queueKey);
+        lock.lock();
+        try {
+            command.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
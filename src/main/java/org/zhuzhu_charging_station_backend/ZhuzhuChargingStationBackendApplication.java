@@ -3,10 +3,8 @@ package org.zhuzhu_charging_station_backend;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableScheduling
 @EnableCaching
 public class ZhuzhuChargingStationBackendApplication {
 
@@ -0,0 +1,208 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 热点对象（订单、slot）的紧凑二进制序列化：按固定字段顺序写入，不带类名和字段名。
+ * 首字节为格式版本，字段变更时新增版本并保留旧版本的读取；
+ * 首字节是JSON起始字符时按原JSON格式读取，升级前写入的key无需迁移，下次写入即转为二进制。
+ * 写出格式可切回JSON（回滚时用），读取始终兼容两种格式。
+ */
+public abstract class BinaryRedisSerializer<T> implements RedisSerializer<T> {
+
+    private final Jackson2JsonRedisSerializer<T> jsonSerializer;
+    private final boolean writeBinary;
+
+    protected BinaryRedisSerializer(Jackson2JsonRedisSerializer<T> jsonSerializer, boolean writeBinary) {
+        this.jsonSerializer = jsonSerializer;
+        this.writeBinary = writeBinary;
+    }
+
+    /**
+     * 当前写出的格式版本，不能与JSON起始字符冲突
+     */
+    protected abstract byte version();
+
+    protected abstract void write(T value, Writer out);
+
+    /**
+     * 按给定版本读取，未知版本抛出 {@link SerializationException}
+     */
+    protected abstract T read(byte version, Reader in);
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) return new byte[0];
+        if (!writeBinary) return jsonSerializer.serialize(value);
+        Writer out = new Writer();
+        out.writeByte(version());
+        write(value, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) return null;
+        if (isJson(bytes[0])) return jsonSerializer.deserialize(bytes);
+        try {
+            Reader in = new Reader(bytes);
+            return read(in.readByte(), in);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("二进制数据不完整", e);
+        }
+    }
+
+    protected static SerializationException unknownVersion(byte version) {
+        return new SerializationException("不支持的二进制格式版本: " + (version & 0xFF));
+    }
+
+    private static boolean isJson(byte first) {
+        return first == '{' || first == '[' || first == '"' || first == ' ' || first == '\n' || first == '\t' || first == '\r';
+    }
+
+    /**
+     * 写入：整数用zigzag变长编码，可空字段由调用方用位图标记
+     */
+    protected static final class Writer {
+        private byte[] buffer = new byte[128];
+        private int length;
+
+        public void writeByte(int value) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+        }
+
+        public void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            writeUnsigned(zigzag);
+        }
+
+        public void writeUnsigned(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        public void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                buffer[length++] = (byte) (bits >>> i);
+            }
+        }
+
+        public void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(bytes.length);
+            writeBytes(bytes);
+        }
+
+        // 小数位 + 未缩放值，未缩放值超出long时写原始字节
+        public void writeDecimal(BigDecimal value) {
+            BigInteger unscaled = value.unscaledValue();
+            boolean big = unscaled.bitLength() > 63;
+            writeVarLong(((long) value.scale() << 1) | (big ? 1 : 0));
+            if (big) {
+                byte[] bytes = unscaled.toByteArray();
+                writeUnsigned(bytes.length);
+                writeBytes(bytes);
+            } else {
+                writeVarLong(unscaled.longValue());
+            }
+        }
+
+        public void writeDateTime(LocalDateTime value) {
+            writeVarLong(value.toEpochSecond(ZoneOffset.UTC));
+            writeUnsigned(value.getNano());
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    protected static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        public byte readByte() {
+            return buffer[position++];
+        }
+
+        public long readVarLong() {
+            long zigzag = readUnsigned();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        public long readUnsigned() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new SerializationException("变长整数格式错误");
+        }
+
+        public double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        public String readString() {
+            int size = (int) readUnsigned();
+            String value = new String(buffer, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+
+        public BigDecimal readDecimal() {
+            long header = readVarLong();
+            int scale = (int) (header >> 1);
+            if ((header & 1) == 0) {
+                return BigDecimal.valueOf(readVarLong(), scale);
+            }
+            int size = (int) readUnsigned();
+            BigInteger unscaled = new BigInteger(Arrays.copyOfRange(buffer, position, position + size));
+            position += size;
+            return new BigDecimal(unscaled, scale);
+        }
+
+        public LocalDateTime readDateTime() {
+            long epochSecond = readVarLong();
+            int nano = (int) readUnsigned();
+            return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.zhuzhu_charging_station_backend.util.VirtualClock;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * 调度和计费使用的时钟：默认为系统时钟；clock.mode=virtual 时为 {@link VirtualClock}，
+ * 从启动时刻开始，只由调用方拨动（车队仿真、测试快进）
+ */
+@Configuration
+public class ClockConfig {
+
+    @Bean
+    public Clock clock(@Value("${clock.mode:system}") String mode) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            return new VirtualClock(Instant.now(), ZoneId.systemDefault());
+        }
+        return Clock.systemDefaultZone();
+    }
+}
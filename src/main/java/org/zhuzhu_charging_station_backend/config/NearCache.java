@@ -0,0 +1,201 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二级缓存：本地有界缓存（带TTL）在前，Redis缓存在后。
+ * 本地命中时不访问网络、不反序列化，直接返回同一个对象，调用方不得修改返回值。
+ * 写入（含未命中后加载回填）、驱逐、清空先作用于Redis，再更新本地并通过 {@link NearCacheManager} 通知其他节点失效本地副本，
+ * 其他节点下次读取时从Redis取到新值。
+ */
+public class NearCache implements Cache {
+
+    private final Cache delegate;
+    private final NearCacheManager manager;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final ConcurrentMap<String, Entry> local = new ConcurrentHashMap<>();
+    // 每次失效递增；从Redis读取期间发生过失效的值不写入本地，避免旧值回填
+    private final AtomicLong generation = new AtomicLong();
+
+    NearCache(Cache delegate, NearCacheManager manager, int maxSize, long ttlMillis) {
+        this.delegate = delegate;
+        this.manager = manager;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        Entry entry = local.get(localKey);
+        long now = System.currentTimeMillis();
+        if (entry != null) {
+            if (now < entry.expiresAt) {
+                return entry.wrapper;
+            }
+            local.remove(localKey, entry);
+        }
+        long gen = generation.get();
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            putLocal(localKey, wrapper, gen, now);
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        long gen = generation.get();
+        boolean[] loaded = new boolean[1];
+        T value = delegate.get(key, () -> {
+            loaded[0] = true;
+            return valueLoader.call();
+        });
+        putLocal(localKey(key), new SimpleValueWrapper(value), gen, System.currentTimeMillis());
+        // 本节点加载并写入了Redis，其他节点可能持有旧副本
+        if (loaded[0]) manager.publishInvalidation(getName(), localKey(key));
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        long gen = generation.get();
+        delegate.put(key, value);
+        putLocal(localKey(key), new SimpleValueWrapper(value), gen, System.currentTimeMillis());
+        manager.publishInvalidation(getName(), localKey(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long gen = generation.get();
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        long now = System.currentTimeMillis();
+        if (existing != null) {
+            putLocal(localKey(key), existing, gen, now);
+            return existing;
+        }
+        putLocal(localKey(key), new SimpleValueWrapper(value), gen, now);
+        manager.publishInvalidation(getName(), localKey(key));
+        return null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        evictLocal(localKey(key));
+        manager.publishInvalidation(getName(), localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = delegate.evictIfPresent(key);
+        evictLocal(localKey(key));
+        manager.publishInvalidation(getName(), localKey(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        clearLocal();
+        manager.publishInvalidation(getName(), null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = delegate.invalidate();
+        clearLocal();
+        manager.publishInvalidation(getName(), null);
+        return present;
+    }
+
+    /**
+     * 仅失效本地缓存（收到其他节点的失效通知时调用）
+     */
+    void evictLocal(String localKey) {
+        generation.incrementAndGet();
+        local.remove(localKey);
+    }
+
+    void clearLocal() {
+        generation.incrementAndGet();
+        local.clear();
+    }
+
+    int localSize() {
+        return local.size();
+    }
+
+    private void putLocal(String localKey, ValueWrapper wrapper, long gen, long now) {
+        if (maxSize <= 0) return;
+        if (local.size() >= maxSize) {
+            evictLocalEntries(now);
+        }
+        local.put(localKey, new Entry(wrapper, now + ttlMillis));
+        // 写入期间发生过失效，撤回本次写入
+        if (generation.get() != gen) {
+            local.remove(localKey);
+        }
+    }
+
+    // 先清理已过期的条目，仍然超限时再淘汰一部分，保证本地缓存大小有界
+    private void evictLocalEntries(long now) {
+        local.values().removeIf(entry -> entry.expiresAt <= now);
+        int toRemove = local.size() - maxSize * 9 / 10;
+        Iterator<String> iterator = local.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    // 本地key与跨节点失效消息使用同一字符串形式
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private static class Entry {
+        private final ValueWrapper wrapper;
+        private final long expiresAt;
+
+        private Entry(ValueWrapper wrapper, long expiresAt) {
+            this.wrapper = wrapper;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 在Redis缓存管理器前加一层本地缓存（{@link NearCache}）。
+ * 任一节点写入、驱逐、清空缓存时，通过Redis发布订阅通知其他节点失效本地副本；
+ * 通知丢失（如断线重连期间）时，本地副本最多在TTL后过期。
+ */
+@Slf4j
+public class NearCacheManager implements CacheManager, MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "cache-invalidation";
+
+    private static final String CLEAR = "C";
+    private static final String EVICT = "E";
+
+    private final CacheManager delegate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int maxSize;
+    private final long ttlMillis;
+    // 本节点标识，忽略自己发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, NearCache> caches = new ConcurrentHashMap<>();
+
+    public NearCacheManager(CacheManager delegate, StringRedisTemplate stringRedisTemplate, int maxSize, long ttlMillis) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        NearCache cache = caches.get(name);
+        if (cache != null) return cache;
+        Cache target = delegate.getCache(name);
+        if (target == null) return null;
+        return caches.computeIfAbsent(name, n -> new NearCache(target, this, maxSize, ttlMillis));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    /**
+     * 通知其他节点失效本地缓存
+     * @param key 为null表示清空整个缓存
+     */
+    void publishInvalidation(String cacheName, String key) {
+        String body = nodeId + "\n" + cacheName + "\n" + (key == null ? CLEAR : EVICT + key);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, body);
+        } catch (Exception e) {
+            log.warn("缓存失效通知发送失败: cache={}, key={}", cacheName, key, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) return;
+        NearCache cache = caches.get(parts[1]);
+        if (cache == null) return;
+        if (parts[2].startsWith(EVICT)) {
+            cache.evictLocal(parts[2].substring(EVICT.length()));
+        } else {
+            cache.clearLocal();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.zhuzhu_charging_station_backend.entity.ChargingMeter;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+/**
+ * 订单的二进制格式（版本1）：字段位图 + 依次写出的非空字段。
+ * 充电中的订单带计量状态，此时由计量状态换算的金额/电量字段不再重复写出，读取后同样由计量状态换算
+ */
+public class OrderBinarySerializer extends BinaryRedisSerializer<Order> {
+
+    private static final byte VERSION_1 = 1;
+
+    // 字段位图的位，新增字段只能追加
+    private static final long ID = 1L;
+    private static final long USER_ID = 1L << 1;
+    private static final long STATION_ID = 1L << 2;
+    private static final long MODE = 1L << 3;
+    private static final long QUEUE_NO = 1L << 4;
+    private static final long RECORD_TIME = 1L << 5;
+    private static final long STATUS = 1L << 6;
+    private static final long CHARGE_AMOUNT = 1L << 7;
+    private static final long ACTUAL_CHARGE = 1L << 8;
+    private static final long CHARGE_DURATION = 1L << 9;
+    private static final long START_TIME = 1L << 10;
+    private static final long STOP_TIME = 1L << 11;
+    private static final long CHARGE_FEE = 1L << 12;
+    private static final long PEAK_CHARGE = 1L << 13;
+    private static final long NORMAL_CHARGE = 1L << 14;
+    private static final long VALLEY_CHARGE = 1L << 15;
+    private static final long PEAK_CHARGE_FEE = 1L << 16;
+    private static final long NORMAL_CHARGE_FEE = 1L << 17;
+    private static final long VALLEY_CHARGE_FEE = 1L << 18;
+    private static final long SERVICE_FEE = 1L << 19;
+    private static final long TOTAL_FEE = 1L << 20;
+    private static final long METER = 1L << 21;
+
+    public OrderBinarySerializer(Jackson2JsonRedisSerializer<Order> jsonSerializer, boolean writeBinary) {
+        super(jsonSerializer, writeBinary);
+    }
+
+    @Override
+    protected byte version() {
+        return VERSION_1;
+    }
+
+    @Override
+    protected void write(Order order, Writer out) {
+        ChargingMeter meter = order.getMeter();
+        boolean metered = meter != null;
+        long fields = 0;
+        if (order.getId() != null) fields |= ID;
+        if (order.getUserId() != null) fields |= USER_ID;
+        if (order.getChargingStationId() != null) fields |= STATION_ID;
+        if (order.getMode() != null) fields |= MODE;
+        if (order.getQueueNo() != null) fields |= QUEUE_NO;
+        if (order.getRecordTime() != null) fields |= RECORD_TIME;
+        if (order.getStatus() != null) fields |= STATUS;
+        if (order.getChargeAmount() != null) fields |= CHARGE_AMOUNT;
+        if (order.getChargeDuration() != null) fields |= CHARGE_DURATION;
+        if (order.getStartTime() != null) fields |= START_TIME;
+        if (order.getStopTime() != null) fields |= STOP_TIME;
+        if (metered) {
+            fields |= METER;
+        } else {
+            if (order.getActualCharge() != null) fields |= ACTUAL_CHARGE;
+            if (order.getChargeFee() != null) fields |= CHARGE_FEE;
+            if (order.getPeakCharge() != null) fields |= PEAK_CHARGE;
+            if (order.getNormalCharge() != null) fields |= NORMAL_CHARGE;
+            if (order.getValleyCharge() != null) fields |= VALLEY_CHARGE;
+            if (order.getPeakChargeFee() != null) fields |= PEAK_CHARGE_FEE;
+            if (order.getNormalChargeFee() != null) fields |= NORMAL_CHARGE_FEE;
+            if (order.getValleyChargeFee() != null) fields |= VALLEY_CHARGE_FEE;
+            if (order.getServiceFee() != null) fields |= SERVICE_FEE;
+            if (order.getTotalFee() != null) fields |= TOTAL_FEE;
+        }
+        out.writeUnsigned(fields);
+
+        if ((fields & ID) != 0) out.writeString(order.getId());
+        if ((fields & USER_ID) != 0) out.writeVarLong(order.getUserId());
+        if ((fields & STATION_ID) != 0) out.writeVarLong(order.getChargingStationId());
+        if ((fields & MODE) != 0) out.writeVarLong(order.getMode());
+        if ((fields & QUEUE_NO) != 0) out.writeString(order.getQueueNo());
+        if ((fields & RECORD_TIME) != 0) out.writeDateTime(order.getRecordTime());
+        if ((fields & STATUS) != 0) out.writeVarLong(order.getStatus());
+        if ((fields & CHARGE_AMOUNT) != 0) out.writeDecimal(order.getChargeAmount());
+        if ((fields & ACTUAL_CHARGE) != 0) out.writeDecimal(order.getActualCharge());
+        if ((fields & CHARGE_DURATION) != 0) out.writeVarLong(order.getChargeDuration());
+        if ((fields & START_TIME) != 0) out.writeDateTime(order.getStartTime());
+        if ((fields & STOP_TIME) != 0) out.writeDateTime(order.getStopTime());
+        if ((fields & CHARGE_FEE) != 0) out.writeDecimal(order.getChargeFee());
+        if ((fields & PEAK_CHARGE) != 0) out.writeDecimal(order.getPeakCharge());
+        if ((fields & NORMAL_CHARGE) != 0) out.writeDecimal(order.getNormalCharge());
+        if ((fields & VALLEY_CHARGE) != 0) out.writeDecimal(order.getValleyCharge());
+        if ((fields & PEAK_CHARGE_FEE) != 0) out.writeDecimal(order.getPeakChargeFee());
+        if ((fields & NORMAL_CHARGE_FEE) != 0) out.writeDecimal(order.getNormalChargeFee());
+        if ((fields & VALLEY_CHARGE_FEE) != 0) out.writeDecimal(order.getValleyChargeFee());
+        if ((fields & SERVICE_FEE) != 0) out.writeDecimal(order.getServiceFee());
+        if ((fields & TOTAL_FEE) != 0) out.writeDecimal(order.getTotalFee());
+        if (metered) writeMeter(meter, out);
+    }
+
+    @Override
+    protected Order read(byte version, Reader in) {
+        if (version != VERSION_1) throw unknownVersion(version);
+        long fields = in.readUnsigned();
+        Order order = new Order();
+        if ((fields & ID) != 0) order.setId(in.readString());
+        if ((fields & USER_ID) != 0) order.setUserId(in.readVarLong());
+        if ((fields & STATION_ID) != 0) order.setChargingStationId(in.readVarLong());
+        if ((fields & MODE) != 0) order.setMode((int) in.readVarLong());
+        if ((fields & QUEUE_NO) != 0) order.setQueueNo(in.readString());
+        if ((fields & RECORD_TIME) != 0) order.setRecordTime(in.readDateTime());
+        if ((fields & STATUS) != 0) order.setStatus((int) in.readVarLong());
+        if ((fields & CHARGE_AMOUNT) != 0) order.setChargeAmount(in.readDecimal());
+        if ((fields & ACTUAL_CHARGE) != 0) order.setActualCharge(in.readDecimal());
+        if ((fields & CHARGE_DURATION) != 0) order.setChargeDuration(in.readVarLong());
+        if ((fields & START_TIME) != 0) order.setStartTime(in.readDateTime());
+        if ((fields & STOP_TIME) != 0) order.setStopTime(in.readDateTime());
+        if ((fields & CHARGE_FEE) != 0) order.setChargeFee(in.readDecimal());
+        if ((fields & PEAK_CHARGE) != 0) order.setPeakCharge(in.readDecimal());
+        if ((fields & NORMAL_CHARGE) != 0) order.setNormalCharge(in.readDecimal());
+        if ((fields & VALLEY_CHARGE) != 0) order.setValleyCharge(in.readDecimal());
+        if ((fields & PEAK_CHARGE_FEE) != 0) order.setPeakChargeFee(in.readDecimal());
+        if ((fields & NORMAL_CHARGE_FEE) != 0) order.setNormalChargeFee(in.readDecimal());
+        if ((fields & VALLEY_CHARGE_FEE) != 0) order.setValleyChargeFee(in.readDecimal());
+        if ((fields & SERVICE_FEE) != 0) order.setServiceFee(in.readDecimal());
+        if ((fields & TOTAL_FEE) != 0) order.setTotalFee(in.readDecimal());
+        if ((fields & METER) != 0) order.setMeter(readMeter(in));
+        return order;
+    }
+
+    private static void writeMeter(ChargingMeter meter, Writer out) {
+        out.writeVarLong(meter.getChargeAmount());
+        out.writeVarLong(meter.getActualCharge());
+        out.writeVarLong(meter.getChargeFee());
+        out.writeVarLong(meter.getServiceFee());
+        out.writeVarLong(meter.getPeakCharge());
+        out.writeVarLong(meter.getNormalCharge());
+        out.writeVarLong(meter.getValleyCharge());
+        out.writeVarLong(meter.getPeakChargeFee());
+        out.writeVarLong(meter.getNormalChargeFee());
+        out.writeVarLong(meter.getValleyChargeFee());
+        out.writeVarLong(meter.getEnergyScale());
+        out.writeVarLong(meter.getFeeScale());
+    }
+
+    private static ChargingMeter readMeter(Reader in) {
+        ChargingMeter meter = new ChargingMeter();
+        meter.setChargeAmount(in.readVarLong());
+        meter.setActualCharge(in.readVarLong());
+        meter.setChargeFee(in.readVarLong());
+        meter.setServiceFee(in.readVarLong());
+        meter.setPeakCharge(in.readVarLong());
+        meter.setNormalCharge(in.readVarLong());
+        meter.setValleyCharge(in.readVarLong());
+        meter.setPeakChargeFee(in.readVarLong());
+        meter.setNormalChargeFee(in.readVarLong());
+        meter.setValleyChargeFee(in.readVarLong());
+        meter.setEnergyScale((int) in.readVarLong());
+        meter.setFeeScale((int) in.readVarLong());
+        return meter;
+    }
+}
@@ -0,0 +1,127 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.util.*;
+
+/**
+ * Redis命令计量：包装连接工厂取出的连接（及其 xxxCommands() 子接口），
+ * 统计执行的命令数和收发字节数，计入 redis.commands、redis.bytes（direction=out/in），
+ * 同时按线程累计，调度tick可以取本线程在一轮内的增量。
+ * 字节数只计命令参数和返回值中的 byte[]（键、值、字段），不含协议开销；管道内的返回值在关闭管道时计入。
+ */
+public class RedisCallMeter implements MethodInterceptor {
+
+    // 连接生命周期、管道/事务控制等不算作命令的方法
+    private static final Set<String> CONTROL_METHODS = new HashSet<>(Arrays.asList(
+            "close", "isClosed", "getNativeConnection", "isQueueing", "isPipelined", "openPipeline", "closePipeline",
+            "multi", "exec", "discard", "getSentinelConnection", "isSubscribed", "getSubscription",
+            "equals", "hashCode", "toString"));
+    private static final String COMMANDS_SUFFIX = "Commands";
+
+    // 每个线程累计的 {命令数, 字节数}
+    private static final ThreadLocal<long[]> THREAD_TOTALS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private volatile Counter commands;
+    private volatile Counter bytesOut;
+    private volatile Counter bytesIn;
+
+    public RedisCallMeter(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    /**
+     * 本线程累计执行的Redis命令数
+     */
+    public static long threadCommands() {
+        return THREAD_TOTALS.get()[0];
+    }
+
+    /**
+     * 本线程累计收发的字节数
+     */
+    public static long threadBytes() {
+        return THREAD_TOTALS.get()[1];
+    }
+
+    /**
+     * 包装连接工厂：取出的连接都经过计量
+     */
+    public RedisConnectionFactory wrap(RedisConnectionFactory factory) {
+        ProxyFactory proxyFactory = new ProxyFactory(factory);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            Object result = invocation.proceed();
+            if (result instanceof RedisConnection && "getConnection".equals(invocation.getMethod().getName())) {
+                return proxy(result);
+            }
+            return result;
+        });
+        return (RedisConnectionFactory) proxyFactory.getProxy();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String name = invocation.getMethod().getName();
+        if (name.endsWith(COMMANDS_SUFFIX) && invocation.getArguments().length == 0) {
+            Object commands = invocation.proceed();
+            return commands == null ? null : proxy(commands);
+        }
+        long out = 0;
+        for (Object argument : invocation.getArguments()) {
+            out += sizeOf(argument);
+        }
+        Object result = invocation.proceed();
+        record(CONTROL_METHODS.contains(name) ? 0 : 1, out, sizeOf(result));
+        return result;
+    }
+
+    private Object proxy(Object target) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addAdvice(this);
+        return proxyFactory.getProxy();
+    }
+
+    private void record(int commandCount, long out, long in) {
+        long[] totals = THREAD_TOTALS.get();
+        totals[0] += commandCount;
+        totals[1] += out + in;
+        if (commands == null) {
+            MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+            if (registry == null) return;
+            bytesOut = Counter.builder("redis.bytes").tag("direction", "out").description("发往Redis的字节数").register(registry);
+            bytesIn = Counter.builder("redis.bytes").tag("direction", "in").description("从Redis读取的字节数").register(registry);
+            commands = Counter.builder("redis.commands").description("执行的Redis命令数").register(registry);
+        }
+        if (commandCount > 0) commands.increment(commandCount);
+        if (out > 0) bytesOut.increment(out);
+        if (in > 0) bytesIn.increment(in);
+    }
+
+    private static long sizeOf(Object value) {
+        if (value == null) return 0;
+        if (value instanceof byte[]) return ((byte[]) value).length;
+        long size = 0;
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                size += sizeOf(element);
+            }
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                size += sizeOf(element);
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+        }
+        return size;
+    }
+}
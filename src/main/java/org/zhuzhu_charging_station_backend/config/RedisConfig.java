@@ -5,7 +5,14 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
@@ -14,13 +21,20 @@ import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericToStringSerializer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.zhuzhu_charging_station_backend.entity.ChargingMeter;
 import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
 import org.zhuzhu_charging_station_backend.entity.Order;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @EnableCaching
 public class RedisConfig {
@@ -29,6 +43,8 @@ public class RedisConfig {
         om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
 
         om.registerModule(new JavaTimeModule());
+        // 订单的定点计量状态不对外返回，但需要随订单缓存
+        om.addMixIn(Order.class, OrderCacheMixin.class);
         om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         om.activateDefaultTyping(
                 BasicPolymorphicTypeValidator.builder()
@@ -42,8 +58,15 @@ public class RedisConfig {
         return om;
     }
 
+    /**
+     * Redis缓存外加一层本地近端缓存，跨节点通过发布订阅失效
+     */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory factory) {
+    public CacheManager cacheManager(RedisConnectionFactory factory,
+                                     StringRedisTemplate stringRedisTemplate,
+                                     RedisMessageListenerContainer redisMessageListenerContainer,
+                                     @Value("${cache.near.max-size:2000}") int nearCacheMaxSize,
+                                     @Value("${cache.near.ttl-seconds:60}") long nearCacheTtlSeconds) {
         Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer =
                 new Jackson2JsonRedisSerializer<>(Object.class);
 
@@ -53,13 +76,23 @@ public class RedisConfig {
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jackson2JsonRedisSerializer));
 
-        return RedisCacheManager.builder(factory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(factory)
                 .cacheDefaults(config)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+
+        NearCacheManager cacheManager = new NearCacheManager(redisCacheManager, stringRedisTemplate,
+                nearCacheMaxSize, TimeUnit.SECONDS.toMillis(nearCacheTtlSeconds));
+        redisMessageListenerContainer.addMessageListener(cacheManager, new ChannelTopic(NearCacheManager.INVALIDATION_CHANNEL));
+        return cacheManager;
     }
 
+    /**
+     * slot和订单的value格式：binary（默认，紧凑二进制）或 json；两种格式都能读取，切换无需迁移已有数据
+     */
     @Bean
-    public RedisTemplate<String, ChargingStationSlot> redisTemplate(RedisConnectionFactory factory) {
+    public RedisTemplate<String, ChargingStationSlot> redisTemplate(RedisConnectionFactory factory,
+                                                                   @Value("${redis.value-codec:binary}") String valueCodec) {
         RedisTemplate<String, ChargingStationSlot> template = new RedisTemplate<>();
         template.setConnectionFactory(factory);
 
@@ -67,10 +100,11 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
 
-        // JSON序列化器
-        Jackson2JsonRedisSerializer<ChargingStationSlot> serializer =
+        // 二进制序列化器，兼容读取JSON
+        Jackson2JsonRedisSerializer<ChargingStationSlot> jsonSerializer =
                 new Jackson2JsonRedisSerializer<>(ChargingStationSlot.class);
-        serializer.setObjectMapper(redisObjectMapper());
+        jsonSerializer.setObjectMapper(redisObjectMapper());
+        SlotBinarySerializer serializer = new SlotBinarySerializer(jsonSerializer, isBinary(valueCodec));
 
         // 设置value序列化方式
         template.setValueSerializer(serializer);
@@ -81,7 +115,8 @@ public class RedisConfig {
     }
 
     @Bean
-    public RedisTemplate<String, Order> orderRedisTemplate(RedisConnectionFactory factory) {
+    public RedisTemplate<String, Order> orderRedisTemplate(RedisConnectionFactory factory,
+                                                           @Value("${redis.value-codec:binary}") String valueCodec) {
         RedisTemplate<String, Order> template = new RedisTemplate<>();
         template.setConnectionFactory(factory);
 
@@ -89,10 +124,11 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
 
-        // JSON序列化器
-        Jackson2JsonRedisSerializer<Order> serializer =
+        // 二进制序列化器，兼容读取JSON
+        Jackson2JsonRedisSerializer<Order> jsonSerializer =
                 new Jackson2JsonRedisSerializer<>(Order.class);
-        serializer.setObjectMapper(redisObjectMapper());
+        jsonSerializer.setObjectMapper(redisObjectMapper());
+        OrderBinarySerializer serializer = new OrderBinarySerializer(jsonSerializer, isBinary(valueCodec));
 
         // 设置value序列化方式
         template.setValueSerializer(serializer);
@@ -110,4 +146,44 @@ public class RedisConfig {
         template.setValueSerializer(new GenericToStringSerializer<>(Long.class));
         return template;
     }
-}
\ No newline at end of file
+
+    /**
+     * 连接工厂取出的连接都经过 {@link RedisCallMeter} 计量命令数和字节数
+     */
+    @Bean
+    @ConditionalOnProperty(name = "metrics.redis.enabled", havingValue = "true", matchIfMissing = true)
+    public static BeanPostProcessor redisCallMeterPostProcessor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        RedisCallMeter meter = new RedisCallMeter(meterRegistryProvider);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof RedisConnectionFactory ? meter.wrap((RedisConnectionFactory) bean) : bean;
+            }
+        };
+    }
+
+    // Redis发布订阅监听容器（订单变更事件等）
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        // 单线程按到达顺序分发，保证同一订单的事件不乱序；默认执行器会为每条消息新建线程
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("redis-listener-");
+        executor.initialize();
+        container.setTaskExecutor(executor);
+        return container;
+    }
+
+    private static boolean isBinary(String valueCodec) {
+        return !"json".equalsIgnoreCase(valueCodec);
+    }
+
+    private abstract static class OrderCacheMixin {
+        @JsonProperty
+        @JsonIgnore(false)
+        private ChargingMeter meter;
+    }
+}
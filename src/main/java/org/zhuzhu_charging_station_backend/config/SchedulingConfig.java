@@ -0,0 +1,15 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 定时任务开关：scheduling.enabled=false 时所有 @Scheduled 任务都不启动，
+ * 由调用方自行驱动（如车队仿真按虚拟时间逐秒调用调度器）
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
@@ -46,6 +46,7 @@ public class SecurityConfig {
                 ).permitAll()
                 .antMatchers("/users/register", "/users/login", "/users/reset").permitAll()
                 .antMatchers("/ws/orders").permitAll()     // 放行 ws 握手
+                .antMatchers("/actuator/health").permitAll() // 健康检查，其余指标需登录
                 .anyRequest().authenticated()
                 .and()
                 .exceptionHandling().authenticationEntryPoint(authenticationEntryPoint())
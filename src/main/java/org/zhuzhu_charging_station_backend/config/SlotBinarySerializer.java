@@ -0,0 +1,91 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * slot的二进制格式（版本1）：字段位图 + 依次写出的非空字段
+ */
+public class SlotBinarySerializer extends BinaryRedisSerializer<ChargingStationSlot> {
+
+    private static final byte VERSION_1 = 1;
+
+    // 字段位图的位，新增字段只能追加
+    private static final int STATUS = 1;
+    private static final int STATUS_STATUS = 1 << 1;
+    private static final int CHARGE_COUNT = 1 << 2;
+    private static final int CHARGE_TIME = 1 << 3;
+    private static final int CHARGE_AMOUNT = 1 << 4;
+    private static final int WAITING_TIME = 1 << 5;
+    private static final int REMAINING_ENERGY = 1 << 6;
+    private static final int QUEUE = 1 << 7;
+
+    public SlotBinarySerializer(Jackson2JsonRedisSerializer<ChargingStationSlot> jsonSerializer, boolean writeBinary) {
+        super(jsonSerializer, writeBinary);
+    }
+
+    @Override
+    protected byte version() {
+        return VERSION_1;
+    }
+
+    @Override
+    protected void write(ChargingStationSlot slot, Writer out) {
+        ChargingStationStatus status = slot.getStatus();
+        int fields = 0;
+        if (status != null) {
+            fields |= STATUS;
+            if (status.getStatus() != null) fields |= STATUS_STATUS;
+            if (status.getCurrentChargeCount() != null) fields |= CHARGE_COUNT;
+            if (status.getCurrentChargeTime() != null) fields |= CHARGE_TIME;
+            if (status.getCurrentChargeAmount() != null) fields |= CHARGE_AMOUNT;
+        }
+        if (slot.getWaitingTime() != null) fields |= WAITING_TIME;
+        if (slot.getRemainingEnergy() != null) fields |= REMAINING_ENERGY;
+        if (slot.getQueue() != null) fields |= QUEUE;
+        out.writeUnsigned(fields);
+
+        if ((fields & STATUS_STATUS) != 0) out.writeVarLong(status.getStatus());
+        if ((fields & CHARGE_COUNT) != 0) out.writeVarLong(status.getCurrentChargeCount());
+        if ((fields & CHARGE_TIME) != 0) out.writeVarLong(status.getCurrentChargeTime());
+        if ((fields & CHARGE_AMOUNT) != 0) out.writeDouble(status.getCurrentChargeAmount());
+        if ((fields & WAITING_TIME) != 0) out.writeVarLong(slot.getWaitingTime());
+        if ((fields & REMAINING_ENERGY) != 0) out.writeVarLong(slot.getRemainingEnergy());
+        if ((fields & QUEUE) != 0) {
+            out.writeUnsigned(slot.getQueue().size());
+            for (String orderId : slot.getQueue()) {
+                out.writeString(orderId);
+            }
+        }
+    }
+
+    @Override
+    protected ChargingStationSlot read(byte version, Reader in) {
+        if (version != VERSION_1) throw unknownVersion(version);
+        int fields = (int) in.readUnsigned();
+        ChargingStationSlot slot = new ChargingStationSlot();
+        if ((fields & STATUS) != 0) {
+            ChargingStationStatus status = new ChargingStationStatus();
+            if ((fields & STATUS_STATUS) != 0) status.setStatus((int) in.readVarLong());
+            if ((fields & CHARGE_COUNT) != 0) status.setCurrentChargeCount((int) in.readVarLong());
+            if ((fields & CHARGE_TIME) != 0) status.setCurrentChargeTime(in.readVarLong());
+            if ((fields & CHARGE_AMOUNT) != 0) status.setCurrentChargeAmount(in.readDouble());
+            slot.setStatus(status);
+        }
+        if ((fields & WAITING_TIME) != 0) slot.setWaitingTime(in.readVarLong());
+        if ((fields & REMAINING_ENERGY) != 0) slot.setRemainingEnergy(in.readVarLong());
+        if ((fields & QUEUE) != 0) {
+            int size = (int) in.readUnsigned();
+            List<String> queue = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                queue.add(in.readString());
+            }
+            slot.setQueue(queue);
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,43 @@
+package org.zhuzhu_charging_station_backend.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+import org.zhuzhu_charging_station_backend.dto.ChargingMetricResponse;
+import org.zhuzhu_charging_station_backend.dto.StandardResponse;
+import org.zhuzhu_charging_station_backend.service.MetricService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequestMapping("/metrics")
+@Tag(name = "充电统计")
+public class MetricController {
+    private final MetricService metricService;
+
+    public MetricController(MetricService metricService) {
+        this.metricService = metricService;
+    }
+
+    @GetMapping("/stations/{id}")
+    @Operation(summary = "查询某个充电桩在时间区间[from, to)内的分桶统计（granularity: MINUTE/HOUR/DAY）")
+    public StandardResponse<List<ChargingMetricResponse>> getStationMetrics(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "HOUR") MetricService.Granularity granularity,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return StandardResponse.success(metricService.getStationMetrics(id, granularity, from, to));
+    }
+
+    @GetMapping("/total")
+    @Operation(summary = "查询全部充电桩在时间区间[from, to)内的分桶汇总统计，可按充电模式过滤")
+    public StandardResponse<List<ChargingMetricResponse>> getTotalMetrics(
+            @RequestParam(required = false) Integer mode,
+            @RequestParam(defaultValue = "HOUR") MetricService.Granularity granularity,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return StandardResponse.success(metricService.getTotalMetrics(mode, granularity, from, to));
+    }
+}
@@ -1,8 +1,12 @@
 package org.zhuzhu_charging_station_backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.zhuzhu_charging_station_backend.dto.*;
-import org.zhuzhu_charging_station_backend.entity.Order;
 import org.zhuzhu_charging_station_backend.entity.User;
+import org.zhuzhu_charging_station_backend.exception.ForbiddenException;
 import org.zhuzhu_charging_station_backend.repository.UserRepository;
 import org.zhuzhu_charging_station_backend.service.OrderService;
 import org.zhuzhu_charging_station_backend.service.UserService;
@@ -13,22 +17,29 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.zhuzhu_charging_station_backend.util.JwtTokenUtil;
 
 import javax.validation.Valid;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
 @RequestMapping("/users")
 @Tag(name = "用户管理")
 public class UserController {
+    private static final String NDJSON = "application/x-ndjson";
+
     private final UserService userService;
     private final UserRepository userRepository;
     private final OrderService orderService;
     private final JwtTokenUtil jwtTokenUtil;
+    private final ObjectMapper objectMapper;
 
-    public UserController(UserService userService, UserRepository userRepository, OrderService orderService, JwtTokenUtil jwtTokenUtil) {
+    public UserController(UserService userService, UserRepository userRepository, OrderService orderService,
+                          JwtTokenUtil jwtTokenUtil, ObjectMapper objectMapper) {
         this.userService = userService;
         this.userRepository = userRepository;
         this.orderService = orderService;
         this.jwtTokenUtil = jwtTokenUtil;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/register")
@@ -68,18 +79,45 @@ public class UserController {
     }
 
     @GetMapping("/orders")
-    @Operation(summary = "获取当前用户的所有订单")
-    public StandardResponse<List<Order>> getUserOrders(@RequestHeader("Authorization") String authHeader) {
+    @Operation(summary = "按生成时间倒序分页获取当前用户的订单（管理员为全部订单），cursor取上一页返回的nextCursor")
+    public StandardResponse<OrderPageResponse> getUserOrders(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
         String token = authHeader.replace("Bearer ", "");
         List<String> roles = jwtTokenUtil.extractRoles(token);
-        List<Order> orders;
+        OrderPageResponse page;
         if (roles != null && roles.contains("ROLE_ADMIN")) {
-            orders = orderService.getAllOrders(); // 管理员查看所有订单
+            page = orderService.getOrderPage(null, cursor, limit); // 管理员查看所有订单
         } else {
             Long userId = (Long) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            orders = orderService.getAllOrdersByUser(userId); // 普通用户只看自己订单
+            page = orderService.getOrderPage(userId, cursor, limit); // 普通用户只看自己订单
+        }
+        return StandardResponse.success(page);
+    }
+
+    @GetMapping("/orders/export")
+    @Operation(summary = "导出订单（仅管理员），NDJSON格式每行一个订单，边查边写；可按用户过滤")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) Long userId) {
+        List<String> roles = jwtTokenUtil.extractRoles(authHeader.replace("Bearer ", ""));
+        if (roles == null || !roles.contains("ROLE_ADMIN")) {
+            throw new ForbiddenException("仅管理员可导出订单！");
         }
-        return StandardResponse.success(orders);
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            orderService.forEachOrder(userId, order -> {
+                try {
+                    writer.write(objectMapper.writeValueAsString(order));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
 
     @PutMapping("/username")
@@ -0,0 +1,25 @@
+package org.zhuzhu_charging_station_backend.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+public class ChargingMetricResponse {
+    private LocalDateTime bucketStart;           // 桶起始时间
+    private Long stationId;                      // 充电桩ID（按模式汇总时为空）
+    private Integer mode;                        // 充电模式（全部模式汇总时为空）
+    private Integer orderCount;                  // 结算订单数
+    private Long chargeDuration;                 // 充电时长（秒）
+    private BigDecimal energy;                   // 充电量
+    private BigDecimal peakEnergy;               // 峰时充电量
+    private BigDecimal normalEnergy;             // 平时充电量
+    private BigDecimal valleyEnergy;             // 谷时充电量
+    private BigDecimal chargeFee;                // 充电费用
+    private BigDecimal peakChargeFee;            // 峰时充电费用
+    private BigDecimal normalChargeFee;          // 平时充电费用
+    private BigDecimal valleyChargeFee;          // 谷时充电费用
+    private BigDecimal serviceFee;               // 服务费用
+    private BigDecimal totalFee;                 // 总费用
+}
@@ -0,0 +1,18 @@
+package org.zhuzhu_charging_station_backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.util.List;
+
+/**
+ * 订单历史的一页，按生成时间倒序
+ */
+@Data
+@AllArgsConstructor
+public class OrderPageResponse {
+    private List<Order> orders;
+    // 下一页的游标，没有更多时为null
+    private String nextCursor;
+}
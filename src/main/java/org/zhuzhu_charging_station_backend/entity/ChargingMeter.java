@@ -0,0 +1,24 @@
+package org.zhuzhu_charging_station_backend.entity;
+
+import lombok.Data;
+import org.zhuzhu_charging_station_backend.util.FixedPoint;
+
+/**
+ * 充电中订单的计量状态，电量、费用均为定点数（见 {@link FixedPoint}），
+ * 每秒推进只做long加法，订单的BigDecimal字段在读取时才由此换算
+ */
+@Data
+public class ChargingMeter {
+    private long chargeAmount;      // 充电电量
+    private long actualCharge;      // 已充电量
+    private long chargeFee;         // 充电费用
+    private long serviceFee;        // 服务费用
+    private long peakCharge;        // 峰时充电量
+    private long normalCharge;      // 平时充电量
+    private long valleyCharge;      // 谷时充电量
+    private long peakChargeFee;     // 峰时充电费用
+    private long normalChargeFee;   // 平时充电费用
+    private long valleyChargeFee;   // 谷时充电费用
+    private int energyScale;        // 换算回BigDecimal时电量的小数位
+    private int feeScale;           // 换算回BigDecimal时费用的小数位
+}
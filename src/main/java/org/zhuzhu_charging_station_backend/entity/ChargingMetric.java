@@ -0,0 +1,71 @@
+package org.zhuzhu_charging_station_backend.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 充电指标汇总桶：每个充电桩按分钟/小时/天聚合已结算订单，
+ * 由结算入库时以 INSERT ... ON DUPLICATE KEY UPDATE 累加，查询区间统计时不需要扫描订单表
+ */
+@Data
+@Entity
+@Table(name = "charging_metric",
+        uniqueConstraints = @UniqueConstraint(name = "uk_metric_bucket", columnNames = {"granularity", "station_id", "bucket_start"}),
+        indexes = @Index(name = "idx_metric_mode_bucket", columnList = "granularity, mode, bucket_start"))
+public class ChargingMetric {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Integer granularity; // 粒度，0:分钟，1:小时，2:天
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart; // 桶起始时间
+
+    @Column(name = "station_id", nullable = false)
+    private Long stationId; // 充电桩ID
+
+    @Column(nullable = false)
+    private Integer mode; // 充电模式，0:慢充，1:快充
+
+    @Column(nullable = false)
+    private Integer orderCount; // 结算订单数
+
+    @Column(nullable = false)
+    private Long chargeDuration; // 充电时长（秒）
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal energy; // 充电量
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal peakEnergy; // 峰时充电量
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal normalEnergy; // 平时充电量
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal valleyEnergy; // 谷时充电量
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal chargeFee; // 充电费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal peakChargeFee; // 峰时充电费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal normalChargeFee; // 平时充电费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal valleyChargeFee; // 谷时充电费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal serviceFee; // 服务费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalFee; // 总费用
+}
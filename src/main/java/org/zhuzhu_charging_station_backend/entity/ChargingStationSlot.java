@@ -1,5 +1,6 @@
 package org.zhuzhu_charging_station_backend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import java.util.List;
 
@@ -7,8 +8,13 @@ import java.util.List;
 public class ChargingStationSlot {
     // 实时状态
     private ChargingStationStatus status;
-    // 等待完成时间
+    // 等待完成时间（队列中各订单剩余充电秒数之和，增量维护）
     private Long waitingTime;
+    // 队列中各订单剩余电量之和（定点数，见FixedPoint），增量维护
+    private Long remainingEnergy;
     // 排队中的订单ID队列
     private List<String> queue;
-}
\ No newline at end of file
+    // 读取时Redis中的版本号，每次写入递增，用于比较并写入（不对外返回）
+    @JsonIgnore
+    private Long version;
+}
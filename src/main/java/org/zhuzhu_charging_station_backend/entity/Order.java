@@ -1,6 +1,8 @@
 package org.zhuzhu_charging_station_backend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import org.zhuzhu_charging_station_backend.util.FixedPoint;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
@@ -8,7 +10,11 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "`order`")
+// 订单历史按 (record_time, id) 倒序游标分页：用户维度和全局各一个复合索引
+@Table(name = "`order`", indexes = {
+        @Index(name = "idx_order_user_time", columnList = "userId, recordTime, id"),
+        @Index(name = "idx_order_time", columnList = "recordTime, id")
+})
 public class Order {
 
     @Id
@@ -50,9 +56,96 @@ public class Order {
     @Column(nullable = true, precision = 8, scale = 2)
     private BigDecimal chargeFee; // 充电费用
 
+    @Column(nullable = true, precision = 8, scale = 2)
+    private BigDecimal peakCharge; // 峰时充电量
+
+    @Column(nullable = true, precision = 8, scale = 2)
+    private BigDecimal normalCharge; // 平时充电量
+
+    @Column(nullable = true, precision = 8, scale = 2)
+    private BigDecimal valleyCharge; // 谷时充电量
+
+    @Column(nullable = true, precision = 8, scale = 2)
+    private BigDecimal peakChargeFee; // 峰时充电费用
+
+    @Column(nullable = true, precision = 8, scale = 2)
+    private BigDecimal normalChargeFee; // 平时充电费用
+
+    @Column(nullable = true, precision = 8, scale = 2)
+    private BigDecimal valleyChargeFee; // 谷时充电费用
+
     @Column(nullable = true, precision = 8, scale = 2)
     private BigDecimal serviceFee; // 服务费用
 
     @Column(nullable = true, precision = 8, scale = 2)
     private BigDecimal totalFee; // 总费用
-}
\ No newline at end of file
+
+    // 充电中的定点计量状态，存在时以它为准（随订单缓存，不入库、不对外返回）
+    @Transient
+    @JsonIgnore
+    private ChargingMeter meter;
+
+    public BigDecimal getActualCharge() {
+        return meter == null ? actualCharge : FixedPoint.toBigDecimal(meter.getActualCharge(), meter.getEnergyScale());
+    }
+
+    public BigDecimal getChargeFee() {
+        return meter == null ? chargeFee : FixedPoint.toBigDecimal(meter.getChargeFee(), meter.getFeeScale());
+    }
+
+    public BigDecimal getServiceFee() {
+        return meter == null ? serviceFee : FixedPoint.toBigDecimal(meter.getServiceFee(), meter.getFeeScale());
+    }
+
+    public BigDecimal getTotalFee() {
+        return meter == null ? totalFee : FixedPoint.toBigDecimal(meter.getChargeFee() + meter.getServiceFee(), meter.getFeeScale());
+    }
+
+    public BigDecimal getPeakCharge() {
+        return meter == null ? peakCharge : FixedPoint.toBigDecimal(meter.getPeakCharge(), meter.getEnergyScale());
+    }
+
+    public BigDecimal getNormalCharge() {
+        return meter == null ? normalCharge : FixedPoint.toBigDecimal(meter.getNormalCharge(), meter.getEnergyScale());
+    }
+
+    public BigDecimal getValleyCharge() {
+        return meter == null ? valleyCharge : FixedPoint.toBigDecimal(meter.getValleyCharge(), meter.getEnergyScale());
+    }
+
+    public BigDecimal getPeakChargeFee() {
+        return meter == null ? peakChargeFee : FixedPoint.toBigDecimal(meter.getPeakChargeFee(), meter.getFeeScale());
+    }
+
+    public BigDecimal getNormalChargeFee() {
+        return meter == null ? normalChargeFee : FixedPoint.toBigDecimal(meter.getNormalChargeFee(), meter.getFeeScale());
+    }
+
+    public BigDecimal getValleyChargeFee() {
+        return meter == null ? valleyChargeFee : FixedPoint.toBigDecimal(meter.getValleyChargeFee(), meter.getFeeScale());
+    }
+
+    /**
+     * 把计量状态换算回BigDecimal字段并移除，之后按普通订单读写
+     */
+    public void closeMeter() {
+        if (meter == null) return;
+        actualCharge = getActualCharge();
+        chargeFee = getChargeFee();
+        serviceFee = getServiceFee();
+        totalFee = getTotalFee();
+        peakCharge = getPeakCharge();
+        normalCharge = getNormalCharge();
+        valleyCharge = getValleyCharge();
+        peakChargeFee = getPeakChargeFee();
+        normalChargeFee = getNormalChargeFee();
+        valleyChargeFee = getValleyChargeFee();
+        meter = null;
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void closeMeterBeforeSave() {
+        closeMeter();
+    }
+}
@@ -0,0 +1,58 @@
+package org.zhuzhu_charging_station_backend.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 归档订单汇总：每个用户、每个充电桩一行，归档每批订单时在同一事务内以 INSERT ... ON DUPLICATE KEY UPDATE 累加，
+ * 统计已归档的历史不需要扫描归档表
+ */
+@Data
+@Entity
+@Table(name = "order_archive_summary",
+        uniqueConstraints = @UniqueConstraint(name = "uk_archive_summary_owner", columnNames = {"scope", "owner_id"}))
+public class OrderArchiveSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Integer scope; // 汇总维度，0:用户，1:充电桩
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId; // 用户ID或充电桩ID
+
+    @Column(nullable = false)
+    private Integer orderCount; // 归档订单数
+
+    @Column(nullable = false)
+    private Integer completedCount; // 其中已完成的订单数
+
+    @Column(nullable = false)
+    private Integer cancelledCount; // 其中已取消的订单数
+
+    @Column(nullable = false)
+    private Long chargeDuration; // 充电时长（秒）
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal energy; // 充电量
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal chargeFee; // 充电费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal serviceFee; // 服务费用
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalFee; // 总费用
+
+    @Column(nullable = false)
+    private LocalDateTime firstRecordTime; // 最早的订单生成时间
+
+    @Column(nullable = false)
+    private LocalDateTime lastRecordTime; // 最晚的订单生成时间
+}
@@ -2,19 +2,28 @@ package org.zhuzhu_charging_station_backend.entity;
 
 import lombok.Data;
 
+import javax.persistence.Column;
 import javax.persistence.Embeddable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 // 累计充电报表信息，直接嵌入到 ChargingStation
+// 只在新建时随实体写入，之后由结算入库以 x = x + ? 原子累加，实体保存不会覆盖
 @Data
 @Embeddable
 public class ReportInfo {
+    @Column(updatable = false)
     private LocalDateTime updatedAt;      // 报表更新时间
+    @Column(updatable = false)
     private Integer totalChargeCount;    // 累计充电次数
+    @Column(updatable = false)
     private Long totalChargeTime;        // 累计充电时长
+    @Column(updatable = false)
     private BigDecimal totalChargeAmount;    // 累计充电量
+    @Column(updatable = false)
     private BigDecimal totalChargeFee;       // 累计充电费用（元）
+    @Column(updatable = false)
     private BigDecimal totalServiceFee;      // 累计服务费用（元）
+    @Column(updatable = false)
     private BigDecimal totalFee;             // 累计总费用（元）
 }
\ No newline at end of file
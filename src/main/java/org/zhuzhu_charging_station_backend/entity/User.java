@@ -42,22 +42,23 @@ public class User implements UserDetails {
     @Column(nullable = false)
     private String roles;
 
-    @Column(nullable = false)
+    // 累计信息只由结算入库原子累加，实体保存不覆盖
+    @Column(nullable = false, updatable = false)
     private Integer totalChargeCount = 0;    // 累计充电次数
 
-    @Column(nullable = false, precision = 8, scale = 2)
+    @Column(nullable = false, precision = 8, scale = 2, updatable = false)
     private BigDecimal totalChargeAmount = BigDecimal.valueOf(0);  // 累计充电电量
 
-    @Column(nullable = false)
+    @Column(nullable = false, updatable = false)
     private Long totalChargeDuration = 0L;   // 累计充电时长
 
-    @Column(nullable = false, precision = 8, scale = 2)
+    @Column(nullable = false, precision = 8, scale = 2, updatable = false)
     private BigDecimal totalChargeFee = BigDecimal.valueOf(0);   // 累计充电费用
 
-    @Column(nullable = false, precision = 8, scale = 2)
+    @Column(nullable = false, precision = 8, scale = 2, updatable = false)
     private BigDecimal totalServiceFee = BigDecimal.valueOf(0);  // 累计服务费用
 
-    @Column(nullable = false, precision = 8, scale = 2)
+    @Column(nullable = false, precision = 8, scale = 2, updatable = false)
     private BigDecimal totalFee = BigDecimal.valueOf(0);         // 累计总费用（充电费+服务费）
 
     // 确保保存时触发时间更新
@@ -1,9 +1,23 @@
 package org.zhuzhu_charging_station_backend.repository;
 
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.zhuzhu_charging_station_backend.entity.ChargingStation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.zhuzhu_charging_station_backend.entity.ReportInfo;
+
+import java.util.List;
+import java.util.Optional;
 
 public interface ChargingStationRepository extends JpaRepository<ChargingStation, Long> {
     boolean existsByName(String name);
     // JpaRepository 已有 boolean existsById(Long id)
-}
\ No newline at end of file
+
+    // 只查询报表列，不加载整个实体
+    @Query("select c.report from ChargingStation c where c.id = :id")
+    Optional<ReportInfo> findReportById(@Param("id") Long id);
+
+    // 按块分配充电桩ID时跳过其中已被占用的ID
+    @Query("select c.id from ChargingStation c where c.id between :from and :to")
+    List<Long> findIdsBetween(@Param("from") Long from, @Param("to") Long to);
+}
@@ -1,8 +1,12 @@
 package org.zhuzhu_charging_station_backend.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.zhuzhu_charging_station_backend.entity.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface OrderRepository extends JpaRepository<Order, String> {
@@ -10,6 +14,25 @@ public interface OrderRepository extends JpaRepository<Order, String> {
     // 查找指定充电桩ID的所有详单
     List<Order> findByChargingStationId(Long chargingStationId);
 
-    // 查找指定用户ID的所有详单
-    List<Order> findByUserId(Long userId);
-}
\ No newline at end of file
+    // 以下按 (record_time, id) 倒序游标分页，Pageable只用于限制条数（不做count查询）
+
+    // 指定用户的第一页，走 idx_order_user_time
+    @Query("select o from Order o where o.userId = :userId order by o.recordTime desc, o.id desc")
+    List<Order> findUserPage(@Param("userId") Long userId, Pageable limit);
+
+    // 指定用户在游标之后的一页
+    @Query("select o from Order o where o.userId = :userId" +
+            " and (o.recordTime < :recordTime or (o.recordTime = :recordTime and o.id < :id))" +
+            " order by o.recordTime desc, o.id desc")
+    List<Order> findUserPageAfter(@Param("userId") Long userId, @Param("recordTime") LocalDateTime recordTime,
+                                  @Param("id") String id, Pageable limit);
+
+    // 全部订单的第一页，走 idx_order_time
+    @Query("select o from Order o order by o.recordTime desc, o.id desc")
+    List<Order> findPage(Pageable limit);
+
+    // 全部订单在游标之后的一页
+    @Query("select o from Order o where o.recordTime < :recordTime or (o.recordTime = :recordTime and o.id < :id)" +
+            " order by o.recordTime desc, o.id desc")
+    List<Order> findPageAfter(@Param("recordTime") LocalDateTime recordTime, @Param("id") String id, Pageable limit);
+}
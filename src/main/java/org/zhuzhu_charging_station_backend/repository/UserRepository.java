@@ -2,10 +2,17 @@ package org.zhuzhu_charging_station_backend.repository;
 
 import org.zhuzhu_charging_station_backend.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByUsername(String username);
     Optional<User> findByUsername(String username);
-}
\ No newline at end of file
+
+    // 按块分配用户ID时跳过其中已被占用的ID
+    @Query("select u.userId from User u where u.userId between :from and :to")
+    List<Long> findUserIdsBetween(@Param("from") Long from, @Param("to") Long to);
+}
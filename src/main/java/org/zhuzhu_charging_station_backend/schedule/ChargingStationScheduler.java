@@ -1,19 +1,26 @@
 package org.zhuzhu_charging_station_backend.schedule;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.zhuzhu_charging_station_backend.config.RedisCallMeter;
 import org.zhuzhu_charging_station_backend.entity.*;
-import org.zhuzhu_charging_station_backend.repository.OrderRepository;
 import org.zhuzhu_charging_station_backend.service.*;
-import org.zhuzhu_charging_station_backend.dto.ChargingStationResponse;
 import org.zhuzhu_charging_station_backend.util.IdGenerator;
+import org.zhuzhu_charging_station_backend.util.TariffTimeline;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
@@ -23,70 +30,216 @@ public class ChargingStationScheduler {
     private final ChargingStationSlotService chargingStationSlotService;
     private final QueueService queueService;
     private final OrderCacheService orderCacheService;
-    private final OrderRepository orderRepository;
     private final OrderService orderService;
+    private final ShardLeaseService shardLeaseService;
+    private final IdGenerator idGenerator;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
 
+    // 单轮tick超过该耗时即视为超时（调度周期为1秒）
+    private static final long TICK_OVERRUN_MILLIS = 1000L;
+
+    // tick指标：总耗时、各阶段耗时、超时次数、回写冲突的桩数、本线程在一轮内的Redis命令数和字节数
+    private Timer tickTimer;
+    private Timer snapshotTimer;
+    private Timer computeTimer;
+    private Timer writeTimer;
+    private Timer settleTimer;
+    private Timer fallbackTimer;
+    private Counter overrunCounter;
+    private Counter conflictCounter;
+    private DistributionSummary redisCommandsSummary;
+    private DistributionSummary redisBytesSummary;
+
+    // 各桩编译后的计费参数，桩的功率/电价修改后重新编译
+    private final Map<Long, StationTariff> tariffs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initMeters() {
+        tickTimer = Timer.builder("charging.tick").description("充电桩调度一轮的总耗时").register(meterRegistry);
+        snapshotTimer = phaseTimer("snapshot");
+        computeTimer = phaseTimer("compute");
+        writeTimer = phaseTimer("write");
+        settleTimer = phaseTimer("settle");
+        fallbackTimer = phaseTimer("fallback");
+        overrunCounter = Counter.builder("charging.tick.overruns").description("耗时超过调度周期的轮数").register(meterRegistry);
+        conflictCounter = Counter.builder("charging.tick.conflicts").description("批量回写冲突、改为逐桩加锁的桩数").register(meterRegistry);
+        redisCommandsSummary = DistributionSummary.builder("charging.tick.redis.commands")
+                .description("一轮内调度线程执行的Redis命令数").register(meterRegistry);
+        redisBytesSummary = DistributionSummary.builder("charging.tick.redis.bytes").baseUnit("bytes")
+                .description("一轮内调度线程收发的Redis字节数").register(meterRegistry);
+    }
+
+    private Timer phaseTimer(String phase) {
+        return Timer.builder("charging.tick.phase").tag("phase", phase).description("充电桩调度各阶段耗时").register(meterRegistry);
+    }
+
+    /**
+     * 每秒一轮：批量快照 -> 内存中单遍推进 -> 一次批量回写。
+     * 多节点部署时每个节点只推进自己持有分片内的桩（见 {@link ShardLeaseService}）。
+     * slot通过比较并写入回写，期间被其他操作（取消、管理员操作等）改动过的桩，本轮改走逐桩加锁的兜底流程。
+     */
     @Scheduled(cron = "*/1 * * * * *") // 每秒执行一次
     public void chargingStationTask() {
-        List<Long> ids = chargingStationService.getAllStationIds();
+        long startNanos = System.nanoTime();
+        shardLeaseService.runOwned(chargingStationService.getAllStationIds(), ids -> tick(ids, startNanos));
+    }
+
+    private void tick(List<Long> ids, long startNanos) {
+        if (ids.isEmpty()) return;
+        long redisCommands = RedisCallMeter.threadCommands();
+        long redisBytes = RedisCallMeter.threadBytes();
+        long mark = System.nanoTime();
+
+        // 1. 快照：一次MGET取全部slot，一次MGET取各桩队首订单（等待时长增量维护，不需要读其余排队订单）
+        Map<Long, ChargingStationSlot> snapshots = chargingStationSlotService.getSlots(ids);
+        List<String> headOrderIds = new ArrayList<>();
+        for (ChargingStationSlot slot : snapshots.values()) {
+            if (slot.getQueue() != null && !slot.getQueue().isEmpty()) headOrderIds.add(slot.getQueue().get(0));
+        }
+        Map<String, Order> orders = orderCacheService.getOrders(headOrderIds);
+        mark = lap(snapshotTimer, mark);
 
-        // 第一轮：全量刷新waitingTime
+        // 2. 内存中单遍计算，按本轮时刻与各订单已计费时长之差推进
+        LocalDateTime now = LocalDateTime.now(clock);
+        Map<Long, ChargingStationSlot> updatedSlots = new LinkedHashMap<>();
+        Map<Long, StationTickResult> results = new HashMap<>();
+        Map<Long, Integer> releaseModes = new LinkedHashMap<>();
         for (Long id : ids) {
+            ChargingStationSlot snapshot = snapshots.get(id);
+            if (snapshot == null) continue;
             try {
-                chargingStationSlotService.updateSlotWithLock(id, slot -> {
-                    if (slot == null) {
-                        return;
-                    }
-                    ChargingStationResponse station = chargingStationService.getChargingStationWithSlot(id);
-                    if (slot.getStatus() == null
-                            || slot.getStatus().getStatus() == 2
-                            || slot.getStatus().getStatus() == 3) {
-                        // 桩关闭或故障
-                        releaseOrdersFromSlot(slot, station.getMode());
-                        return;
-                    }
-                    long waitingTime = calcWaitingTime(slot, station);
-                    slot.setWaitingTime(waitingTime);
-                    // 状态自动刷新
-                    if (slot.getQueue() == null || slot.getQueue().isEmpty()) {
-                        if (slot.getStatus() != null) slot.getStatus().setStatus(0); // 空闲
-                    } else {
-                        if (slot.getStatus() != null) slot.getStatus().setStatus(1); // 使用中
+                ChargingStation station = chargingStationService.getChargingStationBase(id);
+                if (isDown(snapshot)) {
+                    // 桩关闭或故障，有订单时需要释放
+                    if (snapshot.getQueue() != null && !snapshot.getQueue().isEmpty()) {
+                        releaseModes.put(id, station.getMode());
                     }
-                });
+                    continue;
+                }
+                ChargingStationSlot slot = chargingStationSlotService.copySlot(snapshot);
+                StationTickResult result = tickStation(station, slot, orders, now);
+                if (!slot.equals(snapshot)) {
+                    updatedSlots.put(id, slot);
+                }
+                results.put(id, result);
             } catch (Exception e) {
-                log.error("刷新waitingTime失败: stationId={}", id, e);
+                log.error("推进业务异常: stationId={}", id, e);
             }
         }
-        // 第二轮：推进业务
-        for (Long id : ids) {
+
+        mark = lap(computeTimer, mark);
+
+        // 3. 一次批量回写slot，成功后再批量写订单、结算完成的订单
+        Set<Long> conflicted = chargingStationSlotService.compareAndSetSlots(snapshots, updatedSlots);
+        List<Order> progressed = new ArrayList<>();
+        List<Order> finished = new ArrayList<>();
+        for (Map.Entry<Long, StationTickResult> entry : results.entrySet()) {
+            if (conflicted.contains(entry.getKey())) continue;
+            progressed.addAll(entry.getValue().progressed);
+            finished.addAll(entry.getValue().finished);
+        }
+        orderCacheService.saveOrders(progressed);
+        mark = lap(writeTimer, mark);
+        for (Order order : finished) {
+            try {
+                orderService.settleOrder(order, false);
+            } catch (Exception e) {
+                log.error("订单结算失败: orderId={}", order.getId(), e);
+            }
+        }
+        mark = lap(settleTimer, mark);
+
+        // 4. 兜底：回写冲突的桩逐个加锁重做，故障/关闭的桩释放订单
+        for (Long id : conflicted) {
+            tickStationWithLock(id, now);
+        }
+        for (Map.Entry<Long, Integer> entry : releaseModes.entrySet()) {
             try {
-                chargingStationSlotService.updateSlotWithLock(id, slot -> {
-                    if (slot == null) return;
-                    ChargingStationResponse station = chargingStationService.getChargingStationWithSlot(id);
-                    if (slot.getStatus() == null
-                            || slot.getStatus().getStatus() == 2
-                            || slot.getStatus().getStatus() == 3) {
-                        // 桩关闭或故障
-                        releaseOrdersFromSlot(slot, station.getMode());
-                        return;
+                List<String> released = new ArrayList<>();
+                chargingStationSlotService.updateSlotWithLock(entry.getKey(), slot -> {
+                    released.clear();
+                    if (isDown(slot)) {
+                        released.addAll(drainSlot(slot));
                     }
-                    processChargingHeadOrder(id, slot);
                 });
+                releaseOrders(released, entry.getValue());
             } catch (Exception e) {
-                log.error("推进业务异常: stationId={}", id, e);
+                log.error("释放订单失败: stationId={}", entry.getKey(), e);
             }
         }
+        lap(fallbackTimer, mark);
+
+        redisCommandsSummary.record(RedisCallMeter.threadCommands() - redisCommands);
+        redisBytesSummary.record(RedisCallMeter.threadBytes() - redisBytes);
+        recordTick(startNanos, ids.size(), conflicted.size());
+    }
+
+    // 记录一个阶段的耗时，返回阶段结束的时刻
+    private static long lap(Timer timer, long since) {
+        long now = System.nanoTime();
+        timer.record(now - since, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    // 单个桩加锁完成一轮推进（批量回写冲突时使用）；slot修改内只改slot，订单的写入和释放在修改成功后进行
+    private void tickStationWithLock(Long id, LocalDateTime now) {
+        try {
+            ChargingStation station = chargingStationService.getChargingStationBase(id);
+            StationTickResult[] holder = new StationTickResult[1];
+            List<String> released = new ArrayList<>();
+            chargingStationSlotService.updateSlotByDelta(id, slot -> {
+                holder[0] = null;
+                released.clear();
+                if (isDown(slot)) {
+                    released.addAll(drainSlot(slot));
+                    return;
+                }
+                if (slot.getQueue() == null) slot.setQueue(new ArrayList<>());
+                List<String> head = slot.getQueue().isEmpty() ? Collections.emptyList() : slot.getQueue().subList(0, 1);
+                holder[0] = tickStation(station, slot, orderCacheService.getOrders(head), now);
+            });
+            if (holder[0] != null) {
+                orderCacheService.saveOrders(holder[0].progressed);
+                for (Order order : holder[0].finished) {
+                    orderService.settleOrder(order, false);
+                }
+            }
+            releaseOrders(released, station.getMode());
+        } catch (Exception e) {
+            log.error("推进业务异常: stationId={}", id, e);
+        }
+    }
+
+    /**
+     * 在内存中推进一个桩：队首订单按经过的时间充电、充满则移出并累计slot统计，按队首订单的变化增量更新等待时长，最后刷新状态
+     */
+    private StationTickResult tickStation(ChargingStation station, ChargingStationSlot slot,
+                                          Map<String, Order> orders, LocalDateTime now) {
+        StationTickResult result = new StationTickResult();
+        processChargingHeadOrder(station, slot, orders, now, result);
+
+        // 状态自动刷新
+        if (slot.getStatus() != null) {
+            slot.getStatus().setStatus(slot.getQueue().isEmpty() ? 0 : 1); // 空闲 / 使用中
+        }
+        return result;
     }
 
     // 处理队首订单
-    private void processChargingHeadOrder(Long stationId, ChargingStationSlot slot) {
-        ChargingStationResponse station = chargingStationService.getChargingStationWithSlot(stationId);
-        if (slot.getQueue() == null || slot.getQueue().isEmpty()) return;
+    private void processChargingHeadOrder(ChargingStation station, ChargingStationSlot slot,
+                                          Map<String, Order> orders, LocalDateTime now, StationTickResult result) {
+        if (slot.getQueue().isEmpty()) return;
         String orderId = slot.getQueue().get(0);
-        Order order = orderCacheService.getOrder(orderId);
+        Order order = orders.get(orderId);
         if (order == null) {
-            slot.getQueue().remove(0); // 移除无效单
+            slot.getQueue().remove(0); // 移除无效单，其负载无从得知，由定期对账修正
+            return;
+        }
+        if (order.getStatus() != null && (order.getStatus() == 0 || order.getStatus() == 4)) {
+            // 已完成/已取消（其他节点的移除尚未反映到本轮快照）：只移出队列，不再启动
+            slot.getQueue().remove(0);
+            chargingStationSlotService.removeOrderLoad(slot, order, station.getPower());
             return;
         }
         if (order.getStatus() != 1) { // 非进行中，初始化
@@ -97,51 +250,55 @@ public class ChargingStationScheduler {
             order.setChargeFee(BigDecimal.valueOf(0.0));
             order.setServiceFee(BigDecimal.valueOf(0.0));
             order.setTotalFee(BigDecimal.valueOf(0.0));
-            order.setStartTime(LocalDateTime.now());
+            order.setPeakCharge(BigDecimal.ZERO);
+            order.setNormalCharge(BigDecimal.ZERO);
+            order.setValleyCharge(BigDecimal.ZERO);
+            order.setPeakChargeFee(BigDecimal.ZERO);
+            order.setNormalChargeFee(BigDecimal.ZERO);
+            order.setValleyChargeFee(BigDecimal.ZERO);
+            order.setStartTime(now);
         }
-        // 每秒推进
-        order.setChargeDuration(order.getChargeDuration() + 1);
-        BigDecimal addedCharge = station.getPower();
-        order.setActualCharge(order.getActualCharge().add(addedCharge));
-
-        BigDecimal unitPrice = calcUnitPrice(LocalTime.now(), station);
-        order.setChargeFee(order.getActualCharge().multiply(unitPrice));
-        order.setServiceFee(order.getActualCharge().multiply(station.getServiceFee()));
-        order.setTotalFee(order.getChargeFee().add(order.getServiceFee()));
-
-        // 实时写回Redis
-        orderCacheService.saveOrder(order);
-
-        // 判断是否充满
-        if (order.getActualCharge().compareTo(order.getChargeAmount()) >= 0) {
-            orderService.settleOrder(orderId);
+        // 按经过的时间推进：补足上一轮以来的各秒，每秒按所在时段的电价累加电量和费用
+        StationTariff tariff = tariffFor(station);
+        long secondsBefore = tariff.remainingSeconds(order);
+        long energyBefore = tariff.remainingEnergy(order);
+        tariff.accrueUntil(order, now);
+        chargingStationSlotService.adjustLoad(slot,
+                tariff.remainingSeconds(order) - secondsBefore, tariff.remainingEnergy(order) - energyBefore);
+
+        // 判断是否充满：移出队列并累计slot统计，订单在slot回写成功后结算
+        if (tariff.isFull(order)) {
+            orderService.applySettlementToSlot(slot, order, station.getPower());
+            result.finished.add(order);
+        } else {
+            result.progressed.add(order);
         }
     }
 
-    // 根据时间段计算电价
-    private BigDecimal calcUnitPrice(LocalTime now, ChargingStationResponse station) {
-        boolean isPeak = (now.compareTo(LocalTime.of(10, 0)) >= 0 && now.compareTo(LocalTime.of(15, 0)) < 0) ||
-                (now.compareTo(LocalTime.of(18, 0)) >= 0 && now.compareTo(LocalTime.of(21, 0)) < 0);
-        boolean isValley = (now.compareTo(LocalTime.of(23, 0)) >= 0 || now.compareTo(LocalTime.of(7, 0)) < 0);
-
-        if (isPeak) {
-            return station.getPeakPrice();
-        } else if (isValley) {
-            return station.getValleyPrice();
-        } else {
-            return station.getNormalPrice();
+    // 取桩的计费参数，首次使用或桩信息修改后重新编译
+    private StationTariff tariffFor(ChargingStation station) {
+        StationTariff tariff = tariffs.get(station.getId());
+        if (tariff == null || !tariff.matches(station)) {
+            tariff = StationTariff.compile(station, TariffTimeline.DEFAULT);
+            tariffs.put(station.getId(), tariff);
         }
+        return tariff;
     }
 
-    // 释放订单到等待区
-    private void releaseOrdersFromSlot(ChargingStationSlot slot, int mode) {
-        if (slot.getQueue() == null || slot.getQueue().isEmpty()) return;
-        // 收集所有队列订单ID
+    // 清空slot队列，返回被移出的订单ID（只修改slot，订单在slot写入成功后再释放）
+    private static List<String> drainSlot(ChargingStationSlot slot) {
+        if (slot.getQueue() == null || slot.getQueue().isEmpty()) return Collections.emptyList();
         List<String> orderIds = new ArrayList<>(slot.getQueue());
-        // 清空slot队列
         slot.getQueue().clear();
+        slot.setWaitingTime(0L);
+        slot.setRemainingEnergy(0L);
+        return orderIds;
+    }
 
-        if (orderIds.isEmpty()) return;
+    // 释放订单到等待区：队首订单结算，未充完的电量生成新订单放回等待区队首，其余订单按原顺序放回
+    private void releaseOrders(List<String> releasedOrderIds, int mode) {
+        if (releasedOrderIds.isEmpty()) return;
+        List<String> orderIds = new ArrayList<>(releasedOrderIds);
 
         // 处理队首订单
         String headOrderId = orderIds.get(0);
@@ -149,8 +306,8 @@ public class ChargingStationScheduler {
         queueService.releaseOrdersToQueueHead(orderIds, mode);
         Order headOrder = orderCacheService.getOrder(headOrderId);
         if (headOrder != null) {
-            // 先结算当前订单（生成详单并关闭订单）
-            orderService.settleOrder(headOrderId);
+            // 先结算当前订单（生成详单并关闭订单），订单已移出slot，不再更新slot
+            orderService.settleOrder(headOrder, false);
 
             // 计算剩余充电量
             BigDecimal actualCharge = headOrder.getActualCharge() == null ? BigDecimal.ZERO : headOrder.getActualCharge();
@@ -159,11 +316,11 @@ public class ChargingStationScheduler {
             if (remainingCharge.compareTo(BigDecimal.ZERO) > 0) {
                 // 创建新订单对象，复制必要字段
                 Order newOrder = new Order();
-                newOrder.setId(IdGenerator.generateUniqueOrderId(orderRepository, 10));
+                newOrder.setId(idGenerator.nextOrderId());
                 newOrder.setUserId(headOrder.getUserId());
                 newOrder.setChargingStationId(headOrder.getChargingStationId());
                 newOrder.setMode(headOrder.getMode());
-                newOrder.setRecordTime(LocalDateTime.now());
+                newOrder.setRecordTime(LocalDateTime.now(clock));
                 newOrder.setChargeAmount(remainingCharge);
                 newOrder.setActualCharge(BigDecimal.ZERO);
                 newOrder.setChargeDuration(0L);
@@ -174,7 +331,7 @@ public class ChargingStationScheduler {
                 newOrder.setTotalFee(BigDecimal.ZERO);
                 newOrder.setStatus(2); // 2: 排队中
 
-                // 保存新订单（你可能需要调用订单服务的方法，我假设是 saveOrder）
+                // 新订单写入缓存（含用户索引），入库在结算时进行
                 orderCacheService.saveOrder(newOrder);
 
                 // 放回等待队列
@@ -183,25 +340,28 @@ public class ChargingStationScheduler {
         }
     }
 
-    // 实时计算充电桩slot到本轮全部订单完成的等待总时长
-    private long calcWaitingTime(ChargingStationSlot slot, ChargingStationResponse station) {
-        if (slot == null || slot.getQueue() == null || slot.getQueue().isEmpty()) {
-            return 0L;
-        }
-        long totalSeconds = 0L;
-        for (String orderId : slot.getQueue()) {
-            Order order = orderCacheService.getOrder(orderId);
-            if (order == null) continue;
-            BigDecimal remaining = order.getChargeAmount().subtract(
-                    order.getActualCharge() == null ? BigDecimal.ZERO : order.getActualCharge()
-            );
-            // 防止负数或已完成
-            if (remaining.compareTo(BigDecimal.ZERO) <= 0) continue;
-            long thisOrderSeconds = remaining
-                    .divide(station.getPower(), 0, BigDecimal.ROUND_UP)
-                    .longValue();
-            totalSeconds += thisOrderSeconds;
+    private static boolean isDown(ChargingStationSlot slot) {
+        return slot.getStatus() == null
+                || slot.getStatus().getStatus() == 2
+                || slot.getStatus().getStatus() == 3;
+    }
+
+    private void recordTick(long startNanos, int stationCount, int conflictCount) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        tickTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        conflictCounter.increment(conflictCount);
+        if (elapsedMillis >= TICK_OVERRUN_MILLIS) {
+            overrunCounter.increment();
+            log.warn("充电桩调度tick超时: {}ms, stations={}, conflicts={}", elapsedMillis, stationCount, conflictCount);
+        } else {
+            log.debug("充电桩调度tick: {}ms, stations={}, conflicts={}", elapsedMillis, stationCount, conflictCount);
         }
-        return totalSeconds;
     }
-}
\ No newline at end of file
+
+    // 单个桩一轮推进的结果：需写回的进行中订单、已充满待结算的订单
+    private static class StationTickResult {
+        private final List<Order> progressed = new ArrayList<>();
+        private final List<Order> finished = new ArrayList<>();
+    }
+}
@@ -0,0 +1,87 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.util.ChargeLoad;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 单个充电模式的调度索引：按等待时长排序的可分配充电桩优先队列。
+ * 每轮由一次slot快照构建，分配订单后增量更新被选中桩的等待时长和队列长度，
+ * 已满、故障、关闭或模式不匹配的桩不会进入索引。
+ * 等待时长相同时按充电桩列表中的先后顺序选择，与逐桩遍历的结果一致。
+ */
+public class DispatchIndex {
+
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+            Comparator.comparingLong((Candidate c) -> c.waitingTime).thenComparingInt(c -> c.position));
+
+    /**
+     * @param mode     充电模式
+     * @param ids      全部充电桩ID（顺序决定等待时长相同时的优先级）
+     * @param stations 桩ID -> 充电桩基础信息
+     * @param slots    桩ID -> slot快照
+     */
+    public DispatchIndex(int mode, List<Long> ids, Map<Long, ChargingStation> stations, Map<Long, ChargingStationSlot> slots) {
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            ChargingStation station = stations.get(id);
+            if (station == null || station.getMode() == null || station.getMode() != mode) continue;
+            ChargingStationSlot slot = slots.get(id);
+            if (slot == null || slot.getStatus() == null || slot.getQueue() == null) continue;
+            int statusCode = slot.getStatus().getStatus();
+            if (statusCode == 2 || statusCode == 3) continue; // 跳过故障、关闭
+            Integer maxQueueLength = station.getMaxQueueLength();
+            if (maxQueueLength != null && slot.getQueue().size() >= maxQueueLength) continue;
+            long waitingTime = slot.getWaitingTime() != null ? slot.getWaitingTime() : 0L;
+            candidates.add(new Candidate(id, i, station.getPower(), maxQueueLength, slot.getQueue().size(), waitingTime));
+        }
+    }
+
+    /**
+     * 为订单选择等待时长最短的桩，并把该订单计入索引
+     * @return 选中的桩ID，没有可分配的桩时返回null
+     */
+    public Long place(Order order) {
+        Candidate best = candidates.poll();
+        if (best == null) return null;
+        best.queueSize++;
+        best.waitingTime += remainingSeconds(order, best.power);
+        if (best.maxQueueLength == null || best.queueSize < best.maxQueueLength) {
+            candidates.add(best);
+        }
+        return best.stationId;
+    }
+
+    public boolean isEmpty() {
+        return candidates.isEmpty();
+    }
+
+    /**
+     * 订单剩余电量按桩功率折算的充电秒数（向上取整）
+     */
+    public static long remainingSeconds(Order order, BigDecimal power) {
+        return ChargeLoad.remainingSeconds(order, power);
+    }
+
+    private static class Candidate {
+        private final Long stationId;
+        private final int position;
+        private final BigDecimal power;
+        private final Integer maxQueueLength;
+        private int queueSize;
+        private long waitingTime;
+
+        private Candidate(Long stationId, int position, BigDecimal power, Integer maxQueueLength, int queueSize, long waitingTime) {
+            this.stationId = stationId;
+            this.position = position;
+            this.power = power;
+            this.maxQueueLength = maxQueueLength;
+            this.queueSize = queueSize;
+            this.waitingTime = waitingTime;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zhuzhu_charging_station_backend.service.MetricService;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MetricScheduler {
+
+    private static final int PRUNE_BATCH_SIZE = 5000;
+
+    private final MetricService metricService;
+    private final Clock clock;
+
+    @Value("${metrics.minute-retention-days:7}")
+    private int minuteRetentionDays;
+
+    /**
+     * 每天凌晨清理过期的分钟级统计桶；小时、天级桶长期保留
+     */
+    @Scheduled(cron = "0 0 3 * * *")
+    public void pruneMinuteBuckets() {
+        try {
+            LocalDateTime before = LocalDateTime.now(clock).minusDays(minuteRetentionDays);
+            int deleted = metricService.prune(MetricService.Granularity.MINUTE, before, PRUNE_BATCH_SIZE);
+            log.info("清理分钟级统计: before={}, rows={}", before, deleted);
+        } catch (Exception e) {
+            log.error("清理分钟级统计异常", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zhuzhu_charging_station_backend.service.OrderArchiveService;
+import org.zhuzhu_charging_station_backend.service.ShardLeaseService;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class OrderArchiveScheduler {
+
+    private final OrderArchiveService orderArchiveService;
+    private final ShardLeaseService shardLeaseService;
+    private final Clock clock;
+
+    @Value("${order.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${order.archive.retention-days:180}")
+    private int retentionDays;
+
+    @Value("${order.archive.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * 每天凌晨把超过保留期的订单移入归档表，逐批提交，每批都确认本节点仍是主节点（持有分片0）
+     */
+    @Scheduled(cron = "${order.archive.cron:0 30 3 * * *}")
+    public void archiveOrders() {
+        if (!enabled) return;
+        try {
+            LocalDateTime before = LocalDateTime.now(clock).minusDays(retentionDays);
+            AtomicInteger moved = new AtomicInteger();
+            AtomicInteger batch = new AtomicInteger();
+            do {
+                batch.set(0);
+                shardLeaseService.runIfLeader(() -> {
+                    if (moved.get() == 0) orderArchiveService.ensurePartitions(before);
+                    batch.set(orderArchiveService.archiveBatch(before, batchSize));
+                });
+                moved.addAndGet(batch.get());
+            } while (batch.get() >= batchSize);
+            if (moved.get() > 0) {
+                log.info("归档订单: before={}, orders={}", before, moved.get());
+            }
+        } catch (Exception e) {
+            log.error("归档订单异常", e);
+        }
+    }
+}
@@ -1,16 +1,19 @@
 package org.zhuzhu_charging_station_backend.schedule;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.zhuzhu_charging_station_backend.dto.ChargingStationResponse;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
 import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
 import org.zhuzhu_charging_station_backend.entity.Order;
 import org.zhuzhu_charging_station_backend.service.*;
 
-import java.math.BigDecimal;
-import java.util.List;
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
@@ -21,94 +24,157 @@ public class OrderScheduler {
     private final ChargingStationSlotService chargingStationSlotService;
     private final QueueService queueService;
     private final OrderCacheService orderCacheService;
+    private final ShardLeaseService shardLeaseService;
+    private final MeterRegistry meterRegistry;
 
-    // 支持快充（mode=1）和慢充（mode=0），可按需扩展
+    // 分配指标：一轮总耗时，读取快照、内存中选桩、批量回写各阶段耗时（每个模式各记一次）
+    private Timer assignTimer;
+    private Timer snapshotTimer;
+    private Timer placeTimer;
+    private Timer writeTimer;
+
+    @PostConstruct
+    public void initMeters() {
+        assignTimer = Timer.builder("order.assign").description("订单分配一轮的总耗时").register(meterRegistry);
+        snapshotTimer = phaseTimer("snapshot");
+        placeTimer = phaseTimer("place");
+        writeTimer = phaseTimer("write");
+    }
+
+    private Timer phaseTimer(String phase) {
+        return Timer.builder("order.assign.phase").tag("phase", phase).description("订单分配各阶段耗时").register(meterRegistry);
+    }
+
+    /**
+     * 每秒一轮分配：一次MGET取全部slot快照，按模式构建调度索引，
+     * 内存中按排队顺序逐单选出等待时长最短的桩，最后批量回写slot、订单和等待队列。
+     * 支持快充（mode=1）和慢充（mode=0），可按需扩展。
+     * 等待队列是全局的，多节点部署时只由持有分片0的节点分配（见 {@link ShardLeaseService}）
+     */
     @Scheduled(cron = "*/1 * * * * *")
     public void assignOrdersToSlot() {
+        shardLeaseService.runIfLeader(() -> assignTimer.record(this::assign));
+    }
+
+    private void assign() {
+        long mark = System.nanoTime();
+        Map<Integer, List<String>> pendingByMode = new LinkedHashMap<>();
         for (int mode : new int[]{1, 0}) {
             List<String> pendingOrderIds = queueService.getAllOrderIdsInQueue(mode);
-            if (pendingOrderIds == null || pendingOrderIds.isEmpty()) {
+            if (pendingOrderIds != null && !pendingOrderIds.isEmpty()) {
+                pendingByMode.put(mode, pendingOrderIds);
+            }
+        }
+        if (pendingByMode.isEmpty()) return;
+
+        List<Long> stationIds = chargingStationService.getAllStationIds();
+        Map<Long, ChargingStation> stations = new HashMap<>();
+        for (Long stationId : stationIds) {
+            stations.put(stationId, chargingStationService.getChargingStationBase(stationId));
+        }
+        Map<Long, ChargingStationSlot> snapshots = chargingStationSlotService.getSlots(stationIds);
+        lap(snapshotTimer, mark);
+
+        for (Map.Entry<Integer, List<String>> entry : pendingByMode.entrySet()) {
+            try {
+                assignMode(entry.getKey(), entry.getValue(), stationIds, stations, snapshots);
+            } catch (Exception e) {
+                log.error("订单分配异常: mode={}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void assignMode(int mode, List<String> pendingOrderIds, List<Long> stationIds,
+                            Map<Long, ChargingStation> stations, Map<Long, ChargingStationSlot> snapshots) {
+        long mark = System.nanoTime();
+        Map<String, Order> orders = orderCacheService.getOrders(pendingOrderIds);
+        mark = lap(snapshotTimer, mark);
+        DispatchIndex index = new DispatchIndex(mode, stationIds, stations, snapshots);
+
+        // 1. 内存中按排队顺序分配
+        Map<Long, List<Order>> placements = new LinkedHashMap<>();
+        int unassigned = 0;
+        for (String orderId : pendingOrderIds) {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                log.warn("订单 {} 不存在，已跳过", orderId);
+                continue;
+            }
+            Long stationId = index.place(order);
+            if (stationId == null) {
+                unassigned++;
                 continue;
             }
+            placements.computeIfAbsent(stationId, k -> new ArrayList<>()).add(order);
+        }
+        if (unassigned > 0) {
+            log.info("{} 个订单未找到可分配充电桩: mode={}", unassigned, mode);
+        }
+        mark = lap(placeTimer, mark);
+        if (placements.isEmpty()) return;
+
+        // 2. 一次批量回写slot，快照之后被改动过的桩逐个按最新状态重新校验
+        Map<Long, ChargingStationSlot> updated = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<Order>> entry : placements.entrySet()) {
+            ChargingStationSlot slot = chargingStationSlotService.copySlot(snapshots.get(entry.getKey()));
+            appendOrders(slot, stations.get(entry.getKey()), entry.getValue());
+            updated.put(entry.getKey(), slot);
+        }
+        Set<Long> conflicted = chargingStationSlotService.compareAndSetSlots(snapshots, updated);
 
-            List<Long> stationIds = chargingStationService.getAllStationIds();
-
-            for (String orderId : pendingOrderIds) {
-                Order order = orderCacheService.getOrder(orderId);
-                if (order == null) {
-                    log.warn("订单 {} 不存在，已跳过", orderId);
-                    continue;
-                }
-
-                Long bestStationId = null;
-                Long minWaitingTime = null;
-
-                for (Long stationId : stationIds) {
-                    ChargingStationResponse station = chargingStationService.getChargingStationWithSlot(stationId);
-                    int stationMode = station.getMode();
-                    if (stationMode != mode) continue; // mode不匹配直接跳过
-                    ChargingStationSlot slot = chargingStationSlotService.getSlot(stationId);
-                    if (slot == null || slot.getStatus() == null) continue;
-                    int statusCode = slot.getStatus().getStatus();
-                    if (statusCode == 2 || statusCode == 3) continue; // 跳过故障、关闭
-                    List<String> slotQueue = slot.getQueue();
-                    if (slotQueue == null) continue;
-                    Integer maxQueueLength = chargingStationService.getChargingStationWithSlot(stationId).getMaxQueueLength();
-                    if (maxQueueLength != null && slotQueue.size() >= maxQueueLength) continue;
-                    long waitingTime = slot.getWaitingTime() != null ? slot.getWaitingTime() : 0L;
-                    if (minWaitingTime == null || waitingTime < minWaitingTime) {
-                        minWaitingTime = waitingTime;
-                        bestStationId = stationId;
-                    }
-                }
-
-                if (bestStationId != null) {
-                    final Long targetId = bestStationId; // 保证final化
-                    // 并发安全添加到slot队列
-                    chargingStationSlotService.updateSlotWithLock(targetId, slot -> {
-                        if (!slot.getQueue().contains(orderId)) {
-                            slot.getQueue().add(orderId);
-                            // 分配后，立即刷新 waitingTime
-                            ChargingStationResponse station = chargingStationService.getChargingStationWithSlot(targetId);
-                            slot.setWaitingTime(calcWaitingTime(slot, station));
-                        }
-                    });
-
-                    // 更新订单分配结果
-                    order.setStatus(2);
-                    order.setChargingStationId(bestStationId);
-                    orderCacheService.saveOrder(order);
-
-                    // 从等待队列移除
-                    queueService.removeOrderFromQueueWithLock(mode, orderId);
-
-                    log.info("订单 {} 已分配至充电桩 {}", orderId, bestStationId);
-                } else {
-                    log.info("订单 {} 未找到可分配充电桩", orderId);
-                }
+        List<Order> assigned = new ArrayList<>();
+        for (Map.Entry<Long, List<Order>> entry : placements.entrySet()) {
+            Long stationId = entry.getKey();
+            List<Order> accepted = conflicted.contains(stationId)
+                    ? appendOrdersToLatest(stationId, stations.get(stationId), entry.getValue())
+                    : entry.getValue();
+            for (Order order : accepted) {
+                order.setStatus(2);
+                order.setChargingStationId(stationId);
+                assigned.add(order);
+                log.info("订单 {} 已分配至充电桩 {}", order.getId(), stationId);
             }
         }
+        if (!assigned.isEmpty()) {
+            // 3. 批量更新订单分配结果，再一次性从等待队列移除
+            orderCacheService.saveOrders(assigned);
+            List<String> assignedIds = new ArrayList<>(assigned.size());
+            for (Order order : assigned) {
+                assignedIds.add(order.getId());
+            }
+            queueService.removeOrdersFromQueue(mode, assignedIds);
+        }
+        lap(writeTimer, mark);
+    }
+
+    // 记录一个阶段的耗时，返回阶段结束的时刻
+    private static long lap(Timer timer, long since) {
+        long now = System.nanoTime();
+        timer.record(now - since, TimeUnit.NANOSECONDS);
+        return now;
     }
 
-    // 实时计算充电桩slot到本轮全部订单完成的等待总时长
-    private long calcWaitingTime(ChargingStationSlot slot, ChargingStationResponse station) {
-        if (slot == null || slot.getQueue() == null || slot.getQueue().isEmpty()) {
-            return 0L;
+    // 订单追加到slot队尾，并按新增订单累加等待时长和剩余电量
+    private List<Order> appendOrders(ChargingStationSlot slot, ChargingStation station, List<Order> orders) {
+        List<Order> accepted = new ArrayList<>();
+        for (Order order : orders) {
+            if (!slot.getQueue().contains(order.getId())) {
+                slot.getQueue().add(order.getId());
+                chargingStationSlotService.addOrderLoad(slot, order, station.getPower());
+            }
+            accepted.add(order);
         }
-        long totalSeconds = 0L;
-        for (String orderId : slot.getQueue()) {
-            Order order = orderCacheService.getOrder(orderId);
-            if (order == null) continue;
-            BigDecimal remaining = order.getChargeAmount().subtract(
-                    order.getActualCharge() == null ? BigDecimal.ZERO : order.getActualCharge()
-            );
-            // 防止负数或已完成
-            if (remaining.compareTo(BigDecimal.ZERO) <= 0) continue;
-            long thisOrderSeconds = remaining
-                    .divide(station.getPower(), 0, BigDecimal.ROUND_UP)
-                    .longValue();
-            totalSeconds += thisOrderSeconds;
+        return accepted;
+    }
+
+    // 按slot最新状态重新校验并追加（一次脚本调用）：桩已故障/关闭或队列已满时，剩余订单留在等待队列等下一轮
+    private List<Order> appendOrdersToLatest(Long stationId, ChargingStation station, List<Order> orders) {
+        try {
+            int accepted = chargingStationSlotService.appendOrders(stationId, orders, station.getPower(), station.getMaxQueueLength());
+            return orders.subList(0, accepted);
+        } catch (Exception e) {
+            log.error("订单分配写入充电桩失败: stationId={}", stationId, e);
+            return Collections.emptyList();
         }
-        return totalSeconds;
     }
-}
\ No newline at end of file
+}
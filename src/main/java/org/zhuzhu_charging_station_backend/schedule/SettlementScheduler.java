@@ -0,0 +1,30 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zhuzhu_charging_station_backend.service.SettlementService;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SettlementScheduler {
+
+    private final SettlementService settlementService;
+
+    /**
+     * 结算流批量入库，上一轮结束后再开始下一轮，不与充电推进共用线程
+     */
+    @Scheduled(fixedDelay = 500)
+    public void flushSettlements() {
+        try {
+            int flushed = settlementService.flush();
+            if (flushed > 0) {
+                log.debug("结算入库: orders={}", flushed);
+            }
+        } catch (Exception e) {
+            log.error("结算入库异常", e);
+        }
+    }
+}
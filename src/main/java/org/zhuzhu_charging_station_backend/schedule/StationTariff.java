@@ -0,0 +1,251 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import org.zhuzhu_charging_station_backend.entity.ChargingMeter;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.util.ChargeLoad;
+import org.zhuzhu_charging_station_backend.util.FixedPoint;
+import org.zhuzhu_charging_station_backend.util.TariffPeriod;
+import org.zhuzhu_charging_station_backend.util.TariffTimeline;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 单个充电桩编译后的计费参数：每秒充电量、各时段每秒充电费、每秒服务费均预先算好，
+ * 每轮推进只按当前秒查时段并累加一次增量，跨时段的订单各段按各自电价计费。
+ * 参数能精确表示为定点数时，充电中的订单挂上 {@link ChargingMeter} 只做long加法；
+ * 否则（如手工录入了超过定点精度的功率）退回BigDecimal累加，结果一致。
+ */
+public final class StationTariff {
+
+    private static final int PEAK = TariffPeriod.PEAK.ordinal();
+    private static final int NORMAL = TariffPeriod.NORMAL.ordinal();
+    private static final int VALLEY = TariffPeriod.VALLEY.ordinal();
+
+    private final TariffTimeline timeline;
+    // 编译时的桩参数，用于判断桩信息是否已修改
+    private final BigDecimal power;
+    private final BigDecimal serviceFee;
+    private final BigDecimal peakPrice;
+    private final BigDecimal normalPrice;
+    private final BigDecimal valleyPrice;
+    // 每秒充电费，下标为时段ordinal
+    private final BigDecimal[] chargeFeePerSecond;
+    private final BigDecimal serviceFeePerSecond;
+
+    // 定点数形式，exact为false时不可用
+    private final boolean exact;
+    private final long powerUnits;
+    private final long[] chargeFeeUnitsPerSecond;
+    private final long serviceFeeUnitsPerSecond;
+    private final int energyScale;
+    private final int feeScale;
+
+    private StationTariff(ChargingStation station, TariffTimeline timeline) {
+        this.timeline = timeline;
+        this.power = station.getPower();
+        this.serviceFee = station.getServiceFee();
+        this.peakPrice = station.getPeakPrice();
+        this.normalPrice = station.getNormalPrice();
+        this.valleyPrice = station.getValleyPrice();
+        this.chargeFeePerSecond = new BigDecimal[TariffPeriod.values().length];
+        chargeFeePerSecond[PEAK] = power.multiply(peakPrice);
+        chargeFeePerSecond[NORMAL] = power.multiply(normalPrice);
+        chargeFeePerSecond[VALLEY] = power.multiply(valleyPrice);
+        this.serviceFeePerSecond = power.multiply(serviceFee);
+
+        // 与BigDecimal累加结果的小数位一致：初值0.0为1位，之后取各加数的最大小数位
+        this.energyScale = Math.max(1, power.scale());
+        int maxFeeScale = serviceFeePerSecond.scale();
+        for (BigDecimal fee : chargeFeePerSecond) {
+            maxFeeScale = Math.max(maxFeeScale, fee.scale());
+        }
+        this.feeScale = Math.max(1, maxFeeScale);
+
+        this.chargeFeeUnitsPerSecond = new long[chargeFeePerSecond.length];
+        boolean representable = FixedPoint.isExact(power) && FixedPoint.isExact(serviceFeePerSecond)
+                && energyScale <= FixedPoint.SCALE && feeScale <= FixedPoint.SCALE;
+        for (BigDecimal fee : chargeFeePerSecond) {
+            representable &= FixedPoint.isExact(fee);
+        }
+        this.exact = representable;
+        if (exact) {
+            this.powerUnits = FixedPoint.toUnits(power);
+            this.serviceFeeUnitsPerSecond = FixedPoint.toUnits(serviceFeePerSecond);
+            for (int i = 0; i < chargeFeePerSecond.length; i++) {
+                chargeFeeUnitsPerSecond[i] = FixedPoint.toUnits(chargeFeePerSecond[i]);
+            }
+        } else {
+            this.powerUnits = 0L;
+            this.serviceFeeUnitsPerSecond = 0L;
+        }
+    }
+
+    public static StationTariff compile(ChargingStation station, TariffTimeline timeline) {
+        return new StationTariff(station, timeline);
+    }
+
+    /**
+     * 桩的功率、电价、服务费是否与编译时一致
+     */
+    public boolean matches(ChargingStation station) {
+        return sameValue(power, station.getPower())
+                && sameValue(serviceFee, station.getServiceFee())
+                && sameValue(peakPrice, station.getPeakPrice())
+                && sameValue(normalPrice, station.getNormalPrice())
+                && sameValue(valleyPrice, station.getValleyPrice());
+    }
+
+    /**
+     * 订单充电一秒：累加电量和当前时段的费用增量
+     * @param secondOfDay 当天秒数
+     */
+    public void accrue(Order order, int secondOfDay) {
+        int period = timeline.ordinalAt(secondOfDay);
+        ChargingMeter meter = order.getMeter();
+        if (meter == null && exact) {
+            meter = openMeter(order);
+        }
+        if (meter == null) {
+            accrueDecimal(order, period);
+            return;
+        }
+        long chargeFee = chargeFeeUnitsPerSecond[period];
+        meter.setActualCharge(meter.getActualCharge() + powerUnits);
+        meter.setChargeFee(meter.getChargeFee() + chargeFee);
+        meter.setServiceFee(meter.getServiceFee() + serviceFeeUnitsPerSecond);
+        if (period == PEAK) {
+            meter.setPeakCharge(meter.getPeakCharge() + powerUnits);
+            meter.setPeakChargeFee(meter.getPeakChargeFee() + chargeFee);
+        } else if (period == VALLEY) {
+            meter.setValleyCharge(meter.getValleyCharge() + powerUnits);
+            meter.setValleyChargeFee(meter.getValleyChargeFee() + chargeFee);
+        } else {
+            meter.setNormalCharge(meter.getNormalCharge() + powerUnits);
+            meter.setNormalChargeFee(meter.getNormalChargeFee() + chargeFee);
+        }
+    }
+
+    /**
+     * 按实际经过的时间推进到 now：从开始充电起经过的整秒数（开始的那一秒也计入）减去已计费秒数即为本轮应计秒数，
+     * 逐秒按各自所在时段累加并增加充电时长，充满即停；不足一秒的部分留到下一轮。
+     * 调度准时时每轮计1秒，延迟或跳过若干轮时一次补足，电量和费用与逐秒推进一致
+     * @return 本轮计费的秒数
+     */
+    public long accrueUntil(Order order, LocalDateTime now) {
+        LocalDateTime startTime = order.getStartTime();
+        long due = Duration.between(startTime, now).getSeconds() + 1 - order.getChargeDuration();
+        int startSecond = startTime.toLocalTime().toSecondOfDay();
+        long accrued = 0;
+        while (accrued < due && !isFull(order)) {
+            long chargeDuration = order.getChargeDuration();
+            accrue(order, (int) ((startSecond + chargeDuration) % TariffTimeline.SECONDS_PER_DAY));
+            order.setChargeDuration(chargeDuration + 1);
+            accrued++;
+        }
+        return accrued;
+    }
+
+    /**
+     * 订单是否已充满
+     */
+    public boolean isFull(Order order) {
+        ChargingMeter meter = order.getMeter();
+        if (meter != null) {
+            return meter.getActualCharge() >= meter.getChargeAmount();
+        }
+        return order.getActualCharge().compareTo(order.getChargeAmount()) >= 0;
+    }
+
+    /**
+     * 订单剩余电量按本桩功率折算的充电秒数（向上取整），与 {@link ChargeLoad#remainingSeconds} 一致
+     */
+    public long remainingSeconds(Order order) {
+        if (!exact || powerUnits <= 0) {
+            return ChargeLoad.remainingSeconds(order, power);
+        }
+        ChargingMeter meter = order.getMeter();
+        if (meter != null) {
+            return ceilSeconds(meter.getChargeAmount() - meter.getActualCharge());
+        }
+        // 尚未开始充电的订单没有计量状态，直接换算电量
+        if (order.getChargeAmount() == null) return 0L;
+        try {
+            long actual = order.getActualCharge() == null ? 0L : FixedPoint.toUnits(order.getActualCharge());
+            return ceilSeconds(FixedPoint.toUnits(order.getChargeAmount()) - actual);
+        } catch (ArithmeticException e) {
+            return ChargeLoad.remainingSeconds(order, power);
+        }
+    }
+
+    private long ceilSeconds(long remainingUnits) {
+        return remainingUnits <= 0 ? 0L : FixedPoint.ceilDiv(remainingUnits, powerUnits);
+    }
+
+    /**
+     * 订单剩余电量（定点数）
+     */
+    public long remainingEnergy(Order order) {
+        return ChargeLoad.remainingEnergy(order);
+    }
+
+    // 按订单当前的BigDecimal值挂上定点计量状态；有值超出定点精度时不挂，继续走BigDecimal累加
+    private ChargingMeter openMeter(Order order) {
+        BigDecimal[] values = {order.getChargeAmount(), order.getActualCharge(), order.getChargeFee(), order.getServiceFee(),
+                order.getPeakCharge(), order.getNormalCharge(), order.getValleyCharge(),
+                order.getPeakChargeFee(), order.getNormalChargeFee(), order.getValleyChargeFee()};
+        long[] units = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            BigDecimal value = values[i] == null ? BigDecimal.ZERO : values[i];
+            if (!FixedPoint.isExact(value)) return null;
+            units[i] = FixedPoint.toUnits(value);
+        }
+        ChargingMeter meter = new ChargingMeter();
+        meter.setChargeAmount(units[0]);
+        meter.setActualCharge(units[1]);
+        meter.setChargeFee(units[2]);
+        meter.setServiceFee(units[3]);
+        meter.setPeakCharge(units[4]);
+        meter.setNormalCharge(units[5]);
+        meter.setValleyCharge(units[6]);
+        meter.setPeakChargeFee(units[7]);
+        meter.setNormalChargeFee(units[8]);
+        meter.setValleyChargeFee(units[9]);
+        meter.setEnergyScale(Math.max(energyScale, scaleOf(order.getActualCharge())));
+        meter.setFeeScale(Math.max(feeScale, Math.max(scaleOf(order.getChargeFee()), scaleOf(order.getServiceFee()))));
+        order.setMeter(meter);
+        return meter;
+    }
+
+    private void accrueDecimal(Order order, int period) {
+        BigDecimal chargeFee = chargeFeePerSecond[period];
+        order.setActualCharge(order.getActualCharge().add(power));
+        order.setChargeFee(order.getChargeFee().add(chargeFee));
+        order.setServiceFee(order.getServiceFee().add(serviceFeePerSecond));
+        order.setTotalFee(order.getChargeFee().add(order.getServiceFee()));
+        if (period == PEAK) {
+            order.setPeakCharge(zeroIfNull(order.getPeakCharge()).add(power));
+            order.setPeakChargeFee(zeroIfNull(order.getPeakChargeFee()).add(chargeFee));
+        } else if (period == VALLEY) {
+            order.setValleyCharge(zeroIfNull(order.getValleyCharge()).add(power));
+            order.setValleyChargeFee(zeroIfNull(order.getValleyChargeFee()).add(chargeFee));
+        } else {
+            order.setNormalCharge(zeroIfNull(order.getNormalCharge()).add(power));
+            order.setNormalChargeFee(zeroIfNull(order.getNormalChargeFee()).add(chargeFee));
+        }
+    }
+
+    private static int scaleOf(BigDecimal value) {
+        return value == null ? 0 : Math.min(value.scale(), FixedPoint.SCALE);
+    }
+
+    private static boolean sameValue(BigDecimal a, BigDecimal b) {
+        return a == b || (a != null && b != null && a.compareTo(b) == 0);
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+}
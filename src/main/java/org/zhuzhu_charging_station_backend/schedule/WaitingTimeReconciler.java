@@ -0,0 +1,134 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.service.ChargingStationService;
+import org.zhuzhu_charging_station_backend.service.ChargingStationSlotService;
+import org.zhuzhu_charging_station_backend.service.OrderCacheService;
+import org.zhuzhu_charging_station_backend.service.ShardLeaseService;
+import org.zhuzhu_charging_station_backend.util.ChargeLoad;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 等待时长对账：slot上的等待时长和剩余电量由各操作增量维护，
+ * 这里定期读取全部排队订单全量重算，与增量值比对并报告偏差。
+ * 充电推进时slot先于订单写入，单次读到的偏差可能只是读取时序造成的，
+ * 同一个桩连续两次对账都有偏差才按重算值修正（比较并写入，期间slot被改动则留到下次）。
+ * 启动后首次对账立即修正，补齐升级前slot上缺失的剩余电量。
+ * 多节点部署时每个节点只对账自己持有分片内的桩。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class WaitingTimeReconciler {
+
+    private final ChargingStationService chargingStationService;
+    private final ChargingStationSlotService chargingStationSlotService;
+    private final OrderCacheService orderCacheService;
+    private final ShardLeaseService shardLeaseService;
+
+    // 上一次对账有偏差的桩
+    private Set<Long> driftedLastRun = new HashSet<>();
+
+    // 对账统计
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong driftCount = new AtomicLong();
+    private final AtomicLong correctedCount = new AtomicLong();
+    private final AtomicLong maxDriftSeconds = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${slot.reconcile.interval-ms:60000}", initialDelayString = "${slot.reconcile.initial-delay-ms:10000}")
+    public void reconcileTask() {
+        try {
+            boolean firstRun = runCount.get() == 0;
+            shardLeaseService.runOwned(chargingStationService.getAllStationIds(), ids -> reconcile(ids, firstRun));
+        } catch (Exception e) {
+            log.error("等待时长对账异常", e);
+        }
+    }
+
+    /**
+     * 全量重算并比对
+     * @param ids 要对账的充电桩
+     * @param correctImmediately 发现偏差立即修正（启动后首次对账使用）
+     * @return 本次发现偏差的桩数
+     */
+    public synchronized int reconcile(List<Long> ids, boolean correctImmediately) {
+        if (ids.isEmpty()) return 0;
+        Map<Long, ChargingStationSlot> snapshots = chargingStationSlotService.getSlots(ids);
+        List<String> queuedOrderIds = new ArrayList<>();
+        for (ChargingStationSlot slot : snapshots.values()) {
+            if (slot.getQueue() != null) queuedOrderIds.addAll(slot.getQueue());
+        }
+        Map<String, Order> orders = orderCacheService.getOrders(queuedOrderIds);
+
+        Set<Long> drifted = new HashSet<>();
+        Map<Long, ChargingStationSlot> corrections = new LinkedHashMap<>();
+        for (Map.Entry<Long, ChargingStationSlot> entry : snapshots.entrySet()) {
+            Long id = entry.getKey();
+            ChargingStationSlot slot = entry.getValue();
+            if (slot.getQueue() == null) continue;
+            ChargingStation station;
+            try {
+                station = chargingStationService.getChargingStationBase(id);
+            } catch (Exception e) {
+                continue;
+            }
+            long expectedSeconds = 0L;
+            long expectedEnergy = 0L;
+            for (String orderId : slot.getQueue()) {
+                Order order = orders.get(orderId);
+                expectedSeconds += ChargeLoad.remainingSeconds(order, station.getPower());
+                expectedEnergy += ChargeLoad.remainingEnergy(order);
+            }
+            long storedSeconds = slot.getWaitingTime() == null ? 0L : slot.getWaitingTime();
+            boolean missing = slot.getWaitingTime() == null || slot.getRemainingEnergy() == null;
+            if (!missing && storedSeconds == expectedSeconds && slot.getRemainingEnergy() == expectedEnergy) continue;
+
+            drifted.add(id);
+            long drift = Math.abs(storedSeconds - expectedSeconds);
+            maxDriftSeconds.accumulateAndGet(drift, Math::max);
+            if (!missing) {
+                driftCount.incrementAndGet();
+                log.warn("等待时长偏差: stationId={}, waitingTime={}/{}, remainingEnergy={}/{}", id,
+                        storedSeconds, expectedSeconds, slot.getRemainingEnergy(), expectedEnergy);
+            }
+            if (missing || correctImmediately || driftedLastRun.contains(id)) {
+                ChargingStationSlot corrected = chargingStationSlotService.copySlot(slot);
+                corrected.setWaitingTime(expectedSeconds);
+                corrected.setRemainingEnergy(expectedEnergy);
+                corrections.put(id, corrected);
+            }
+        }
+
+        Set<Long> conflicted = chargingStationSlotService.compareAndSetSlots(snapshots, corrections);
+        correctedCount.addAndGet(corrections.size() - conflicted.size());
+        driftedLastRun = drifted;
+        runCount.incrementAndGet();
+        log.debug("等待时长对账完成: stations={}, drifted={}, corrected={}", snapshots.size(), drifted.size(),
+                corrections.size() - conflicted.size());
+        return drifted.size();
+    }
+
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    public long getDriftCount() {
+        return driftCount.get();
+    }
+
+    public long getCorrectedCount() {
+        return correctedCount.get();
+    }
+
+    public long getMaxDriftSeconds() {
+        return maxDriftSeconds.get();
+    }
+}
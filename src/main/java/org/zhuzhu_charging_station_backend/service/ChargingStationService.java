@@ -17,9 +17,11 @@ import org.zhuzhu_charging_station_backend.util.IdGenerator;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.zhuzhu_charging_station_backend.exception.NotFoundException;
 
@@ -31,6 +33,8 @@ public class ChargingStationService {
     private ApplicationContext applicationContext;
     private final ChargingStationRepository chargingStationRepository;
     private final ChargingStationSlotService chargingStationSlotService;
+    private final IdGenerator idGenerator;
+    private final Clock clock;
 
     /**
      * 新增或更新充电桩基础信息，并同步维护实时状态与报表数据。
@@ -38,7 +42,7 @@ public class ChargingStationService {
      * @return 充电桩完整信息（含基础属性、slot、报表信息）
      */
     @Transactional
-    @CacheEvict(value = {"chargingStationBase", "chargingStationResponsesAllId"}, allEntries = true)
+    @CacheEvict(value = {"chargingStationBase", "chargingStationReport", "chargingStationResponsesAllId"}, allEntries = true)
     public ChargingStationResponse upsertChargingStation(ChargingStationUpsertRequest request) {
         ChargingStation station;
         boolean isCreate = (request.getId() == null);
@@ -50,7 +54,7 @@ public class ChargingStationService {
             }
 
             // 创建流程
-            id = IdGenerator.generateUniqueStationId(chargingStationRepository, 10);
+            id = idGenerator.nextStationId();
             station = new ChargingStation();
             station.setId(id);
             station.setName(request.getName());
@@ -65,7 +69,7 @@ public class ChargingStationService {
 
             // 初始化报表对象ReportInfo
             ReportInfo report = new ReportInfo();
-            report.setUpdatedAt(LocalDateTime.now().withNano(0));
+            report.setUpdatedAt(LocalDateTime.now(clock).withNano(0));
             report.setTotalChargeCount(0);
             report.setTotalChargeTime(0L);
             report.setTotalChargeAmount(BigDecimal.valueOf(0));
@@ -87,7 +91,7 @@ public class ChargingStationService {
             station = chargingStationRepository.findById(id)
                     .orElseThrow(() -> new NotFoundException("充电桩不存在"));
 
-            // 用分布式锁包裹所有的“能否修改”检查和slot修改
+            // “能否修改”检查放在slot修改内，保存放在之后：写回冲突重放时只重新检查，不会重复保存
             chargingStationSlotService.updateSlotWithLock(id, slot -> {
                 ChargingStationStatus status = slot.getStatus();
                 if (status == null) {
@@ -97,22 +101,20 @@ public class ChargingStationService {
                 if (status.getStatus() != null && status.getStatus() == 1) {
                     throw new BadStateException("充电桩正在使用中，禁止修改所有信息");
                 }
-
-                // 可以改数据库基础属性
-                if (request.getName() != null) station.setName(request.getName());
-                if (request.getDescription() != null) station.setDescription(request.getDescription());
-                if (request.getMode() != null) station.setMode(request.getMode());
-                if (request.getPower() != null) station.setPower(request.getPower());
-                if (request.getServiceFee() != null) station.setServiceFee(request.getServiceFee());
-                if (request.getPeakPrice() != null) station.setPeakPrice(request.getPeakPrice());
-                if (request.getNormalPrice() != null) station.setNormalPrice(request.getNormalPrice());
-                if (request.getValleyPrice() != null) station.setValleyPrice(request.getValleyPrice());
-                if (request.getMaxQueueLength() != null) station.setMaxQueueLength(request.getMaxQueueLength());
-
-                // 只有允许修改时才做save
-                chargingStationRepository.save(station);
             });
 
+            // 可以改数据库基础属性，只有允许修改时才做save
+            if (request.getName() != null) station.setName(request.getName());
+            if (request.getDescription() != null) station.setDescription(request.getDescription());
+            if (request.getMode() != null) station.setMode(request.getMode());
+            if (request.getPower() != null) station.setPower(request.getPower());
+            if (request.getServiceFee() != null) station.setServiceFee(request.getServiceFee());
+            if (request.getPeakPrice() != null) station.setPeakPrice(request.getPeakPrice());
+            if (request.getNormalPrice() != null) station.setNormalPrice(request.getNormalPrice());
+            if (request.getValleyPrice() != null) station.setValleyPrice(request.getValleyPrice());
+            if (request.getMaxQueueLength() != null) station.setMaxQueueLength(request.getMaxQueueLength());
+            chargingStationRepository.save(station);
+
             ChargingStationSlot slot = chargingStationSlotService.getSlot(id);
             return buildChargingStationResponse(station, slot);
         }
@@ -123,7 +125,7 @@ public class ChargingStationService {
      * @param id 充电桩ID
      */
     @Transactional
-    @CacheEvict(value = {"chargingStationBase", "chargingStationResponsesAllId"}, allEntries = true)
+    @CacheEvict(value = {"chargingStationBase", "chargingStationReport", "chargingStationResponsesAllId"}, allEntries = true)
     public void deleteChargingStation(Long id) {
         try {
             chargingStationRepository.deleteById(id);
@@ -143,12 +145,7 @@ public class ChargingStationService {
         ChargingStation station = chargingStationRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("充电桩不存在，无法置为故障"));
 
-        chargingStationSlotService.updateSlotWithLock(id, slot -> {
-            ChargingStationStatus status = slot.getStatus();
-            if (status == null) status = new ChargingStationStatus();
-            status.setStatus(3); // 3=故障
-            slot.setStatus(status);
-        });
+        chargingStationSlotService.setStatus(id, 3); // 3=故障
 
         ChargingStationSlot slot = chargingStationSlotService.getSlot(id);
         return buildChargingStationResponse(station, slot);
@@ -235,29 +232,6 @@ public class ChargingStationService {
         return buildChargingStationResponse(station, slot);
     }
 
-    /**
-     * 订单完成时，累计报表&驱逐缓存
-     */
-    @CacheEvict(value = "chargingStationBase", key = "#stationId")
-    public void updateReportInfo(Long stationId, Order order) {
-        ChargingStation cs = chargingStationRepository.findById(stationId)
-                .orElseThrow(() -> new NotFoundException("充电桩不存在，无法更新统计"));
-
-        LocalDateTime now = LocalDateTime.now().withNano(0);
-        ReportInfo report = cs.getReport();
-
-        report.setUpdatedAt(now);
-        report.setTotalChargeCount(report.getTotalChargeCount() + 1);
-        report.setTotalChargeTime(report.getTotalChargeTime() + order.getChargeDuration());
-        report.setTotalChargeAmount(report.getTotalChargeAmount().add(order.getActualCharge()));
-        report.setTotalChargeFee(report.getTotalChargeFee().add(order.getChargeFee()));
-        report.setTotalServiceFee(report.getTotalServiceFee().add(order.getServiceFee()));
-        report.setTotalFee(report.getTotalFee().add(order.getTotalFee()));
-        cs.setReport(report);
-
-        chargingStationRepository.save(cs);
-    }
-
     /**
      * 查询所有充电桩的 ID 列表
      * @return 充电桩 ID 列表
@@ -281,6 +255,17 @@ public class ChargingStationService {
                 .orElseThrow(() -> new NotFoundException("充电桩不存在"));
     }
 
+    /**
+     * 查询充电桩累计报表，结算入库后按桩驱逐
+     * @param id 充电桩ID
+     * @return 报表信息
+     */
+    @Cacheable(value = "chargingStationReport", key = "#id")
+    public ReportInfo getReportInfo(Long id) {
+        return chargingStationRepository.findReportById(id)
+                .orElseThrow(() -> new NotFoundException("充电桩不存在"));
+    }
+
     /**
      * 查询指定充电桩全部信息（含slot和报表信息）
      * @param id 充电桩ID
@@ -291,18 +276,21 @@ public class ChargingStationService {
         ChargingStation station = proxy.getChargingStationBase(id); // 这样走代理，@Cacheable生效
         ChargingStationSlot slot = getOrInitSlot(id);
 
-        return buildChargingStationResponse(station, slot);
+        // 基础信息缓存中的报表不随结算更新，报表单独缓存
+        return buildChargingStationResponse(station, slot, proxy.getReportInfo(id));
     }
 
     /**
-     * 查询所有充电桩完整信息列表（含slot和报表信息）
+     * 查询所有充电桩完整信息列表（含slot和报表信息），全部桩的slot一次管道往返读取
      * @return 全部充电桩响应对象列表
      */
     public List<ChargingStationResponse> getAllChargingStationWithSlot() {
         List<ChargingStation> stations = chargingStationRepository.findAll();
+        List<Long> ids = stations.stream().map(ChargingStation::getId).collect(Collectors.toList());
+        Map<Long, ChargingStationSlot> slots = chargingStationSlotService.getSlots(ids);
         return stations.stream()
                 .map(station -> {
-                    ChargingStationSlot slot = getOrInitSlot(station.getId());
+                    ChargingStationSlot slot = initSlot(station.getId(), slots.get(station.getId()));
                     return buildChargingStationResponse(station, slot);
                 })
                 .collect(Collectors.toList());
@@ -314,7 +302,11 @@ public class ChargingStationService {
      * @return 充电桩slot
      */
     private ChargingStationSlot getOrInitSlot(Long id) {
-        ChargingStationSlot slot = chargingStationSlotService.getSlot(id);
+        return initSlot(id, chargingStationSlotService.getSlot(id));
+    }
+
+    // 补齐slot缺失的字段（slot不存在时新建）并写回
+    private ChargingStationSlot initSlot(Long id, ChargingStationSlot slot) {
         boolean needSet = false;
         if (slot == null) {
             slot = new ChargingStationSlot();
@@ -329,12 +321,17 @@ public class ChargingStationService {
             slot.setStatus(status);
             needSet = true;
         }
+        if (slot.getQueue() == null) {
+            slot.setQueue(new ArrayList<>());
+            needSet = true;
+        }
         if (slot.getWaitingTime() == null) {
             slot.setWaitingTime(0L);
             needSet = true;
         }
-        if (slot.getQueue() == null) {
-            slot.setQueue(new ArrayList<>());
+        // 已有订单的旧slot由定期对账补齐剩余电量
+        if (slot.getRemainingEnergy() == null && slot.getQueue().isEmpty()) {
+            slot.setRemainingEnergy(0L);
             needSet = true;
         }
         if (needSet) {
@@ -347,7 +344,15 @@ public class ChargingStationService {
             ChargingStation station,
             ChargingStationSlot slot
     ) {
-        LocalDateTime now = LocalDateTime.now().withNano(0);
+        return buildChargingStationResponse(station, slot, station.getReport());
+    }
+
+    private ChargingStationResponse buildChargingStationResponse(
+            ChargingStation station,
+            ChargingStationSlot slot,
+            ReportInfo report
+    ) {
+        LocalDateTime now = LocalDateTime.now(clock).withNano(0);
         return new ChargingStationResponse(
                 now,
                 station.getId(),
@@ -361,7 +366,7 @@ public class ChargingStationService {
                 station.getValleyPrice(),
                 station.getMaxQueueLength(),
                 slot,
-                station.getReport()
+                report
         );
     }
 }
\ No newline at end of file
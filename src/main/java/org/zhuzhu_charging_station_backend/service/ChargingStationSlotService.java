@@ -1,64 +1,662 @@
 package org.zhuzhu_charging_station_backend.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.util.ChargeLoad;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * 充电桩slot的读写。slot拆为状态hash（slot-state:id，含等待时长、剩余电量和版本号）和排队list（slot-queue:id）：
+ * 入队、出队、结算、改状态等字段级修改各是一次脚本调用，不需要读出整个slot再加锁写回；
+ * 整体读取一次管道往返取回hash和list，整体写入按版本号比较并写入。
+ * 升级前整体存放在 slot:id 的旧格式在首次读取时迁移。
+ * 两种执行模式（charging.slot.execution-mode）：
+ * lock（默认）直接读写Redis，需要先检查再修改的操作加分布式锁；
+ * actor 本节点持有分片内的桩由内存中的单线程邮箱串行修改并定期写回（见 {@link SlotActors}），
+ * 其余桩仍直接读写Redis；这些字段级修改使版本号递增，持有该桩的节点在下一次读取或推进前据此重新加载。
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ChargingStationSlotService {
 
+    // 仅用于读取旧格式的整体slot
     private final RedisTemplate<String, ChargingStationSlot> slotRedisTemplate;
     private final RedissonClient redissonClient;
 
-    private static final String SLOT_KEY_PREFIX = "slot:";
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShardLeaseService shardLeaseService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${charging.slot.execution-mode:lock}")
+    private String executionMode;
+    @Value("${charging.slot.actor.threads:0}")
+    private int actorThreads;
+    @Value("${charging.slot.actor.flush-interval-ms:200}")
+    private long actorFlushIntervalMillis;
+
+    private static final String LEGACY_SLOT_KEY_PREFIX = "slot:";
+    private static final String SLOT_STATE_KEY_PREFIX = "slot-state:";
+    private static final String SLOT_QUEUE_KEY_PREFIX = "slot-queue:";
     private static final String SLOT_LOCK_PREFIX = "slot-lock:"; // 分布式锁前缀
+    private static final long ACTOR_ASK_TIMEOUT_MILLIS = 10000L;
+    // 加锁修改提交时与字段级修改冲突的最大尝试次数
+    private static final int LOCKED_UPDATE_MAX_ATTEMPTS = 5;
+    // 等锁超过该时间记录日志，定位争用的桩
+    private static final long SLOW_LOCK_WAIT_MILLIS = 200L;
+
+    // 状态hash的字段
+    private static final String STATUS = "status";
+    private static final String CHARGE_COUNT = "chargeCount";
+    private static final String CHARGE_TIME = "chargeTime";
+    private static final String CHARGE_AMOUNT = "chargeAmount";
+    private static final String WAITING_TIME = "waitingTime";
+    private static final String REMAINING_ENERGY = "remainingEnergy";
+    private static final String VERSION = "version";
+
+    // actor模式下各桩的邮箱，lock模式为null
+    private SlotActors actors;
+
+    // 加锁修改的等锁耗时和持锁耗时
+    private Timer lockWaitTimer;
+    private Timer lockHoldTimer;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> COMPARE_AND_SET_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> FIELD_UPDATE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        COMPARE_AND_SET_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/slot_compare_and_set.lua")));
+        COMPARE_AND_SET_SCRIPT.setResultType(List.class);
+        FIELD_UPDATE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/slot_field_update.lua")));
+        FIELD_UPDATE_SCRIPT.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    public void initExecutionMode() {
+        if (!"actor".equalsIgnoreCase(executionMode)) return;
+        int threads = actorThreads > 0 ? actorThreads : Runtime.getRuntime().availableProcessors();
+        actors = new SlotActors(new SlotActors.Store() {
+            @Override
+            public ChargingStationSlot load(Long stationId) {
+                return readSlots(Collections.singletonList(stationId)).get(stationId);
+            }
+
+            @Override
+            public Set<Long> compareAndSet(List<Long> stationIds, List<Long> expectedVersions, List<ChargingStationSlot> updated) {
+                return compareAndSetRaw(stationIds, expectedVersions, updated, false);
+            }
+
+            @Override
+            public Map<Long, Long> versions(Collection<Long> stationIds) {
+                return readVersions(stationIds);
+            }
+        }, this::copySlot, shardLeaseService::owns, threads, ACTOR_ASK_TIMEOUT_MILLIS);
+        // 分片释放前先写回并关闭其中的邮箱，接手的节点才能读到最新状态
+        shardLeaseService.addReleaseListener(shards ->
+                actors.evict(id -> shards.contains(shardLeaseService.shardOf(id))));
+        actors.start(actorFlushIntervalMillis);
+        log.info("充电桩slot使用actor执行模式: threads={}, flushIntervalMs={}", threads, actorFlushIntervalMillis);
+    }
+
+    @PostConstruct
+    public void initMeters() {
+        lockWaitTimer = Timer.builder("slot.lock.wait").description("slot加锁修改的等锁耗时").register(meterRegistry);
+        lockHoldTimer = Timer.builder("slot.lock.hold").description("slot加锁修改的持锁耗时").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdownActors() {
+        if (actors != null) actors.shutdown();
+    }
 
     public ChargingStationSlot getSlot(Long stationId) {
-        return slotRedisTemplate.opsForValue().get(SLOT_KEY_PREFIX + stationId);
+        if (isActorOwned(stationId)) {
+            try {
+                return actors.read(stationId);
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，改读Redis
+            }
+        }
+        return readSlots(Collections.singletonList(stationId)).get(stationId);
+    }
+
+    /**
+     * 一次管道往返批量读取slot，返回 桩ID -> slot（不存在的slot不会出现在结果里）；
+     * actor模式下本节点持有的桩直接读内存
+     */
+    public Map<Long, ChargingStationSlot> getSlots(Collection<Long> stationIds) {
+        if (stationIds == null || stationIds.isEmpty()) return Collections.emptyMap();
+        if (actors != null) {
+            List<Long> local = new ArrayList<>();
+            List<Long> remote = new ArrayList<>();
+            for (Long id : stationIds) {
+                (isActorOwned(id) ? local : remote).add(id);
+            }
+            Map<Long, ChargingStationSlot> result = new LinkedHashMap<>(actors.readAll(local, remote));
+            result.putAll(readSlots(remote));
+            return result;
+        }
+        return readSlots(stationIds);
     }
 
     public void setSlot(Long stationId, ChargingStationSlot slot) {
-        slotRedisTemplate.opsForValue().set(SLOT_KEY_PREFIX + stationId, slot);
+        if (isActorOwned(stationId)) {
+            try {
+                actors.set(stationId, slot);
+                return;
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，直接写Redis
+            }
+        }
+        compareAndSetRaw(Collections.singletonList(stationId), Collections.singletonList(null),
+                Collections.singletonList(slot), true);
     }
 
     public void removeSlot(Long stationId) {
-        slotRedisTemplate.delete(SLOT_KEY_PREFIX + stationId);
+        if (isActorOwned(stationId)) {
+            try {
+                actors.remove(stationId);
+                return;
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，直接删除Redis中的slot
+            }
+        }
+        stringRedisTemplate.delete(Arrays.asList(stateKey(stationId), queueKey(stationId), LEGACY_SLOT_KEY_PREFIX + stationId));
+    }
+
+    /**
+     * 一次脚本调用批量回写slot：只有当Redis中的版本号仍等于快照读取时的版本号才写入新值，
+     * 不需要逐桩加锁，期间被其他操作修改过的桩会写入失败并返回给调用方处理。
+     * actor模式下本节点持有的桩在内存中比较并写入。
+     * @param expected 读取时的slot快照（不能被修改过）
+     * @param updated  要写入的新slot
+     * @return 写入失败的桩ID
+     */
+    public Set<Long> compareAndSetSlots(Map<Long, ChargingStationSlot> expected, Map<Long, ChargingStationSlot> updated) {
+        if (updated == null || updated.isEmpty()) return Collections.emptySet();
+        Set<Long> failed = new HashSet<>();
+        Map<Long, ChargingStationSlot> remote = updated;
+        if (actors != null) {
+            Map<Long, ChargingStationSlot> local = new LinkedHashMap<>();
+            remote = new LinkedHashMap<>();
+            for (Map.Entry<Long, ChargingStationSlot> entry : updated.entrySet()) {
+                (isActorOwned(entry.getKey()) ? local : remote).put(entry.getKey(), entry.getValue());
+            }
+            // 分片刚被释放的桩同样返回失败，由调用方走加锁兜底
+            failed.addAll(actors.compareAndSetAll(expected, local));
+        }
+        if (remote.isEmpty()) return failed;
+
+        List<Long> ids = new ArrayList<>(remote.keySet());
+        List<Long> expectedVersions = new ArrayList<>(ids.size());
+        List<ChargingStationSlot> updatedValues = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ChargingStationSlot snapshot = expected.get(id);
+            expectedVersions.add(snapshot == null ? null : snapshot.getVersion());
+            updatedValues.add(remote.get(id));
+        }
+        failed.addAll(compareAndSetRaw(ids, expectedVersions, updatedValues, false));
+        return failed;
+    }
+
+    /**
+     * 订单按顺序追加到slot队尾并累加其负载，一次脚本调用完成。
+     * 桩关闭/故障时不接收；超出队列上限的订单不接收；已在队列中的订单计为接收但不重复累加负载
+     * @param maxQueueLength 队列上限，null为不限
+     * @return 按顺序接收的订单数（前n个被接收）
+     */
+    public int appendOrders(Long stationId, List<Order> orders, BigDecimal power, Integer maxQueueLength) {
+        if (orders.isEmpty()) return 0;
+        if (isActorOwned(stationId)) {
+            int[] accepted = new int[1];
+            try {
+                actors.update(stationId, slot -> accepted[0] = appendOrdersTo(slot, orders, power, maxQueueLength));
+                return accepted[0];
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，直接写Redis
+            }
+        }
+        List<String> args = new ArrayList<>(orders.size() * 3 + 2);
+        args.add("append");
+        args.add(maxQueueLength == null ? "" : String.valueOf(maxQueueLength));
+        for (Order order : orders) {
+            args.add(order.getId());
+            args.add(String.valueOf(ChargeLoad.remainingSeconds(order, power)));
+            args.add(String.valueOf(ChargeLoad.remainingEnergy(order)));
+        }
+        return (int) Math.max(0L, updateFields(stationId, args));
+    }
+
+    /**
+     * 订单移出slot队列，确实在队列中时扣减其剩余负载
+     * @return 订单是否在队列中
+     */
+    public boolean removeOrder(Long stationId, Order order, BigDecimal power) {
+        if (isActorOwned(stationId)) {
+            boolean[] removed = new boolean[1];
+            try {
+                actors.update(stationId, slot -> removed[0] = removeOrderFrom(slot, order, power));
+                return removed[0];
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，直接写Redis
+            }
+        }
+        return updateFields(stationId, Arrays.asList("remove", order.getId(),
+                String.valueOf(-ChargeLoad.remainingSeconds(order, power)),
+                String.valueOf(-ChargeLoad.remainingEnergy(order)))) > 0;
+    }
+
+    /**
+     * 订单完结时更新slot：移出队列、扣减其剩余负载、累计本次充电数据并把桩置为空闲，一次脚本调用完成
+     */
+    public void recordSettlement(Long stationId, Order order, BigDecimal power) {
+        if (isActorOwned(stationId)) {
+            try {
+                actors.update(stationId, slot -> applySettlement(slot, order, power));
+                return;
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，直接写Redis
+            }
+        }
+        updateFields(stationId, Arrays.asList("settle", order.getId(),
+                String.valueOf(-ChargeLoad.remainingSeconds(order, power)),
+                String.valueOf(-ChargeLoad.remainingEnergy(order)),
+                String.valueOf(order.getChargeDuration()),
+                String.valueOf(actualChargeOf(order))));
+    }
+
+    /**
+     * 直接修改桩状态，不检查当前状态
+     */
+    public void setStatus(Long stationId, int status) {
+        if (isActorOwned(stationId)) {
+            try {
+                actors.update(stationId, slot -> {
+                    if (slot.getStatus() == null) slot.setStatus(new ChargingStationStatus());
+                    slot.getStatus().setStatus(status);
+                });
+                return;
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，直接写Redis
+            }
+        }
+        updateFields(stationId, Arrays.asList("status", String.valueOf(status)));
+    }
+
+    /**
+     * 深拷贝slot，用于在不破坏快照的前提下计算新状态
+     */
+    public ChargingStationSlot copySlot(ChargingStationSlot slot) {
+        if (slot == null) return null;
+        ChargingStationSlot copy = new ChargingStationSlot();
+        if (slot.getStatus() != null) {
+            ChargingStationStatus status = new ChargingStationStatus();
+            status.setStatus(slot.getStatus().getStatus());
+            status.setCurrentChargeCount(slot.getStatus().getCurrentChargeCount());
+            status.setCurrentChargeTime(slot.getStatus().getCurrentChargeTime());
+            status.setCurrentChargeAmount(slot.getStatus().getCurrentChargeAmount());
+            copy.setStatus(status);
+        }
+        copy.setWaitingTime(slot.getWaitingTime());
+        copy.setRemainingEnergy(slot.getRemainingEnergy());
+        copy.setQueue(slot.getQueue() == null ? new ArrayList<>() : new ArrayList<>(slot.getQueue()));
+        copy.setVersion(slot.getVersion());
+        return copy;
+    }
+
+    /**
+     * 订单加入slot队列时累加其负载（剩余充电秒数、剩余电量）
+     */
+    public void addOrderLoad(ChargingStationSlot slot, Order order, BigDecimal power) {
+        adjustLoad(slot, ChargeLoad.remainingSeconds(order, power), ChargeLoad.remainingEnergy(order));
+    }
+
+    /**
+     * 订单移出slot队列时扣减其剩余负载
+     */
+    public void removeOrderLoad(ChargingStationSlot slot, Order order, BigDecimal power) {
+        adjustLoad(slot, -ChargeLoad.remainingSeconds(order, power), -ChargeLoad.remainingEnergy(order));
+    }
+
+    /**
+     * 增减slot的等待时长和剩余电量，不低于0（偏差由定期对账修正）
+     */
+    public void adjustLoad(ChargingStationSlot slot, long seconds, long energy) {
+        if (slot == null) return;
+        long waitingTime = slot.getWaitingTime() == null ? 0L : slot.getWaitingTime();
+        long remainingEnergy = slot.getRemainingEnergy() == null ? 0L : slot.getRemainingEnergy();
+        slot.setWaitingTime(Math.max(0L, waitingTime + seconds));
+        slot.setRemainingEnergy(Math.max(0L, remainingEnergy + energy));
     }
 
     /**
-     * 原子地更新充电桩slot状态，确保并发安全
+     * 订单完结时对内存中slot的修改（与 {@link #recordSettlement} 的脚本一致）：
+     * 移出队列、扣减其剩余负载并累计本次充电数据
+     * @param power 充电桩功率，用于折算订单剩余的等待时长
+     */
+    public void applySettlement(ChargingStationSlot slot, Order order, BigDecimal power) {
+        if (slot == null) return;
+
+        removeOrderFrom(slot, order, power);
+
+        ChargingStationStatus status = slot.getStatus();
+        if (status != null) {
+            status.setStatus(0); // 0-空闲中
+            status.setCurrentChargeCount((status.getCurrentChargeCount() == null ? 0 : status.getCurrentChargeCount()) + 1);
+            status.setCurrentChargeTime((status.getCurrentChargeTime() == null ? 0L : status.getCurrentChargeTime()) + order.getChargeDuration());
+            status.setCurrentChargeAmount((status.getCurrentChargeAmount() == null ? 0.0 : status.getCurrentChargeAmount()) + actualChargeOf(order));
+            slot.setStatus(status);
+        }
+    }
+
+    /**
+     * 原子地更新充电桩slot状态，用于需要先检查再修改的操作（管理员操作、调度兜底）。
+     * 加锁后读取、修改并按版本号提交，提交时与字段级修改冲突则重新读取重做，
+     * 因此updater只应修改传入的slot，副作用放到调用之后。
+     * actor模式下本节点持有的桩投递到该桩的邮箱串行执行，不加锁；写回冲突时同样会重放修改。
      * @param stationId 桩ID
      * @param updater   对slot的操作
      */
     public void updateSlotWithLock(Long stationId, Consumer<ChargingStationSlot> updater) {
+        if (isActorOwned(stationId)) {
+            try {
+                actors.update(stationId, updater);
+                return;
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，改走加锁路径
+            }
+        }
         String lockKey = SLOT_LOCK_PREFIX + stationId;
         RLock lock = redissonClient.getLock(lockKey);
         boolean locked = false;
+        long lockedAt = 0L;
         try {
+            long waitStart = System.nanoTime();
             locked = lock.tryLock(10, 10, TimeUnit.SECONDS);
-            if (locked) {
-                ChargingStationSlot slot = getSlot(stationId);
-                if (slot != null) {
-                    updater.accept(slot);
-                    setSlot(stationId, slot);
-                }
-            } else {
+            lockedAt = System.nanoTime();
+            lockWaitTimer.record(lockedAt - waitStart, TimeUnit.NANOSECONDS);
+            if (TimeUnit.NANOSECONDS.toMillis(lockedAt - waitStart) >= SLOW_LOCK_WAIT_MILLIS) {
+                log.warn("充电桩slot等锁过久: stationId={}, waitMs={}, locked={}",
+                        stationId, TimeUnit.NANOSECONDS.toMillis(lockedAt - waitStart), locked);
+            }
+            if (!locked) {
                 throw new RuntimeException("无法获得充电桩slot的更新锁：" + stationId);
             }
+            for (int attempt = 0; attempt < LOCKED_UPDATE_MAX_ATTEMPTS; attempt++) {
+                ChargingStationSlot slot = readSlots(Collections.singletonList(stationId)).get(stationId);
+                if (slot == null) return;
+                Long version = slot.getVersion();
+                updater.accept(slot);
+                if (compareAndSetRaw(Collections.singletonList(stationId), Collections.singletonList(version),
+                        Collections.singletonList(slot), false).isEmpty()) {
+                    return;
+                }
+            }
+            throw new RuntimeException("充电桩slot更新冲突过多：" + stationId);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("尝试加锁被中断:" + stationId, e);
         } finally {
             if (locked && lock.isHeldByCurrentThread()) {
                 lock.unlock();
+                lockHoldTimer.record(System.nanoTime() - lockedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 与 {@link #updateSlotWithLock} 相同，用于修改成功后即产生外部副作用的操作（调度推进保存订单进度、结算充满的订单）：
+     * actor模式下写回冲突时不重新执行updater，而是把本次修改的差异叠加到重新加载的slot上，避免已结算的订单回到队首被再次充电。
+     * 加锁路径在返回前完成提交，重试时重新执行updater不受影响
+     */
+    public void updateSlotByDelta(Long stationId, Consumer<ChargingStationSlot> updater) {
+        if (isActorOwned(stationId)) {
+            try {
+                actors.updateByDelta(stationId, updater);
+                return;
+            } catch (SlotActors.EvictedException ignore) {
+                // 分片刚被释放，改走加锁路径
+            }
+        }
+        updateSlotWithLock(stationId, updater);
+    }
+
+    // 与 slot_field_update.lua 的 append 一致
+    private int appendOrdersTo(ChargingStationSlot slot, List<Order> orders, BigDecimal power, Integer maxQueueLength) {
+        Integer status = slot.getStatus() == null ? null : slot.getStatus().getStatus();
+        if (status == null || status == 2 || status == 3) return 0;
+        if (slot.getQueue() == null) slot.setQueue(new ArrayList<>());
+        int capacity = maxQueueLength == null ? orders.size() : maxQueueLength - slot.getQueue().size();
+        int accepted = 0;
+        for (Order order : orders) {
+            if (accepted >= capacity) break;
+            if (!slot.getQueue().contains(order.getId())) {
+                slot.getQueue().add(order.getId());
+                addOrderLoad(slot, order, power);
+            }
+            accepted++;
+        }
+        return accepted;
+    }
+
+    private boolean removeOrderFrom(ChargingStationSlot slot, Order order, BigDecimal power) {
+        if (slot.getQueue() != null && slot.getQueue().remove(order.getId())) {
+            removeOrderLoad(slot, order, power);
+            return true;
+        }
+        return false;
+    }
+
+    private static double actualChargeOf(Order order) {
+        return order.getActualCharge() != null ? order.getActualCharge().doubleValue() : 0.0;
+    }
+
+    // 执行字段级修改脚本；新格式不存在时可能仍是旧格式，迁移后重试一次
+    private long updateFields(Long stationId, List<String> args) {
+        List<String> keys = Arrays.asList(stateKey(stationId), queueKey(stationId));
+        Long result = stringRedisTemplate.execute(FIELD_UPDATE_SCRIPT, keys, args.toArray());
+        if (result != null && result < 0 && !migrateLegacySlots(Collections.singletonList(stationId)).isEmpty()) {
+            result = stringRedisTemplate.execute(FIELD_UPDATE_SCRIPT, keys, args.toArray());
+        }
+        return result == null ? -1L : result;
+    }
+
+    /**
+     * 一次管道往返读取各桩的状态hash和排队list，新格式不存在的桩再按旧格式读取并迁移
+     */
+    private Map<Long, ChargingStationSlot> readSlots(Collection<Long> stationIds) {
+        if (stationIds.isEmpty()) return Collections.emptyMap();
+        List<Long> ids = new ArrayList<>(stationIds);
+        Map<Long, ChargingStationSlot> result = pipelinedRead(ids);
+        if (result.size() < ids.size()) {
+            List<Long> missing = new ArrayList<>();
+            for (Long id : ids) {
+                if (!result.containsKey(id)) missing.add(id);
             }
+            result.putAll(migrateLegacySlots(missing));
         }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, ChargingStationSlot> pipelinedRead(List<Long> ids) {
+        List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                connection.hashCommands().hGetAll(raw(stateKey(id)));
+                connection.listCommands().lRange(raw(queueKey(id)), 0, -1);
+            }
+            return null;
+        });
+        Map<Long, ChargingStationSlot> result = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Map<String, String> state = (Map<String, String>) replies.get(2 * i);
+            List<String> queue = (List<String>) replies.get(2 * i + 1);
+            if (state != null && !state.isEmpty()) {
+                result.put(ids.get(i), decode(state, queue));
+            }
+        }
+        return result;
+    }
+
+    // 一次管道往返读取各桩状态hash中的版本号
+    private Map<Long, Long> readVersions(Collection<Long> stationIds) {
+        List<Long> ids = new ArrayList<>(stationIds);
+        List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                connection.hashCommands().hGet(raw(stateKey(id)), raw(VERSION));
+            }
+            return null;
+        });
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object version = replies.get(i);
+            if (version != null) result.put(ids.get(i), Long.valueOf(version.toString()));
+        }
+        return result;
+    }
+
+    /**
+     * 旧格式（整体存放在 slot:id）迁移为新格式，迁移成功后删除旧key；
+     * 并发迁移时以先写入者为准，返回迁移后重新读取的slot
+     */
+    private Map<Long, ChargingStationSlot> migrateLegacySlots(List<Long> stationIds) {
+        List<String> keys = new ArrayList<>(stationIds.size());
+        for (Long id : stationIds) {
+            keys.add(LEGACY_SLOT_KEY_PREFIX + id);
+        }
+        List<ChargingStationSlot> legacy = slotRedisTemplate.opsForValue().multiGet(keys);
+        if (legacy == null) return Collections.emptyMap();
+
+        List<Long> ids = new ArrayList<>();
+        List<ChargingStationSlot> slots = new ArrayList<>();
+        for (int i = 0; i < stationIds.size(); i++) {
+            if (legacy.get(i) != null) {
+                ids.add(stationIds.get(i));
+                slots.add(legacy.get(i));
+            }
+        }
+        if (ids.isEmpty()) return Collections.emptyMap();
+
+        // 期望版本为null：新格式已存在（被并发迁移或写入）的桩不覆盖
+        compareAndSetRaw(ids, Collections.nCopies(ids.size(), null), slots, false);
+        List<String> legacyKeys = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            legacyKeys.add(LEGACY_SLOT_KEY_PREFIX + id);
+        }
+        stringRedisTemplate.delete(legacyKeys);
+        log.info("slot迁移为hash+list格式: stations={}", ids);
+        return pipelinedRead(ids);
+    }
+
+    /**
+     * @param expectedVersions 期望的版本号，null表示slot应不存在
+     * @param updated          新值，null表示删除
+     * @param force            不比较版本号直接写入
+     */
+    @SuppressWarnings("unchecked")
+    private Set<Long> compareAndSetRaw(List<Long> ids, List<Long> expectedVersions, List<ChargingStationSlot> updated,
+                                       boolean force) {
+        List<String> keys = new ArrayList<>(ids.size() * 2);
+        List<String> args = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            keys.add(stateKey(ids.get(i)));
+            keys.add(queueKey(ids.get(i)));
+            Long expectedVersion = expectedVersions.get(i);
+            args.add(force ? "*" : expectedVersion == null ? "" : String.valueOf(expectedVersion));
+            encode(updated.get(i), args);
+        }
+
+        List<Long> failedIndexes = stringRedisTemplate.execute(COMPARE_AND_SET_SCRIPT, keys, args.toArray());
+        if (failedIndexes == null || failedIndexes.isEmpty()) return Collections.emptySet();
+        Set<Long> failed = new HashSet<>();
+        for (Long index : failedIndexes) {
+            failed.add(ids.get(index.intValue() - 1));
+        }
+        return failed;
+    }
+
+    // 按 slot_compare_and_set.lua 的参数顺序写出：是否保留、各字段（空串表示无此字段）、队列长度、队列
+    private static void encode(ChargingStationSlot slot, List<String> args) {
+        if (slot == null) {
+            args.add("0");
+            args.addAll(Collections.nCopies(6, ""));
+            args.add("0");
+            return;
+        }
+        ChargingStationStatus status = slot.getStatus();
+        args.add("1");
+        args.add(status == null ? "" : text(status.getStatus()));
+        args.add(status == null ? "" : text(status.getCurrentChargeCount()));
+        args.add(status == null ? "" : text(status.getCurrentChargeTime()));
+        args.add(status == null ? "" : text(status.getCurrentChargeAmount()));
+        args.add(text(slot.getWaitingTime()));
+        args.add(text(slot.getRemainingEnergy()));
+        List<String> queue = slot.getQueue() == null ? Collections.emptyList() : slot.getQueue();
+        args.add(String.valueOf(queue.size()));
+        args.addAll(queue);
+    }
+
+    private static ChargingStationSlot decode(Map<String, String> state, List<String> queue) {
+        ChargingStationSlot slot = new ChargingStationSlot();
+        if (state.containsKey(STATUS) || state.containsKey(CHARGE_COUNT)
+                || state.containsKey(CHARGE_TIME) || state.containsKey(CHARGE_AMOUNT)) {
+            ChargingStationStatus status = new ChargingStationStatus();
+            status.setStatus(state.containsKey(STATUS) ? Integer.valueOf(state.get(STATUS)) : null);
+            status.setCurrentChargeCount(state.containsKey(CHARGE_COUNT) ? Integer.valueOf(state.get(CHARGE_COUNT)) : null);
+            status.setCurrentChargeTime(state.containsKey(CHARGE_TIME) ? Long.valueOf(state.get(CHARGE_TIME)) : null);
+            status.setCurrentChargeAmount(state.containsKey(CHARGE_AMOUNT) ? Double.valueOf(state.get(CHARGE_AMOUNT)) : null);
+            slot.setStatus(status);
+        }
+        slot.setWaitingTime(state.containsKey(WAITING_TIME) ? Long.valueOf(state.get(WAITING_TIME)) : null);
+        slot.setRemainingEnergy(state.containsKey(REMAINING_ENERGY) ? Long.valueOf(state.get(REMAINING_ENERGY)) : null);
+        slot.setVersion(state.containsKey(VERSION) ? Long.valueOf(state.get(VERSION)) : null);
+        slot.setQueue(queue == null ? new ArrayList<>() : new ArrayList<>(queue));
+        return slot;
+    }
+
+    private static String text(Object value) {
+        return value == null ? "" : String.valueOf(value);
+    }
+
+    private boolean isActorOwned(Long stationId) {
+        return actors != null && stationId != null && shardLeaseService.owns(stationId);
+    }
+
+    private static String stateKey(Long stationId) {
+        return SLOT_STATE_KEY_PREFIX + stationId;
+    }
+
+    private static String queueKey(Long stationId) {
+        return SLOT_QUEUE_KEY_PREFIX + stationId;
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,262 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.zhuzhu_charging_station_backend.dto.ChargingMetricResponse;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.exception.BadStateException;
+import org.zhuzhu_charging_station_backend.util.TariffPeriod;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * 充电指标汇总：结算入库时把订单累加到 分钟/小时/天 三级桶（charging_metric表），
+ * 区间查询只读汇总桶，不扫描订单表。
+ * 订单按结束时间归入桶；电量和充电费按订单逐秒累计的峰/平/谷分项拆分，
+ * 没有分项的旧订单按其在各时段的充电时长比例拆分。
+ */
+@Service
+@RequiredArgsConstructor
+public class MetricService {
+
+    // 单次查询最多返回的桶数
+    private static final int MAX_BUCKETS = 10000;
+    private static final int SCALE = 2;
+
+    private static final String UPSERT_SQL = "INSERT INTO charging_metric (granularity, bucket_start, station_id, mode, " +
+            "order_count, charge_duration, energy, peak_energy, normal_energy, valley_energy, " +
+            "charge_fee, peak_charge_fee, normal_charge_fee, valley_charge_fee, service_fee, total_fee) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), " +
+            "charge_duration = charge_duration + VALUES(charge_duration), energy = energy + VALUES(energy), " +
+            "peak_energy = peak_energy + VALUES(peak_energy), normal_energy = normal_energy + VALUES(normal_energy), " +
+            "valley_energy = valley_energy + VALUES(valley_energy), charge_fee = charge_fee + VALUES(charge_fee), " +
+            "peak_charge_fee = peak_charge_fee + VALUES(peak_charge_fee), normal_charge_fee = normal_charge_fee + VALUES(normal_charge_fee), " +
+            "valley_charge_fee = valley_charge_fee + VALUES(valley_charge_fee), service_fee = service_fee + VALUES(service_fee), " +
+            "total_fee = total_fee + VALUES(total_fee)";
+    private static final String SUM_COLUMNS = "SUM(order_count) AS order_count, SUM(charge_duration) AS charge_duration, " +
+            "SUM(energy) AS energy, SUM(peak_energy) AS peak_energy, SUM(normal_energy) AS normal_energy, " +
+            "SUM(valley_energy) AS valley_energy, SUM(charge_fee) AS charge_fee, SUM(peak_charge_fee) AS peak_charge_fee, " +
+            "SUM(normal_charge_fee) AS normal_charge_fee, SUM(valley_charge_fee) AS valley_charge_fee, " +
+            "SUM(service_fee) AS service_fee, SUM(total_fee) AS total_fee";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public enum Granularity {
+        MINUTE(ChronoUnit.MINUTES),
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public LocalDateTime truncate(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+
+        public Duration getDuration() {
+            return unit.getDuration();
+        }
+    }
+
+    /**
+     * 把已结算订单累加进各级汇总桶，需在订单入库的同一事务内调用，保证只累计一次
+     */
+    public void record(Collection<Order> orders) {
+        Map<String, Bucket> buckets = new LinkedHashMap<>();
+        for (Order order : orders) {
+            if (order.getChargingStationId() == null) continue;
+            LocalDateTime time = order.getStopTime() != null ? order.getStopTime() : order.getRecordTime();
+            if (time == null) continue;
+            OrderSplit split = split(order);
+            for (Granularity granularity : Granularity.values()) {
+                LocalDateTime bucketStart = granularity.truncate(time);
+                String key = granularity.ordinal() + ":" + order.getChargingStationId() + ":" + bucketStart;
+                buckets.computeIfAbsent(key, k -> new Bucket(granularity, bucketStart, order.getChargingStationId(), order.getMode()))
+                        .add(order, split);
+            }
+        }
+        if (buckets.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(buckets.size());
+        for (Bucket b : buckets.values()) {
+            args.add(new Object[]{b.granularity.ordinal(), Timestamp.valueOf(b.bucketStart), b.stationId, b.mode,
+                    b.orderCount, b.chargeDuration, b.energy, b.periodEnergy[TariffPeriod.PEAK.ordinal()],
+                    b.periodEnergy[TariffPeriod.NORMAL.ordinal()], b.periodEnergy[TariffPeriod.VALLEY.ordinal()],
+                    b.chargeFee, b.periodChargeFee[TariffPeriod.PEAK.ordinal()], b.periodChargeFee[TariffPeriod.NORMAL.ordinal()],
+                    b.periodChargeFee[TariffPeriod.VALLEY.ordinal()], b.serviceFee, b.totalFee});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+    }
+
+    /**
+     * 查询单个充电桩在 [from, to) 内的各桶指标
+     */
+    public List<ChargingMetricResponse> getStationMetrics(Long stationId, Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        checkRange(granularity, from, to);
+        return jdbcTemplate.query("SELECT bucket_start, station_id, mode, order_count, charge_duration, energy, peak_energy, " +
+                        "normal_energy, valley_energy, charge_fee, peak_charge_fee, normal_charge_fee, valley_charge_fee, " +
+                        "service_fee, total_fee FROM charging_metric " +
+                        "WHERE granularity = ? AND station_id = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start",
+                METRIC_ROW_MAPPER, granularity.ordinal(), stationId, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * 按桶汇总全部充电桩在 [from, to) 内的指标
+     * @param mode 充电模式，为空时汇总全部模式
+     */
+    public List<ChargingMetricResponse> getTotalMetrics(Integer mode, Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        checkRange(granularity, from, to);
+        if (mode == null) {
+            return jdbcTemplate.query("SELECT bucket_start, NULL AS station_id, NULL AS mode, " + SUM_COLUMNS +
+                            " FROM charging_metric WHERE granularity = ? AND bucket_start >= ? AND bucket_start < ? " +
+                            "GROUP BY bucket_start ORDER BY bucket_start",
+                    METRIC_ROW_MAPPER, granularity.ordinal(), Timestamp.valueOf(from), Timestamp.valueOf(to));
+        }
+        return jdbcTemplate.query("SELECT bucket_start, NULL AS station_id, mode, " + SUM_COLUMNS +
+                        " FROM charging_metric WHERE granularity = ? AND mode = ? AND bucket_start >= ? AND bucket_start < ? " +
+                        "GROUP BY bucket_start, mode ORDER BY bucket_start",
+                METRIC_ROW_MAPPER, granularity.ordinal(), mode, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * 删除早于指定时间的某级汇总桶，分批删除避免长事务
+     * @return 删除的行数
+     */
+    public int prune(Granularity granularity, LocalDateTime before, int batchSize) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("DELETE FROM charging_metric WHERE granularity = ? AND bucket_start < ? LIMIT " + batchSize,
+                    granularity.ordinal(), Timestamp.valueOf(before));
+            total += deleted;
+        } while (deleted >= batchSize);
+        return total;
+    }
+
+    private static void checkRange(Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new BadStateException("查询区间不合法");
+        }
+        long buckets = Duration.between(from, to).toMillis() / granularity.getDuration().toMillis();
+        if (buckets > MAX_BUCKETS) {
+            throw new BadStateException("查询区间过大，请使用更粗的统计粒度");
+        }
+    }
+
+    private static OrderSplit split(Order order) {
+        if (order.getPeakCharge() != null && order.getNormalCharge() != null && order.getValleyCharge() != null) {
+            OrderSplit split = new OrderSplit();
+            split.energy = new BigDecimal[]{order.getPeakCharge(), order.getNormalCharge(), order.getValleyCharge()};
+            split.chargeFee = new BigDecimal[]{zeroIfNull(order.getPeakChargeFee()),
+                    zeroIfNull(order.getNormalChargeFee()), zeroIfNull(order.getValleyChargeFee())};
+            return split;
+        }
+        return splitByDuration(order);
+    }
+
+    // 按订单在各时段的充电时长拆分电量和充电费，尾差计入最后一个时段，保证拆分之和等于总量
+    private static OrderSplit splitByDuration(Order order) {
+        long[] seconds = TariffPeriod.splitSeconds(order.getStartTime(), order.getStopTime());
+        long totalSeconds = 0;
+        for (long s : seconds) totalSeconds += s;
+        if (totalSeconds == 0) {
+            LocalDateTime time = order.getStopTime() != null ? order.getStopTime() : order.getRecordTime();
+            seconds[TariffPeriod.of(time.toLocalTime()).ordinal()] = 1;
+            totalSeconds = 1;
+        }
+        OrderSplit split = new OrderSplit();
+        split.energy = proportion(zeroIfNull(order.getActualCharge()), seconds, totalSeconds);
+        split.chargeFee = proportion(zeroIfNull(order.getChargeFee()), seconds, totalSeconds);
+        return split;
+    }
+
+    private static BigDecimal[] proportion(BigDecimal total, long[] weights, long totalWeight) {
+        BigDecimal[] parts = new BigDecimal[weights.length];
+        BigDecimal assigned = BigDecimal.ZERO;
+        int last = -1;
+        for (int i = 0; i < weights.length; i++) {
+            parts[i] = total.multiply(BigDecimal.valueOf(weights[i]))
+                    .divide(BigDecimal.valueOf(totalWeight), SCALE, RoundingMode.HALF_UP);
+            assigned = assigned.add(parts[i]);
+            if (weights[i] > 0) last = i;
+        }
+        parts[last] = parts[last].add(total.setScale(SCALE, RoundingMode.HALF_UP).subtract(assigned));
+        return parts;
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+
+    private static final RowMapper<ChargingMetricResponse> METRIC_ROW_MAPPER = (rs, rowNum) -> {
+        ChargingMetricResponse metric = new ChargingMetricResponse();
+        metric.setBucketStart(rs.getTimestamp("bucket_start").toLocalDateTime());
+        metric.setStationId(rs.getObject("station_id") == null ? null : rs.getLong("station_id"));
+        metric.setMode(rs.getObject("mode") == null ? null : rs.getInt("mode"));
+        metric.setOrderCount(rs.getInt("order_count"));
+        metric.setChargeDuration(rs.getLong("charge_duration"));
+        metric.setEnergy(rs.getBigDecimal("energy"));
+        metric.setPeakEnergy(rs.getBigDecimal("peak_energy"));
+        metric.setNormalEnergy(rs.getBigDecimal("normal_energy"));
+        metric.setValleyEnergy(rs.getBigDecimal("valley_energy"));
+        metric.setChargeFee(rs.getBigDecimal("charge_fee"));
+        metric.setPeakChargeFee(rs.getBigDecimal("peak_charge_fee"));
+        metric.setNormalChargeFee(rs.getBigDecimal("normal_charge_fee"));
+        metric.setValleyChargeFee(rs.getBigDecimal("valley_charge_fee"));
+        metric.setServiceFee(rs.getBigDecimal("service_fee"));
+        metric.setTotalFee(rs.getBigDecimal("total_fee"));
+        return metric;
+    };
+
+    private static class OrderSplit {
+        private BigDecimal[] energy;
+        private BigDecimal[] chargeFee;
+    }
+
+    // 一批订单在同一个桶内的累加值
+    private static class Bucket {
+        private final Granularity granularity;
+        private final LocalDateTime bucketStart;
+        private final Long stationId;
+        private final Integer mode;
+        private int orderCount;
+        private long chargeDuration;
+        private BigDecimal energy = BigDecimal.ZERO;
+        private final BigDecimal[] periodEnergy = {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+        private BigDecimal chargeFee = BigDecimal.ZERO;
+        private final BigDecimal[] periodChargeFee = {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+        private BigDecimal serviceFee = BigDecimal.ZERO;
+        private BigDecimal totalFee = BigDecimal.ZERO;
+
+        private Bucket(Granularity granularity, LocalDateTime bucketStart, Long stationId, Integer mode) {
+            this.granularity = granularity;
+            this.bucketStart = bucketStart;
+            this.stationId = stationId;
+            this.mode = mode;
+        }
+
+        private void add(Order order, OrderSplit split) {
+            orderCount++;
+            chargeDuration += order.getChargeDuration() == null ? 0L : order.getChargeDuration();
+            energy = energy.add(zeroIfNull(order.getActualCharge()));
+            chargeFee = chargeFee.add(zeroIfNull(order.getChargeFee()));
+            serviceFee = serviceFee.add(zeroIfNull(order.getServiceFee()));
+            totalFee = totalFee.add(zeroIfNull(order.getTotalFee()));
+            for (int i = 0; i < periodEnergy.length; i++) {
+                periodEnergy[i] = periodEnergy[i].add(split.energy[i]);
+                periodChargeFee[i] = periodChargeFee[i].add(split.chargeFee[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.entity.OrderArchiveSummary;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * 订单归档：把早于保留期的已完成/已取消订单从 `order` 表移到按月分区的 order_archive 表（压缩行格式），
+ * 热表只保留近期订单，索引和缓冲池都更小；过期的月份分区可以整体删除，不需要逐行DELETE。
+ * 每批订单的搬移、汇总累加和删除在一个短事务内完成，批与批之间不持有锁。
+ * 历史查询由 {@link OrderService} 按同一排序合并热表和归档表，对调用方透明。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderArchiveService {
+
+    public static final int SCOPE_USER = 0;
+    public static final int SCOPE_STATION = 1;
+
+    private static final YearMonth FIRST_PARTITION_MONTH = YearMonth.of(2024, 1);
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String MAX_PARTITION = "p_max";
+
+    private static final String COLUMNS = "id, user_id, charging_station_id, mode, record_time, status, " +
+            "charge_amount, actual_charge, charge_duration, start_time, stop_time, charge_fee, service_fee, total_fee, " +
+            "peak_charge, normal_charge, valley_charge, peak_charge_fee, normal_charge_fee, valley_charge_fee";
+    // 按 (record_time, id) 正序取一批并加锁，走 idx_order_time；只有已完成、已取消的订单会入库
+    private static final String SELECT_BATCH_SQL = "SELECT " + COLUMNS + " FROM `order` " +
+            "WHERE record_time < ? AND status IN (0, 4) ORDER BY record_time, id LIMIT ? FOR UPDATE";
+    private static final String UPSERT_SUMMARY_SQL = "INSERT INTO order_archive_summary (scope, owner_id, " +
+            "order_count, completed_count, cancelled_count, charge_duration, energy, charge_fee, service_fee, total_fee, " +
+            "first_record_time, last_record_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), " +
+            "completed_count = completed_count + VALUES(completed_count), cancelled_count = cancelled_count + VALUES(cancelled_count), " +
+            "charge_duration = charge_duration + VALUES(charge_duration), energy = energy + VALUES(energy), " +
+            "charge_fee = charge_fee + VALUES(charge_fee), service_fee = service_fee + VALUES(service_fee), " +
+            "total_fee = total_fee + VALUES(total_fee), " +
+            "first_record_time = LEAST(first_record_time, VALUES(first_record_time)), " +
+            "last_record_time = GREATEST(last_record_time, VALUES(last_record_time))";
+
+    private static final RowMapper<Order> ORDER_MAPPER = new BeanPropertyRowMapper<>(Order.class);
+    private static final RowMapper<OrderArchiveSummary> SUMMARY_MAPPER = new BeanPropertyRowMapper<>(OrderArchiveSummary.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+
+    /**
+     * 建归档表（分区表需要显式DDL，不由JPA建表）
+     */
+    @PostConstruct
+    public void init() {
+        new ResourceDatabasePopulator(new ClassPathResource("sql/order_archive.sql")).execute(jdbcTemplate.getDataSource());
+    }
+
+    /**
+     * 确保生成时间早于 before 的订单都有对应的月份分区：从 p_max 依次拆出缺少的月份。
+     * 拆分时 p_max 中没有数据（归档前总会先拆分），REORGANIZE 只改元数据
+     */
+    public void ensurePartitions(LocalDateTime before) {
+        List<String> names = jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'order_archive' AND PARTITION_NAME IS NOT NULL", String.class);
+        if (!names.contains(MAX_PARTITION)) return; // 表未分区
+        YearMonth next = FIRST_PARTITION_MONTH;
+        for (String name : names) {
+            if (name.matches("p\\d{6}")) {
+                YearMonth following = YearMonth.parse(name.substring(1), PARTITION_MONTH).plusMonths(1);
+                if (following.isAfter(next)) next = following;
+            }
+        }
+        YearMonth last = YearMonth.from(before);
+        while (!next.isAfter(last)) {
+            YearMonth upper = next.plusMonths(1);
+            jdbcTemplate.execute(String.format("ALTER TABLE order_archive REORGANIZE PARTITION %s INTO (" +
+                            "PARTITION p%s VALUES LESS THAN ('%s 00:00:00'), PARTITION %s VALUES LESS THAN (MAXVALUE))",
+                    MAX_PARTITION, next.format(PARTITION_MONTH), upper.atDay(1), MAX_PARTITION));
+            log.info("新建订单归档分区: p{}", next.format(PARTITION_MONTH));
+            next = upper;
+        }
+    }
+
+    /**
+     * 归档一批生成时间早于 before 的订单，一个事务内：加锁读出、复制到归档表、累加汇总、从热表删除
+     * @return 本批归档的订单数，小于 batchSize 表示已归档完
+     */
+    public int archiveBatch(LocalDateTime before, int batchSize) {
+        Integer moved = transactionTemplate.execute(status -> {
+            List<Order> orders = jdbcTemplate.query(SELECT_BATCH_SQL, ORDER_MAPPER, Timestamp.valueOf(before), batchSize);
+            if (orders.isEmpty()) return 0;
+            List<Object> ids = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                ids.add(order.getId());
+            }
+            String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+            List<Object> insertArgs = new ArrayList<>(ids.size() + 1);
+            insertArgs.add(Timestamp.valueOf(LocalDateTime.now(clock)));
+            insertArgs.addAll(ids);
+            jdbcTemplate.update("INSERT INTO order_archive (" + COLUMNS + ", archived_at) SELECT " + COLUMNS + ", ? " +
+                    "FROM `order` WHERE id IN (" + placeholders + ")", insertArgs.toArray());
+            jdbcTemplate.batchUpdate(UPSERT_SUMMARY_SQL, summarize(orders));
+            jdbcTemplate.update("DELETE FROM `order` WHERE id IN (" + placeholders + ")", ids.toArray());
+            return orders.size();
+        });
+        return moved == null ? 0 : moved;
+    }
+
+    /**
+     * 归档表中最晚的订单生成时间，归档表为空时返回null
+     */
+    public LocalDateTime latestRecordTime() {
+        Timestamp latest = jdbcTemplate.queryForObject("SELECT MAX(record_time) FROM order_archive", Timestamp.class);
+        return latest == null ? null : latest.toLocalDateTime();
+    }
+
+    /**
+     * 按生成时间倒序读取归档订单的一页，排序和游标含义与热表一致
+     * @param userId 用户ID，null为全部用户
+     * @param after  游标位置（只用生成时间和ID），null为第一页
+     */
+    public List<Order> findPage(Long userId, Order after, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM order_archive WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (userId != null) {
+            sql.append(" AND user_id = ?");
+            args.add(userId);
+        }
+        if (after != null) {
+            Timestamp recordTime = Timestamp.valueOf(after.getRecordTime());
+            sql.append(" AND (record_time < ? OR (record_time = ? AND id < ?))");
+            args.add(recordTime);
+            args.add(recordTime);
+            args.add(after.getId());
+        }
+        sql.append(" ORDER BY record_time DESC, id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), ORDER_MAPPER, args.toArray());
+    }
+
+    /**
+     * 按ID查询归档订单
+     */
+    public Order findById(String orderId) {
+        List<Order> orders = jdbcTemplate.query("SELECT " + COLUMNS + " FROM order_archive WHERE id = ?", ORDER_MAPPER, orderId);
+        return orders.isEmpty() ? null : orders.get(0);
+    }
+
+    /**
+     * 查询用户或充电桩的归档汇总，没有归档订单时返回null
+     * @param scope {@link #SCOPE_USER} 或 {@link #SCOPE_STATION}
+     */
+    public OrderArchiveSummary getSummary(int scope, Long ownerId) {
+        List<OrderArchiveSummary> rows = jdbcTemplate.query("SELECT * FROM order_archive_summary WHERE scope = ? AND owner_id = ?",
+                SUMMARY_MAPPER, scope, ownerId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // 按用户、充电桩聚合本批订单，每个维度一行
+    private static List<Object[]> summarize(List<Order> orders) {
+        Map<String, Totals> totals = new LinkedHashMap<>();
+        for (Order order : orders) {
+            totals.computeIfAbsent(SCOPE_USER + ":" + order.getUserId(), k -> new Totals(SCOPE_USER, order.getUserId())).add(order);
+            if (order.getChargingStationId() != null) {
+                totals.computeIfAbsent(SCOPE_STATION + ":" + order.getChargingStationId(),
+                        k -> new Totals(SCOPE_STATION, order.getChargingStationId())).add(order);
+            }
+        }
+        List<Object[]> args = new ArrayList<>(totals.size());
+        for (Totals t : totals.values()) {
+            args.add(new Object[]{t.scope, t.ownerId, t.orderCount, t.completedCount, t.cancelledCount, t.chargeDuration,
+                    t.energy, t.chargeFee, t.serviceFee, t.totalFee,
+                    Timestamp.valueOf(t.firstRecordTime), Timestamp.valueOf(t.lastRecordTime)});
+        }
+        return args;
+    }
+
+    private static BigDecimal nz(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+
+    private static class Totals {
+        final int scope;
+        final Long ownerId;
+        int orderCount;
+        int completedCount;
+        int cancelledCount;
+        long chargeDuration;
+        BigDecimal energy = BigDecimal.ZERO;
+        BigDecimal chargeFee = BigDecimal.ZERO;
+        BigDecimal serviceFee = BigDecimal.ZERO;
+        BigDecimal totalFee = BigDecimal.ZERO;
+        LocalDateTime firstRecordTime;
+        LocalDateTime lastRecordTime;
+
+        Totals(int scope, Long ownerId) {
+            this.scope = scope;
+            this.ownerId = ownerId;
+        }
+
+        void add(Order order) {
+            orderCount++;
+            if (order.getStatus() == 0) completedCount++;
+            if (order.getStatus() == 4) cancelledCount++;
+            chargeDuration += order.getChargeDuration() == null ? 0L : order.getChargeDuration();
+            energy = energy.add(nz(order.getActualCharge()));
+            chargeFee = chargeFee.add(nz(order.getChargeFee()));
+            serviceFee = serviceFee.add(nz(order.getServiceFee()));
+            totalFee = totalFee.add(nz(order.getTotalFee()));
+            LocalDateTime time = order.getRecordTime();
+            if (firstRecordTime == null || time.isBefore(firstRecordTime)) firstRecordTime = time;
+            if (lastRecordTime == null || time.isAfter(lastRecordTime)) lastRecordTime = time;
+        }
+    }
+}
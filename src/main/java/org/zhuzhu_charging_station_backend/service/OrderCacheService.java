@@ -1,26 +1,79 @@
 package org.zhuzhu_charging_station_backend.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 import org.zhuzhu_charging_station_backend.entity.Order;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class OrderCacheService {
 
     private static final String ORDER_KEY_PREFIX = "order:";
+    // 索引key不能以"order:"开头，否则会被 order:* 的扫描误当成订单
+    private static final String USER_INDEX_PREFIX = "order-index:user:";
+    private static final String ACTIVE_INDEX_KEY = "order-index:active";
+    private static final int REBUILD_BATCH_SIZE = 500;
 
     private final RedisTemplate<String, Order> orderRedisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
 
     /**
-     * 存储订单到Redis
+     * 存储订单到Redis，同时维护用户索引和全局活跃订单索引（MULTI/EXEC 原子提交），
+     * 并在同一事务内发布订单变更事件
      */
     public void saveOrder(Order order) {
         if (order == null || order.getId() == null) return;
-        orderRedisTemplate.opsForValue().set(buildOrderKey(order.getId()), order);
+        saveOrders(Collections.singletonList(order));
+    }
+
+    /**
+     * 批量存储订单，所有订单和索引在一次事务中写入
+     */
+    public void saveOrders(Collection<Order> orders) {
+        saveOrders(orders, null);
+    }
+
+    /**
+     * 批量存储订单，并在同一事务内追加调用方的写操作（如写入结算流），保证二者同时生效
+     */
+    public void saveOrders(Collection<Order> orders, Consumer<RedisConnection> alsoInTransaction) {
+        if (orders == null || orders.isEmpty()) return;
+        RedisSerializer<Order> valueSerializer = orderValueSerializer();
+        byte[] channel = raw(OrderEventPublisher.ORDER_EVENT_CHANNEL);
+        orderRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.multi();
+            for (Order order : orders) {
+                if (order == null || order.getId() == null) continue;
+                byte[] orderId = raw(order.getId());
+                byte[] value = valueSerializer.serialize(order);
+                connection.stringCommands().set(raw(buildOrderKey(order.getId())), value);
+                connection.publish(channel, value);
+                if (order.getUserId() != null) {
+                    connection.setCommands().sAdd(raw(buildUserIndexKey(order.getUserId())), orderId);
+                }
+                connection.setCommands().sAdd(raw(ACTIVE_INDEX_KEY), orderId);
+            }
+            if (alsoInTransaction != null) {
+                alsoInTransaction.accept(connection);
+            }
+            connection.exec();
+            return null;
+        });
     }
 
     /**
@@ -31,32 +84,41 @@ public class OrderCacheService {
         return orderRedisTemplate.opsForValue().get(buildOrderKey(orderId));
     }
 
-    public List<Order> getAllOrdersByUser(Long userId) {
-        Set<String> keys = orderRedisTemplate.keys("order:*");
-        if (keys == null || keys.isEmpty()) return Collections.emptyList();
-
-        List<Order> result = new ArrayList<>();
-        for (String key : keys) {
-            Order order = orderRedisTemplate.opsForValue().get(key);
-            if (order != null && Objects.equals(order.getUserId(), userId)) {
-                result.add(order);
+    /**
+     * 一次MGET批量获取订单，返回 订单ID -> 订单（缓存中不存在的订单不会出现在结果里）
+     */
+    public Map<String, Order> getOrders(Collection<String> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) return Collections.emptyMap();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        List<String> keys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            keys.add(buildOrderKey(id));
+        }
+        List<Order> values = orderRedisTemplate.opsForValue().multiGet(keys);
+        Map<String, Order> result = new LinkedHashMap<>();
+        if (values == null) return result;
+        for (int i = 0; i < ids.size(); i++) {
+            Order order = values.get(i);
+            if (order != null) {
+                result.put(ids.get(i), order);
             }
         }
         return result;
     }
 
-    public List<Order> getAllOrders() {
-        Set<String> keys = orderRedisTemplate.keys("order:*");
-        if (keys == null || keys.isEmpty()) return Collections.emptyList();
+    /**
+     * 通过用户索引读取该用户的缓存订单：SMEMBERS + 一次MGET
+     */
+    public List<Order> getAllOrdersByUser(Long userId) {
+        if (userId == null) return Collections.emptyList();
+        return readIndex(buildUserIndexKey(userId));
+    }
 
-        List<Order> result = new ArrayList<>();
-        for (String key : keys) {
-            Order order = orderRedisTemplate.opsForValue().get(key);
-            if (order != null) {
-                result.add(order);
-            }
-        }
-        return result;
+    /**
+     * 通过全局活跃订单索引读取全部缓存订单：SMEMBERS + 一次MGET
+     */
+    public List<Order> getAllOrders() {
+        return readIndex(ACTIVE_INDEX_KEY);
     }
 
     /**
@@ -64,7 +126,76 @@ public class OrderCacheService {
      */
     public void deleteOrder(String orderId) {
         if (orderId == null) return;
-        orderRedisTemplate.delete(buildOrderKey(orderId));
+        Order order = getOrder(orderId);
+        if (order == null) {
+            // 订单本体已不存在，仅清理全局索引（用户索引会在读取时惰性修复）
+            orderRedisTemplate.delete(buildOrderKey(orderId));
+            stringRedisTemplate.opsForSet().remove(ACTIVE_INDEX_KEY, orderId);
+            return;
+        }
+        deleteOrder(order);
+    }
+
+    /**
+     * 从Redis删除订单及其索引（MULTI/EXEC 原子提交）
+     */
+    public void deleteOrder(Order order) {
+        if (order == null || order.getId() == null) return;
+        orderRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            byte[] orderId = raw(order.getId());
+            connection.multi();
+            connection.keyCommands().del(raw(buildOrderKey(order.getId())));
+            if (order.getUserId() != null) {
+                connection.setCommands().sRem(raw(buildUserIndexKey(order.getUserId())), orderId);
+            }
+            connection.setCommands().sRem(raw(ACTIVE_INDEX_KEY), orderId);
+            connection.exec();
+            return null;
+        });
+    }
+
+    /**
+     * 根据已有的 order:* 数据修复索引：SCAN 增量遍历（不阻塞Redis），
+     * 补齐缺失的索引成员并清理指向已删除订单的成员。只做增删成员，运行期间并发写入不受影响。
+     * @return 扫描到的订单数
+     */
+    public long rebuildIndexes() {
+        long scanned = 0;
+        List<String> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().match(ORDER_KEY_PREFIX + "*").count(REBUILD_BATCH_SIZE).build();
+        try (Cursor<byte[]> cursor = orderRedisTemplate.executeWithStickyConnection(
+                (RedisCallback<Cursor<byte[]>>) connection -> connection.keyCommands().scan(options))) {
+            while (cursor != null && cursor.hasNext()) {
+                batch.add(new String(cursor.next(), StandardCharsets.UTF_8).substring(ORDER_KEY_PREFIX.length()));
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    scanned += repairBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            scanned += repairBatch(batch);
+        }
+        // 清理全局索引中已不存在的订单（用户索引在读取时惰性清理）
+        readIndex(ACTIVE_INDEX_KEY);
+        return scanned;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIndexesOnStartup() {
+        try {
+            long count = rebuildIndexes();
+            log.info("订单索引修复完成: orders={}", count);
+        } catch (Exception e) {
+            log.error("订单索引修复失败", e);
+        }
+    }
+
+    /**
+     * 按订单缓存的格式序列化，供需要在脚本中原子写入订单的调用方使用
+     */
+    public byte[] serializeOrder(Order order) {
+        return orderValueSerializer().serialize(order);
     }
 
     /**
@@ -73,4 +204,50 @@ public class OrderCacheService {
     public String buildOrderKey(String orderId) {
         return ORDER_KEY_PREFIX + orderId;
     }
-}
\ No newline at end of file
+
+    private String buildUserIndexKey(Long userId) {
+        return USER_INDEX_PREFIX + userId;
+    }
+
+    private long repairBatch(List<String> orderIds) {
+        Map<String, Order> orders = getOrders(orderIds);
+        if (orders.isEmpty()) return 0;
+        orderRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            for (Order order : orders.values()) {
+                byte[] orderId = raw(order.getId());
+                if (order.getUserId() != null) {
+                    connection.setCommands().sAdd(raw(buildUserIndexKey(order.getUserId())), orderId);
+                }
+                connection.setCommands().sAdd(raw(ACTIVE_INDEX_KEY), orderId);
+            }
+            connection.closePipeline();
+            return null;
+        });
+        return orders.size();
+    }
+
+    /**
+     * 读取索引集合对应的订单，顺带移除已失效的索引成员
+     */
+    private List<Order> readIndex(String indexKey) {
+        Set<String> orderIds = stringRedisTemplate.opsForSet().members(indexKey);
+        if (orderIds == null || orderIds.isEmpty()) return Collections.emptyList();
+
+        Map<String, Order> orders = getOrders(orderIds);
+        if (orders.size() < orderIds.size()) {
+            Object[] stale = orderIds.stream().filter(id -> !orders.containsKey(id)).toArray();
+            stringRedisTemplate.opsForSet().remove(indexKey, stale);
+        }
+        return new ArrayList<>(orders.values());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Order> orderValueSerializer() {
+        return (RedisSerializer<Order>) orderRedisTemplate.getValueSerializer();
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 订单变更事件：通过Redis发布订阅广播到所有节点，由WebSocket推送给订阅该订单的会话。
+ * 缓存中订单的写入在 {@link OrderCacheService#saveOrders} 的事务内一并发布，
+ * 不经过缓存写入的变更（完结、取消、脚本内写入等）由调用方显式发布。
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderEventPublisher {
+
+    public static final String ORDER_EVENT_CHANNEL = "order-events";
+
+    private final RedisTemplate<String, Order> orderRedisTemplate;
+
+    public void publish(Order order) {
+        if (order == null || order.getId() == null) return;
+        publish(Collections.singletonList(order));
+    }
+
+    /**
+     * 批量发布，一次管道提交
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(Collection<Order> orders) {
+        if (orders == null || orders.isEmpty()) return;
+        RedisSerializer<Order> serializer = (RedisSerializer<Order>) orderRedisTemplate.getValueSerializer();
+        byte[] channel = ORDER_EVENT_CHANNEL.getBytes(StandardCharsets.UTF_8);
+        orderRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Order order : orders) {
+                if (order == null || order.getId() == null) continue;
+                connection.publish(channel, serializer.serialize(order));
+            }
+            return null;
+        });
+    }
+}
@@ -1,41 +1,71 @@
 package org.zhuzhu_charging_station_backend.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.zhuzhu_charging_station_backend.dto.OrderPageResponse;
 import org.zhuzhu_charging_station_backend.dto.OrderUpsertRequest;
 import org.zhuzhu_charging_station_backend.entity.Order;
-import org.zhuzhu_charging_station_backend.entity.User;
-import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
 import org.zhuzhu_charging_station_backend.exception.BadStateException;
 import org.zhuzhu_charging_station_backend.repository.OrderRepository;
-import org.zhuzhu_charging_station_backend.repository.UserRepository;
 import org.zhuzhu_charging_station_backend.util.IdGenerator;
 import org.zhuzhu_charging_station_backend.util.JwtTokenUtil;
 import org.zhuzhu_charging_station_backend.exception.NotFoundException;
 import org.zhuzhu_charging_station_backend.exception.ForbiddenException;
 
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class OrderService {
+    public static final int MAX_PAGE_SIZE = 100;
+    // 订单历史的排序：生成时间倒序，同一时间按ID倒序
+    private static final Comparator<Order> HISTORY_ORDER =
+            Comparator.comparing(Order::getRecordTime).thenComparing(Order::getId).reversed();
+
     private final QueueService queueService;
     private final OrderCacheService orderCacheService;
     private final OrderRepository orderRepository;
-    private final UserRepository userRepository;
     private final JwtTokenUtil jwtTokenUtil;
-    private final ChargingStationService chargingStationService;
     private final ChargingStationSlotService chargingStationSlotService;
+    private final SettlementService settlementService;
+    private final ChargingStationService chargingStationService;
+    private final IdGenerator idGenerator;
+    private final OrderArchiveService orderArchiveService;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    @Autowired
+    private EntityManager entityManager;
+    // 导出时每页读取的订单数
+    @Value("${order.export.batch-size:1000}")
+    private int exportBatchSize;
+
+    // 订单完结（出队、更新slot、写入结算流）的耗时
+    private Timer settlementTimer;
+
+    @PostConstruct
+    public void initMeters() {
+        settlementTimer = Timer.builder("order.settlement").description("订单完结耗时").register(meterRegistry);
+    }
 
     /**
-     * 新建或修改订单，自动分配（新）排队号并存入redis
+     * 新建或修改订单，自动分配（新）排队号并存入redis；只能修改仍在等待区的订单
      */
     public Order upsertOrder(OrderUpsertRequest req, String token) {
         Long userId = jwtTokenUtil.extractUserId(token);
@@ -43,11 +73,11 @@ public class OrderService {
         boolean isNew = (req.getId() == null);
 
         if (isNew) {
-            String orderId = IdGenerator.generateUniqueOrderId(orderRepository, 10);
+            String orderId = idGenerator.nextOrderId();
             order = new Order();
             order.setId(orderId);
             order.setUserId(userId);
-            order.setRecordTime(LocalDateTime.now());
+            order.setRecordTime(LocalDateTime.now(clock));
             order.setStatus(3);
         } else {
             order = orderCacheService.getOrder(req.getId());
@@ -57,11 +87,15 @@ public class OrderService {
             if (!userId.equals(order.getUserId())) {
                 throw new ForbiddenException("无权限操作他人订单！");
             }
+            // 只有等待区中的订单可以修改；已分配、充电中的订单以及结算后仍留在缓存中待入库的订单不能重新排队
+            if (order.getStatus() == null || order.getStatus() != 3) {
+                throw new BadStateException("订单当前状态不可修改！");
+            }
             queueService.removeOrderFromQueueWithLock(order.getMode(), order.getId());
         }
         order.setMode(req.getMode());
         order.setChargeAmount(req.getChargeAmount());
-        order.setQueueNo(queueService.assignQueueNoWithLock(order.getMode(), order.getMode() == 1 ? "F" : "T"));
+        order.setQueueNo(queueService.assignQueueNo(order.getMode(), order.getMode() == 1 ? "F" : "T", order.getId()));
         queueService.addOrderToQueueWithLock(order.getMode(), order.getId());
         orderCacheService.saveOrder(order);
         return order;
@@ -76,6 +110,9 @@ public class OrderService {
         if (order == null) {
             // Cache未命中，去数据库查
             order = orderRepository.findById(orderId).orElse(null);
+            if (order == null) {
+                order = orderArchiveService.findById(orderId);
+            }
             if (order == null) {
                 throw new NotFoundException("订单不存在！");
             }
@@ -87,49 +124,121 @@ public class OrderService {
     }
 
     /**
-     * 查询所有用户订单
+     * 按生成时间倒序分页查询订单历史（游标分页），数据库按 (record_time, id) 索引只读取一页，
+     * 页内可能含有归档订单时再读取归档表的一页，缓存中尚未入库或比数据库更新的订单按同一排序合并进来（缓存优先）
+     * @param userId 用户ID，null为全部用户
+     * @param cursor 上一页返回的游标，null为第一页
+     * @param limit  每页条数，不超过 {@value #MAX_PAGE_SIZE}
      */
-    public List<Order> getAllOrdersByUser(Long userId) {
-
-        // 1. 数据库所有订单
-        List<Order> dbOrders = orderRepository.findByUserId(userId);
+    public OrderPageResponse getOrderPage(Long userId, String cursor, int limit) {
+        return loadPage(userId, decodeCursor(cursor), Math.max(1, Math.min(limit, MAX_PAGE_SIZE)), cachedHistory(userId));
+    }
 
-        // 2. 缓存所有订单
-        List<Order> cachedOrders = orderCacheService.getAllOrdersByUser(userId);
+    /**
+     * 按生成时间倒序逐页遍历订单（用于导出），每页处理完即释放，内存占用与历史订单总数无关；
+     * 缓存中的订单在开始时读取一次（只有活跃订单），各页按游标从中截取
+     * @param userId 用户ID，null为全部用户
+     */
+    public void forEachOrder(Long userId, Consumer<Order> action) {
+        List<Order> cached = cachedHistory(userId);
+        String cursor = null;
+        do {
+            OrderPageResponse page = loadPage(userId, decodeCursor(cursor), exportBatchSize, cached);
+            page.getOrders().forEach(action);
+            // 导出请求内的持久化上下文会一直累积实体，逐页清空
+            entityManager.clear();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
 
-        // 3. 合并，去重（按order id去重，缓存优先生效）
-        Map<String, Order> orderMap = new HashMap<>();
-        for (Order o : dbOrders) {
-            orderMap.put(o.getId(), o);
+    // 缓存中的订单，按历史排序
+    private List<Order> cachedHistory(Long userId) {
+        List<Order> cached = userId != null ? orderCacheService.getAllOrdersByUser(userId) : orderCacheService.getAllOrders();
+        List<Order> result = new ArrayList<>(cached.size());
+        for (Order o : cached) {
+            if (o.getRecordTime() != null) result.add(o);
         }
-        for (Order o : cachedOrders) {
-            orderMap.put(o.getId(), o); // cache覆盖db
+        result.sort(HISTORY_ORDER);
+        return result;
+    }
+
+    // 已排序的缓存订单中游标之后的前 limit+1 条（多取一条用于判断是否还有下一页）
+    private static List<Order> cachedAfter(List<Order> cached, Order after, int limit) {
+        int from = 0;
+        if (after != null) {
+            int low = 0;
+            int high = cached.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (HISTORY_ORDER.compare(cached.get(mid), after) > 0) high = mid;
+                else low = mid + 1;
+            }
+            from = low;
         }
-        // 如果你想cache中的覆盖db中的
-        return new ArrayList<>(orderMap.values());
+        return cached.subList(from, Math.min(cached.size(), from + limit + 1));
     }
 
     /**
-     * 查询所有用户订单
+     * @param cached 缓存中的订单，已按历史排序
      */
-    public List<Order> getAllOrders() {
-
-        // 1. 数据库所有订单
-        List<Order> dbOrders = orderRepository.findAll();
-
-        // 2. 缓存所有订单
-        List<Order> cachedOrders = orderCacheService.getAllOrders();
+    private OrderPageResponse loadPage(Long userId, Order after, int limit, List<Order> cached) {
+        Pageable pageable = PageRequest.of(0, limit);
+        List<Order> dbOrders;
+        if (userId != null) {
+            dbOrders = after == null ? orderRepository.findUserPage(userId, pageable)
+                    : orderRepository.findUserPageAfter(userId, after.getRecordTime(), after.getId(), pageable);
+        } else {
+            dbOrders = after == null ? orderRepository.findPage(pageable)
+                    : orderRepository.findPageAfter(after.getRecordTime(), after.getId(), pageable);
+        }
+        List<Order> archivedOrders = mayReachArchive(dbOrders, limit)
+                ? orderArchiveService.findPage(userId, after, limit) : Collections.emptyList();
+        List<Order> cachedOrders = cachedAfter(cached, after, limit);
 
-        // 3. 合并，去重（按order id去重，缓存优先生效）
+        // 合并，按order id去重（缓存覆盖热表覆盖归档），只保留游标之后的
         Map<String, Order> orderMap = new HashMap<>();
+        for (Order o : archivedOrders) {
+            orderMap.put(o.getId(), o);
+        }
         for (Order o : dbOrders) {
             orderMap.put(o.getId(), o);
         }
         for (Order o : cachedOrders) {
-            orderMap.put(o.getId(), o); // cache覆盖db
+            orderMap.put(o.getId(), o);
+        }
+        List<Order> merged = new ArrayList<>(orderMap.values());
+        merged.sort(HISTORY_ORDER);
+        boolean hasMore = dbOrders.size() >= limit || archivedOrders.size() >= limit || merged.size() > limit;
+        List<Order> orders = merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        String nextCursor = hasMore && !orders.isEmpty() ? encodeCursor(orders.get(orders.size() - 1)) : null;
+        return new OrderPageResponse(orders, nextCursor);
+    }
+
+    // 归档的都是早于保留期的订单：热表这一页不满，或这一页的最后一条不晚于归档表中最新的订单时，页内才可能有归档订单
+    private boolean mayReachArchive(List<Order> dbOrders, int limit) {
+        LocalDateTime latestArchived = orderArchiveService.latestRecordTime();
+        if (latestArchived == null) return false;
+        return dbOrders.size() < limit || !dbOrders.get(dbOrders.size() - 1).getRecordTime().isAfter(latestArchived);
+    }
+
+    // 游标：最后一条的 生成时间|订单ID，Base64编码对调用方不透明
+    private static String encodeCursor(Order last) {
+        String raw = last.getRecordTime() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Order decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            Order after = new Order();
+            after.setRecordTime(LocalDateTime.parse(raw.substring(0, separator)));
+            after.setId(raw.substring(separator + 1));
+            return after;
+        } catch (RuntimeException e) {
+            throw new BadStateException("分页游标无效！");
         }
-        // 如果你想cache中的覆盖db中的
-        return new ArrayList<>(orderMap.values());
     }
 
     /**
@@ -156,17 +265,12 @@ public class OrderService {
             // 2. 移除slot队列
             if (order.getChargingStationId() != null) {
                 Long stationId = order.getChargingStationId();
-                chargingStationSlotService.updateSlotWithLock(stationId, slot -> {
-                    if (slot != null && slot.getQueue() != null) {
-                        slot.getQueue().remove(orderId);
-                    }
-                });
+                chargingStationSlotService.removeOrder(stationId, order, getStationPower(stationId));
             }
 
-            // 3. 修改/删除本地/缓存订单
+            // 3. 缓存中标记为已取消并写入结算流（与完结相同的写后入库，不计入统计），订单变更事件随缓存写入一并发布
             order.setStatus(4); // 4: 已取消
-            orderRepository.save(order);
-            orderCacheService.deleteOrder(orderId);
+            settlementService.enqueue(order);
 
             return order;
         }
@@ -191,59 +295,63 @@ public class OrderService {
     }
 
     /**
-     * 完结订单，移除所有相关队列，更新slot及报表，同步缓存和数据库。
+     * 完结订单，移除所有相关队列，更新slot，写入结算流（报表和数据库异步批量更新）。
      */
     public Order settleOrder(String orderId) {
         Order order = orderCacheService.getOrder(orderId);
         if (order == null) throw new NotFoundException("订单不存在");
+        return settleOrder(order, true);
+    }
 
-        // 1. 移除全局排队队列
-        queueService.removeOrderFromQueueWithLock(order.getMode(), orderId);
-
-        // 2. slot更新
-        Long stationId = order.getChargingStationId();
-        chargingStationSlotService.updateSlotWithLock(stationId, slot -> {
-            if (slot == null) return;
-
-            if (slot.getQueue() != null) {
-                slot.getQueue().remove(orderId);
-            }
+    /**
+     * 完结订单
+     * @param order 待完结的订单
+     * @param updateSlot 是否更新slot；批量调度已在内存中对slot执行过 {@link #applySettlementToSlot} 时传false
+     */
+    public Order settleOrder(Order order, boolean updateSlot) {
+        String orderId = order.getId();
+        long start = System.nanoTime();
+        try {
+            // 1. 移除全局排队队列
+            queueService.removeOrderFromQueueWithLock(order.getMode(), orderId);
 
-            ChargingStationStatus status = slot.getStatus();
-            if (status != null) {
-                status.setStatus(0); // 0-空闲中
-                status.setCurrentChargeCount((status.getCurrentChargeCount() == null ? 0 : status.getCurrentChargeCount()) + 1);
-                status.setCurrentChargeTime((status.getCurrentChargeTime() == null ? 0L : status.getCurrentChargeTime()) + order.getChargeDuration());
-                status.setCurrentChargeAmount((status.getCurrentChargeAmount() == null ? 0.0 : status.getCurrentChargeAmount()) +
-                        (order.getActualCharge() != null ? order.getActualCharge().doubleValue() : 0.0));
-                slot.setStatus(status);
+            // 2. slot更新
+            Long stationId = order.getChargingStationId();
+            if (updateSlot) {
+                chargingStationSlotService.recordSettlement(stationId, order, getStationPower(stationId));
             }
-        });
 
-        // 3. 订单状态及时间
-        order.setStatus(0); // 0:已完成
-        order.setStopTime(LocalDateTime.now());
+            // 3. 订单状态及时间，定点计量状态换算回金额字段
+            order.closeMeter();
+            order.setStatus(0); // 0:已完成
+            order.setStopTime(LocalDateTime.now(clock));
 
-        // 4. 用户累计信息更新
-        User user = userRepository.findById(order.getUserId()).orElseThrow(() -> new NotFoundException("用户不存在"));
-        user.setTotalChargeCount(user.getTotalChargeCount() + 1);
-        user.setTotalChargeAmount(user.getTotalChargeAmount().add(order.getActualCharge()));
-        user.setTotalChargeDuration(user.getTotalChargeDuration() + order.getChargeDuration());
-        user.setTotalChargeFee(user.getTotalChargeFee().add(order.getChargeFee()));
-        user.setTotalServiceFee(user.getTotalServiceFee().add(order.getServiceFee()));
-        user.setTotalFee(user.getTotalFee().add(order.getTotalFee()));
-        userRepository.save(user);
+            // 4. 缓存中标记为已完成并写入结算流；订单入库、用户累计信息、充电桩报表由后台批量刷入
+            //    订单变更事件随缓存写入一并发布
+            settlementService.enqueue(order);
+            log.info("订单完成: orderId={}, userId={}", order.getId(), order.getUserId());
 
-        // 5. 缓存同步&入库
-        orderCacheService.deleteOrder(orderId);
-        orderRepository.save(order);
-
-        // 6. 充电桩报表更新
-        chargingStationService.updateReportInfo(stationId, order);
+            return order;
+        } finally {
+            settlementTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
 
-        // 7. 发消息/推送
-        log.info("订单完成: orderId={}, userId={}", order.getId(), order.getUserId());
+    /**
+     * 订单完结时对slot的修改：移出队列、扣减其剩余负载并累计本次充电数据
+     * @param power 充电桩功率，用于折算订单剩余的等待时长
+     */
+    public void applySettlementToSlot(ChargingStationSlot slot, Order order, BigDecimal power) {
+        chargingStationSlotService.applySettlement(slot, order, power);
+    }
 
-        return order;
+    // 充电桩已删除时返回null，此时只扣减剩余电量
+    private BigDecimal getStationPower(Long stationId) {
+        if (stationId == null) return null;
+        try {
+            return chargingStationService.getChargingStationBase(stationId).getPower();
+        } catch (NotFoundException e) {
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
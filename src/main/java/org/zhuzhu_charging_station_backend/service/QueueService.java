@@ -1,26 +1,64 @@
 package org.zhuzhu_charging_station_backend.service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 import org.zhuzhu_charging_station_backend.entity.Order;
 
-import java.util.List;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class QueueService {
 
     private static final String FAST_QUEUE_KEY = "queue:fast";
     private static final String SLOW_QUEUE_KEY = "queue:slow";
 
+    // 队列操作均为服务端Lua脚本，单次往返内原子完成，无需再加分布式锁
+    private static final DefaultRedisScript<Long> ENQUEUE_SCRIPT = loadScript("lua/queue_enqueue.lua");
+    private static final DefaultRedisScript<Long> PUSH_HEAD_SCRIPT = loadScript("lua/queue_push_head.lua");
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = loadScript("lua/queue_remove.lua");
+    private static final DefaultRedisScript<Long> RELEASE_ORDERS_SCRIPT = loadScript("lua/queue_release_orders.lua");
+    private static final DefaultRedisScript<Long> ASSIGN_NO_SCRIPT = loadScript("lua/queue_assign_no.lua");
+    private static final DefaultRedisScript<Long> REBUILD_NO_SCRIPT = loadScript("lua/queue_rebuild_no.lua");
+    private static final String QUEUE_NO_KEY_PREFIX = "queue-no:";
+    private static final int RELEASE_MAX_ATTEMPTS = 10;
+    // 脚本返回整数，不经过反序列化
+    private static final RedisSerializer<Long> LONG_RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
     @Autowired
     private RedisTemplate<String, String> longRedisTemplate;
-    private final RedissonClient redissonClient;
     private final OrderCacheService orderCacheService;
+    private final OrderEventPublisher orderEventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 各模式等待队列长度的指标 queue.depth，采集时读取
+     */
+    @PostConstruct
+    public void registerQueueGauges() {
+        for (int mode : new int[]{1, 0}) {
+            Gauge.builder("queue.depth", this, service -> service.getQueueLength(mode))
+                    .tag("mode", mode == 1 ? "fast" : "slow")
+                    .description("等待区队列中的订单数")
+                    .register(meterRegistry);
+        }
+    }
 
     /**
      * 通过mode获取队列key
@@ -31,89 +69,109 @@ public class QueueService {
     }
 
     /**
-     * 获取排队号（形如F1,RF3,T2,RT5），带分布式锁保证并发安全
-     * 会从当前队列所有订单id中挑前缀相同的最大编号+1
+     * 排队号登记集合的key，每个模式的每个前缀一个
+     */
+    private String getQueueNoKey(int mode, String prefix) {
+        return QUEUE_NO_KEY_PREFIX + getQueueKey(mode) + ":" + prefix;
+    }
+
+    private List<String> getQueueNoPrefixes(int mode) {
+        return mode == 1 ? Arrays.asList("F", "RF") : Arrays.asList("T", "RT");
+    }
+
+    /**
+     * 获取排队号（形如F1,RF3,T2,RT5），一次脚本调用完成，与队列长度无关
+     * 取当前在队订单中前缀相同的最大编号+1，并为该订单登记编号，出队时注销
      * @param mode 模式
      * @param prefix 排队号前缀，例: "RF"
+     * @param orderId 订单ID
      */
+    public String assignQueueNo(int mode, String prefix, String orderId) {
+        return prefix + assignQueueNos(mode, prefix, Collections.singletonList(orderId));
+    }
+
+    /**
+     * 原有签名：只查询下一个排队号（该前缀已登记的最大编号+1），不为任何订单登记，也不加锁，
+     * 并发调用可能得到相同的编号
+     * @deprecated 使用 {@link #assignQueueNo(int, String, String)}，分配与登记在一次脚本调用内完成
+     */
+    @Deprecated
     public String assignQueueNoWithLock(int mode, String prefix) {
-        String queueKey = getQueueKey(mode);
-        String lockKey = "lock:queue:" + queueKey;
-        RLock lock = redissonClient.getLock(lockKey);
-        lock.lock();
-        try {
-            int maxNo = 0;
-            List<String> orderIds = longRedisTemplate.opsForList().range(queueKey, 0, -1);
-            if (orderIds != null && !orderIds.isEmpty()) {
-                for (String id : orderIds) {
-                    Order order = orderCacheService.getOrder(id);
-                    if (order == null) continue;
-                    String queueNo = order.getQueueNo();
-                    if (queueNo != null && queueNo.startsWith(prefix)) {
-                        try {
-                            int no = Integer.parseInt(queueNo.substring(prefix.length()));
-                            if (no > maxNo) {
-                                maxNo = no;
-                            }
-                        } catch (NumberFormatException ignore) {}
-                    }
-                }
-            }
-            return prefix + (maxNo + 1);
-        } finally {
-            lock.unlock();
+        Set<ZSetOperations.TypedTuple<String>> top =
+                longRedisTemplate.opsForZSet().reverseRangeWithScores(getQueueNoKey(mode, prefix), 0, 0);
+        long maxNo = 0L;
+        if (top != null && !top.isEmpty()) {
+            Double score = top.iterator().next().getScore();
+            if (score != null) maxNo = score.longValue();
         }
+        return prefix + (maxNo + 1);
     }
 
     /**
-     * 入队（队尾），带分布式锁
+     * 为一批订单按顺序分配连续排队号
+     * @return 第一个订单的编号
+     */
+    private long assignQueueNos(int mode, String prefix, List<String> orderIds) {
+        Long first = longRedisTemplate.execute(ASSIGN_NO_SCRIPT,
+                Collections.singletonList(getQueueNoKey(mode, prefix)), orderIds.toArray());
+        return first == null ? 1L : first;
+    }
+
+    /**
+     * 入队（队尾），单个脚本内先去重再RPUSH。
+     * 方法名沿用原有签名，实际不加锁：只保证这一次队列修改是原子的，与调用方前后的其它读写之间没有互斥
      * @param mode 模式
      * @param orderId 订单ID
      */
     public void addOrderToQueueWithLock(int mode, String orderId) {
-        String queueKey = getQueueKey(mode);
-        String lockKey = "lock:queue:" + queueKey;
-        RLock lock = redissonClient.getLock(lockKey);
-        lock.lock();
-        try {
-            longRedisTemplate.opsForList().rightPush(queueKey, orderId);
-        } finally {
-            lock.unlock();
-        }
+        longRedisTemplate.execute(ENQUEUE_SCRIPT, Collections.singletonList(getQueueKey(mode)), orderId);
     }
 
     /**
-     * 队头插入，带分布式锁
+     * 队头插入，单个脚本内先去重再LPUSH。
+     * 方法名沿用原有签名，实际不加锁：只保证这一次队列修改是原子的，与调用方前后的其它读写之间没有互斥
      * @param mode 模式
      * @param orderId 订单ID
      */
     public void addOrderToQueueHeadWithLock(int mode, String orderId) {
-        String queueKey = getQueueKey(mode);
-        String lockKey = "lock:queue:" + queueKey;
-        RLock lock = redissonClient.getLock(lockKey);
-        lock.lock();
-        try {
-            longRedisTemplate.opsForList().leftPush(queueKey, orderId);
-        } finally {
-            lock.unlock();
-        }
+        longRedisTemplate.execute(PUSH_HEAD_SCRIPT, Collections.singletonList(getQueueKey(mode)), orderId);
     }
 
     /**
-     * 出队/移除，带分布式锁
+     * 出队/移除，单个脚本内LREM并注销排队号。
+     * 方法名沿用原有签名，实际不加锁：只保证这一次队列修改是原子的，与调用方前后的其它读写之间没有互斥
      * @param mode 模式
      * @param orderId 订单ID
      */
     public void removeOrderFromQueueWithLock(int mode, String orderId) {
-        String queueKey = getQueueKey(mode);
-        String lockKey = "lock:queue:" + queueKey;
-        RLock lock = redissonClient.getLock(lockKey);
-        lock.lock();
-        try {
-            longRedisTemplate.opsForList().remove(queueKey, 0, orderId);
-        } finally {
-            lock.unlock();
+        longRedisTemplate.execute(REMOVE_SCRIPT, getRemoveKeys(mode), orderId);
+    }
+
+    /**
+     * 批量出队/移除，一次脚本调用完成
+     * @param mode 模式
+     * @param orderIds 订单ID
+     */
+    public void removeOrdersFromQueue(int mode, Collection<String> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) return;
+        longRedisTemplate.execute(REMOVE_SCRIPT, getRemoveKeys(mode), orderIds.toArray());
+    }
+
+    private List<String> getRemoveKeys(int mode) {
+        List<String> keys = new ArrayList<>();
+        keys.add(getQueueKey(mode));
+        for (String prefix : getQueueNoPrefixes(mode)) {
+            keys.add(getQueueNoKey(mode, prefix));
         }
+        return keys;
+    }
+
+    /**
+     * 查询队列长度
+     */
+    public long getQueueLength(int mode) {
+        Long size = longRedisTemplate.opsForList().size(getQueueKey(mode));
+        return size == null ? 0L : size;
     }
 
     /**
@@ -125,26 +183,106 @@ public class QueueService {
     }
 
     /**
-     * 释放一批订单到等待区队首（RF/RT编号，充电桩释放），带分布式锁
+     * 释放一批订单到等待区队首（RF/RT编号，充电桩释放）
      * 这些订单会分配新的排队号(queueNo)和status、chargingStationId
+     * 分配连续编号、写回订单、按原顺序插入队首在一次脚本调用中原子完成
      * @param orderIds 要释放的订单id列表
      * @param mode 1(快充)/其它(慢充)
      */
     public void releaseOrdersToQueueHead(List<String> orderIds, int mode) {
         if (orderIds == null || orderIds.isEmpty()) return;
 
+        Map<String, Order> orders = orderCacheService.getOrders(orderIds);
+        List<Order> released = new ArrayList<>();
         for (String orderId : orderIds) {
-            Order order = orderCacheService.getOrder(orderId);
+            Order order = orders.get(orderId);
             if (order == null) continue;
-            // 生成新的排队号
-            String prefix = (mode == 1 ? "RF" : "RT");
-            String newQueueNo = assignQueueNoWithLock(mode, prefix);
-            order.setQueueNo(newQueueNo);
             order.setStatus(3); // 重新设置为“等待中”
             order.setChargingStationId(null); // 释放掉绑定
-            orderCacheService.saveOrder(order);
-            // 插入到队首
-            addOrderToQueueHeadWithLock(mode, orderId);
+            released.add(order);
         }
+        if (released.isEmpty()) return;
+
+        String prefix = (mode == 1 ? "RF" : "RT");
+        String queueNoKey = getQueueNoKey(mode, prefix);
+        List<String> keys = new ArrayList<>(released.size() + 2);
+        keys.add(getQueueKey(mode));
+        keys.add(queueNoKey);
+        for (Order order : released) {
+            keys.add(orderCacheService.buildOrderKey(order.getId()));
+        }
+
+        // 乐观分配：按读到的最大编号连续编号后整体提交，期间编号被其他释放占用则重试
+        for (int attempt = 0; attempt < RELEASE_MAX_ATTEMPTS; attempt++) {
+            long maxNo = getMaxQueueNo(queueNoKey);
+            Object[] args = new Object[released.size() * 2 + 1];
+            args[0] = raw(String.valueOf(maxNo));
+            for (int i = 0; i < released.size(); i++) {
+                Order order = released.get(i);
+                order.setQueueNo(prefix + (maxNo + 1 + i));
+                args[1 + i] = raw(order.getId());
+                args[1 + released.size() + i] = orderCacheService.serializeOrder(order);
+            }
+            Long first = longRedisTemplate.execute(RELEASE_ORDERS_SCRIPT,
+                    RedisSerializer.byteArray(), LONG_RESULT_SERIALIZER, keys, args);
+            if (first != null && first > 0) {
+                orderEventPublisher.publish(released);
+                return;
+            }
+        }
+        throw new IllegalStateException("释放订单到等待区失败，排队号竞争过于激烈");
+    }
+
+    private long getMaxQueueNo(String queueNoKey) {
+        Set<ZSetOperations.TypedTuple<String>> top = longRedisTemplate.opsForZSet().reverseRangeWithScores(queueNoKey, 0, 0);
+        if (top == null || top.isEmpty()) return 0L;
+        Double score = top.iterator().next().getScore();
+        return score == null ? 0L : score.longValue();
+    }
+
+    /**
+     * 按当前队列内容补登排队号（升级前已在队的订单没有登记）。各节点启动时都会执行，此时其他节点可能正在分配编号，
+     * 因此不清空重建：每个模式、前缀一次脚本调用，只为仍在队列中且尚未登记的订单登记，已有登记不删除、不覆盖
+     */
+    public void rebuildQueueNos() {
+        for (int mode : new int[]{1, 0}) {
+            List<String> orderIds = getAllOrderIdsInQueue(mode);
+            Map<String, Order> orders = orderCacheService.getOrders(orderIds == null ? Collections.emptyList() : orderIds);
+            for (String prefix : getQueueNoPrefixes(mode)) {
+                List<String> args = new ArrayList<>();
+                for (Order order : orders.values()) {
+                    String queueNo = order.getQueueNo();
+                    if (queueNo == null || !queueNo.startsWith(prefix)) continue;
+                    try {
+                        int no = Integer.parseInt(queueNo.substring(prefix.length()));
+                        args.add(order.getId());
+                        args.add(String.valueOf(no));
+                    } catch (NumberFormatException ignore) {}
+                }
+                if (args.isEmpty()) continue;
+                longRedisTemplate.execute(REBUILD_NO_SCRIPT,
+                        Arrays.asList(getQueueKey(mode), getQueueNoKey(mode, prefix)), args.toArray());
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildQueueNosOnStartup() {
+        try {
+            rebuildQueueNos();
+        } catch (Exception e) {
+            log.error("排队号登记重建失败", e);
+        }
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static DefaultRedisScript<Long> loadScript(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
     }
-}
\ No newline at end of file
+}
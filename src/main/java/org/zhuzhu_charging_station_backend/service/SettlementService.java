@@ -0,0 +1,360 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 结算写后持久化：订单完结或取消时只在Redis中更新订单状态并写入结算流（同一事务），
+ * 订单入库、用户累计信息、充电桩报表由后台批量刷入MySQL。
+ * 结算流使用消费组，入库成功后才确认；节点宕机未确认的记录会被其他节点认领重做。
+ * 入库事务内先查出本批中已入库的订单（重复投递），只插入其余订单并只为它们累加统计和时序指标，
+ * 不依赖驱动返回的逐行影响行数（开启 rewriteBatchedStatements 后为 SUCCESS_NO_INFO）；
+ * 两个刷写线程并发插入同一订单时由主键冲突使其中一批回滚，改为逐条入库时再跳过。
+ * 已取消的订单只入库，不计入统计。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SettlementService {
+
+    public static final String STREAM_KEY = "settlement:stream";
+    private static final String DEAD_LETTER_KEY = "settlement:dead";
+    private static final String GROUP = "settlement-flusher";
+    private static final String ORDER_FIELD = "order";
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_PER_FLUSH = 10;
+    private static final int MAX_DELIVERIES = 10;
+    // 超过该时间未确认的记录视为消费者已失效，可被认领
+    private static final Duration CLAIM_IDLE = Duration.ofSeconds(30);
+
+    private static final String INSERT_ORDER_SQL = "INSERT INTO `order` (id, user_id, charging_station_id, mode, record_time, status, " +
+            "charge_amount, actual_charge, charge_duration, start_time, stop_time, charge_fee, service_fee, total_fee, " +
+            "peak_charge, normal_charge, valley_charge, peak_charge_fee, normal_charge_fee, valley_charge_fee) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_USER_SQL = "UPDATE users SET total_charge_count = total_charge_count + ?, " +
+            "total_charge_amount = total_charge_amount + ?, total_charge_duration = total_charge_duration + ?, " +
+            "total_charge_fee = total_charge_fee + ?, total_service_fee = total_service_fee + ?, total_fee = total_fee + ? " +
+            "WHERE user_id = ?";
+    private static final String UPDATE_STATION_SQL = "UPDATE charging_station SET updated_at = ?, " +
+            "total_charge_count = COALESCE(total_charge_count, 0) + ?, total_charge_time = COALESCE(total_charge_time, 0) + ?, " +
+            "total_charge_amount = COALESCE(total_charge_amount, 0) + ?, total_charge_fee = COALESCE(total_charge_fee, 0) + ?, " +
+            "total_service_fee = COALESCE(total_service_fee, 0) + ?, total_fee = COALESCE(total_fee, 0) + ? " +
+            "WHERE id = ?";
+
+    private final RedisTemplate<String, Order> orderRedisTemplate;
+    private final OrderCacheService orderCacheService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheManager cacheManager;
+    private final MetricService metricService;
+    private final Clock clock;
+
+    // 消费者名，每次启动不同；旧消费者遗留的记录通过认领接管
+    private final String consumerName = "flusher-" + UUID.randomUUID();
+
+    @PostConstruct
+    public void init() {
+        try {
+            orderRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(raw(STREAM_KEY), GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // 消费组已存在（BUSYGROUP）
+            log.debug("结算消费组已存在: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 订单完结或取消：缓存中的订单（已改为已完成/已取消）与结算流记录一次事务提交
+     */
+    public void enqueue(Order order) {
+        orderCacheService.saveOrders(Collections.singletonList(order), connection -> {
+            Map<byte[], byte[]> body = Collections.singletonMap(raw(ORDER_FIELD), orderCacheService.serializeOrder(order));
+            connection.streamCommands().xAdd(StreamRecords.rawBytes(body).withStreamKey(raw(STREAM_KEY)));
+        });
+    }
+
+    /**
+     * 刷一轮：先认领超时未确认的记录，再读取新记录，每批一个数据库事务
+     * @return 本轮入库的订单数
+     */
+    public int flush() {
+        int flushed = 0;
+        flushed += flushRecords(claimStale());
+        for (int i = 0; i < MAX_BATCHES_PER_FLUSH; i++) {
+            List<MapRecord<String, Object, Object>> records = orderRedisTemplate.opsForStream().read(
+                    Consumer.from(GROUP, consumerName),
+                    StreamReadOptions.empty().count(BATCH_SIZE),
+                    StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()));
+            if (records == null || records.isEmpty()) break;
+            flushed += flushRecords(toEntries(records));
+            if (records.size() < BATCH_SIZE) break;
+        }
+        return flushed;
+    }
+
+    // 认领超时未确认的记录（XCLAIM会累加投递次数），投递次数过多的移入死信流
+    private Map<RecordId, Order> claimStale() {
+        PendingMessages pending = orderRedisTemplate.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(), BATCH_SIZE);
+        if (pending == null || pending.isEmpty()) return Collections.emptyMap();
+        List<RecordId> stale = new ArrayList<>();
+        List<RecordId> dead = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(CLAIM_IDLE) < 0) continue;
+            if (message.getTotalDeliveryCount() >= MAX_DELIVERIES) {
+                dead.add(message.getId());
+            } else {
+                stale.add(message.getId());
+            }
+        }
+        if (!dead.isEmpty()) {
+            moveToDeadLetter(dead);
+        }
+        if (stale.isEmpty()) return Collections.emptyMap();
+        List<ByteRecord> claimed = orderRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(raw(STREAM_KEY), GROUP, consumerName,
+                        RedisStreamCommands.XClaimOptions.minIdle(CLAIM_IDLE).ids(stale.toArray(new RecordId[0]))));
+        Map<RecordId, Order> entries = new LinkedHashMap<>();
+        if (claimed == null) return entries;
+        RedisSerializer<?> serializer = orderRedisTemplate.getHashValueSerializer();
+        for (ByteRecord record : claimed) {
+            Object value = null;
+            for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+                if (ORDER_FIELD.equals(new String(field.getKey(), StandardCharsets.UTF_8))) {
+                    value = deserializeQuietly(serializer, field.getValue());
+                }
+            }
+            entries.put(record.getId(), value instanceof Order ? (Order) value : null);
+        }
+        return entries;
+    }
+
+    private Map<RecordId, Order> toEntries(List<MapRecord<String, Object, Object>> records) {
+        Map<RecordId, Order> entries = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Object value = record.getValue().get(ORDER_FIELD);
+            entries.put(record.getId(), value instanceof Order ? (Order) value : null);
+        }
+        return entries;
+    }
+
+    private int flushRecords(Map<RecordId, Order> entries) {
+        if (entries.isEmpty()) return 0;
+        Map<String, Order> orders = new LinkedHashMap<>();
+        for (Map.Entry<RecordId, Order> entry : entries.entrySet()) {
+            Order order = entry.getValue();
+            if (order == null || order.getId() == null) {
+                log.error("无法解析的结算记录，已丢弃: id={}", entry.getKey());
+                continue;
+            }
+            orders.putIfAbsent(order.getId(), order);
+        }
+        List<RecordId> ids = new ArrayList<>(entries.keySet());
+
+        List<Order> inserted;
+        try {
+            inserted = transactionTemplate.execute(status -> persist(new ArrayList<>(orders.values())));
+        } catch (Exception e) {
+            log.error("结算批量入库失败，改为逐条入库: size={}", orders.size(), e);
+            return flushOneByOne(entries);
+        }
+        acknowledge(ids, orders.keySet(), inserted);
+        return inserted == null ? 0 : inserted.size();
+    }
+
+    // 批量失败时逐条入库，避免个别坏记录拖住整批；失败的记录不确认，超时后重新认领
+    private int flushOneByOne(Map<RecordId, Order> entries) {
+        int flushed = 0;
+        for (Map.Entry<RecordId, Order> entry : entries.entrySet()) {
+            Order order = entry.getValue();
+            if (order == null || order.getId() == null) {
+                acknowledge(Collections.singletonList(entry.getKey()), Collections.emptySet(), Collections.emptyList());
+                continue;
+            }
+            try {
+                List<Order> inserted = transactionTemplate.execute(status -> persist(Collections.singletonList(order)));
+                acknowledge(Collections.singletonList(entry.getKey()), Collections.singleton(order.getId()), inserted);
+                flushed += inserted == null ? 0 : inserted.size();
+            } catch (Exception e) {
+                log.error("结算入库失败，等待重试: orderId={}", order.getId(), e);
+            }
+        }
+        return flushed;
+    }
+
+    // 入库成功后确认并删除流记录，清理缓存
+    private void acknowledge(List<RecordId> ids, Collection<String> orderIds, List<Order> inserted) {
+        RecordId[] recordIds = ids.toArray(new RecordId[0]);
+        orderRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, recordIds);
+        orderRedisTemplate.opsForStream().delete(STREAM_KEY, recordIds);
+        evictSettledOrders(orderIds);
+        evictReportCache(inserted);
+    }
+
+    // 插入尚未入库的订单行，再按用户/充电桩聚合累加已完成的订单；返回本次插入的订单
+    private List<Order> persist(List<Order> orders) {
+        if (orders.isEmpty()) return Collections.emptyList();
+        Set<String> existing = findPersisted(orders);
+        List<Order> inserted = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            if (!existing.contains(order.getId())) inserted.add(order); // 已入库过的为重复投递
+        }
+        if (inserted.isEmpty()) return inserted;
+        jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, inserted, inserted.size(), (ps, order) -> {
+            ps.setString(1, order.getId());
+            ps.setLong(2, order.getUserId());
+            ps.setObject(3, order.getChargingStationId());
+            ps.setInt(4, order.getMode());
+            ps.setTimestamp(5, timestamp(order.getRecordTime()));
+            ps.setInt(6, order.getStatus());
+            ps.setBigDecimal(7, order.getChargeAmount());
+            ps.setBigDecimal(8, order.getActualCharge());
+            ps.setObject(9, order.getChargeDuration());
+            ps.setTimestamp(10, timestamp(order.getStartTime()));
+            ps.setTimestamp(11, timestamp(order.getStopTime()));
+            ps.setBigDecimal(12, order.getChargeFee());
+            ps.setBigDecimal(13, order.getServiceFee());
+            ps.setBigDecimal(14, order.getTotalFee());
+            ps.setBigDecimal(15, order.getPeakCharge());
+            ps.setBigDecimal(16, order.getNormalCharge());
+            ps.setBigDecimal(17, order.getValleyCharge());
+            ps.setBigDecimal(18, order.getPeakChargeFee());
+            ps.setBigDecimal(19, order.getNormalChargeFee());
+            ps.setBigDecimal(20, order.getValleyChargeFee());
+        });
+
+        List<Order> completed = new ArrayList<>(inserted.size());
+        Map<Long, Totals> userTotals = new LinkedHashMap<>();
+        Map<Long, Totals> stationTotals = new LinkedHashMap<>();
+        for (Order order : inserted) {
+            if (order.getStatus() == null || order.getStatus() != 0) continue; // 已取消的订单不计入统计
+            completed.add(order);
+            userTotals.computeIfAbsent(order.getUserId(), k -> new Totals()).add(order);
+            if (order.getChargingStationId() != null) {
+                stationTotals.computeIfAbsent(order.getChargingStationId(), k -> new Totals()).add(order);
+            }
+        }
+
+        if (!userTotals.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(userTotals.size());
+            userTotals.forEach((userId, t) -> args.add(new Object[]{
+                    t.count, t.amount, t.duration, t.chargeFee, t.serviceFee, t.totalFee, userId}));
+            jdbcTemplate.batchUpdate(UPDATE_USER_SQL, args);
+        }
+        if (!stationTotals.isEmpty()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now(clock).withNano(0));
+            List<Object[]> args = new ArrayList<>(stationTotals.size());
+            stationTotals.forEach((stationId, t) -> args.add(new Object[]{
+                    now, t.count, t.duration, t.amount, t.chargeFee, t.serviceFee, t.totalFee, stationId}));
+            jdbcTemplate.batchUpdate(UPDATE_STATION_SQL, args);
+        }
+        metricService.record(completed);
+        return inserted;
+    }
+
+    // 本批中已在订单表中的订单ID
+    private Set<String> findPersisted(List<Order> orders) {
+        List<String> ids = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM `order` WHERE id IN (" + placeholders + ")",
+                String.class, ids.toArray()));
+    }
+
+    // 已入库的订单从缓存移除（期间被重新写入、状态不再是已完成/已取消的除外）
+    private void evictSettledOrders(Collection<String> orderIds) {
+        for (Order cached : orderCacheService.getOrders(orderIds).values()) {
+            if (cached.getStatus() != null && (cached.getStatus() == 0 || cached.getStatus() == 4)) {
+                orderCacheService.deleteOrder(cached);
+            }
+        }
+    }
+
+    // 报表变化后只驱逐对应桩的报表缓存，基础信息缓存不受影响
+    private void evictReportCache(List<Order> inserted) {
+        if (inserted == null || inserted.isEmpty()) return;
+        Cache cache = cacheManager.getCache("chargingStationReport");
+        if (cache == null) return;
+        Set<Long> stationIds = new HashSet<>();
+        for (Order order : inserted) {
+            if (order.getChargingStationId() != null) stationIds.add(order.getChargingStationId());
+        }
+        stationIds.forEach(cache::evict);
+    }
+
+    private void moveToDeadLetter(List<RecordId> ids) {
+        for (RecordId id : ids) {
+            List<MapRecord<String, Object, Object>> records = orderRedisTemplate.opsForStream().range(STREAM_KEY, Range.just(id.getValue()));
+            if (records != null) {
+                for (MapRecord<String, Object, Object> record : records) {
+                    orderRedisTemplate.opsForStream().add(MapRecord.create(DEAD_LETTER_KEY, record.getValue()));
+                }
+            }
+            log.error("结算记录多次处理失败，已移入死信流: id={}", id);
+        }
+        RecordId[] recordIds = ids.toArray(new RecordId[0]);
+        orderRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, recordIds);
+        orderRedisTemplate.opsForStream().delete(STREAM_KEY, recordIds);
+    }
+
+    private static Object deserializeQuietly(RedisSerializer<?> serializer, byte[] bytes) {
+        try {
+            return serializer.deserialize(bytes);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 一批订单按用户或充电桩聚合后的增量
+    private static class Totals {
+        private int count;
+        private long duration;
+        private BigDecimal amount = BigDecimal.ZERO;
+        private BigDecimal chargeFee = BigDecimal.ZERO;
+        private BigDecimal serviceFee = BigDecimal.ZERO;
+        private BigDecimal totalFee = BigDecimal.ZERO;
+
+        private void add(Order order) {
+            count++;
+            duration += order.getChargeDuration() == null ? 0L : order.getChargeDuration();
+            amount = amount.add(zeroIfNull(order.getActualCharge()));
+            chargeFee = chargeFee.add(zeroIfNull(order.getChargeFee()));
+            serviceFee = serviceFee.add(zeroIfNull(order.getServiceFee()));
+            totalFee = totalFee.add(zeroIfNull(order.getTotalFee()));
+        }
+
+        private static BigDecimal zeroIfNull(BigDecimal value) {
+            return value == null ? BigDecimal.ZERO : value;
+        }
+    }
+}
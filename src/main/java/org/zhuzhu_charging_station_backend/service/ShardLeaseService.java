@@ -0,0 +1,274 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 调度分片租约：充电桩按ID哈希到固定数量的分片，各节点通过Redis租约认领分片，只推进自己分片内的桩。
+ * 每次心跳登记节点存活，按存活节点做最高随机权重哈希（HRW）算出本节点应持有的分片，
+ * 续租/抢占应持有的、释放不再应持有的；节点加入或宕机（心跳过期、租约到期）后分片自动重新分配。
+ * 持有分片0的节点同时负责全局的订单分配。
+ * 释放分片前先等待正在进行的推进结束，租约到期前未能续租则本地立即停止推进，保证同一时刻一个桩只被一个节点推进。
+ */
+@Service
+@Slf4j
+public class ShardLeaseService {
+
+    public static final String DEFAULT_KEY_PREFIX = "scheduler:";
+    private static final int LEADER_SHARD = 0;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LEASE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        LEASE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/shard_lease.lua")));
+        LEASE_SCRIPT.setResultType(List.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final String nodeId;
+    private final int shardCount;
+    private final long leaseMillis;
+
+    // 推进持读锁，变更持有的分片持写锁
+    private final ReentrantReadWriteLock ownershipLock = new ReentrantReadWriteLock();
+    private Set<Integer> ownedShards = Collections.emptySet();
+    // 本地认为租约有效的截止时间，留出时钟误差余量
+    private volatile long ownedUntil;
+    // 分片释放前的回调（停止推进之后、释放租约之前）
+    private final List<Consumer<Set<Integer>>> releaseListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public ShardLeaseService(StringRedisTemplate stringRedisTemplate,
+                             @Value("${scheduler.shard-count:64}") int shardCount,
+                             @Value("${scheduler.lease-ms:10000}") long leaseMillis) {
+        this(stringRedisTemplate, DEFAULT_KEY_PREFIX, UUID.randomUUID().toString(), shardCount, leaseMillis);
+    }
+
+    public ShardLeaseService(StringRedisTemplate stringRedisTemplate, String keyPrefix, String nodeId,
+                             int shardCount, long leaseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.nodeId = nodeId;
+        this.shardCount = shardCount;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 心跳：登记存活、重新计算应持有的分片并一次脚本调用完成续租、抢占和释放
+     */
+    @Scheduled(fixedDelayString = "${scheduler.heartbeat-ms:2000}")
+    public void heartbeat() {
+        try {
+            renew();
+        } catch (Exception e) {
+            log.error("调度分片续租失败: nodeId={}", nodeId, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void renew() {
+        long now = System.currentTimeMillis();
+        String nodesKey = keyPrefix + "nodes";
+        stringRedisTemplate.opsForZSet().add(nodesKey, nodeId, now);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(nodesKey, 0, now - leaseMillis);
+        Set<String> liveNodes = stringRedisTemplate.opsForZSet().rangeByScore(nodesKey, now - leaseMillis, Double.MAX_VALUE);
+        List<String> nodes = new ArrayList<>(liveNodes == null ? Collections.emptySet() : liveNodes);
+        if (!nodes.contains(nodeId)) nodes.add(nodeId);
+
+        Set<Integer> desired = new HashSet<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (nodeId.equals(ownerOf(shard, nodes))) desired.add(shard);
+        }
+
+        // 先停止推进将要释放的分片（等待进行中的推进结束），再释放租约
+        Set<Integer> releasing = new HashSet<>(ownedShards);
+        releasing.removeAll(desired);
+        if (!releasing.isEmpty()) {
+            Set<Integer> retained = new HashSet<>(ownedShards);
+            retained.removeAll(releasing);
+            updateOwnedShards(retained, ownedUntil);
+            notifyReleasing(releasing);
+        }
+
+        List<String> keys = new ArrayList<>(shardCount);
+        Object[] args = new Object[shardCount + 2];
+        args[0] = nodeId;
+        args[1] = String.valueOf(leaseMillis);
+        for (int shard = 0; shard < shardCount; shard++) {
+            keys.add(leaseKey(shard));
+            args[shard + 2] = desired.contains(shard) ? "1" : "0";
+        }
+        List<Long> owned = stringRedisTemplate.execute(LEASE_SCRIPT, keys, args);
+        Set<Integer> acquired = new HashSet<>();
+        if (owned != null) {
+            for (Long index : owned) {
+                acquired.add(index.intValue() - 1);
+            }
+        }
+        if (!acquired.equals(ownedShards)) {
+            log.info("调度分片变更: nodeId={}, nodes={}, shards={}", nodeId, nodes.size(), acquired.size());
+        }
+        updateOwnedShards(acquired, now + leaseMillis - leaseMillis / 5);
+    }
+
+    /**
+     * 持有分片期间执行任务，任务只应处理传入的（本节点负责的）充电桩
+     * @param stationIds 全部充电桩ID
+     */
+    public void runOwned(List<Long> stationIds, Consumer<List<Long>> task) {
+        ownershipLock.readLock().lock();
+        try {
+            List<Long> owned = new ArrayList<>();
+            if (isValid()) {
+                for (Long id : stationIds) {
+                    if (ownedShards.contains(shardOf(id))) owned.add(id);
+                }
+            }
+            task.accept(owned);
+        } finally {
+            ownershipLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 仅在本节点负责全局任务（持有分片0）时执行
+     */
+    public void runIfLeader(Runnable task) {
+        ownershipLock.readLock().lock();
+        try {
+            if (isValid() && ownedShards.contains(LEADER_SHARD)) {
+                task.run();
+            }
+        } finally {
+            ownershipLock.readLock().unlock();
+        }
+    }
+
+    public boolean owns(Long stationId) {
+        ownershipLock.readLock().lock();
+        try {
+            return isValid() && ownedShards.contains(shardOf(stationId));
+        } finally {
+            ownershipLock.readLock().unlock();
+        }
+    }
+
+    public Set<Integer> getOwnedShards() {
+        ownershipLock.readLock().lock();
+        try {
+            return isValid() ? new HashSet<>(ownedShards) : Collections.emptySet();
+        } finally {
+            ownershipLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 注册分片释放前的回调，用于把本节点缓存的分片内状态写回，保证接手的节点读到最新状态
+     */
+    public void addReleaseListener(Consumer<Set<Integer>> listener) {
+        releaseListeners.add(listener);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 充电桩所属分片，所有节点计算结果一致
+     */
+    public int shardOf(Long stationId) {
+        return (int) Math.floorMod(mix(stationId), (long) shardCount);
+    }
+
+    /**
+     * 下线时主动释放租约并注销，其他节点下一次心跳即可接管
+     */
+    @PreDestroy
+    public void leave() {
+        try {
+            Set<Integer> releasing = ownedShards;
+            updateOwnedShards(Collections.emptySet(), 0L);
+            notifyReleasing(releasing);
+            List<String> keys = new ArrayList<>(shardCount);
+            Object[] args = new Object[shardCount + 2];
+            args[0] = nodeId;
+            args[1] = String.valueOf(leaseMillis);
+            for (int shard = 0; shard < shardCount; shard++) {
+                keys.add(leaseKey(shard));
+                args[shard + 2] = "0";
+            }
+            stringRedisTemplate.execute(LEASE_SCRIPT, keys, args);
+            stringRedisTemplate.opsForZSet().remove(keyPrefix + "nodes", nodeId);
+        } catch (Exception e) {
+            log.warn("调度分片释放失败: nodeId={}", nodeId, e);
+        }
+    }
+
+    private void updateOwnedShards(Set<Integer> shards, long validUntil) {
+        ownershipLock.writeLock().lock();
+        try {
+            ownedShards = Collections.unmodifiableSet(shards);
+            ownedUntil = validUntil;
+        } finally {
+            ownershipLock.writeLock().unlock();
+        }
+    }
+
+    private void notifyReleasing(Set<Integer> shards) {
+        if (shards.isEmpty()) return;
+        for (Consumer<Set<Integer>> listener : releaseListeners) {
+            try {
+                listener.accept(Collections.unmodifiableSet(shards));
+            } catch (Exception e) {
+                log.error("调度分片释放回调失败: nodeId={}, shards={}", nodeId, shards.size(), e);
+            }
+        }
+    }
+
+    private boolean isValid() {
+        return System.currentTimeMillis() < ownedUntil;
+    }
+
+    private String leaseKey(int shard) {
+        return keyPrefix + "shard:" + shard;
+    }
+
+    // 最高随机权重：各节点对该分片打分，分数最高者持有；节点增减只影响该节点赢得/失去的分片
+    private static String ownerOf(int shard, List<String> nodes) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String node : nodes) {
+            long score = mix(node.hashCode() * 0x9E3779B97F4A7C15L + shard);
+            if (owner == null || score > best || (score == best && node.compareTo(owner) < 0)) {
+                owner = node;
+                best = score;
+            }
+        }
+        return owner;
+    }
+
+    // 64位混淆（MurmurHash3 fmix64），让连续ID均匀分布
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,579 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * slot的actor执行模式：本节点持有分片内的每个充电桩对应一个邮箱，slot常驻内存，
+ * 对slot的读写都作为消息投递到该桩的邮箱，由共享线程池逐桩串行执行（同一桩同一时刻只在一个线程上运行），
+ * 因此不再需要分布式锁，也省去了每次修改读取、写回Redis的往返。
+ * 已应用的修改按快照周期按版本号批量比较并写回Redis；写回时发现Redis中的版本被其他节点改过
+ * （分片交接期间直接写Redis的修改、其他节点的字段级修改），则重新加载并按顺序重放尚未写回的修改，因此修改必须只依赖传入的slot。
+ * 有外部副作用的修改（调度推进：订单进度已保存、充满的订单已结算）不能重新执行，重放时按修改前后的差异叠加（见 {@link SlotDelta}）。
+ * 其他节点的字段级修改（分配订单、取消）不经过本节点的邮箱，读取和调度推进前先取一次Redis中的版本号，
+ * 与内存中的不一致时同样重新加载并重放，空闲的桩（没有写回、不会发现冲突）也能看到其他节点追加的订单。
+ */
+@Slf4j
+class SlotActors {
+
+    /**
+     * Redis中slot的读取（带版本号）和按版本号批量比较写入
+     */
+    interface Store {
+        /**
+         * @return slot，不存在时为null
+         */
+        ChargingStationSlot load(Long stationId);
+
+        /**
+         * @param expectedVersions 期望的版本号，null表示slot应不存在
+         * @param updated          新值，null表示删除
+         * @return 版本不一致而写入失败的桩ID
+         */
+        Set<Long> compareAndSet(List<Long> stationIds, List<Long> expectedVersions, List<ChargingStationSlot> updated);
+
+        /**
+         * 一次往返读取各桩在Redis中的版本号，slot不存在的桩不出现在结果里
+         */
+        Map<Long, Long> versions(Collection<Long> stationIds);
+    }
+
+    /**
+     * 邮箱已关闭（本节点不再持有该桩），调用方应改走加锁路径
+     */
+    static class EvictedException extends RuntimeException {
+        EvictedException(Long stationId) {
+            super("充电桩slot已不由本节点持有：" + stationId);
+        }
+    }
+
+    // 单次调度最多处理的消息数，避免一个繁忙的桩长期占用线程
+    private static final int DRAIN_BATCH = 64;
+    private static final ThreadLocal<Actor> CURRENT = new ThreadLocal<>();
+
+    private final Store store;
+    private final UnaryOperator<ChargingStationSlot> copier;
+    private final Predicate<Long> owned;
+    private final long askTimeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService flusher;
+    private final Map<Long, Actor> actors = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushConflictCount = new AtomicLong();
+    private final AtomicLong syncReloadCount = new AtomicLong();
+    private final AtomicLong replayFailureCount = new AtomicLong();
+
+    /**
+     * @param copier 深拷贝slot，修改在副本上进行，修改抛出异常时原状态不受影响
+     * @param owned  桩当前是否仍由本节点持有，不再持有的桩在下一次写回后关闭邮箱
+     */
+    SlotActors(Store store, UnaryOperator<ChargingStationSlot> copier, Predicate<Long> owned, int threads,
+               long askTimeoutMillis) {
+        this.store = store;
+        this.copier = copier;
+        this.owned = owned;
+        this.askTimeoutMillis = askTimeoutMillis;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> daemon(r, "slot-actor-" + threadNo.incrementAndGet()));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "slot-actor-flush"));
+    }
+
+    /**
+     * 启动定期写回
+     */
+    void start(long flushIntervalMillis) {
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("slot快照写回失败", e);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 读取slot当前状态的副本
+     */
+    ChargingStationSlot read(Long stationId) {
+        return await(stationId, readAsync(stationId, store.versions(Collections.singletonList(stationId)).get(stationId)));
+    }
+
+    /**
+     * 批量读取，各桩的邮箱并行处理；slot不存在的桩不出现在结果里
+     * @param evicted 收集邮箱已关闭的桩，调用方改读Redis
+     */
+    Map<Long, ChargingStationSlot> readAll(Collection<Long> stationIds, Collection<Long> evicted) {
+        Map<Long, CompletableFuture<ChargingStationSlot>> futures = new LinkedHashMap<>();
+        Map<Long, Long> versions = stationIds.isEmpty() ? Collections.emptyMap() : store.versions(stationIds);
+        for (Long id : stationIds) {
+            try {
+                futures.put(id, readAsync(id, versions.get(id)));
+            } catch (EvictedException e) {
+                evicted.add(id);
+            }
+        }
+        Map<Long, ChargingStationSlot> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, CompletableFuture<ChargingStationSlot>> entry : futures.entrySet()) {
+            try {
+                ChargingStationSlot slot = await(entry.getKey(), entry.getValue());
+                if (slot != null) result.put(entry.getKey(), slot);
+            } catch (EvictedException e) {
+                evicted.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 修改slot，slot不存在时不执行（与加锁路径一致）。
+     * 写回冲突时updater会在重新加载的slot上再执行一次，因此只能修改传入的slot，不能有外部副作用
+     * （检查失败抛出异常时，重放中的这次修改被丢弃并记录错误）
+     */
+    void update(Long stationId, Consumer<ChargingStationSlot> updater) {
+        await(stationId, changeAsync(stationId, state -> {
+            if (state == null) return null;
+            ChargingStationSlot next = copier.apply(state);
+            updater.accept(next);
+            return next;
+        }));
+    }
+
+    /**
+     * 修改slot，slot不存在时不执行；写回冲突时不重新执行updater，而是把本次修改的差异叠加到重新加载的slot上。
+     * 用于修改确认后即产生外部副作用的场景（调度推进）
+     */
+    void updateByDelta(Long stationId, Consumer<ChargingStationSlot> updater) {
+        Long version = store.versions(Collections.singletonList(stationId)).get(stationId);
+        await(stationId, ask(actorFor(stationId), a -> {
+            a.sync(version);
+            if (a.state == null) return null;
+            ChargingStationSlot next = copier.apply(a.state);
+            updater.accept(next);
+            return a.apply(state -> next, deltaChange(SlotDelta.between(a.state, next)));
+        }));
+    }
+
+    void set(Long stationId, ChargingStationSlot slot) {
+        ChargingStationSlot value = copier.apply(slot);
+        await(stationId, changeAsync(stationId, state -> copier.apply(value)));
+    }
+
+    void remove(Long stationId) {
+        await(stationId, changeAsync(stationId, state -> null));
+    }
+
+    /**
+     * 批量比较并写入：内存中的slot仍等于快照、且Redis中没有其他节点的新修改才替换为新值，各桩的邮箱并行处理。
+     * 写回冲突重放时不再比较快照，按快照到新值的差异叠加（调用方在返回成功后即保存订单进度、结算充满的订单）
+     * @return 写入失败（含邮箱已关闭）的桩ID
+     */
+    Set<Long> compareAndSetAll(Map<Long, ChargingStationSlot> expected, Map<Long, ChargingStationSlot> updated) {
+        Set<Long> failed = new HashSet<>();
+        if (updated.isEmpty()) return failed;
+        Map<Long, Long> versions = store.versions(updated.keySet());
+        Map<Long, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+        for (Map.Entry<Long, ChargingStationSlot> entry : updated.entrySet()) {
+            ChargingStationSlot expect = expected.get(entry.getKey());
+            ChargingStationSlot value = copier.apply(entry.getValue());
+            Change replay = deltaChange(SlotDelta.between(expect, value));
+            Long version = versions.get(entry.getKey());
+            try {
+                futures.put(entry.getKey(), ask(actorFor(entry.getKey()), a -> {
+                    // 其他节点改过（如取消了快照中的订单）：重新加载后快照不再相等；写回进行中无法重新加载，同样按失败处理
+                    if (!a.sync(version) || !Objects.equals(a.state, expect)) return false;
+                    a.apply(state -> copier.apply(value), replay);
+                    return true;
+                }));
+            } catch (EvictedException e) {
+                failed.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<Long, CompletableFuture<Boolean>> entry : futures.entrySet()) {
+            try {
+                if (!await(entry.getKey(), entry.getValue())) failed.add(entry.getKey());
+            } catch (EvictedException e) {
+                failed.add(entry.getKey());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 把有未写回修改的桩批量写回Redis，并关闭已不由本节点持有的桩的邮箱
+     */
+    void flush() {
+        List<Long> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        flush(ids);
+        evict(id -> !owned.test(id));
+    }
+
+    /**
+     * 分片释放前调用：立即写回并关闭匹配的桩的邮箱，之后这些桩的修改改走加锁路径
+     */
+    void evict(Predicate<Long> stations) {
+        List<Long> ids = new ArrayList<>();
+        for (Long id : actors.keySet()) {
+            if (stations.test(id)) ids.add(id);
+        }
+        if (ids.isEmpty()) return;
+        dirty.removeAll(ids);
+        flush(ids);
+        for (Long id : ids) {
+            close(id);
+        }
+    }
+
+    /**
+     * 写回全部修改并停止线程
+     */
+    void shutdown() {
+        flusher.shutdown();
+        shutdown = true;
+        evict(id -> true);
+        executor.shutdown();
+    }
+
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    long getFlushConflictCount() {
+        return flushConflictCount.get();
+    }
+
+    long getSyncReloadCount() {
+        return syncReloadCount.get();
+    }
+
+    long getReplayFailureCount() {
+        return replayFailureCount.get();
+    }
+
+    int getActorCount() {
+        return actors.size();
+    }
+
+    // 定期写回与分片释放时的写回可能并发，串行执行避免同一快照被重复提交
+    private synchronized void flush(List<Long> ids) {
+        if (ids.isEmpty()) return;
+        Map<Long, CompletableFuture<Snapshot>> futures = new LinkedHashMap<>();
+        for (Long id : ids) {
+            Actor actor = actors.get(id);
+            if (actor != null) futures.put(id, ask(actor, Actor::snapshot));
+        }
+        List<Long> stationIds = new ArrayList<>();
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<Long, CompletableFuture<Snapshot>> entry : futures.entrySet()) {
+            try {
+                Snapshot snapshot = entry.getValue().get(askTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (snapshot != null) {
+                    stationIds.add(entry.getKey());
+                    snapshots.add(snapshot);
+                }
+            } catch (Exception e) {
+                // 邮箱已关闭或超时，未写回的修改留待下一轮
+                log.debug("slot快照获取失败: stationId={}", entry.getKey(), e);
+            }
+        }
+        if (stationIds.isEmpty()) return;
+
+        List<Long> expected = new ArrayList<>(snapshots.size());
+        List<ChargingStationSlot> updated = new ArrayList<>(snapshots.size());
+        for (Snapshot snapshot : snapshots) {
+            expected.add(snapshot.expectedVersion);
+            updated.add(snapshot.updated);
+        }
+        List<Actor> flushing = new ArrayList<>(stationIds.size());
+        for (Long id : stationIds) {
+            Actor actor = actors.get(id);
+            if (actor != null) {
+                actor.flushing = true;
+                flushing.add(actor);
+            }
+        }
+        Set<Long> conflicted;
+        try {
+            conflicted = store.compareAndSet(stationIds, expected, updated);
+        } catch (RuntimeException e) {
+            for (Actor actor : flushing) {
+                actor.flushing = false;
+            }
+            dirty.addAll(stationIds);
+            throw e;
+        }
+        flushCount.incrementAndGet();
+
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        for (int i = 0; i < stationIds.size(); i++) {
+            Long id = stationIds.get(i);
+            Snapshot snapshot = snapshots.get(i);
+            boolean conflict = conflicted.contains(id);
+            if (conflict) {
+                flushConflictCount.incrementAndGet();
+                log.warn("slot写回冲突，重新加载并重放未写回的修改: stationId={}", id);
+            }
+            Actor actor = actors.get(id);
+            if (actor != null) {
+                acks.add(ask(actor, a -> {
+                    a.acknowledge(snapshot, conflict);
+                    return null;
+                }));
+            }
+        }
+        for (CompletableFuture<Void> ack : acks) {
+            try {
+                ack.get(askTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.debug("slot写回确认失败", e);
+            }
+        }
+    }
+
+    private void close(Long stationId) {
+        Actor actor = actors.remove(stationId);
+        if (actor == null) return;
+        ask(actor, a -> {
+            if (!a.pending.isEmpty()) {
+                log.warn("关闭slot邮箱时仍有未写回的修改被丢弃: stationId={}, changes={}", a.stationId, a.pending.size());
+            }
+            a.closed = true;
+            return null;
+        });
+    }
+
+    private CompletableFuture<ChargingStationSlot> readAsync(Long stationId, Long version) {
+        return ask(actorFor(stationId), a -> {
+            a.sync(version);
+            return copier.apply(a.state);
+        });
+    }
+
+    private CompletableFuture<ChargingStationSlot> changeAsync(Long stationId, Change change) {
+        return ask(actorFor(stationId), a -> a.apply(change));
+    }
+
+    // 按差异重放：slot已被删除时不重建
+    private Change deltaChange(SlotDelta delta) {
+        return state -> {
+            if (state == null) return null;
+            ChargingStationSlot next = copier.apply(state);
+            delta.applyTo(next);
+            return next;
+        };
+    }
+
+    private Actor actorFor(Long stationId) {
+        if (shutdown) throw new EvictedException(stationId);
+        return actors.computeIfAbsent(stationId, Actor::new);
+    }
+
+    // 在邮箱线程上执行；已在该桩的邮箱线程上（修改中嵌套修改同一个桩）时直接执行，避免自己等待自己
+    private <T> CompletableFuture<T> ask(Actor actor, Function<Actor, T> message) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                if (actor.closed) throw new EvictedException(actor.stationId);
+                actor.ensureLoaded();
+                future.complete(message.apply(actor));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        };
+        if (CURRENT.get() == actor) {
+            task.run();
+        } else {
+            actor.tell(task);
+        }
+        return future;
+    }
+
+    private <T> T await(Long stationId, CompletableFuture<T> future) {
+        try {
+            return future.get(askTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException("充电桩slot操作失败：" + stationId, e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("充电桩slot操作超时：" + stationId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待充电桩slot操作被中断:" + stationId, e);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // 一次修改：由当前状态得到新状态，写回冲突时在重新加载的状态上按原顺序重放
+    private interface Change {
+        ChargingStationSlot apply(ChargingStationSlot state);
+    }
+
+    private static class Snapshot {
+        private final Long expectedVersion;
+        private final ChargingStationSlot updated;
+        private final long seq;
+
+        private Snapshot(Long expectedVersion, ChargingStationSlot updated, long seq) {
+            this.expectedVersion = expectedVersion;
+            this.updated = updated;
+            this.seq = seq;
+        }
+    }
+
+    private static class PendingChange {
+        private final long seq;
+        private final Change change;
+
+        private PendingChange(long seq, Change change) {
+            this.seq = seq;
+            this.change = change;
+        }
+    }
+
+    private final class Actor {
+        private final Long stationId;
+        private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // 写回线程已提交快照、尚未确认：此时Redis中可能已含未确认的修改，不能重新加载后重放
+        private volatile boolean flushing;
+        // 以下字段只在邮箱线程上访问
+        private volatile boolean closed;
+        private boolean loaded;
+        private ChargingStationSlot state;
+        // Redis中当前的版本号（最近一次加载或写回成功后的版本），null表示slot不存在
+        private Long persistedVersion;
+        private long seq;
+        // 已应用但尚未确认写回的修改
+        private final Deque<PendingChange> pending = new ArrayDeque<>();
+
+        private Actor(Long stationId) {
+            this.stationId = stationId;
+        }
+
+        private void tell(Runnable message) {
+            mailbox.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // 已停止：剩余消息直接以“已关闭”结束，调用方改走加锁路径
+                    closed = true;
+                    Runnable message;
+                    while ((message = mailbox.poll()) != null) {
+                        message.run();
+                    }
+                }
+            }
+        }
+
+        private void drain() {
+            CURRENT.set(this);
+            try {
+                Runnable message;
+                for (int i = 0; i < DRAIN_BATCH && (message = mailbox.poll()) != null; i++) {
+                    message.run();
+                }
+            } finally {
+                CURRENT.remove();
+                scheduled.set(false);
+            }
+            if (!mailbox.isEmpty()) schedule();
+        }
+
+        private void ensureLoaded() {
+            if (loaded) return;
+            reload();
+            loaded = true;
+        }
+
+        private void reload() {
+            state = store.load(stationId);
+            persistedVersion = state == null ? null : state.getVersion();
+        }
+
+        /**
+         * Redis中的版本号与最近一次加载/写回的不一致（其他节点直接改了Redis）时重新加载并重放未写回的修改
+         * @param version 读取到的Redis版本号，null表示slot不存在
+         * @return 内存中的状态是否已与Redis同步（写回进行中且版本不一致时返回false）
+         */
+        private boolean sync(Long version) {
+            if (Objects.equals(version, persistedVersion)) return true;
+            if (flushing) return false;
+            syncReloadCount.incrementAndGet();
+            reloadAndReplay();
+            return true;
+        }
+
+        private void reloadAndReplay() {
+            reload();
+            for (Iterator<PendingChange> it = pending.iterator(); it.hasNext(); ) {
+                PendingChange change = it.next();
+                try {
+                    state = change.change.apply(state);
+                } catch (RuntimeException e) {
+                    it.remove();
+                    replayFailureCount.incrementAndGet();
+                    log.error("重放slot修改失败，该修改已丢弃: stationId={}, seq={}", stationId, change.seq, e);
+                }
+            }
+        }
+
+        private ChargingStationSlot apply(Change change) {
+            return apply(change, change);
+        }
+
+        // 本次按 change 修改，写回冲突时按 replay 重放
+        private ChargingStationSlot apply(Change change, Change replay) {
+            ChargingStationSlot next = change.apply(state);
+            if (next != state) {
+                state = next;
+                pending.addLast(new PendingChange(++seq, replay));
+                dirty.add(stationId);
+            }
+            return copier.apply(state);
+        }
+
+        private Snapshot snapshot() {
+            if (pending.isEmpty()) return null;
+            return new Snapshot(persistedVersion, copier.apply(state), seq);
+        }
+
+        private void acknowledge(Snapshot snapshot, boolean conflict) {
+            flushing = false;
+            if (conflict) {
+                reloadAndReplay();
+            } else {
+                // 每次写入版本号加一，新建的slot从1开始
+                persistedVersion = snapshot.updated == null ? null
+                        : snapshot.expectedVersion == null ? 1L : snapshot.expectedVersion + 1;
+                while (!pending.isEmpty() && pending.peekFirst().seq <= snapshot.seq) {
+                    pending.pollFirst();
+                }
+            }
+            if (!pending.isEmpty()) dirty.add(stationId);
+        }
+    }
+}
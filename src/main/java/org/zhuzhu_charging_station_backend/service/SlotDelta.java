@@ -0,0 +1,103 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+
+import java.util.*;
+
+/**
+ * 一次slot修改前后的差异：移出/加入队列的订单、等待时长和剩余电量的增减、累计充电数据的增量、状态的变化。
+ * actor模式下写回冲突时，调度推进的修改按差异叠加到重新加载的slot上，而不是整体替换或重新执行推进
+ * （推进的副作用——订单进度保存、充满的订单结算——在修改确认时就已发生，重新执行会把已结算的订单再充一次）。
+ */
+final class SlotDelta {
+
+    private final List<String> removed;
+    private final List<String> added;
+    private final long waitingTime;
+    private final long remainingEnergy;
+    private final Integer fromStatus;
+    private final Integer toStatus;
+    private final int chargeCount;
+    private final long chargeTime;
+    private final double chargeAmount;
+
+    private SlotDelta(List<String> removed, List<String> added, long waitingTime, long remainingEnergy,
+                      Integer fromStatus, Integer toStatus, int chargeCount, long chargeTime, double chargeAmount) {
+        this.removed = removed;
+        this.added = added;
+        this.waitingTime = waitingTime;
+        this.remainingEnergy = remainingEnergy;
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+        this.chargeCount = chargeCount;
+        this.chargeTime = chargeTime;
+        this.chargeAmount = chargeAmount;
+    }
+
+    static SlotDelta between(ChargingStationSlot before, ChargingStationSlot after) {
+        List<String> beforeQueue = queueOf(before);
+        List<String> afterQueue = queueOf(after);
+        Set<String> beforeIds = new HashSet<>(beforeQueue);
+        Set<String> afterIds = new HashSet<>(afterQueue);
+        List<String> removed = new ArrayList<>();
+        for (String id : beforeQueue) {
+            if (!afterIds.contains(id)) removed.add(id);
+        }
+        List<String> added = new ArrayList<>();
+        for (String id : afterQueue) {
+            if (!beforeIds.contains(id)) added.add(id);
+        }
+        ChargingStationStatus from = before == null ? null : before.getStatus();
+        ChargingStationStatus to = after == null ? null : after.getStatus();
+        return new SlotDelta(removed, added,
+                nz(after == null ? null : after.getWaitingTime()) - nz(before == null ? null : before.getWaitingTime()),
+                nz(after == null ? null : after.getRemainingEnergy()) - nz(before == null ? null : before.getRemainingEnergy()),
+                from == null ? null : from.getStatus(), to == null ? null : to.getStatus(),
+                count(to) - count(from), time(to) - time(from), amount(to) - amount(from));
+    }
+
+    /**
+     * 把差异叠加到slot上（就地修改）：队列按订单ID增删，负载和累计数据按增量累加（负载不低于0），
+     * 状态只在slot仍处于修改前的状态时才变更，空闲/使用中按叠加后的队列是否为空决定
+     */
+    void applyTo(ChargingStationSlot slot) {
+        if (slot.getQueue() == null) slot.setQueue(new ArrayList<>());
+        slot.getQueue().removeAll(removed);
+        for (String id : added) {
+            if (!slot.getQueue().contains(id)) slot.getQueue().add(id);
+        }
+        if (waitingTime != 0) slot.setWaitingTime(Math.max(0L, nz(slot.getWaitingTime()) + waitingTime));
+        if (remainingEnergy != 0) slot.setRemainingEnergy(Math.max(0L, nz(slot.getRemainingEnergy()) + remainingEnergy));
+
+        ChargingStationStatus status = slot.getStatus();
+        if (status == null) return;
+        if (chargeCount != 0) status.setCurrentChargeCount(count(status) + chargeCount);
+        if (chargeTime != 0) status.setCurrentChargeTime(time(status) + chargeTime);
+        if (chargeAmount != 0) status.setCurrentChargeAmount(amount(status) + chargeAmount);
+        if (!Objects.equals(fromStatus, toStatus) && Objects.equals(status.getStatus(), fromStatus)) {
+            boolean idleOrBusy = toStatus != null && (toStatus == 0 || toStatus == 1);
+            status.setStatus(idleOrBusy ? (slot.getQueue().isEmpty() ? 0 : 1) : toStatus);
+        }
+    }
+
+    private static List<String> queueOf(ChargingStationSlot slot) {
+        return slot == null || slot.getQueue() == null ? Collections.emptyList() : slot.getQueue();
+    }
+
+    private static long nz(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static int count(ChargingStationStatus status) {
+        return status == null || status.getCurrentChargeCount() == null ? 0 : status.getCurrentChargeCount();
+    }
+
+    private static long time(ChargingStationStatus status) {
+        return status == null || status.getCurrentChargeTime() == null ? 0L : status.getCurrentChargeTime();
+    }
+
+    private static double amount(ChargingStationStatus status) {
+        return status == null || status.getCurrentChargeAmount() == null ? 0.0 : status.getCurrentChargeAmount();
+    }
+}
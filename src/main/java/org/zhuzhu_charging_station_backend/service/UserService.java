@@ -25,12 +25,14 @@ public class UserService {
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
     private final UserRepository userRepository;
     private final JwtTokenUtil jwtTokenUtil;
+    private final IdGenerator idGenerator;
     @Autowired
     private EntityManager entityManager;
 
-    public UserService(UserRepository userRepository, JwtTokenUtil jwtTokenUtil) {
+    public UserService(UserRepository userRepository, JwtTokenUtil jwtTokenUtil, IdGenerator idGenerator) {
         this.userRepository = userRepository;
         this.jwtTokenUtil = jwtTokenUtil;
+        this.idGenerator = idGenerator;
     }
 
     /**
@@ -50,7 +52,7 @@ public class UserService {
             }
 
             // 2. 生成唯一ID
-            long userId = IdGenerator.generateUniqueUserId(userRepository, 10);
+            long userId = idGenerator.nextUserId();
             logger.debug("生成用户ID: {}", userId);
 
             // 3. 创建并保存用户
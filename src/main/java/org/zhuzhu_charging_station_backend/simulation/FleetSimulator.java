@@ -0,0 +1,298 @@
+package org.zhuzhu_charging_station_backend.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.zhuzhu_charging_station_backend.config.RedisCallMeter;
+import org.zhuzhu_charging_station_backend.dto.ChargingStationUpsertRequest;
+import org.zhuzhu_charging_station_backend.dto.OrderUpsertRequest;
+import org.zhuzhu_charging_station_backend.dto.UserRequest;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+import org.zhuzhu_charging_station_backend.service.*;
+import org.zhuzhu_charging_station_backend.util.IdGenerator;
+import org.zhuzhu_charging_station_backend.util.VirtualClock;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 车队仿真与压测：用现有服务建N个充电桩、每虚拟秒通过 {@link OrderService#upsertOrder} 提交M个订单、随机注入故障和修复，
+ * 由本类逐秒调用订单分配和充电推进（定时任务需关闭：scheduling.enabled=false），不等待真实时间，按机器能力快进。
+ * 订单时间和计费使用虚拟时钟（clock.mode=virtual），每步拨动1秒；tick-interval-seconds 大于1时每隔若干秒才调度一轮，用于验证调度延迟下的计费。
+ * 随机事件只由种子决定，相同参数的两次运行提交的订单和故障相同。
+ * 结束后输出：调度轮超时率、等待开始充电的时长分位数、每轮Redis命令数和字节数、结算入库吞吐。
+ * 使用 simulation profile 启动，数据库和Redis使用该profile配置的本地实例。
+ */
+@Component
+@ConditionalOnProperty(name = "simulation.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class FleetSimulator {
+
+    // 调度周期，一轮实际耗时超过它即为超时
+    private static final long TICK_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 没有定时任务时，分片和ID节点号租约由仿真线程按实际时间续租
+    private static final long LEASE_RENEW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String PASSWORD = "simulation";
+
+    private final ChargingStationService chargingStationService;
+    private final UserService userService;
+    private final OrderService orderService;
+    private final OrderCacheService orderCacheService;
+    private final SettlementService settlementService;
+    private final ShardLeaseService shardLeaseService;
+    private final IdGenerator idGenerator;
+    private final OrderScheduler orderScheduler;
+    private final ChargingStationScheduler chargingStationScheduler;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext applicationContext;
+    private final Clock clock;
+
+    @Value("${scheduling.enabled:true}")
+    private boolean schedulingEnabled;
+    @Value("${simulation.seed:1}")
+    private long seed;
+    @Value("${simulation.stations:20}")
+    private int stationCount;
+    @Value("${simulation.fast-ratio:0.3}")
+    private double fastRatio;
+    @Value("${simulation.users:200}")
+    private int userCount;
+    @Value("${simulation.orders-per-second:0.5}")
+    private double ordersPerSecond;
+    @Value("${simulation.duration-seconds:3600}")
+    private long durationSeconds;
+    // 每隔多少虚拟秒调度一轮
+    @Value("${simulation.tick-interval-seconds:1}")
+    private long tickIntervalSeconds;
+    @Value("${simulation.min-charge-amount:5}")
+    private int minChargeAmount;
+    @Value("${simulation.max-charge-amount:60}")
+    private int maxChargeAmount;
+    // 每虚拟秒发生一次故障的概率（全车队），故障桩在 repair-seconds 后修复
+    @Value("${simulation.break-probability:0.001}")
+    private double breakProbability;
+    @Value("${simulation.repair-seconds:600}")
+    private long repairSeconds;
+    @Value("${simulation.report-file:target/simulation-report.json}")
+    private String reportFile;
+    @Value("${simulation.exit-on-finish:true}")
+    private boolean exitOnFinish;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (schedulingEnabled) {
+            log.error("车队仿真需要关闭定时任务（scheduling.enabled=false），否则调度器会被重复驱动，仿真未启动");
+            return;
+        }
+        if (!(clock instanceof VirtualClock) || tickIntervalSeconds < 1) {
+            log.error("车队仿真需要虚拟时钟（clock.mode=virtual）且调度间隔不小于1秒，仿真未启动");
+            return;
+        }
+        Thread thread = new Thread(this::runAndReport, "fleet-simulator");
+        thread.start();
+    }
+
+    private void runAndReport() {
+        int exitCode = 0;
+        try {
+            SimulationReport report = run();
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(reportFile), report);
+            log.info("车队仿真完成: {}", objectMapper.writeValueAsString(report));
+        } catch (Exception e) {
+            log.error("车队仿真异常", e);
+            exitCode = 1;
+        }
+        if (exitOnFinish) {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    SimulationReport run() {
+        Random random = new Random(seed);
+        VirtualClock virtualClock = (VirtualClock) clock;
+        String prefix = "sim-" + System.currentTimeMillis() + "-";
+        renewLeases();
+        long lastRenew = System.nanoTime();
+
+        List<Long> stationIds = createStations(prefix, random);
+        List<String> tokens = createUsers(prefix);
+
+        SimulationReport report = new SimulationReport();
+        report.setSeed(seed);
+        report.setStations(stationIds.size());
+        report.setUsers(tokens.size());
+        report.setOrdersPerSecond(ordersPerSecond);
+        report.setTickIntervalSeconds(tickIntervalSeconds);
+
+        Map<String, Long> waiting = new LinkedHashMap<>(); // 订单ID -> 提交时的虚拟秒
+        Map<Long, Long> repairAt = new LinkedHashMap<>();  // 故障桩 -> 修复的虚拟秒
+        List<Long> tickNanos = new ArrayList<>();
+        List<Long> waits = new ArrayList<>();
+        double pendingSubmissions = 0;
+        long redisCommands = 0;
+        long redisBytes = 0;
+        long start = System.nanoTime();
+
+        for (long second = 0; second < durationSeconds; second++) {
+            if (System.nanoTime() - lastRenew >= LEASE_RENEW_NANOS) {
+                renewLeases();
+                lastRenew = System.nanoTime();
+            }
+
+            // 1. 本秒提交的订单
+            pendingSubmissions += ordersPerSecond;
+            while (pendingSubmissions >= 1) {
+                pendingSubmissions--;
+                OrderUpsertRequest request = new OrderUpsertRequest();
+                request.setMode(random.nextDouble() < fastRatio ? 1 : 0);
+                request.setChargeAmount(BigDecimal.valueOf(minChargeAmount + random.nextInt(maxChargeAmount - minChargeAmount + 1)));
+                Order order = orderService.upsertOrder(request, tokens.get(random.nextInt(tokens.size())));
+                waiting.put(order.getId(), second);
+                report.setOrdersSubmitted(report.getOrdersSubmitted() + 1);
+            }
+
+            // 2. 故障和修复
+            Iterator<Map.Entry<Long, Long>> repairs = repairAt.entrySet().iterator();
+            while (repairs.hasNext()) {
+                Map.Entry<Long, Long> entry = repairs.next();
+                if (entry.getValue() > second) continue;
+                applyEvent(() -> chargingStationService.fixChargingStation(entry.getKey()), "修复", entry.getKey());
+                repairs.remove();
+                report.setFixes(report.getFixes() + 1);
+            }
+            if (random.nextDouble() < breakProbability) {
+                Long stationId = stationIds.get(random.nextInt(stationIds.size()));
+                if (!repairAt.containsKey(stationId)) {
+                    applyEvent(() -> chargingStationService.breakChargingStation(stationId), "故障", stationId);
+                    repairAt.put(stationId, second + repairSeconds);
+                    report.setBreaks(report.getBreaks() + 1);
+                }
+            }
+
+            // 3. 一轮调度：分配 + 推进，只统计这部分的耗时和Redis开销；间隔大于1秒时跳过的秒数由下一轮按经过时间补足
+            if (second % tickIntervalSeconds == 0) {
+                long commandsBefore = RedisCallMeter.threadCommands();
+                long bytesBefore = RedisCallMeter.threadBytes();
+                long tickStart = System.nanoTime();
+                orderScheduler.assignOrdersToSlot();
+                chargingStationScheduler.chargingStationTask();
+                long elapsed = System.nanoTime() - tickStart;
+                tickNanos.add(elapsed);
+                if (elapsed > TICK_PERIOD_NANOS) report.setTickOverruns(report.getTickOverruns() + 1);
+                redisCommands += RedisCallMeter.threadCommands() - commandsBefore;
+                redisBytes += RedisCallMeter.threadBytes() - bytesBefore;
+            }
+
+            // 4. 结算入库，统计开始充电的订单
+            report.setOrdersSettled(report.getOrdersSettled() + settlementService.flush());
+            observeStarts(waiting, waits, second + 1, report);
+            virtualClock.advance(Duration.ofSeconds(1));
+        }
+        report.setOrdersSettled(report.getOrdersSettled() + settlementService.flush());
+
+        long wallNanos = System.nanoTime() - start;
+        long ticks = tickNanos.size();
+        report.setVirtualSeconds(durationSeconds);
+        report.setWallMillis(TimeUnit.NANOSECONDS.toMillis(wallNanos));
+        report.setSettlementsPerSecond(wallNanos == 0 ? 0 : report.getOrdersSettled() * 1e9 / wallNanos);
+        report.setTickOverrunRate(ticks == 0 ? 0 : (double) report.getTickOverruns() / ticks);
+        Collections.sort(tickNanos);
+        report.setTickP50Millis(percentile(tickNanos, 0.50) / 1e6);
+        report.setTickP99Millis(percentile(tickNanos, 0.99) / 1e6);
+        report.setTickMaxMillis(ticks == 0 ? 0 : tickNanos.get(tickNanos.size() - 1) / 1e6);
+        Collections.sort(waits);
+        report.setWaitP50Seconds(percentile(waits, 0.50));
+        report.setWaitP90Seconds(percentile(waits, 0.90));
+        report.setWaitP99Seconds(percentile(waits, 0.99));
+        report.setStillWaiting(waiting.size());
+        report.setRedisCommands(redisCommands);
+        report.setRedisBytes(redisBytes);
+        report.setRedisCommandsPerTick(ticks == 0 ? 0 : (double) redisCommands / ticks);
+        report.setRedisBytesPerTick(ticks == 0 ? 0 : (double) redisBytes / ticks);
+        return report;
+    }
+
+    private List<Long> createStations(String prefix, Random random) {
+        List<Long> ids = new ArrayList<>(stationCount);
+        for (int i = 0; i < stationCount; i++) {
+            ChargingStationUpsertRequest request = new ChargingStationUpsertRequest();
+            request.setName(prefix + i);
+            request.setDescription("仿真充电桩");
+            boolean fast = random.nextDouble() < fastRatio;
+            request.setMode(fast ? 1 : 0);
+            // 每秒充电量：快充30kW、慢充7kW
+            request.setPower(fast ? new BigDecimal("0.0083") : new BigDecimal("0.0019"));
+            request.setServiceFee(new BigDecimal("0.80"));
+            request.setPeakPrice(new BigDecimal("1.00"));
+            request.setNormalPrice(new BigDecimal("0.70"));
+            request.setValleyPrice(new BigDecimal("0.40"));
+            request.setMaxQueueLength(3);
+            ids.add(chargingStationService.upsertChargingStation(request).getId());
+        }
+        return ids;
+    }
+
+    private List<String> createUsers(String prefix) {
+        List<String> tokens = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            UserRequest request = new UserRequest();
+            request.setUsername(prefix + i);
+            request.setPassword(PASSWORD);
+            tokens.add(userService.registerAndLogin(request).getToken());
+        }
+        return tokens;
+    }
+
+    // 已开始充电（或已完成、已被移出缓存）的订单不再跟踪，前两种记录等待时长
+    private void observeStarts(Map<String, Long> waiting, List<Long> waits, long now, SimulationReport report) {
+        if (waiting.isEmpty()) return;
+        Map<String, Order> orders = orderCacheService.getOrders(new ArrayList<>(waiting.keySet()));
+        Iterator<Map.Entry<String, Long>> it = waiting.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            Order order = orders.get(entry.getKey());
+            if (order == null) {
+                it.remove();
+            } else if (order.getStatus() == 1 || order.getStatus() == 0) {
+                waits.add(now - entry.getValue());
+                report.setOrdersStarted(report.getOrdersStarted() + 1);
+                it.remove();
+            }
+        }
+    }
+
+    private void renewLeases() {
+        shardLeaseService.heartbeat();
+        idGenerator.renewNode();
+    }
+
+    private static void applyEvent(Runnable event, String name, Long stationId) {
+        try {
+            event.run();
+        } catch (Exception e) {
+            log.debug("仿真{}事件未生效: stationId={}, {}", name, stationId, e.getMessage());
+        }
+    }
+
+    // 已排序列表的分位数（最近秩）
+    private static double percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) return 0;
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
@@ -0,0 +1,40 @@
+package org.zhuzhu_charging_station_backend.simulation;
+
+import lombok.Data;
+
+/**
+ * 一次车队仿真的结果，按JSON写出便于多次运行对比
+ */
+@Data
+public class SimulationReport {
+    private long seed;                  // 随机种子，相同参数和种子的事件序列相同
+    private int stations;               // 仿真充电桩数
+    private int users;                  // 仿真用户数
+    private double ordersPerSecond;     // 每虚拟秒提交的订单数
+    private long virtualSeconds;        // 仿真的虚拟秒数
+    private long tickIntervalSeconds;   // 每隔多少虚拟秒调度一轮
+    private long wallMillis;            // 实际耗时
+
+    private long ordersSubmitted;       // 提交的订单数
+    private long ordersStarted;         // 开始充电的订单数
+    private long ordersSettled;         // 结算入库的订单数
+    private double settlementsPerSecond; // 结算入库吞吐（每实际秒）
+    private long breaks;                // 注入的故障次数
+    private long fixes;                 // 修复次数
+
+    private long tickOverruns;          // 一轮（分配+推进）实际耗时超过1秒的次数
+    private double tickOverrunRate;     // 超时轮数占比
+    private double tickP50Millis;
+    private double tickP99Millis;
+    private double tickMaxMillis;
+
+    private double waitP50Seconds;      // 从提交到开始充电的等待（虚拟秒）
+    private double waitP90Seconds;
+    private double waitP99Seconds;
+    private long stillWaiting;          // 结束时仍未开始充电的订单数
+
+    private long redisCommands;         // 调度轮内执行的Redis命令数
+    private long redisBytes;            // 调度轮内收发的Redis字节数
+    private double redisCommandsPerTick;
+    private double redisBytesPerTick;
+}
@@ -0,0 +1,45 @@
+package org.zhuzhu_charging_station_backend.util;
+
+import org.zhuzhu_charging_station_backend.entity.ChargingMeter;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 订单对充电桩负载的贡献：剩余充电秒数和剩余电量。
+ * slot上的等待时长、剩余电量是队列中各订单贡献之和，入队、推进、移出时按贡献增减。
+ */
+public final class ChargeLoad {
+
+    private ChargeLoad() {
+    }
+
+    /**
+     * 订单剩余电量按桩功率折算的充电秒数（向上取整）
+     */
+    public static long remainingSeconds(Order order, BigDecimal power) {
+        if (order == null || order.getChargeAmount() == null || power == null || power.signum() <= 0) return 0L;
+        BigDecimal remaining = order.getChargeAmount().subtract(
+                order.getActualCharge() == null ? BigDecimal.ZERO : order.getActualCharge()
+        );
+        if (remaining.compareTo(BigDecimal.ZERO) <= 0) return 0L;
+        return remaining.divide(power, 0, BigDecimal.ROUND_UP).longValue();
+    }
+
+    /**
+     * 订单剩余电量（定点数，超出定点精度的部分向上取整）
+     */
+    public static long remainingEnergy(Order order) {
+        if (order == null || order.getChargeAmount() == null) return 0L;
+        ChargingMeter meter = order.getMeter();
+        if (meter != null) {
+            return Math.max(0L, meter.getChargeAmount() - meter.getActualCharge());
+        }
+        BigDecimal remaining = order.getChargeAmount().subtract(
+                order.getActualCharge() == null ? BigDecimal.ZERO : order.getActualCharge()
+        );
+        if (remaining.signum() <= 0) return 0L;
+        return remaining.setScale(FixedPoint.SCALE, RoundingMode.CEILING).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,64 @@
+package org.zhuzhu_charging_station_backend.util;
+
+import java.math.BigDecimal;
+
+/**
+ * 定点数：以 10^-{@link #SCALE} 为单位的long表示电量和金额。
+ * 精度取 功率(5位小数) × 单价(2位小数) 的乘积精度，充电过程中的累加全部精确，
+ * 只在入库或对外返回时转换回BigDecimal。
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 7;
+
+    private static final long[] POWERS_OF_TEN = new long[SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i <= SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * 能否无损地表示为定点数
+     */
+    public static boolean isExact(BigDecimal value) {
+        if (value == null) return false;
+        try {
+            toUnits(value);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * BigDecimal转定点数
+     * @throws ArithmeticException 小数位超过 {@link #SCALE} 或超出long范围
+     */
+    public static long toUnits(BigDecimal value) {
+        return value.movePointRight(SCALE).longValueExact();
+    }
+
+    /**
+     * 定点数转BigDecimal
+     * @param scale 期望的小数位数，不超过 {@link #SCALE}；截掉的位不为0时保留全部小数位，保证不丢精度
+     */
+    public static BigDecimal toBigDecimal(long units, int scale) {
+        if (scale < 0 || scale > SCALE) return BigDecimal.valueOf(units, SCALE);
+        long divisor = POWERS_OF_TEN[SCALE - scale];
+        if (units % divisor != 0) return BigDecimal.valueOf(units, SCALE);
+        return BigDecimal.valueOf(units / divisor, scale);
+    }
+
+    /**
+     * 向上取整的除法（与 BigDecimal.divide(divisor, 0, ROUND_UP) 对非负数结果一致）
+     */
+    public static long ceilDiv(long dividend, long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+}
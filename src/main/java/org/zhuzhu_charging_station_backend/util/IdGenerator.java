@@ -1,67 +1,251 @@
 package org.zhuzhu_charging_station_backend.util;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.zhuzhu_charging_station_backend.repository.ChargingStationRepository;
-import org.zhuzhu_charging_station_backend.repository.OrderRepository;
 import org.zhuzhu_charging_station_backend.repository.UserRepository;
 import org.springframework.stereotype.Component;
 
-import java.security.SecureRandom;
-import java.util.Random;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
+/**
+ * ID生成，不查询数据库：
+ * 16位详单ID按时间递增（雪花算法：毫秒时间戳 + 节点号 + 毫秒内序号），节点号从Redis租约获得，生成时无需协调，
+ * 时间有序的主键也让InnoDB插入集中在索引末尾；
+ * 8位用户ID、6位充电桩ID位数不够放时间戳，按块从Redis计数器租用一段连续ID，一次查询跳过其中已被占用的，
+ * 其余在本地依次发放（见 {@link BlockAllocator}）。
+ */
 @Component
+@Slf4j
 public class IdGenerator {
     private static final int MIN_ID_SIX = 100_000;  // 6位最小
     private static final int MAX_ID_SIX = 999_999;  // 6位最大
     private static final long MIN_ID_EIGHT = 10_000_000L; // 8位最小
     private static final long MAX_ID_EIGHT = 99_999_999L; // 8位最大
-    private static final long MIN_ID_SIXTEEN = 1_0000_0000_0000_0000L;   // 16位最小
-    private static final long MAX_ID_SIXTEEN = 9_9999_9999_9999_9999L;   // 16位最大
-    private static final Random random = new SecureRandom();
+    private static final long MIN_ID_SIXTEEN = 1000_0000_0000_0000L;   // 16位最小
+
+    // 详单ID = 16位最小值 + (毫秒时间戳 << 11 | 节点号 << 6 | 序号)，最大约 5.4e15，始终为16位
+    private static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z，41位毫秒可用到2093年
+    private static final int NODE_BITS = 5;
+    private static final int SEQUENCE_BITS = 6;
+    public static final int MAX_NODES = 1 << NODE_BITS;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+
+    private static final String NODE_KEY_PREFIX = "id-node:";
+    private static final String USER_SEQ_KEY = "id-seq:user";
+    private static final String STATION_SEQ_KEY = "id-seq:station";
+    // 每次从计数器租用的用户/充电桩ID个数
+    static final int ID_BLOCK_SIZE = 100;
+
+    private static final DefaultRedisScript<Long> NODE_LEASE_SCRIPT = new DefaultRedisScript<>();
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> BLOCK_LEASE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        NODE_LEASE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/id_node_lease.lua")));
+        NODE_LEASE_SCRIPT.setResultType(Long.class);
+        BLOCK_LEASE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/id_block_lease.lua")));
+        BLOCK_LEASE_SCRIPT.setResultType(List.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final BlockAllocator userIds;
+    private final BlockAllocator stationIds;
+    private final LongSupplier clock;
+    private final String leaseHolder = UUID.randomUUID().toString();
+    private final long leaseMillis;
+
+    // 以下字段在 this 上同步访问
+    private int nodeId = -1;
+    // 本地认为节点号租约有效的截止时间，留出时钟误差余量；过期后不再用该节点号生成
+    private long nodeValidUntil;
+    private long lastMillis = -1L;
+    private int sequence;
+
+    @Autowired
+    public IdGenerator(StringRedisTemplate stringRedisTemplate, UserRepository userRepository,
+                       ChargingStationRepository chargingStationRepository,
+                       @Value("${id.node-lease-ms:30000}") long leaseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.userIds = new BlockAllocator(MIN_ID_EIGHT, MAX_ID_EIGHT, () -> leaseBlock(USER_SEQ_KEY, MIN_ID_EIGHT, MAX_ID_EIGHT),
+                userRepository::findUserIdsBetween, "用户");
+        this.stationIds = new BlockAllocator(MIN_ID_SIX, MAX_ID_SIX, () -> leaseBlock(STATION_SEQ_KEY, MIN_ID_SIX, MAX_ID_SIX),
+                chargingStationRepository::findIdsBetween, "充电桩");
+        this.clock = System::currentTimeMillis;
+        this.leaseMillis = leaseMillis;
+    }
 
     /**
-     * 生成唯一的8位用户ID
-     * @param userRepository 用于检查ID是否存在
-     * @param maxAttempts 最大尝试次数（建议3-5次）
+     * 固定节点号、不使用Redis（测试用）
      */
-    public static long generateUniqueUserId(UserRepository userRepository, int maxAttempts) {
-        for (int i = 0; i < maxAttempts; i++) {
-            long candidateId = MIN_ID_EIGHT + random.nextInt((int)(MAX_ID_EIGHT - MIN_ID_EIGHT + 1));
-            if (!userRepository.existsById(candidateId)) {
-                return candidateId;
+    IdGenerator(int nodeId, LongSupplier clock) {
+        this.stringRedisTemplate = null;
+        this.userIds = null;
+        this.stationIds = null;
+        this.clock = clock;
+        this.leaseMillis = 0L;
+        this.nodeId = nodeId;
+        this.nodeValidUntil = Long.MAX_VALUE;
+    }
+
+    /**
+     * 生成16位详单ID，同一节点内严格递增。
+     * 时钟回拨或同一毫秒内序号用完时借用下一毫秒，不等待时钟
+     */
+    public synchronized String nextOrderId() {
+        long now = clock.getAsLong();
+        int node = ensureNode(now);
+        long millis = Math.max(now, lastMillis);
+        if (millis == lastMillis) {
+            if (++sequence > MAX_SEQUENCE) {
+                millis++;
+                sequence = 0;
             }
+        } else {
+            sequence = 0;
         }
-        throw new IllegalStateException("无法生成唯一用户ID");
+        lastMillis = millis;
+        long value = ((millis - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS)) | ((long) node << SEQUENCE_BITS) | sequence;
+        return String.valueOf(MIN_ID_SIXTEEN + value);
+    }
+
+    /**
+     * 生成唯一的8位用户ID
+     */
+    public long nextUserId() {
+        return userIds.next();
     }
 
     /**
      * 生成唯一的6位充电桩ID
-     * @param chargingStationRepository 检查ID是否存在
-     * @param maxAttempts 最大尝试次数
-     * @return 唯一6位充电桩ID
      */
-    public static long generateUniqueStationId(ChargingStationRepository chargingStationRepository, int maxAttempts) {
-        for (int i = 0; i < maxAttempts; i++) {
-            long candidateId = MIN_ID_SIX + random.nextInt(MAX_ID_SIX - MIN_ID_SIX + 1);
-            if (!chargingStationRepository.existsById(candidateId)) {
-                return candidateId;
+    public long nextStationId() {
+        return stationIds.next();
+    }
+
+    /**
+     * 续租节点号
+     */
+    @Scheduled(fixedDelayString = "${id.node-heartbeat-ms:10000}")
+    public synchronized void renewNode() {
+        if (stringRedisTemplate == null || nodeId < 0) return;
+        try {
+            long now = clock.getAsLong();
+            Long index = stringRedisTemplate.execute(NODE_LEASE_SCRIPT,
+                    Collections.singletonList(NODE_KEY_PREFIX + nodeId), leaseHolder, String.valueOf(leaseMillis));
+            if (index != null && index > 0) {
+                nodeValidUntil = now + leaseMillis - leaseMillis / 5;
+            } else {
+                log.warn("ID生成器节点号租约已丢失: nodeId={}", nodeId);
+                nodeId = -1;
             }
+        } catch (Exception e) {
+            log.error("ID生成器节点号续租失败: nodeId={}", nodeId, e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void releaseNode() {
+        if (stringRedisTemplate == null || nodeId < 0) return;
+        String key = NODE_KEY_PREFIX + nodeId;
+        if (leaseHolder.equals(stringRedisTemplate.opsForValue().get(key))) {
+            stringRedisTemplate.delete(key);
+        }
+        nodeId = -1;
+    }
+
+    // 租约过期（或从未获得）时重新占用一个空闲节点号
+    private int ensureNode(long now) {
+        if (nodeId >= 0 && now < nodeValidUntil) return nodeId;
+        if (stringRedisTemplate == null) {
+            throw new IllegalStateException("ID生成器没有可用的节点号");
+        }
+        List<String> keys = new ArrayList<>(MAX_NODES);
+        if (nodeId >= 0) keys.add(NODE_KEY_PREFIX + nodeId); // 优先续用原节点号
+        for (int i = 0; i < MAX_NODES; i++) {
+            if (i != nodeId) keys.add(NODE_KEY_PREFIX + i);
+        }
+        Long index = stringRedisTemplate.execute(NODE_LEASE_SCRIPT, keys, leaseHolder, String.valueOf(leaseMillis));
+        if (index == null || index == 0) {
+            nodeId = -1;
+            throw new IllegalStateException("无法获得ID生成器节点号，节点数超过" + MAX_NODES);
         }
-        throw new IllegalStateException("无法生成唯一充电桩ID");
+        String key = keys.get(index.intValue() - 1);
+        int acquired = Integer.parseInt(key.substring(NODE_KEY_PREFIX.length()));
+        if (acquired != nodeId) {
+            log.info("ID生成器获得节点号: nodeId={}", acquired);
+        }
+        nodeId = acquired;
+        nodeValidUntil = now + leaseMillis - leaseMillis / 5;
+        return nodeId;
+    }
+
+    // 从Redis计数器租用下一段连续ID
+    private long[] leaseBlock(String key, long min, long max) {
+        List<?> block = stringRedisTemplate.execute(BLOCK_LEASE_SCRIPT, Collections.singletonList(key),
+                String.valueOf(ID_BLOCK_SIZE), String.valueOf(min), String.valueOf(max));
+        if (block == null || block.size() < 3) {
+            throw new IllegalStateException("ID计数器租用失败: " + key);
+        }
+        return new long[]{toLong(block.get(0)), toLong(block.get(1)), toLong(block.get(2))};
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
     }
 
     /**
-     * 生成唯一的16位详单ID
-     * @param orderRepository 用于检查ID是否存在
-     * @param maxAttempts 最大尝试次数
-     * @return 唯一16位详单ID
+     * 按块分配计数器ID：每次租用一段连续ID（块内不与其他节点重叠），一次查询取出其中已被占用的ID，其余依次发放。
+     * 旧版本随机生成的ID均匀散布在整个范围内，计数器不能以最大ID为起点（会立即越过上限），
+     * 而是从下限开始按块填补其间的空隙；计数器越过上限后回到下限重新扫描，整个范围都被占满时才失败。
      */
-    public static String generateUniqueOrderId(OrderRepository orderRepository, int maxAttempts) {
-        for (int i = 0; i < maxAttempts; i++) {
-            String candidateId = String.valueOf(MIN_ID_SIXTEEN + (long)(random.nextDouble() * (MAX_ID_SIXTEEN - MIN_ID_SIXTEEN + 1)));
-            if (!orderRepository.existsById(candidateId)) {
-                return candidateId;
+    static final class BlockAllocator {
+        private final long min;
+        private final long max;
+        // 返回 {块的起点, 块的终点, 是否回到了下限(1/0)}
+        private final Supplier<long[]> leaseBlock;
+        private final BiFunction<Long, Long, List<Long>> existingBetween;
+        private final String name;
+        // 已租用、尚未发放的空闲ID，在 this 上同步访问
+        private final Deque<Long> free = new ArrayDeque<>();
+
+        BlockAllocator(long min, long max, Supplier<long[]> leaseBlock,
+                       BiFunction<Long, Long, List<Long>> existingBetween, String name) {
+            this.min = min;
+            this.max = max;
+            this.leaseBlock = leaseBlock;
+            this.existingBetween = existingBetween;
+            this.name = name;
+        }
+
+        synchronized long next() {
+            // 最多把整个范围扫一遍
+            long maxBlocks = (max - min) / ID_BLOCK_SIZE + 2;
+            for (long i = 0; free.isEmpty() && i < maxBlocks; i++) {
+                long[] block = leaseBlock.get();
+                if (block[2] == 1) {
+                    log.info("{}ID计数器已到上限，从下限起按空隙重新分配", name);
+                }
+                Set<Long> taken = new HashSet<>(existingBetween.apply(block[0], block[1]));
+                for (long id = block[0]; id <= block[1]; id++) {
+                    if (!taken.contains(id)) free.addLast(id);
+                }
+            }
+            Long id = free.pollFirst();
+            if (id == null) {
+                throw new IllegalStateException("无法生成唯一" + name + "ID");
             }
+            return id;
         }
-        throw new IllegalStateException("无法生成唯一详单ID");
     }
-}
\ No newline at end of file
+}
@@ -8,11 +8,14 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.zhuzhu_charging_station_backend.entity.User;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -24,6 +27,31 @@ public class JwtTokenUtil {
     @Value("${jwt.expiration}")
     private Long expiration;
 
+    // 已验证Token缓存上限，0表示不缓存
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    // 密钥和解析器只构建一次，JwtParser线程安全可复用
+    private Key signingKey;
+    private JwtParser parser;
+
+    // Token的SHA-256 -> 已验证的Claims，条目在Token过期时失效
+    private final ConcurrentMap<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+    }
+
     // 生成 Token
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
@@ -72,16 +100,61 @@ public class JwtTokenUtil {
         return claimsResolver.apply(claims);
     }
 
+    /**
+     * 解析并校验Token：命中缓存且未过期时直接返回，否则验签后写入缓存
+     */
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        if (cacheMaxSize <= 0) {
+            return parser.parseClaimsJws(token).getBody();
+        }
+        String hash = hash(token);
+        VerifiedToken cached = verifiedTokens.get(hash);
+        long now = System.currentTimeMillis();
+        if (cached != null) {
+            if (now < cached.expiresAt) {
+                return cached.claims;
+            }
+            verifiedTokens.remove(hash, cached);
+        }
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (claims.getExpiration() != null) {
+            if (verifiedTokens.size() >= cacheMaxSize) {
+                evict(now);
+            }
+            verifiedTokens.put(hash, new VerifiedToken(claims, claims.getExpiration().getTime()));
+        }
+        return claims;
+    }
+
+    // 先清理已过期的条目，仍然超限时再随机淘汰一部分，保证缓存大小有界
+    private void evict(long now) {
+        verifiedTokens.values().removeIf(token -> token.expiresAt <= now);
+        int toRemove = verifiedTokens.size() - cacheMaxSize * 9 / 10;
+        Iterator<String> iterator = verifiedTokens.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static String hash(String token) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        byte[] bytes = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(bytes);
     }
 
     private Key getSigningKey() {
-        // 使用 secret 字段生成密钥
-        return Keys.hmacShaKeyFor(secret.getBytes());
+        return signingKey;
+    }
+
+    private static class VerifiedToken {
+        private final Claims claims;
+        private final long expiresAt;
+
+        private VerifiedToken(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package org.zhuzhu_charging_station_backend.util;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 分时电价时段：峰时 10:00~15:00、18:00~21:00；平时 7:00~10:00、15:00~18:00、21:00~23:00；谷时 23:00~7:00
+ */
+public enum TariffPeriod {
+    PEAK,
+    NORMAL,
+    VALLEY;
+
+    // 一天内时段切换的整点
+    private static final int[] BOUNDARY_HOURS = {7, 10, 15, 18, 21, 23};
+
+    public static TariffPeriod of(LocalTime time) {
+        int hour = time.getHour();
+        if ((hour >= 10 && hour < 15) || (hour >= 18 && hour < 21)) return PEAK;
+        if (hour >= 23 || hour < 7) return VALLEY;
+        return NORMAL;
+    }
+
+    /**
+     * 统计 [start, end) 在各时段内的秒数，下标为 {@link #ordinal()}
+     */
+    public static long[] splitSeconds(LocalDateTime start, LocalDateTime end) {
+        long[] seconds = new long[values().length];
+        if (start == null || end == null || !start.isBefore(end)) return seconds;
+        LocalDateTime cursor = start;
+        while (cursor.isBefore(end)) {
+            LocalDateTime next = nextBoundary(cursor);
+            LocalDateTime segmentEnd = next.isBefore(end) ? next : end;
+            seconds[of(cursor.toLocalTime()).ordinal()] += ChronoUnit.SECONDS.between(cursor, segmentEnd);
+            cursor = segmentEnd;
+        }
+        return seconds;
+    }
+
+    private static LocalDateTime nextBoundary(LocalDateTime time) {
+        for (int hour : BOUNDARY_HOURS) {
+            if (time.getHour() < hour) {
+                return time.toLocalDate().atTime(hour, 0);
+            }
+        }
+        return time.toLocalDate().plusDays(1).atTime(BOUNDARY_HOURS[0], 0);
+    }
+}
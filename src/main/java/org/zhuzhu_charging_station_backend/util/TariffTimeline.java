@@ -0,0 +1,47 @@
+package org.zhuzhu_charging_station_backend.util;
+
+import java.time.LocalTime;
+import java.util.function.Function;
+
+/**
+ * 预编译的分时电价时间轴：一天每一秒对应的时段，按秒查表，不再逐次构造时间对象比较
+ */
+public final class TariffTimeline {
+
+    public static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    // 默认时段划分，见 {@link TariffPeriod}
+    public static final TariffTimeline DEFAULT = compile(TariffPeriod::of);
+
+    private static final TariffPeriod[] PERIODS = TariffPeriod.values();
+
+    // 下标为当天秒数，值为时段ordinal
+    private final byte[] periods;
+
+    private TariffTimeline(byte[] periods) {
+        this.periods = periods;
+    }
+
+    /**
+     * 按给定的时段划分编译时间轴
+     */
+    public static TariffTimeline compile(Function<LocalTime, TariffPeriod> schedule) {
+        byte[] periods = new byte[SECONDS_PER_DAY];
+        for (int second = 0; second < SECONDS_PER_DAY; second++) {
+            periods[second] = (byte) schedule.apply(LocalTime.ofSecondOfDay(second)).ordinal();
+        }
+        return new TariffTimeline(periods);
+    }
+
+    /**
+     * @param secondOfDay 当天秒数 [0, 86400)
+     * @return 时段ordinal
+     */
+    public int ordinalAt(int secondOfDay) {
+        return periods[secondOfDay];
+    }
+
+    public TariffPeriod periodAt(int secondOfDay) {
+        return PERIODS[periods[secondOfDay]];
+    }
+}
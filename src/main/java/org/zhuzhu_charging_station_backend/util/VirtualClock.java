@@ -0,0 +1,52 @@
+package org.zhuzhu_charging_station_backend.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可手动拨动的时钟：时间只在调用 {@link #advance(Duration)} 时前进，
+ * 用于仿真和测试中快进（一次拨过多秒即模拟调度延迟），计费按经过的时间推进，结果与逐秒推进一致。
+ * withZone 返回的时钟与原时钟共享同一时刻
+ */
+public class VirtualClock extends Clock {
+
+    private final AtomicReference<Instant> instant;
+    private final ZoneId zone;
+
+    public VirtualClock(Instant start, ZoneId zone) {
+        this(new AtomicReference<>(start), zone);
+    }
+
+    private VirtualClock(AtomicReference<Instant> instant, ZoneId zone) {
+        this.instant = instant;
+        this.zone = zone;
+    }
+
+    /**
+     * 时间前进 duration
+     */
+    public void advance(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("虚拟时钟不能回拨: " + duration);
+        }
+        instant.updateAndGet(current -> current.plus(duration));
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new VirtualClock(instant, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant.get();
+    }
+}
@@ -0,0 +1,131 @@
+package org.zhuzhu_charging_station_backend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.zhuzhu_charging_station_backend.dto.StandardResponse;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.service.OrderEventPublisher;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订单变更事件的WebSocket扇出：维护 订单ID -> 会话 的订阅关系，
+ * 收到订单事件后只推送给订阅了该订单的会话，内容与上次推送相同则不发送。
+ * 订单已完成或已取消时推送最终状态后关闭会话。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderPushDispatcher implements MessageListener {
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final RedisTemplate<String, Order> orderRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    // 订单ID -> 订阅该订单的会话ID
+    private final Map<String, Set<String>> sessionsByOrder = new ConcurrentHashMap<>();
+    // 会话ID -> 订阅信息
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(OrderEventPublisher.ORDER_EVENT_CHANNEL));
+    }
+
+    /**
+     * 订阅订单变更，并立即推送一次当前状态
+     * @param session 可并发发送的会话
+     * @param current 订单当前状态
+     */
+    public void subscribe(WebSocketSession session, Order current) {
+        unsubscribe(session);
+        Subscription subscription = new Subscription(session, current.getId());
+        subscriptions.put(session.getId(), subscription);
+        sessionsByOrder.computeIfAbsent(current.getId(), k -> ConcurrentHashMap.newKeySet()).add(session.getId());
+        push(subscription, current);
+    }
+
+    public void unsubscribe(WebSocketSession session) {
+        Subscription subscription = subscriptions.remove(session.getId());
+        if (subscription == null) return;
+        sessionsByOrder.computeIfPresent(subscription.orderId, (k, sessionIds) -> {
+            sessionIds.remove(session.getId());
+            return sessionIds.isEmpty() ? null : sessionIds;
+        });
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (sessionsByOrder.isEmpty()) return;
+        try {
+            Order order = (Order) orderRedisTemplate.getValueSerializer().deserialize(message.getBody());
+            dispatch(order);
+        } catch (Exception e) {
+            log.warn("订单事件处理失败", e);
+        }
+    }
+
+    /**
+     * 将订单推送给订阅了该订单的本节点会话
+     */
+    public void dispatch(Order order) {
+        if (order == null || order.getId() == null) return;
+        Set<String> sessionIds = sessionsByOrder.get(order.getId());
+        if (sessionIds == null) return;
+        for (String sessionId : sessionIds) {
+            Subscription subscription = subscriptions.get(sessionId);
+            if (subscription != null) {
+                push(subscription, order);
+            }
+        }
+    }
+
+    private void push(Subscription subscription, Order order) {
+        WebSocketSession session = subscription.session;
+        try {
+            String payload = objectMapper.writeValueAsString(StandardResponse.success(order));
+            synchronized (subscription) {
+                if (payload.equals(subscription.lastPayload)) return; // 无变化不推送
+                subscription.lastPayload = payload;
+                if (session.isOpen()) {
+                    session.sendMessage(new TextMessage(payload));
+                }
+            }
+            if (order.getStatus() != null && (order.getStatus() == 0 || order.getStatus() == 4)) { // 已完成或已取消
+                unsubscribe(session);
+                session.close(CloseStatus.NORMAL);
+            }
+        } catch (Exception e) {
+            log.warn("推送订单失败: sessionId={}, orderId={}", session.getId(), order.getId(), e);
+            unsubscribe(session);
+        }
+    }
+
+    private static class Subscription {
+        private final WebSocketSession session;
+        private final String orderId;
+        private String lastPayload;
+
+        private Subscription(WebSocketSession session, String orderId) {
+            this.session = session;
+            this.orderId = orderId;
+        }
+    }
+}
@@ -2,10 +2,13 @@ package org.zhuzhu_charging_station_backend.websocket;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import org.zhuzhu_charging_station_backend.dto.OrderUpsertRequest;
 import org.zhuzhu_charging_station_backend.dto.StandardResponse;
@@ -13,7 +16,8 @@ import org.zhuzhu_charging_station_backend.entity.Order;
 import org.zhuzhu_charging_station_backend.exception.BadStateException;
 import org.zhuzhu_charging_station_backend.service.OrderService;
 
-import java.util.concurrent.*;
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @RequiredArgsConstructor
@@ -22,13 +26,35 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
 
     private final OrderService orderService;
     private final ObjectMapper objectMapper;
+    private final OrderPushDispatcher orderPushDispatcher;
+    private final MeterRegistry meterRegistry;
 
-    // 用于管理每个session的定时任务
-    private final ConcurrentMap<WebSocketSession, ScheduledFuture<?>> taskMap = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(8);
+    // 当前连接数，指标 websocket.sessions
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    // 发送超时与缓冲上限，防止慢客户端拖住事件分发线程
+    private static final int SEND_TIME_LIMIT_MILLIS = 5000;
+    private static final int SEND_BUFFER_SIZE_LIMIT = 64 * 1024;
+    private static final String CONCURRENT_SESSION_ATTR = "concurrentSession";
+
+    @PostConstruct
+    public void registerSessionGauge() {
+        Gauge.builder("websocket.sessions", sessionCount, AtomicInteger::get)
+                .description("当前订单WebSocket连接数")
+                .register(meterRegistry);
+    }
+
+    // 会话同时会被事件分发线程和请求线程写入，统一包装为可并发发送的会话
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        sessionCount.incrementAndGet();
+        session.getAttributes().put(CONCURRENT_SESSION_ATTR,
+                new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MILLIS, SEND_BUFFER_SIZE_LIMIT));
+    }
 
     @Override
-    public void handleTextMessage(WebSocketSession session, TextMessage message) {
+    public void handleTextMessage(WebSocketSession rawSession, TextMessage message) {
+        WebSocketSession session = concurrentSession(rawSession);
         try {
             JsonNode root = objectMapper.readTree(message.getPayload());
             String type = root.get("type").asText();
@@ -43,12 +69,12 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
                 OrderUpsertRequest req = objectMapper.treeToValue(root.get("data"), OrderUpsertRequest.class);
                 Order order = orderService.upsertOrder(req, token);
                 session.getAttributes().put("orderId", order.getId());
-                startPushTask(session, order.getId(), token); // 开启推送
+                orderPushDispatcher.subscribe(session, order); // 订阅订单变更推送
             } else if ("query".equals(type)) {
                 String orderId = root.get("data").get("orderId").asText();
                 Order order = orderService.getOrder(orderId, token);
                 session.getAttributes().put("orderId", order.getId());
-                startPushTask(session, order.getId(), token); // 开启推送
+                orderPushDispatcher.subscribe(session, order); // 订阅订单变更推送
             } else if ("cancel".equals(type)) {
                 String orderId = root.get("data").get("orderId").asText();
                 if (orderId == null) {
@@ -56,7 +82,7 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
                 }
                 Order order = orderService.cancelOrder(orderId, token);
                 sendResponse(session, StandardResponse.success(order));
-                stopPushTask(session);
+                orderPushDispatcher.unsubscribe(session);
                 session.close();
             } else if ("finish".equals(type)) {
                 String orderId = root.get("data").get("orderId").asText();
@@ -65,7 +91,7 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
                 }
                 Order order = orderService.finishOrder(orderId, token);
                 sendResponse(session, StandardResponse.success(order));
-                stopPushTask(session);
+                orderPushDispatcher.unsubscribe(session);
                 session.close();
             } else {
                 throw new BadStateException("未知type: " + type);
@@ -77,36 +103,16 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    // 开始定时推送
-    private void startPushTask(WebSocketSession session, String orderId, String token) {
-        // 有旧的先停
-        stopPushTask(session);
-        ScheduledFuture<?> future = executor.scheduleAtFixedRate(() -> {
-            try {
-                Order order = orderService.getOrder(orderId, token);
-                sendResponse(session, StandardResponse.success(order)); // 发送订单状态
-                if (order.getStatus() == 0 || order.getStatus() == 4) {  // 已完成或已取消
-                    stopPushTask(session);
-                    session.close();
-                }
-            } catch (Exception e) {
-                sendResponse(session, StandardResponse.error(500, "推送订单失败: " + e.getMessage()));
-                stopPushTask(session);
-            }
-        }, 0, 1, TimeUnit.SECONDS);
-        taskMap.put(session, future);
-    }
-
-    // 停止定时推送
-    private void stopPushTask(WebSocketSession session) {
-        ScheduledFuture<?> future = taskMap.remove(session);
-        if (future != null) future.cancel(true);
-    }
-
     // 客户端断线时也停止推送，避免泄露
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        stopPushTask(session);
+        sessionCount.decrementAndGet();
+        orderPushDispatcher.unsubscribe(session);
+    }
+
+    private WebSocketSession concurrentSession(WebSocketSession session) {
+        Object decorated = session.getAttributes().get(CONCURRENT_SESSION_ATTR);
+        return decorated instanceof WebSocketSession ? (WebSocketSession) decorated : session;
     }
 
     // 工具方法：回复前端
@@ -0,0 +1,18 @@
+-- 租用一段连续的计数器ID：计数器记录已租出的最大ID，越过上限后从下限重新开始
+-- KEYS[1]: 计数器；ARGV[1]: 块大小；ARGV[2]: 下限；ARGV[3]: 上限
+-- 返回 {块的起点, 块的终点, 是否回到了下限(1/0)}
+local size = tonumber(ARGV[1])
+local min = tonumber(ARGV[2])
+local max = tonumber(ARGV[3])
+local last = tonumber(redis.call('GET', KEYS[1]) or (min - 1))
+if last < min - 1 then
+    last = min - 1
+end
+local wrapped = 0
+if last >= max then
+    last = min - 1
+    wrapped = 1
+end
+local finish = math.min(max, last + size)
+redis.call('SET', KEYS[1], finish)
+return {last + 1, finish, wrapped}
@@ -0,0 +1,14 @@
+-- ID生成器的节点号租约：依次尝试KEYS中的节点号，已由本节点持有则续租，空闲则占用
+-- KEYS: 候选节点号的租约key；ARGV[1]: 节点标识；ARGV[2]: 租期(毫秒)
+-- 返回占用或续租成功的节点号在KEYS中的下标(从1开始)，全部被占用时返回0
+for i, key in ipairs(KEYS) do
+    local holder = redis.call('GET', key)
+    if holder == ARGV[1] then
+        redis.call('PEXPIRE', key, ARGV[2])
+        return i
+    elseif not holder then
+        redis.call('SET', key, ARGV[1], 'PX', ARGV[2])
+        return i
+    end
+end
+return 0
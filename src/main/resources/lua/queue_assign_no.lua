@@ -0,0 +1,16 @@
+-- 分配排队号：该前缀下在队订单的最大编号+1，订单按ARGV顺序拿到连续编号
+-- 编号登记在有序集合中（member为订单ID，score为编号），订单出队时移除，队列排空后自然归零
+-- KEYS[1]: 排队号有序集合；ARGV: 订单ID列表
+-- 返回第一个订单分配到的编号
+for i = 1, #ARGV do
+    redis.call('ZREM', KEYS[1], ARGV[i])
+end
+local top = redis.call('ZREVRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+local first = 1
+if #top > 0 then
+    first = tonumber(top[2]) + 1
+end
+for i = 1, #ARGV do
+    redis.call('ZADD', KEYS[1], first + i - 1, ARGV[i])
+end
+return first
@@ -0,0 +1,4 @@
+-- 订单入队（队尾），同一订单在队列中只保留一份
+-- KEYS[1]: 队列key；ARGV[1]: 订单ID
+redis.call('LREM', KEYS[1], 0, ARGV[1])
+return redis.call('RPUSH', KEYS[1], ARGV[1])
@@ -0,0 +1,15 @@
+-- 补登排队号：只为仍在队列中、尚未登记的订单登记（ZADD NX），不删除、不覆盖已有登记，
+-- 与其他节点并发执行的分配、出队脚本交错时不会丢失编号（已分配编号但尚未入队的订单同样保留）
+-- KEYS[1]: 队列key；KEYS[2]: 排队号有序集合；ARGV: 订单ID与编号交替排列
+-- 返回新登记的订单数
+local queued = {}
+for _, orderId in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do
+    queued[orderId] = true
+end
+local added = 0
+for i = 1, #ARGV, 2 do
+    if queued[ARGV[i]] then
+        added = added + redis.call('ZADD', KEYS[2], 'NX', ARGV[i + 1], ARGV[i])
+    end
+end
+return added
@@ -0,0 +1,24 @@
+-- 释放一批订单到队头：写回订单、登记连续的RF/RT排队号、按顺序插入队头，整体原子完成
+-- KEYS[1]: 队列key；KEYS[2]: 排队号有序集合；KEYS[3..n+2]: 订单key
+-- ARGV[1]: 调用方读到的当前最大编号（乐观校验，期间被其他释放占用则返回0由调用方重试）
+-- ARGV[2..n+1]: 订单ID（按释放顺序）；ARGV[n+2..2n+1]: 已填好编号的订单数据
+-- 成功返回第一个订单的编号
+local n = #KEYS - 2
+local top = redis.call('ZREVRANGE', KEYS[2], 0, 0, 'WITHSCORES')
+local current = 0
+if #top > 0 then
+    current = tonumber(top[2])
+end
+if current ~= tonumber(ARGV[1]) then
+    return 0
+end
+for i = 1, n do
+    local orderId = ARGV[1 + i]
+    redis.call('SET', KEYS[2 + i], ARGV[1 + n + i])
+    redis.call('ZADD', KEYS[2], current + i, orderId)
+    redis.call('LREM', KEYS[1], 0, orderId)
+end
+for i = n, 1, -1 do
+    redis.call('LPUSH', KEYS[1], ARGV[1 + i])
+end
+return current + 1
@@ -0,0 +1,10 @@
+-- 订单出队/移除，同时注销其排队号
+-- KEYS[1]: 队列key；KEYS[2..]: 该模式下各前缀的排队号有序集合；ARGV: 一个或多个订单ID
+local removed = 0
+for _, orderId in ipairs(ARGV) do
+    removed = removed + redis.call('LREM', KEYS[1], 0, orderId)
+    for i = 2, #KEYS do
+        redis.call('ZREM', KEYS[i], orderId)
+    end
+end
+return removed
@@ -0,0 +1,19 @@
+-- 一次续租/抢占/释放本节点的全部分片租约
+-- KEYS: 各分片租约key；ARGV[1]: 节点ID；ARGV[2]: 租期(毫秒)；ARGV[2+i]: KEYS[i]的动作，1=持有，0=释放
+-- 返回本节点当前持有的分片在KEYS中的下标(从1开始)
+local owned = {}
+for i, key in ipairs(KEYS) do
+    local holder = redis.call('GET', key)
+    if ARGV[2 + i] == '1' then
+        if not holder then
+            redis.call('SET', key, ARGV[1], 'PX', ARGV[2])
+            table.insert(owned, i)
+        elseif holder == ARGV[1] then
+            redis.call('PEXPIRE', key, ARGV[2])
+            table.insert(owned, i)
+        end
+    elseif holder == ARGV[1] then
+        redis.call('DEL', key)
+    end
+end
+return owned
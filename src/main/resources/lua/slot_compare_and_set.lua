@@ -0,0 +1,41 @@
+-- 批量比较并写入充电桩slot（调度器一轮tick的回写、actor模式的快照写回、加锁修改的提交）
+-- slot拆为状态hash（KEYS[2i-1]）和排队list（KEYS[2i]），hash中的version字段每次写入递增
+-- ARGV按桩依次排列：期望版本（空串表示slot不存在，*表示不比较）、是否保留（0则删除slot）、
+--   status、chargeCount、chargeTime、chargeAmount、waitingTime、remainingEnergy（空串表示无此字段）、
+--   队列长度、队列中的订单ID
+-- 版本未变才写入，返回写入失败（期间被其他操作修改过）的桩下标，从1开始
+local FIELDS = {'status', 'chargeCount', 'chargeTime', 'chargeAmount', 'waitingTime', 'remainingEnergy'}
+local failed = {}
+local cursor = 1
+for i = 1, #KEYS / 2 do
+    local stateKey = KEYS[2 * i - 1]
+    local queueKey = KEYS[2 * i]
+    local expected = ARGV[cursor]
+    local keep = ARGV[cursor + 1] == '1'
+    local fieldStart = cursor + 2
+    local queueLength = tonumber(ARGV[fieldStart + #FIELDS])
+    local queueStart = fieldStart + #FIELDS + 1
+    cursor = queueStart + queueLength
+
+    local current = redis.call('HGET', stateKey, 'version') or ''
+    if expected ~= '*' and current ~= expected then
+        failed[#failed + 1] = i
+    elseif not keep then
+        redis.call('DEL', stateKey, queueKey)
+    else
+        for f = 1, #FIELDS do
+            local value = ARGV[fieldStart + f - 1]
+            if value == '' then
+                redis.call('HDEL', stateKey, FIELDS[f])
+            else
+                redis.call('HSET', stateKey, FIELDS[f], value)
+            end
+        end
+        redis.call('HINCRBY', stateKey, 'version', 1)
+        redis.call('DEL', queueKey)
+        if queueLength > 0 then
+            redis.call('RPUSH', queueKey, unpack(ARGV, queueStart, queueStart + queueLength - 1))
+        end
+    end
+end
+return failed
@@ -0,0 +1,85 @@
+-- 充电桩slot的字段级原子修改，不需要读出整个slot再加锁写回
+-- KEYS[1]: 状态hash；KEYS[2]: 排队list；ARGV[1]: 操作，其余为操作参数
+-- slot不存在时不修改并返回-1；有修改时version递增
+local stateKey = KEYS[1]
+local queueKey = KEYS[2]
+local op = ARGV[1]
+if redis.call('EXISTS', stateKey) == 0 then
+    return -1
+end
+
+-- 增减剩余负载（等待秒数、剩余电量），不低于0
+local function adjust(field, delta)
+    if redis.call('HINCRBY', stateKey, field, delta) < 0 then
+        redis.call('HSET', stateKey, field, 0)
+    end
+end
+
+local function touch()
+    redis.call('HINCRBY', stateKey, 'version', 1)
+end
+
+if op == 'append' then
+    -- ARGV[2]: 队列上限（空串为不限）；之后每三个一组：订单ID、剩余秒数、剩余电量
+    -- 桩关闭/故障时不接收；已在队列中的订单计为接收但不重复累加负载；返回按顺序接收的订单数
+    local status = redis.call('HGET', stateKey, 'status')
+    if not status or status == '2' or status == '3' then
+        return 0
+    end
+    local queued = {}
+    for _, id in ipairs(redis.call('LRANGE', queueKey, 0, -1)) do
+        queued[id] = true
+    end
+    local capacity = -1
+    if ARGV[2] ~= '' then
+        capacity = tonumber(ARGV[2]) - redis.call('LLEN', queueKey)
+    end
+    local accepted = 0
+    for i = 3, #ARGV, 3 do
+        if capacity >= 0 and accepted >= capacity then
+            break
+        end
+        local id = ARGV[i]
+        if not queued[id] then
+            redis.call('RPUSH', queueKey, id)
+            adjust('waitingTime', ARGV[i + 1])
+            adjust('remainingEnergy', ARGV[i + 2])
+            queued[id] = true
+        end
+        accepted = accepted + 1
+    end
+    if accepted > 0 then
+        touch()
+    end
+    return accepted
+elseif op == 'remove' or op == 'settle' then
+    -- ARGV[2]: 订单ID；ARGV[3]/ARGV[4]: 订单移出时的负载增量（剩余秒数/剩余电量取负）
+    -- settle 另有 ARGV[5]/ARGV[6]: 本次充电时长/充电量，累计到状态统计并把桩置为空闲
+    local removed = redis.call('LREM', queueKey, 1, ARGV[2])
+    if removed > 0 then
+        adjust('waitingTime', ARGV[3])
+        adjust('remainingEnergy', ARGV[4])
+    end
+    if op == 'settle' and redis.call('HEXISTS', stateKey, 'status') == 1 then
+        redis.call('HSET', stateKey, 'status', 0)
+        redis.call('HINCRBY', stateKey, 'chargeCount', 1)
+        redis.call('HINCRBY', stateKey, 'chargeTime', ARGV[5])
+        redis.call('HINCRBYFLOAT', stateKey, 'chargeAmount', ARGV[6])
+        touch()
+    elseif removed > 0 then
+        touch()
+    end
+    return removed
+elseif op == 'status' then
+    -- ARGV[2]: 新状态
+    redis.call('HSET', stateKey, 'status', ARGV[2])
+    touch()
+    return 1
+elseif op == 'load' then
+    -- ARGV[2]/ARGV[3]: 等待秒数/剩余电量的增量
+    adjust('waitingTime', ARGV[2])
+    adjust('remainingEnergy', ARGV[3])
+    touch()
+    return 1
+end
+return redis.error_reply('unknown slot op: ' .. tostring(op))
@@ -0,0 +1,34 @@
+-- 归档订单表：列与 `order` 一致，另加归档时间；按 record_time 以月为单位做范围分区，
+-- 分区键必须包含在主键中，因此主键为 (id, record_time)。
+-- p_history 存放 2024 年以前的订单，之后的月份分区由归档任务按需从 p_max 拆出。
+CREATE TABLE IF NOT EXISTS order_archive (
+    id                  VARCHAR(255)  NOT NULL,
+    user_id             BIGINT        NOT NULL,
+    charging_station_id BIGINT        NULL,
+    mode                INT           NOT NULL,
+    record_time         DATETIME(6)   NOT NULL,
+    status              INT           NOT NULL,
+    charge_amount       DECIMAL(8, 2) NULL,
+    actual_charge       DECIMAL(8, 2) NULL,
+    charge_duration     BIGINT        NULL,
+    start_time          DATETIME(6)   NULL,
+    stop_time           DATETIME(6)   NULL,
+    charge_fee          DECIMAL(8, 2) NULL,
+    peak_charge         DECIMAL(8, 2) NULL,
+    normal_charge       DECIMAL(8, 2) NULL,
+    valley_charge       DECIMAL(8, 2) NULL,
+    peak_charge_fee     DECIMAL(8, 2) NULL,
+    normal_charge_fee   DECIMAL(8, 2) NULL,
+    valley_charge_fee   DECIMAL(8, 2) NULL,
+    service_fee         DECIMAL(8, 2) NULL,
+    total_fee           DECIMAL(8, 2) NULL,
+    archived_at         DATETIME(6)   NOT NULL,
+    PRIMARY KEY (id, record_time),
+    KEY idx_archive_user_time (user_id, record_time, id),
+    KEY idx_archive_time (record_time, id),
+    KEY idx_archive_order_id (id)
+) ENGINE = InnoDB ROW_FORMAT = COMPRESSED
+PARTITION BY RANGE COLUMNS (record_time) (
+    PARTITION p_history VALUES LESS THAN ('2024-01-01 00:00:00'),
+    PARTITION p_max VALUES LESS THAN (MAXVALUE)
+)
@@ -0,0 +1,178 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.zhuzhu_charging_station_backend.entity.ChargingMeter;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+import org.zhuzhu_charging_station_backend.entity.Order;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 订单、slot二进制格式：随机对象（含空字段、计量状态、超出long的小数）往返一致，
+ * 升级前的JSON数据仍可读取，切回JSON写出后二进制读取端同样兼容
+ */
+class BinaryRedisSerializerTests {
+
+    private static final int CASES = 2000;
+    private static final long SEED = 20240611L;
+
+    private final Jackson2JsonRedisSerializer<Order> orderJson = json(Order.class);
+    private final Jackson2JsonRedisSerializer<ChargingStationSlot> slotJson = json(ChargingStationSlot.class);
+    private final OrderBinarySerializer orderBinary = new OrderBinarySerializer(orderJson, true);
+    private final SlotBinarySerializer slotBinary = new SlotBinarySerializer(slotJson, true);
+
+    @Test
+    void ordersRoundTrip() {
+        Random random = new Random(SEED);
+        long binaryBytes = 0;
+        long jsonBytes = 0;
+        for (int i = 0; i < CASES; i++) {
+            Order order = randomOrder(random);
+            byte[] binary = orderBinary.serialize(order);
+            byte[] json = orderJson.serialize(order);
+            binaryBytes += binary.length;
+            jsonBytes += json.length;
+
+            assertEquals(order, orderBinary.deserialize(binary), "二进制往返不一致");
+            assertEquals(order, orderBinary.deserialize(json), "JSON兼容读取不一致");
+            assertEquals(order.getMeter(), orderBinary.deserialize(binary).getMeter());
+        }
+        assertTrue(binaryBytes * 3 < jsonBytes, "二进制应明显小于JSON: " + binaryBytes + " vs " + jsonBytes);
+    }
+
+    @Test
+    void slotsRoundTrip() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < CASES; i++) {
+            ChargingStationSlot slot = randomSlot(random);
+            assertEquals(slot, slotBinary.deserialize(slotBinary.serialize(slot)), "二进制往返不一致");
+            assertEquals(slot, slotBinary.deserialize(slotJson.serialize(slot)), "JSON兼容读取不一致");
+        }
+    }
+
+    @Test
+    void jsonWriterStaysReadable() {
+        Random random = new Random(SEED);
+        SlotBinarySerializer jsonWriter = new SlotBinarySerializer(slotJson, false);
+        ChargingStationSlot slot = randomSlot(random);
+        byte[] bytes = jsonWriter.serialize(slot);
+        assertEquals('[', bytes[0]);
+        assertEquals(slot, slotBinary.deserialize(bytes));
+    }
+
+    @Test
+    void serializationIsDeterministic() {
+        // slot的比较并写入按字节比较，同一个值必须得到相同的字节
+        Random random = new Random(SEED);
+        for (int i = 0; i < 100; i++) {
+            ChargingStationSlot slot = randomSlot(random);
+            assertTrue(java.util.Arrays.equals(slotBinary.serialize(slot),
+                    slotBinary.serialize(slotBinary.deserialize(slotBinary.serialize(slot)))));
+        }
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        assertThrows(SerializationException.class, () -> slotBinary.deserialize(new byte[]{9, 0}));
+        assertNull(slotBinary.deserialize(new byte[0]));
+    }
+
+    private static Order randomOrder(Random random) {
+        Order order = new Order();
+        order.setId(random.nextInt(10) == 0 ? null : String.format("%016d", Math.abs(random.nextLong()) % 10_000_000_000_000_000L));
+        order.setUserId(maybe(random, (long) random.nextInt(100000)));
+        order.setChargingStationId(maybe(random, (long) random.nextInt(1000)));
+        order.setMode(maybe(random, random.nextInt(2)));
+        order.setQueueNo(maybe(random, (random.nextBoolean() ? "RF" : "T") + random.nextInt(1000)));
+        order.setRecordTime(maybe(random, randomTime(random)));
+        order.setStatus(maybe(random, random.nextInt(5)));
+        order.setChargeAmount(maybe(random, randomDecimal(random)));
+        order.setChargeDuration(maybe(random, (long) random.nextInt(86400)));
+        order.setStartTime(maybe(random, randomTime(random)));
+        order.setStopTime(maybe(random, randomTime(random)));
+        if (random.nextInt(3) == 0) {
+            ChargingMeter meter = new ChargingMeter();
+            meter.setChargeAmount(random.nextInt(1_000_000_000));
+            meter.setActualCharge(random.nextInt(1_000_000_000));
+            meter.setChargeFee(random.nextInt(1_000_000_000));
+            meter.setServiceFee(random.nextInt(1_000_000_000));
+            meter.setPeakCharge(random.nextInt(1_000_000_000));
+            meter.setNormalCharge(random.nextInt(1_000_000_000));
+            meter.setValleyCharge(random.nextInt(1_000_000_000));
+            meter.setPeakChargeFee(random.nextInt(1_000_000_000));
+            meter.setNormalChargeFee(random.nextInt(1_000_000_000));
+            meter.setValleyChargeFee(random.nextInt(1_000_000_000));
+            meter.setEnergyScale(7);
+            meter.setFeeScale(7);
+            order.setMeter(meter);
+        } else {
+            order.setActualCharge(maybe(random, randomDecimal(random)));
+            order.setChargeFee(maybe(random, randomDecimal(random)));
+            order.setPeakCharge(maybe(random, randomDecimal(random)));
+            order.setNormalCharge(maybe(random, randomDecimal(random)));
+            order.setValleyCharge(maybe(random, randomDecimal(random)));
+            order.setPeakChargeFee(maybe(random, randomDecimal(random)));
+            order.setNormalChargeFee(maybe(random, randomDecimal(random)));
+            order.setValleyChargeFee(maybe(random, randomDecimal(random)));
+            order.setServiceFee(maybe(random, randomDecimal(random)));
+            order.setTotalFee(maybe(random, randomDecimal(random)));
+        }
+        return order;
+    }
+
+    private static ChargingStationSlot randomSlot(Random random) {
+        ChargingStationSlot slot = new ChargingStationSlot();
+        if (random.nextInt(10) != 0) {
+            ChargingStationStatus status = new ChargingStationStatus();
+            status.setStatus(maybe(random, random.nextInt(4)));
+            status.setCurrentChargeCount(maybe(random, random.nextInt(100000)));
+            status.setCurrentChargeTime(maybe(random, random.nextLong()));
+            status.setCurrentChargeAmount(maybe(random, random.nextDouble() * 1e6));
+            slot.setStatus(status);
+        }
+        slot.setWaitingTime(maybe(random, (long) random.nextInt(1_000_000)));
+        slot.setRemainingEnergy(maybe(random, random.nextLong()));
+        if (random.nextInt(10) != 0) {
+            List<String> queue = new ArrayList<>();
+            int size = random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                queue.add(String.format("%016d", Math.abs(random.nextLong()) % 10_000_000_000_000_000L));
+            }
+            slot.setQueue(queue);
+        }
+        return slot;
+    }
+
+    private static BigDecimal randomDecimal(Random random) {
+        if (random.nextInt(50) == 0) {
+            // 超出long的未缩放值
+            return new BigDecimal(new BigInteger(100, random), random.nextInt(10));
+        }
+        return BigDecimal.valueOf(random.nextInt(2_000_000) - 1_000_000, random.nextInt(8));
+    }
+
+    private static LocalDateTime randomTime(Random random) {
+        return LocalDateTime.of(2020 + random.nextInt(10), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(2) * random.nextInt(1_000_000_000));
+    }
+
+    private static <T> T maybe(Random random, T value) {
+        return random.nextInt(8) == 0 ? null : value;
+    }
+
+    private static <T> Jackson2JsonRedisSerializer<T> json(Class<T> type) {
+        Jackson2JsonRedisSerializer<T> serializer = new Jackson2JsonRedisSerializer<>(type);
+        serializer.setObjectMapper(new RedisConfig().redisObjectMapper());
+        return serializer;
+    }
+}
@@ -0,0 +1,86 @@
+package org.zhuzhu_charging_station_backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 两个节点共用同一个Redis缓存（用内存缓存代替），失效通知直接投递给所有节点：
+ * 一个节点写入后，另一个节点不再返回本地的旧副本
+ */
+class NearCacheTests {
+
+    private static final String CACHE = "stations";
+
+    private final ConcurrentMapCacheManager redis = new ConcurrentMapCacheManager(CACHE);
+    private final List<NearCacheManager> nodes = new ArrayList<>();
+    private final NearCacheManager nodeA = node();
+    private final NearCacheManager nodeB = node();
+
+    @Test
+    void putInvalidatesOtherNodes() {
+        Cache a = nodeA.getCache(CACHE);
+        Cache b = nodeB.getCache(CACHE);
+        a.put(1L, "v1");
+        assertEquals("v1", b.get(1L).get());
+        assertEquals(1, ((NearCache) b).localSize());
+
+        a.put(1L, "v2");
+        assertEquals(0, ((NearCache) b).localSize());
+        assertEquals("v2", b.get(1L).get());
+        assertEquals("v2", a.get(1L).get());
+    }
+
+    @Test
+    void putIfAbsentInvalidatesOnlyWhenWritten() {
+        Cache a = nodeA.getCache(CACHE);
+        Cache b = nodeB.getCache(CACHE);
+        assertNull(a.putIfAbsent(1L, "v1"));
+        assertEquals("v1", b.get(1L).get());
+
+        // 已存在时不写入，不打扰其他节点的本地副本
+        assertEquals("v1", a.putIfAbsent(1L, "v2").get());
+        assertEquals(1, ((NearCache) b).localSize());
+        assertEquals("v1", b.get(1L).get());
+    }
+
+    @Test
+    void loaderRefillInvalidatesOtherNodes() {
+        Cache a = nodeA.getCache(CACHE);
+        Cache b = nodeB.getCache(CACHE);
+        a.put(1L, "v1");
+        assertEquals("v1", b.get(1L).get());
+
+        // A驱逐后未命中重新加载
+        redis.getCache(CACHE).evict(1L);
+        ((NearCache) a).evictLocal(NearCache.localKey(1L));
+        assertEquals("v2", a.get(1L, () -> "v2"));
+        assertEquals(0, ((NearCache) b).localSize());
+        assertEquals("v2", b.get(1L).get());
+    }
+
+    // 失效通知同步投递给各节点（发出者自己按节点标识忽略）
+    private NearCacheManager node() {
+        StringRedisTemplate pubSub = new StringRedisTemplate() {
+            @Override
+            public void convertAndSend(String channel, Object message) {
+                DefaultMessage delivered = new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+                for (NearCacheManager node : nodes) {
+                    node.onMessage(delivered, null);
+                }
+            }
+        };
+        NearCacheManager manager = new NearCacheManager(redis, pubSub, 100, 60000L);
+        nodes.add(manager);
+        return manager;
+    }
+}
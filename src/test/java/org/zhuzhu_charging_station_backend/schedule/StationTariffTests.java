@@ -0,0 +1,248 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import org.junit.jupiter.api.Test;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.util.FixedPoint;
+import org.zhuzhu_charging_station_backend.util.TariffPeriod;
+import org.zhuzhu_charging_station_backend.util.TariffTimeline;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 定点计费与BigDecimal参考实现逐秒对比：随机桩参数、随机起始时刻和充电量，
+ * 每一秒的电量、各项费用、剩余秒数、是否充满都必须完全一致
+ */
+class StationTariffTests {
+
+    private static final int CASES = 2000;
+    private static final long SEED = 20240501L;
+
+    @Test
+    void fixedPointMatchesBigDecimalReference() {
+        Random random = new Random(SEED);
+        for (int c = 0; c < CASES; c++) {
+            ChargingStation station = randomStation(random);
+            StationTariff tariff = StationTariff.compile(station, TariffTimeline.DEFAULT);
+            BigDecimal chargeAmount = BigDecimal.valueOf(1 + random.nextInt(20000), 2);
+
+            Order order = newOrder(chargeAmount);
+            Reference reference = new Reference(station, chargeAmount);
+            int second = random.nextInt(TariffTimeline.SECONDS_PER_DAY);
+            String context = "case=" + c + ", power=" + station.getPower() + ", amount=" + chargeAmount;
+
+            assertEquals(reference.remainingSeconds(), tariff.remainingSeconds(order), context);
+            for (int tick = 0; tick < 100000; tick++) {
+                tariff.accrue(order, second);
+                reference.accrue(second);
+                assertMatches(reference, order, context + ", tick=" + tick);
+                assertEquals(reference.remainingSeconds(), tariff.remainingSeconds(order), context + ", tick=" + tick);
+                assertEquals(reference.isFull(), tariff.isFull(order), context + ", tick=" + tick);
+                if (reference.isFull()) break;
+                second = (second + 1) % TariffTimeline.SECONDS_PER_DAY;
+            }
+            assertTrue(reference.isFull(), context);
+
+            // 结算时换算回金额字段，值不变
+            order.closeMeter();
+            assertNull(order.getMeter());
+            assertMatches(reference, order, context + ", closed");
+        }
+    }
+
+    @Test
+    void unrepresentablePowerFallsBackToBigDecimal() {
+        ChargingStation station = station(new BigDecimal("0.123456789"), "1.00", "0.70", "0.40", "0.80");
+        StationTariff tariff = StationTariff.compile(station, TariffTimeline.DEFAULT);
+        Order order = newOrder(new BigDecimal("5.00"));
+        Reference reference = new Reference(station, order.getChargeAmount());
+        for (int second = 0; !reference.isFull(); second++) {
+            tariff.accrue(order, second);
+            reference.accrue(second);
+            assertNull(order.getMeter());
+            assertMatches(reference, order, "second=" + second);
+            assertEquals(reference.isFull(), tariff.isFull(order));
+        }
+    }
+
+    @Test
+    void delayedTicksMatchPerSecondAccrual() {
+        Random random = new Random(SEED);
+        for (int c = 0; c < 200; c++) {
+            // 功率较小使订单跨越多个时段
+            ChargingStation station = station(BigDecimal.valueOf(100 + random.nextInt(4900), 5),
+                    price(random), price(random), price(random), price(random));
+            StationTariff tariff = StationTariff.compile(station, TariffTimeline.DEFAULT);
+            BigDecimal chargeAmount = BigDecimal.valueOf(1 + random.nextInt(20000), 2);
+            LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0)
+                    .plusSeconds(random.nextInt(2 * TariffTimeline.SECONDS_PER_DAY)).plusNanos(random.nextInt(1_000_000_000));
+            String context = "case=" + c + ", power=" + station.getPower() + ", amount=" + chargeAmount + ", start=" + start;
+
+            // 参考：逐秒推进，每秒按所在时段计费
+            Reference reference = new Reference(station, chargeAmount);
+            long totalSeconds = 0;
+            int second = start.toLocalTime().toSecondOfDay();
+            while (!reference.isFull()) {
+                reference.accrue(second);
+                totalSeconds++;
+                second = (second + 1) % TariffTimeline.SECONDS_PER_DAY;
+            }
+
+            // 调度延迟：每轮间隔0~30秒、偶尔停顿至1小时，且不对齐整秒，按经过的时间补足
+            Order order = newOrder(chargeAmount);
+            order.setStartTime(start);
+            order.setChargeDuration(0L);
+            LocalDateTime now = start;
+            while (!tariff.isFull(order)) {
+                long before = order.getChargeDuration();
+                long accrued = tariff.accrueUntil(order, now);
+                long expected = Math.min(Duration.between(start, now).getSeconds() + 1, totalSeconds);
+                assertEquals(expected, (long) order.getChargeDuration(), context + ", now=" + now);
+                assertEquals(expected - before, accrued, context + ", now=" + now);
+                int gap = random.nextInt(10) == 0 ? random.nextInt(3600) : random.nextInt(31);
+                now = now.plusSeconds(gap).plusNanos(random.nextInt(1_000_000_000));
+            }
+            assertEquals(totalSeconds, (long) order.getChargeDuration(), context);
+            assertEquals(0, tariff.accrueUntil(order, now.plusHours(1)), context);
+            order.closeMeter();
+            assertMatches(reference, order, context);
+        }
+    }
+
+    @Test
+    void timelineMatchesPeriodDefinition() {
+        for (int second = 0; second < TariffTimeline.SECONDS_PER_DAY; second++) {
+            assertEquals(TariffPeriod.of(LocalTime.ofSecondOfDay(second)), TariffTimeline.DEFAULT.periodAt(second));
+        }
+    }
+
+    @Test
+    void fixedPointConversions() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < 100000; i++) {
+            int scale = random.nextInt(FixedPoint.SCALE + 1);
+            BigDecimal value = BigDecimal.valueOf(random.nextInt(Integer.MAX_VALUE), scale);
+            long units = FixedPoint.toUnits(value);
+            assertEquals(value, FixedPoint.toBigDecimal(units, scale));
+
+            long divisor = 1 + random.nextInt(1000000);
+            assertEquals(value.movePointRight(FixedPoint.SCALE).divide(BigDecimal.valueOf(divisor), 0, BigDecimal.ROUND_UP).longValue(),
+                    FixedPoint.ceilDiv(units, divisor));
+        }
+        assertFalse(FixedPoint.isExact(new BigDecimal("0.00000001")));
+    }
+
+    private static void assertMatches(Reference reference, Order order, String context) {
+        assertEquals(reference.actualCharge, order.getActualCharge(), context);
+        assertEquals(reference.chargeFee, order.getChargeFee(), context);
+        assertEquals(reference.serviceFee, order.getServiceFee(), context);
+        assertEquals(reference.chargeFee.add(reference.serviceFee), order.getTotalFee(), context);
+        for (TariffPeriod period : TariffPeriod.values()) {
+            assertEquals(0, reference.periodCharge[period.ordinal()].compareTo(periodCharge(order, period)), context);
+            assertEquals(0, reference.periodChargeFee[period.ordinal()].compareTo(periodChargeFee(order, period)), context);
+        }
+    }
+
+    private static BigDecimal periodCharge(Order order, TariffPeriod period) {
+        switch (period) {
+            case PEAK:
+                return order.getPeakCharge();
+            case VALLEY:
+                return order.getValleyCharge();
+            default:
+                return order.getNormalCharge();
+        }
+    }
+
+    private static BigDecimal periodChargeFee(Order order, TariffPeriod period) {
+        switch (period) {
+            case PEAK:
+                return order.getPeakChargeFee();
+            case VALLEY:
+                return order.getValleyChargeFee();
+            default:
+                return order.getNormalChargeFee();
+        }
+    }
+
+    // 与调度器初始化订单的方式一致
+    private static Order newOrder(BigDecimal chargeAmount) {
+        Order order = new Order();
+        order.setChargeAmount(chargeAmount);
+        order.setActualCharge(BigDecimal.valueOf(0.0));
+        order.setChargeFee(BigDecimal.valueOf(0.0));
+        order.setServiceFee(BigDecimal.valueOf(0.0));
+        order.setTotalFee(BigDecimal.valueOf(0.0));
+        order.setPeakCharge(BigDecimal.ZERO);
+        order.setNormalCharge(BigDecimal.ZERO);
+        order.setValleyCharge(BigDecimal.ZERO);
+        order.setPeakChargeFee(BigDecimal.ZERO);
+        order.setNormalChargeFee(BigDecimal.ZERO);
+        order.setValleyChargeFee(BigDecimal.ZERO);
+        return order;
+    }
+
+    // 功率5位小数、单价2位小数，与数据库列精度一致
+    private static ChargingStation randomStation(Random random) {
+        return station(BigDecimal.valueOf(1 + random.nextInt(5000000), 5),
+                price(random), price(random), price(random), price(random));
+    }
+
+    private static String price(Random random) {
+        return BigDecimal.valueOf(random.nextInt(500), 2).toPlainString();
+    }
+
+    private static ChargingStation station(BigDecimal power, String peak, String normal, String valley, String service) {
+        ChargingStation station = new ChargingStation();
+        station.setPower(power);
+        station.setPeakPrice(new BigDecimal(peak));
+        station.setNormalPrice(new BigDecimal(normal));
+        station.setValleyPrice(new BigDecimal(valley));
+        station.setServiceFee(new BigDecimal(service));
+        return station;
+    }
+
+    // BigDecimal参考实现：逐秒按当前时段单价累加
+    private static class Reference {
+        private final ChargingStation station;
+        private final BigDecimal chargeAmount;
+        private BigDecimal actualCharge = BigDecimal.valueOf(0.0);
+        private BigDecimal chargeFee = BigDecimal.valueOf(0.0);
+        private BigDecimal serviceFee = BigDecimal.valueOf(0.0);
+        private final BigDecimal[] periodCharge = {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+        private final BigDecimal[] periodChargeFee = {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+
+        private Reference(ChargingStation station, BigDecimal chargeAmount) {
+            this.station = station;
+            this.chargeAmount = chargeAmount;
+        }
+
+        private void accrue(int secondOfDay) {
+            TariffPeriod period = TariffPeriod.of(LocalTime.ofSecondOfDay(secondOfDay));
+            BigDecimal price = period == TariffPeriod.PEAK ? station.getPeakPrice()
+                    : period == TariffPeriod.VALLEY ? station.getValleyPrice() : station.getNormalPrice();
+            BigDecimal fee = station.getPower().multiply(price);
+            actualCharge = actualCharge.add(station.getPower());
+            chargeFee = chargeFee.add(fee);
+            serviceFee = serviceFee.add(station.getPower().multiply(station.getServiceFee()));
+            periodCharge[period.ordinal()] = periodCharge[period.ordinal()].add(station.getPower());
+            periodChargeFee[period.ordinal()] = periodChargeFee[period.ordinal()].add(fee);
+        }
+
+        private boolean isFull() {
+            return actualCharge.compareTo(chargeAmount) >= 0;
+        }
+
+        private long remainingSeconds() {
+            BigDecimal remaining = chargeAmount.subtract(actualCharge);
+            if (remaining.compareTo(BigDecimal.ZERO) <= 0) return 0L;
+            return remaining.divide(station.getPower(), 0, BigDecimal.ROUND_UP).longValue();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.zhuzhu_charging_station_backend.schedule;
+
+import org.junit.jupiter.api.Test;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.service.ChargingStationSlotService;
+import org.zhuzhu_charging_station_backend.util.ChargeLoad;
+import org.zhuzhu_charging_station_backend.util.TariffTimeline;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * slot等待时长/剩余电量增量维护与全量重算对比：随机入队、推进队首、取消排队订单，
+ * 每一步增量值都必须等于按队列全部订单重算的结果
+ */
+class WaitingTimeIncrementalTests {
+
+    private static final int CASES = 200;
+    private static final int STEPS = 3000;
+    private static final long SEED = 20240502L;
+
+    // 只用到不访问Redis的负载计算方法
+    private final ChargingStationSlotService slotService = new ChargingStationSlotService(null, null);
+
+    @Test
+    void incrementalLoadMatchesFullRecompute() {
+        Random random = new Random(SEED);
+        for (int c = 0; c < CASES; c++) {
+            ChargingStation station = new ChargingStation();
+            station.setPower(BigDecimal.valueOf(1 + random.nextInt(500000), 5));
+            station.setPeakPrice(new BigDecimal("1.00"));
+            station.setNormalPrice(new BigDecimal("0.70"));
+            station.setValleyPrice(new BigDecimal("0.40"));
+            station.setServiceFee(new BigDecimal("0.80"));
+            StationTariff tariff = StationTariff.compile(station, TariffTimeline.DEFAULT);
+
+            ChargingStationSlot slot = new ChargingStationSlot();
+            slot.setQueue(new ArrayList<>());
+            slot.setWaitingTime(0L);
+            slot.setRemainingEnergy(0L);
+            Map<String, Order> orders = new HashMap<>();
+            int nextId = 0;
+
+            for (int step = 0; step < STEPS; step++) {
+                int action = random.nextInt(10);
+                if (action < 2 && slot.getQueue().size() < 5) {
+                    // 入队
+                    Order order = new Order();
+                    order.setId(String.valueOf(nextId++));
+                    order.setChargeAmount(BigDecimal.valueOf(1 + random.nextInt(5000), 2));
+                    orders.put(order.getId(), order);
+                    slot.getQueue().add(order.getId());
+                    slotService.addOrderLoad(slot, order, station.getPower());
+                } else if (action < 3 && slot.getQueue().size() > 1) {
+                    // 取消一个尚未开始充电的订单
+                    String orderId = slot.getQueue().get(1 + random.nextInt(slot.getQueue().size() - 1));
+                    slot.getQueue().remove(orderId);
+                    slotService.removeOrderLoad(slot, orders.remove(orderId), station.getPower());
+                } else if (!slot.getQueue().isEmpty()) {
+                    // 推进队首一秒，与调度器的推进步骤一致
+                    Order order = orders.get(slot.getQueue().get(0));
+                    if (order.getStatus() == null) {
+                        order.setStatus(1);
+                        order.setActualCharge(BigDecimal.valueOf(0.0));
+                        order.setChargeFee(BigDecimal.valueOf(0.0));
+                        order.setServiceFee(BigDecimal.valueOf(0.0));
+                        order.setTotalFee(BigDecimal.valueOf(0.0));
+                    }
+                    long secondsBefore = tariff.remainingSeconds(order);
+                    long energyBefore = tariff.remainingEnergy(order);
+                    tariff.accrue(order, step % TariffTimeline.SECONDS_PER_DAY);
+                    slotService.adjustLoad(slot, tariff.remainingSeconds(order) - secondsBefore,
+                            tariff.remainingEnergy(order) - energyBefore);
+                    if (tariff.isFull(order)) {
+                        slot.getQueue().remove(order.getId());
+                        slotService.removeOrderLoad(slot, orders.remove(order.getId()), station.getPower());
+                    }
+                }
+
+                long expectedSeconds = 0L;
+                long expectedEnergy = 0L;
+                for (String orderId : slot.getQueue()) {
+                    expectedSeconds += ChargeLoad.remainingSeconds(orders.get(orderId), station.getPower());
+                    expectedEnergy += ChargeLoad.remainingEnergy(orders.get(orderId));
+                }
+                String context = "case=" + c + ", step=" + step + ", power=" + station.getPower();
+                assertEquals(expectedSeconds, slot.getWaitingTime(), context);
+                assertEquals(expectedEnergy, slot.getRemainingEnergy(), context);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+import org.zhuzhu_charging_station_backend.util.ChargeLoad;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * slot的hash+list存储：整体读写往返一致、字段级修改（入队/出队/结算/改状态）、按版本号比较并写入、旧格式迁移
+ */
+@SpringBootTest
+class ChargingStationSlotServiceTests {
+
+    private static final Long STATION_ID = 990_000_001L;
+    private static final BigDecimal POWER = BigDecimal.TEN;
+
+    // 调度器换成mock，避免测试期间推进测试用的slot
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+
+    @Autowired
+    private ChargingStationSlotService slotService;
+    @Autowired
+    private RedisTemplate<String, ChargingStationSlot> slotRedisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        slotService.removeSlot(STATION_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        slotService.removeSlot(STATION_ID);
+    }
+
+    @Test
+    void slotRoundTrips() {
+        ChargingStationSlot slot = newSlot(0);
+        slot.getStatus().setCurrentChargeAmount(12.5);
+        slot.getQueue().addAll(Arrays.asList("a", "b", "c"));
+        slot.setWaitingTime(30L);
+        slot.setRemainingEnergy(400L);
+        slotService.setSlot(STATION_ID, slot);
+
+        ChargingStationSlot read = slotService.getSlot(STATION_ID);
+        assertNotNull(read.getVersion());
+        slot.setVersion(read.getVersion());
+        assertEquals(slot, read);
+        assertEquals(read, slotService.getSlots(Collections.singletonList(STATION_ID)).get(STATION_ID));
+        assertNull(slotService.getSlot(STATION_ID + 1));
+    }
+
+    @Test
+    void fieldUpdatesMaintainQueueAndLoad() {
+        slotService.setSlot(STATION_ID, newSlot(0));
+        Order first = newOrder("o1", "20");
+        Order second = newOrder("o2", "35");
+        Order third = newOrder("o3", "5");
+
+        assertEquals(2, slotService.appendOrders(STATION_ID, Arrays.asList(first, second, third), POWER, 2));
+        // 已在队列中的订单计为接收但不重复累加
+        assertEquals(1, slotService.appendOrders(STATION_ID, Collections.singletonList(first), POWER, null));
+        ChargingStationSlot slot = slotService.getSlot(STATION_ID);
+        assertEquals(Arrays.asList("o1", "o2"), slot.getQueue());
+        assertEquals(ChargeLoad.remainingSeconds(first, POWER) + ChargeLoad.remainingSeconds(second, POWER),
+                slot.getWaitingTime());
+        assertEquals(ChargeLoad.remainingEnergy(first) + ChargeLoad.remainingEnergy(second), slot.getRemainingEnergy());
+
+        assertTrue(slotService.removeOrder(STATION_ID, second, POWER));
+        assertFalse(slotService.removeOrder(STATION_ID, second, POWER));
+
+        first.setChargeDuration(7L);
+        first.setActualCharge(new BigDecimal("20"));
+        slotService.recordSettlement(STATION_ID, first, POWER);
+        slot = slotService.getSlot(STATION_ID);
+        assertTrue(slot.getQueue().isEmpty());
+        assertEquals(0L, slot.getWaitingTime());
+        assertEquals(0L, slot.getRemainingEnergy());
+        assertEquals(0, slot.getStatus().getStatus());
+        assertEquals(1, slot.getStatus().getCurrentChargeCount());
+        assertEquals(7L, slot.getStatus().getCurrentChargeTime());
+        assertEquals(20.0, slot.getStatus().getCurrentChargeAmount(), 1e-9);
+
+        // 故障的桩不接收订单
+        slotService.setStatus(STATION_ID, 3);
+        assertEquals(0, slotService.appendOrders(STATION_ID, Collections.singletonList(third), POWER, null));
+        assertEquals(3, slotService.getSlot(STATION_ID).getStatus().getStatus());
+    }
+
+    @Test
+    void compareAndSetRejectsConcurrentFieldUpdate() {
+        slotService.setSlot(STATION_ID, newSlot(0));
+        ChargingStationSlot snapshot = slotService.getSlot(STATION_ID);
+        ChargingStationSlot updated = slotService.copySlot(snapshot);
+        updated.getStatus().setCurrentChargeCount(1);
+
+        slotService.setStatus(STATION_ID, 1);
+        assertEquals(Collections.singleton(STATION_ID), slotService.compareAndSetSlots(
+                Collections.singletonMap(STATION_ID, snapshot), Collections.singletonMap(STATION_ID, updated)));
+
+        snapshot = slotService.getSlot(STATION_ID);
+        updated = slotService.copySlot(snapshot);
+        updated.getStatus().setCurrentChargeCount(1);
+        assertTrue(slotService.compareAndSetSlots(
+                Collections.singletonMap(STATION_ID, snapshot), Collections.singletonMap(STATION_ID, updated)).isEmpty());
+        ChargingStationSlot read = slotService.getSlot(STATION_ID);
+        assertEquals(1, read.getStatus().getStatus());
+        assertEquals(1, read.getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void legacySlotIsMigrated() {
+        ChargingStationSlot legacy = newSlot(4);
+        legacy.getQueue().add("o1");
+        slotRedisTemplate.opsForValue().set("slot:" + STATION_ID, legacy);
+
+        ChargingStationSlot read = slotService.getSlot(STATION_ID);
+        assertEquals(4, read.getStatus().getCurrentChargeCount());
+        assertEquals(Collections.singletonList("o1"), read.getQueue());
+        assertFalse(Boolean.TRUE.equals(stringRedisTemplate.hasKey("slot:" + STATION_ID)));
+        assertEquals("4", stringRedisTemplate.opsForHash().get("slot-state:" + STATION_ID, "chargeCount"));
+    }
+
+    private static Order newOrder(String id, String chargeAmount) {
+        Order order = new Order();
+        order.setId(id);
+        order.setChargeAmount(new BigDecimal(chargeAmount));
+        order.setChargeDuration(0L);
+        return order;
+    }
+
+    private static ChargingStationSlot newSlot(int chargeCount) {
+        ChargingStationStatus status = new ChargingStationStatus();
+        status.setStatus(0);
+        status.setCurrentChargeCount(chargeCount);
+        status.setCurrentChargeTime(0L);
+        status.setCurrentChargeAmount(0D);
+        ChargingStationSlot slot = new ChargingStationSlot();
+        slot.setStatus(status);
+        slot.setWaitingTime(0L);
+        slot.setRemainingEnergy(0L);
+        slot.setQueue(new ArrayList<>());
+        return slot;
+    }
+}
@@ -0,0 +1,153 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.zhuzhu_charging_station_backend.dto.OrderPageResponse;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.entity.OrderArchiveSummary;
+import org.zhuzhu_charging_station_backend.repository.OrderRepository;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderArchiveScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 订单归档：分批移入归档表、汇总累加正确，历史分页跨热表和归档表不重不漏
+ */
+@SpringBootTest
+class OrderArchiveServiceTests {
+
+    private static final long USER_ID = 99999903L;
+    private static final long STATION_ID = 999903L;
+    private static final String ORDER_ID_PREFIX = "5997";
+    private static final int OLD_ORDERS = 25;
+    private static final int RECENT_ORDERS = 10;
+    private static final int BATCH_SIZE = 7;
+    // 早于任何真实订单，归档不会波及测试库里的其他数据
+    private static final LocalDateTime OLD_TIME = LocalDateTime.of(2000, 1, 1, 8, 0);
+    private static final LocalDateTime BEFORE = LocalDateTime.of(2000, 2, 1, 0, 0);
+
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+    @MockBean
+    private OrderArchiveScheduler orderArchiveScheduler;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Order> expected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < OLD_ORDERS; i++) {
+            orders.add(newOrder(i, OLD_TIME.plusHours(i), i % 5 == 0 ? 4 : 0));
+        }
+        for (int i = 0; i < RECENT_ORDERS; i++) {
+            orders.add(newOrder(OLD_ORDERS + i, LocalDateTime.of(2024, 6, 1, 8, 0).plusMinutes(i), 0));
+        }
+        orderRepository.saveAll(orders);
+        expected.addAll(orders);
+        expected.sort(Comparator.comparing(Order::getRecordTime).thenComparing(Order::getId).reversed());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+    }
+
+    @Test
+    void oldOrdersMoveInBatchesWithSummaries() {
+        assertEquals(OLD_ORDERS, archiveAll());
+
+        assertEquals(RECENT_ORDERS, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM `order` WHERE id LIKE ?", Integer.class, ORDER_ID_PREFIX + "%"));
+        assertEquals(OLD_ORDERS, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM order_archive WHERE id LIKE ?", Integer.class, ORDER_ID_PREFIX + "%"));
+        assertNotNull(orderArchiveService.findById(String.format("%s%012d", ORDER_ID_PREFIX, 0)));
+
+        OrderArchiveSummary user = orderArchiveService.getSummary(OrderArchiveService.SCOPE_USER, USER_ID);
+        assertEquals(OLD_ORDERS, user.getOrderCount());
+        assertEquals(OLD_ORDERS / 5, user.getCancelledCount());
+        assertEquals(OLD_ORDERS - OLD_ORDERS / 5, user.getCompletedCount());
+        assertEquals(0, new BigDecimal(OLD_ORDERS).compareTo(user.getTotalFee()));
+        assertEquals(OLD_TIME, user.getFirstRecordTime());
+        assertEquals(OLD_TIME.plusHours(OLD_ORDERS - 1), user.getLastRecordTime());
+        assertEquals(OLD_ORDERS, orderArchiveService.getSummary(OrderArchiveService.SCOPE_STATION, STATION_ID).getOrderCount());
+
+        // 再跑一次没有可归档的订单，汇总不变
+        assertEquals(0, archiveAll());
+        assertEquals(OLD_ORDERS, orderArchiveService.getSummary(OrderArchiveService.SCOPE_USER, USER_ID).getOrderCount());
+    }
+
+    @Test
+    void historySpansHotAndArchive() {
+        archiveAll();
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            OrderPageResponse page = orderService.getOrderPage(USER_ID, cursor, 4);
+            page.getOrders().forEach(order -> seen.add(order.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null && pages < 100);
+
+        List<String> ids = new ArrayList<>();
+        expected.forEach(order -> ids.add(order.getId()));
+        assertEquals(ids, seen);
+    }
+
+    private int archiveAll() {
+        orderArchiveService.ensurePartitions(BEFORE);
+        int total = 0;
+        int moved;
+        do {
+            moved = orderArchiveService.archiveBatch(BEFORE, BATCH_SIZE);
+            total += moved;
+        } while (moved >= BATCH_SIZE);
+        return total;
+    }
+
+    private static Order newOrder(int index, LocalDateTime recordTime, int status) {
+        Order order = new Order();
+        order.setId(String.format("%s%012d", ORDER_ID_PREFIX, index));
+        order.setUserId(USER_ID);
+        order.setChargingStationId(STATION_ID);
+        order.setMode(1);
+        order.setStatus(status);
+        order.setRecordTime(recordTime);
+        order.setChargeAmount(BigDecimal.TEN);
+        order.setActualCharge(BigDecimal.ONE);
+        order.setChargeDuration(60L);
+        order.setTotalFee(BigDecimal.ONE);
+        return order;
+    }
+
+    private void cleanUp() {
+        jdbcTemplate.update("DELETE FROM `order` WHERE id LIKE ?", ORDER_ID_PREFIX + "%");
+        jdbcTemplate.update("DELETE FROM order_archive WHERE id LIKE ?", ORDER_ID_PREFIX + "%");
+        jdbcTemplate.update("DELETE FROM order_archive_summary WHERE (scope = ? AND owner_id = ?) OR (scope = ? AND owner_id = ?)",
+                OrderArchiveService.SCOPE_USER, USER_ID, OrderArchiveService.SCOPE_STATION, STATION_ID);
+        expected.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// 独立的Redis库：rebuildIndexes 会扫描并修复全部订单索引，不碰应用正在使用的数据
+@SpringBootTest(properties = "spring.redis.database=15")
+class OrderCacheServiceTests {
+
+    private static final Long USER_ID = 77000001L;
+    private static final String USER_INDEX_KEY = "order-index:user:" + USER_ID;
+    private static final String ACTIVE_INDEX_KEY = "order-index:active";
+    private static final String FIRST_ID = "7700000000000001";
+    private static final String SECOND_ID = "7700000000000002";
+
+    // 调度器换成mock，避免测试订单被调度
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+
+    @Autowired
+    private OrderCacheService orderCacheService;
+    @Autowired
+    private RedisTemplate<String, Order> orderRedisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @AfterEach
+    void tearDown() {
+        orderCacheService.deleteOrder(newOrder(FIRST_ID));
+        orderCacheService.deleteOrder(newOrder(SECOND_ID));
+    }
+
+    @Test
+    void staleIndexMembersArePrunedOnRead() {
+        orderCacheService.saveOrder(newOrder(FIRST_ID));
+        orderCacheService.saveOrder(newOrder(SECOND_ID));
+        assertEquals(2, orderCacheService.getAllOrdersByUser(USER_ID).size());
+
+        // 订单本体被直接删除（如过期），索引成员残留
+        orderRedisTemplate.delete(orderCacheService.buildOrderKey(SECOND_ID));
+        assertTrue(stringRedisTemplate.opsForSet().isMember(USER_INDEX_KEY, SECOND_ID));
+
+        List<Order> orders = orderCacheService.getAllOrdersByUser(USER_ID);
+        assertEquals(1, orders.size());
+        assertEquals(FIRST_ID, orders.get(0).getId());
+        assertFalse(stringRedisTemplate.opsForSet().isMember(USER_INDEX_KEY, SECOND_ID));
+        assertEquals(1L, stringRedisTemplate.opsForSet().size(USER_INDEX_KEY));
+
+        orderCacheService.getAllOrders();
+        assertFalse(stringRedisTemplate.opsForSet().isMember(ACTIVE_INDEX_KEY, SECOND_ID));
+    }
+
+    @Test
+    void rebuildRestoresMissingIndexMembers() {
+        // 绕过 saveOrder 直接写入订单本体，模拟索引上线前已存在的缓存数据
+        orderRedisTemplate.opsForValue().set(orderCacheService.buildOrderKey(FIRST_ID), newOrder(FIRST_ID));
+        assertTrue(orderCacheService.getAllOrdersByUser(USER_ID).isEmpty());
+
+        assertTrue(orderCacheService.rebuildIndexes() >= 1);
+
+        List<Order> orders = orderCacheService.getAllOrdersByUser(USER_ID);
+        assertEquals(1, orders.size());
+        assertEquals(FIRST_ID, orders.get(0).getId());
+        assertTrue(orderCacheService.getAllOrders().stream().anyMatch(order -> FIRST_ID.equals(order.getId())));
+    }
+
+    @Test
+    void rebuildPrunesMembersOfDeletedOrders() {
+        orderCacheService.saveOrder(newOrder(FIRST_ID));
+        stringRedisTemplate.opsForSet().add(ACTIVE_INDEX_KEY, SECOND_ID);
+
+        orderCacheService.rebuildIndexes();
+
+        assertTrue(stringRedisTemplate.opsForSet().isMember(ACTIVE_INDEX_KEY, FIRST_ID));
+        assertFalse(stringRedisTemplate.opsForSet().isMember(ACTIVE_INDEX_KEY, SECOND_ID));
+    }
+
+    private Order newOrder(String id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId(USER_ID);
+        order.setMode(0);
+        order.setStatus(3);
+        order.setQueueNo("T1");
+        order.setRecordTime(LocalDateTime.now().withNano(0));
+        order.setChargeAmount(BigDecimal.TEN);
+        return order;
+    }
+}
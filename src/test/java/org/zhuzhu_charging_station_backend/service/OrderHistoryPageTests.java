@@ -0,0 +1,143 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.zhuzhu_charging_station_backend.dto.OrderPageResponse;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.exception.BadStateException;
+import org.zhuzhu_charging_station_backend.repository.OrderRepository;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 订单历史游标分页：逐页取完与全量排序一致、不重不漏（含同一时间的订单和仅在缓存中的订单），导出遍历顺序相同，
+ * 导出只读取一次缓存
+ */
+// 导出分页与页大小相同，覆盖多页导出
+@SpringBootTest(properties = "order.export.batch-size=40")
+class OrderHistoryPageTests {
+
+    private static final long USER_ID = 99999902L;
+    private static final String ORDER_ID_PREFIX = "5998";
+    private static final int DB_ORDERS = 250;
+    private static final int CACHED_ORDERS = 5;
+    private static final int PAGE_SIZE = 40;
+
+    // 调度器换成mock，避免测试订单被分配
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+
+    @Autowired
+    private OrderService orderService;
+    @SpyBean
+    private OrderCacheService orderCacheService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Order> expected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        LocalDateTime base = LocalDateTime.of(2024, 6, 1, 8, 0);
+        List<Order> dbOrders = new ArrayList<>();
+        for (int i = 0; i < DB_ORDERS; i++) {
+            // 每3个订单同一时间，覆盖游标按ID区分的情况
+            dbOrders.add(newOrder(i, base.plusMinutes(i / 3)));
+        }
+        orderRepository.saveAll(dbOrders);
+        expected.addAll(dbOrders);
+        for (int i = 0; i < CACHED_ORDERS; i++) {
+            Order cached = newOrder(DB_ORDERS + i, base.plusMinutes(i * 20L));
+            orderCacheService.saveOrder(cached);
+            expected.add(cached);
+        }
+        expected.sort(Comparator.comparing(Order::getRecordTime).thenComparing(Order::getId).reversed());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+    }
+
+    @Test
+    void pagesCoverHistoryInOrder() {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            OrderPageResponse page = orderService.getOrderPage(USER_ID, cursor, PAGE_SIZE);
+            assertTrue(page.getOrders().size() <= PAGE_SIZE);
+            page.getOrders().forEach(order -> seen.add(order.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null && pages < 100);
+
+        assertEquals(ids(expected), seen);
+    }
+
+    @Test
+    void exportWalksTheSameOrder() {
+        List<String> exported = new ArrayList<>();
+        orderService.forEachOrder(USER_ID, order -> exported.add(order.getId()));
+        assertEquals(ids(expected), exported);
+    }
+
+    @Test
+    void exportReadsCachedOrdersOnce() {
+        clearInvocations(orderCacheService);
+        List<String> exported = new ArrayList<>();
+        orderService.forEachOrder(USER_ID, order -> exported.add(order.getId()));
+        assertEquals(DB_ORDERS + CACHED_ORDERS, exported.size());
+        verify(orderCacheService, times(1)).getAllOrdersByUser(USER_ID);
+    }
+
+    @Test
+    void invalidCursorIsRejected() {
+        assertThrows(BadStateException.class, () -> orderService.getOrderPage(USER_ID, "not-a-cursor", PAGE_SIZE));
+    }
+
+    private static List<String> ids(List<Order> orders) {
+        List<String> ids = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+
+    private static Order newOrder(int index, LocalDateTime recordTime) {
+        Order order = new Order();
+        order.setId(String.format("%s%012d", ORDER_ID_PREFIX, index));
+        order.setUserId(USER_ID);
+        order.setMode(1);
+        order.setStatus(0);
+        order.setRecordTime(recordTime);
+        order.setChargeAmount(BigDecimal.TEN);
+        return order;
+    }
+
+    private void cleanUp() {
+        for (Order cached : orderCacheService.getAllOrdersByUser(USER_ID)) {
+            orderCacheService.deleteOrder(cached);
+        }
+        jdbcTemplate.update("DELETE FROM `order` WHERE id LIKE ?", ORDER_ID_PREFIX + "%");
+        expected.clear();
+    }
+}
@@ -0,0 +1,208 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// 独立的Redis库：清理队列和排队号时不影响应用正在使用的 queue:* 数据
+@SpringBootTest(properties = "spring.redis.database=15")
+class QueueServiceTests {
+
+    private static final int MODE = 1;
+    private static final int SUBMITTERS = 8;
+    private static final int SUBMISSIONS_PER_THREAD = 25;
+    private static final int RELEASE_BATCHES = 4;
+    private static final int RELEASE_BATCH_SIZE = 20;
+
+    // 调度器换成mock，避免测试期间订单被分配到真实充电桩
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+
+    @Autowired
+    private QueueService queueService;
+    @Autowired
+    private OrderCacheService orderCacheService;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final List<String> createdOrderIds = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        clearQueue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clearQueue();
+        for (String orderId : createdOrderIds) {
+            orderCacheService.deleteOrder(orderId);
+        }
+    }
+
+    @Test
+    void releaseKeepsOrderAndContiguousNumbersUnderConcurrentSubmissions() throws Exception {
+        List<List<String>> batches = new ArrayList<>();
+        for (int b = 0; b < RELEASE_BATCHES; b++) {
+            List<String> batch = new ArrayList<>();
+            for (int i = 0; i < RELEASE_BATCH_SIZE; i++) {
+                Order order = newOrder("9" + b + String.format("%014d", i));
+                order.setStatus(2);
+                order.setChargingStationId(100000L);
+                orderCacheService.saveOrder(order);
+                batch.add(order.getId());
+            }
+            batches.add(batch);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(SUBMITTERS + RELEASE_BATCHES);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < SUBMITTERS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < SUBMISSIONS_PER_THREAD; i++) {
+                    Order order = newOrder("8" + thread + String.format("%014d", i));
+                    order.setQueueNo(queueService.assignQueueNo(MODE, "F", order.getId()));
+                    queueService.addOrderToQueueWithLock(MODE, order.getId());
+                    orderCacheService.saveOrder(order);
+                }
+                return null;
+            }));
+        }
+        for (List<String> batch : batches) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                queueService.releaseOrdersToQueueHead(batch, MODE);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<String> queue = queueService.getAllOrderIdsInQueue(MODE);
+        int released = RELEASE_BATCHES * RELEASE_BATCH_SIZE;
+        int submitted = SUBMITTERS * SUBMISSIONS_PER_THREAD;
+        assertEquals(released + submitted, queue.size());
+        assertEquals(queue.size(), new HashSet<>(queue).size(), "订单在队列中重复");
+
+        // 释放的订单全部排在新提交订单之前，且每批保持原有顺序、连续编号
+        Map<String, Order> orders = orderCacheService.getOrders(queue);
+        Set<String> releasedIds = new HashSet<>();
+        batches.forEach(releasedIds::addAll);
+        for (int i = 0; i < released; i++) {
+            assertTrue(releasedIds.contains(queue.get(i)), "释放的订单未排在队首: " + queue.get(i));
+        }
+        Set<Integer> releasedNos = new HashSet<>();
+        for (List<String> batch : batches) {
+            int first = queue.indexOf(batch.get(0));
+            int firstNo = parseNo(orders.get(batch.get(0)).getQueueNo(), "RF");
+            for (int i = 0; i < batch.size(); i++) {
+                Order order = orders.get(batch.get(i));
+                assertEquals(batch.get(i), queue.get(first + i), "批内顺序被打乱");
+                assertEquals(3, order.getStatus());
+                assertNull(order.getChargingStationId());
+                assertEquals(firstNo + i, parseNo(order.getQueueNo(), "RF"), "批内编号不连续");
+                releasedNos.add(firstNo + i);
+            }
+        }
+        assertEquals(released, releasedNos.size(), "RF编号重复");
+        assertEquals(1, Collections.min(releasedNos));
+        assertEquals(released, Collections.max(releasedNos));
+
+        // 新提交订单的编号互不重复且从1连续
+        Set<Integer> submittedNos = new HashSet<>();
+        for (int i = released; i < queue.size(); i++) {
+            submittedNos.add(parseNo(orders.get(queue.get(i)).getQueueNo(), "F"));
+        }
+        assertEquals(submitted, submittedNos.size(), "F编号重复");
+        assertEquals(submitted, Collections.max(submittedNos));
+    }
+
+    @Test
+    void queueNumbersResetWhenQueueDrains() {
+        Order first = newOrder("7000000000000001");
+        Order second = newOrder("7000000000000002");
+        assertEquals("F1", queueService.assignQueueNo(MODE, "F", first.getId()));
+        queueService.addOrderToQueueWithLock(MODE, first.getId());
+        assertEquals("F2", queueService.assignQueueNo(MODE, "F", second.getId()));
+        queueService.addOrderToQueueWithLock(MODE, second.getId());
+
+        // 最大号出队后回落为 max+1
+        queueService.removeOrderFromQueueWithLock(MODE, second.getId());
+        assertEquals("F2", queueService.assignQueueNo(MODE, "F", second.getId()));
+        queueService.addOrderToQueueWithLock(MODE, second.getId());
+
+        queueService.removeOrderFromQueueWithLock(MODE, first.getId());
+        queueService.removeOrderFromQueueWithLock(MODE, second.getId());
+        assertEquals("F1", queueService.assignQueueNo(MODE, "F", first.getId()));
+    }
+
+    @Test
+    void rebuildKeepsConcurrentRegistrations() {
+        // 升级前已在队的订单：有排队号但没有登记
+        Order queued = newOrder("7000000000000011");
+        queued.setQueueNo("F5");
+        orderCacheService.saveOrder(queued);
+        queueService.addOrderToQueueWithLock(MODE, queued.getId());
+        // 其他节点刚分配了编号、尚未入队的订单
+        Order inFlight = newOrder("7000000000000012");
+        assertEquals("F1", queueService.assignQueueNo(MODE, "F", inFlight.getId()));
+
+        queueService.rebuildQueueNos();
+        String key = "queue-no:" + queueService.getQueueKey(MODE) + ":F";
+        assertEquals(1.0, stringRedisTemplate.opsForZSet().score(key, inFlight.getId()));
+        assertEquals(5.0, stringRedisTemplate.opsForZSet().score(key, queued.getId()));
+
+        // 再次执行不改变已有登记，新分配从最大编号之后继续
+        queueService.rebuildQueueNos();
+        assertEquals(1.0, stringRedisTemplate.opsForZSet().score(key, inFlight.getId()));
+        assertEquals("F6", queueService.assignQueueNo(MODE, "F", newOrder("7000000000000013").getId()));
+    }
+
+    private Order newOrder(String id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId(10000000L);
+        order.setMode(MODE);
+        order.setRecordTime(LocalDateTime.now());
+        order.setStatus(3);
+        order.setChargeAmount(BigDecimal.TEN);
+        createdOrderIds.add(id);
+        return order;
+    }
+
+    private static int parseNo(String queueNo, String prefix) {
+        assertNotNull(queueNo);
+        assertTrue(queueNo.startsWith(prefix), "排队号前缀错误: " + queueNo);
+        return Integer.parseInt(queueNo.substring(prefix.length()));
+    }
+
+    // 只清理测试库（15号库）中的队列
+    private void clearQueue() {
+        stringRedisTemplate.delete(Arrays.asList(
+                queueService.getQueueKey(MODE),
+                "queue-no:" + queueService.getQueueKey(MODE) + ":F",
+                "queue-no:" + queueService.getQueueKey(MODE) + ":RF"));
+    }
+}
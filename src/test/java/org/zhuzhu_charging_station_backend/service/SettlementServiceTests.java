@@ -0,0 +1,255 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.zhuzhu_charging_station_backend.dto.OrderUpsertRequest;
+import org.zhuzhu_charging_station_backend.entity.ChargingStation;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.entity.ReportInfo;
+import org.zhuzhu_charging_station_backend.entity.User;
+import org.zhuzhu_charging_station_backend.exception.BadStateException;
+import org.zhuzhu_charging_station_backend.repository.ChargingStationRepository;
+import org.zhuzhu_charging_station_backend.repository.UserRepository;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+import org.zhuzhu_charging_station_backend.schedule.SettlementScheduler;
+import org.zhuzhu_charging_station_backend.util.JwtTokenUtil;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class SettlementServiceTests {
+
+    private static final long STATION_ID = 999901L;
+    private static final long USER_ID = 99999901L;
+    private static final String ORDER_ID_PREFIX = "5999";
+    private static final int THREADS = 4;
+    private static final int ORDERS_PER_THREAD = 2500;
+
+    // 调度器换成mock，结算入库由测试自己驱动
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+    @MockBean
+    private SettlementScheduler settlementScheduler;
+
+    @Autowired
+    private SettlementService settlementService;
+    @Autowired
+    private ChargingStationService chargingStationService;
+    @Autowired
+    private ChargingStationRepository chargingStationRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderCacheService orderCacheService;
+    @Autowired
+    private JwtTokenUtil jwtTokenUtil;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+
+        User user = new User();
+        user.setUserId(USER_ID);
+        user.setUsername("settlement-test");
+        user.setPassword("x");
+        user.setRoles("USER");
+        userRepository.save(user);
+
+        ChargingStation station = new ChargingStation();
+        station.setId(STATION_ID);
+        station.setName("settlement-test");
+        station.setMode(1);
+        station.setPower(BigDecimal.valueOf(30));
+        station.setServiceFee(BigDecimal.valueOf(0.8));
+        station.setPeakPrice(BigDecimal.ONE);
+        station.setNormalPrice(BigDecimal.valueOf(0.7));
+        station.setValleyPrice(BigDecimal.valueOf(0.4));
+        station.setMaxQueueLength(2);
+        ReportInfo report = new ReportInfo();
+        report.setTotalChargeCount(0);
+        report.setTotalChargeTime(0L);
+        report.setTotalChargeAmount(BigDecimal.ZERO);
+        report.setTotalChargeFee(BigDecimal.ZERO);
+        report.setTotalServiceFee(BigDecimal.ZERO);
+        report.setTotalFee(BigDecimal.ZERO);
+        station.setReport(report);
+        chargingStationRepository.save(station);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+    }
+
+    @Test
+    void concurrentSettlementsAddUpExactly() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            producers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    settlementService.enqueue(settledOrder(thread * ORDERS_PER_THREAD + i));
+                }
+                return null;
+            }));
+        }
+        // 两个刷写线程与结算并发，验证同一消费组内不会重复累计
+        AtomicBoolean producing = new AtomicBoolean(true);
+        List<Future<?>> flushers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            flushers.add(executor.submit(() -> {
+                start.await();
+                while (producing.get()) {
+                    settlementService.flush();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : producers) {
+            future.get(120, TimeUnit.SECONDS);
+        }
+        producing.set(false);
+        for (Future<?> future : flushers) {
+            future.get(120, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        while (settlementService.flush() > 0) {
+            // 刷完剩余记录
+        }
+
+        int total = THREADS * ORDERS_PER_THREAD;
+        BigDecimal amount = BigDecimal.ZERO, chargeFee = BigDecimal.ZERO, serviceFee = BigDecimal.ZERO;
+        long duration = 0;
+        for (int i = 0; i < total; i++) {
+            Order order = settledOrder(i);
+            amount = amount.add(order.getActualCharge());
+            chargeFee = chargeFee.add(order.getChargeFee());
+            serviceFee = serviceFee.add(order.getServiceFee());
+            duration += order.getChargeDuration();
+        }
+
+        assertEquals(total, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM `order` WHERE id LIKE ?", Integer.class, ORDER_ID_PREFIX + "%"));
+
+        User user = userRepository.findById(USER_ID).orElseThrow(IllegalStateException::new);
+        assertEquals(total, user.getTotalChargeCount());
+        assertEquals(duration, user.getTotalChargeDuration());
+        assertEquals(0, amount.compareTo(user.getTotalChargeAmount()));
+        assertEquals(0, chargeFee.compareTo(user.getTotalChargeFee()));
+        assertEquals(0, serviceFee.compareTo(user.getTotalServiceFee()));
+        assertEquals(0, chargeFee.add(serviceFee).compareTo(user.getTotalFee()));
+
+        ReportInfo report = chargingStationService.getReportInfo(STATION_ID);
+        assertEquals(total, report.getTotalChargeCount());
+        assertEquals(duration, report.getTotalChargeTime());
+        assertEquals(0, amount.compareTo(report.getTotalChargeAmount()));
+        assertEquals(0, chargeFee.compareTo(report.getTotalChargeFee()));
+        assertEquals(0, serviceFee.compareTo(report.getTotalServiceFee()));
+        assertEquals(0, chargeFee.add(serviceFee).compareTo(report.getTotalFee()));
+
+        // 重复投递同一订单不会重复累计
+        settlementService.enqueue(settledOrder(0));
+        settlementService.flush();
+        assertEquals(total, userRepository.findById(USER_ID).orElseThrow(IllegalStateException::new).getTotalChargeCount());
+    }
+
+    @Test
+    void settledOrderAwaitingFlushCannotBeEdited() {
+        // 已结算、尚未入库的订单仍在缓存中（状态0），修改不能把它重新排队
+        Order settled = settledOrder(0);
+        orderCacheService.saveOrder(settled);
+        String token = jwtTokenUtil.generateToken(userRepository.findById(USER_ID).orElseThrow(IllegalStateException::new));
+
+        OrderUpsertRequest request = new OrderUpsertRequest();
+        request.setId(settled.getId());
+        request.setMode(1);
+        request.setChargeAmount(BigDecimal.TEN);
+        assertThrows(BadStateException.class, () -> orderService.upsertOrder(request, token));
+
+        Order cached = orderCacheService.getOrder(settled.getId());
+        assertEquals(0, cached.getStatus());
+        assertEquals(0, BigDecimal.valueOf(5).compareTo(cached.getChargeAmount()));
+        assertNull(cached.getQueueNo());
+    }
+
+    @Test
+    void cancelledOrdersArePersistedWithoutTotals() {
+        Order cancelled = settledOrder(1);
+        cancelled.setStatus(4);
+        settlementService.enqueue(cancelled);
+        while (settlementService.flush() > 0) {
+            // 刷完
+        }
+
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT status FROM `order` WHERE id = ?", Integer.class, cancelled.getId()));
+        assertEquals(0, userRepository.findById(USER_ID).orElseThrow(IllegalStateException::new).getTotalChargeCount());
+        assertEquals(0, chargingStationService.getReportInfo(STATION_ID).getTotalChargeCount());
+        assertNull(orderCacheService.getOrder(cancelled.getId()));
+
+        // 重复投递不会重复插入
+        settlementService.enqueue(cancelled);
+        settlementService.flush();
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `order` WHERE id = ?", Integer.class, cancelled.getId()));
+    }
+
+    // 金额按订单序号变化，覆盖不同的小数位
+    private static Order settledOrder(int index) {
+        Order order = new Order();
+        order.setId(ORDER_ID_PREFIX + String.format("%012d", index));
+        order.setUserId(USER_ID);
+        order.setChargingStationId(STATION_ID);
+        order.setMode(1);
+        order.setStatus(0);
+        order.setRecordTime(LocalDateTime.now().withNano(0));
+        order.setStartTime(LocalDateTime.now().withNano(0));
+        order.setStopTime(LocalDateTime.now().withNano(0));
+        order.setChargeAmount(BigDecimal.valueOf(5));
+        order.setActualCharge(BigDecimal.valueOf(1 + index % 7, 2));
+        order.setChargeDuration(60L + index % 13);
+        order.setChargeFee(BigDecimal.valueOf(1 + index % 5, 2));
+        order.setServiceFee(BigDecimal.valueOf(1 + index % 3, 2));
+        order.setTotalFee(order.getChargeFee().add(order.getServiceFee()));
+        return order;
+    }
+
+    private void cleanUp() {
+        jdbcTemplate.update("DELETE FROM `order` WHERE id LIKE ?", ORDER_ID_PREFIX + "%");
+        jdbcTemplate.update("DELETE FROM users WHERE user_id = ?", USER_ID);
+        jdbcTemplate.update("DELETE FROM charging_station WHERE id = ?", STATION_ID);
+        orderCacheService.deleteOrder(settledOrder(0));
+        orderCacheService.deleteOrder(settledOrder(1));
+        stringRedisTemplate.delete("order-index:user:" + USER_ID);
+        Cache reportCache = cacheManager.getCache("chargingStationReport");
+        if (reportCache != null) reportCache.evict(STATION_ID);
+    }
+}
@@ -0,0 +1,195 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多个进程内节点共用一个Redis（独立key前缀），模拟节点加入、正常下线、宕机，
+ * 检查分片始终恰好被一个节点持有、同一时刻一个桩最多被一个节点推进
+ */
+@SpringBootTest
+class ShardLeaseServiceTests {
+
+    private static final int SHARDS = 32;
+    private static final long LEASE_MILLIS = 1500L;
+    private static final long HEARTBEAT_MILLIS = 300L;
+    private static final int STATIONS = 500;
+
+    // 调度器换成mock，避免测试期间推进真实充电桩
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private String keyPrefix;
+    private final List<Long> stationIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        keyPrefix = "test-scheduler:" + UUID.randomUUID() + ":";
+        for (long i = 0; i < STATIONS; i++) {
+            stationIds.add(1000000000L + i);
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        Set<String> keys = stringRedisTemplate.keys(keyPrefix + "*");
+        if (keys != null && !keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    @Test
+    void shardsAreOwnedExactlyOnceAcrossJoinLeaveAndCrash() throws Exception {
+        List<ShardLeaseService> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            nodes.add(newNode("node-" + i));
+        }
+        rounds(nodes, 3);
+        assertExactlyOnce(nodes);
+        for (ShardLeaseService node : nodes) {
+            assertFalse(node.getOwnedShards().isEmpty(), node.getNodeId());
+        }
+
+        // 加入新节点：只有它赢得的分片迁移过去
+        Map<Integer, String> before = owners(nodes);
+        ShardLeaseService joined = newNode("node-3");
+        nodes.add(joined);
+        rounds(nodes, 3);
+        assertExactlyOnce(nodes);
+        assertFalse(joined.getOwnedShards().isEmpty());
+        for (Map.Entry<Integer, String> entry : owners(nodes).entrySet()) {
+            String previous = before.get(entry.getKey());
+            assertTrue(entry.getValue().equals(previous) || entry.getValue().equals(joined.getNodeId()),
+                    "shard " + entry.getKey() + " moved from " + previous + " to " + entry.getValue());
+        }
+
+        // 正常下线：租约立即释放，其余节点下一轮接管
+        ShardLeaseService left = nodes.remove(0);
+        left.leave();
+        assertTrue(left.getOwnedShards().isEmpty());
+        rounds(nodes, 2);
+        assertExactlyOnce(nodes);
+
+        // 宕机：不再心跳，本地租约到期后自行停止，其余节点在租约过期后接管
+        ShardLeaseService crashed = nodes.remove(0);
+        Thread.sleep(LEASE_MILLIS + HEARTBEAT_MILLIS);
+        assertTrue(crashed.getOwnedShards().isEmpty());
+        rounds(nodes, 2);
+        assertExactlyOnce(nodes);
+    }
+
+    @Test
+    void stationIsNeverTickedByTwoNodesWhileRebalancing() throws Exception {
+        Map<Long, AtomicInteger> active = new ConcurrentHashMap<>();
+        for (Long id : stationIds) {
+            active.put(id, new AtomicInteger());
+        }
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicInteger ticked = new AtomicInteger();
+
+        List<ShardLeaseService> nodes = new CopyOnWriteArrayList<>();
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(16);
+        Map<String, List<ScheduledFuture<?>>> tasks = new ConcurrentHashMap<>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                ShardLeaseService node = newNode("node-" + i);
+                nodes.add(node);
+                List<ScheduledFuture<?>> nodeTasks = new ArrayList<>();
+                nodeTasks.add(executor.scheduleWithFixedDelay(node::heartbeat, 0, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS));
+                nodeTasks.add(executor.scheduleWithFixedDelay(() -> node.runOwned(stationIds, ids -> {
+                    for (Long id : ids) {
+                        if (active.get(id).incrementAndGet() > 1) overlapped.set(true);
+                    }
+                    sleepQuietly(20);
+                    for (Long id : ids) {
+                        active.get(id).decrementAndGet();
+                    }
+                    ticked.addAndGet(ids.size());
+                }), 0, 10, TimeUnit.MILLISECONDS));
+                tasks.put(node.getNodeId(), nodeTasks);
+                Thread.sleep(500);
+            }
+
+            // 一个节点正常下线，一个节点宕机（停止心跳但推进任务继续跑，只能靠本地租约到期停下）
+            ShardLeaseService left = nodes.remove(0);
+            for (ScheduledFuture<?> task : tasks.get(left.getNodeId())) task.cancel(false);
+            left.leave();
+            ShardLeaseService crashed = nodes.remove(0);
+            tasks.get(crashed.getNodeId()).get(0).cancel(false);
+            Thread.sleep(LEASE_MILLIS * 3);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        assertFalse(overlapped.get(), "同一个桩同时被两个节点推进");
+        assertTrue(ticked.get() > 0);
+        assertExactlyOnce(nodes);
+    }
+
+    private ShardLeaseService newNode(String name) {
+        return new ShardLeaseService(stringRedisTemplate, keyPrefix, name, SHARDS, LEASE_MILLIS);
+    }
+
+    private static void rounds(List<ShardLeaseService> nodes, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            for (ShardLeaseService node : nodes) {
+                node.renew();
+            }
+            Thread.sleep(HEARTBEAT_MILLIS);
+        }
+    }
+
+    private Map<Integer, String> owners(List<ShardLeaseService> nodes) {
+        Map<Integer, String> owners = new HashMap<>();
+        for (ShardLeaseService node : nodes) {
+            for (Integer shard : node.getOwnedShards()) {
+                owners.put(shard, node.getNodeId());
+            }
+        }
+        return owners;
+    }
+
+    private void assertExactlyOnce(List<ShardLeaseService> nodes) {
+        int[] holders = new int[SHARDS];
+        for (ShardLeaseService node : nodes) {
+            for (Integer shard : node.getOwnedShards()) {
+                holders[shard]++;
+            }
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertEquals(1, holders[shard], "shard " + shard);
+        }
+        for (Long id : stationIds) {
+            long owners = nodes.stream().filter(node -> node.owns(id)).count();
+            assertEquals(1, owners, "station " + id);
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
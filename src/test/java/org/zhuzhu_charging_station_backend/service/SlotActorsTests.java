@@ -0,0 +1,338 @@
+package org.zhuzhu_charging_station_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationSlot;
+import org.zhuzhu_charging_station_backend.entity.ChargingStationStatus;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * actor执行模式：同一桩的并发修改串行执行、定期写回、写回冲突时重新加载并重放、分片释放后关闭邮箱。
+ * Redis用内存中带版本号的slot代替，另一个节点（不持有该桩）的字段级修改直接改Redis并递增版本号
+ */
+class SlotActorsTests {
+
+    private static final Long STATION_ID = 1L;
+
+    private final Map<Long, ChargingStationSlot> redis = new ConcurrentHashMap<>();
+    private final AtomicBoolean owned = new AtomicBoolean(true);
+    private final ChargingStationSlotService slotService = new ChargingStationSlotService(null, null);
+
+    private final SlotActors actors = new SlotActors(new SlotActors.Store() {
+        @Override
+        public ChargingStationSlot load(Long stationId) {
+            return slotService.copySlot(redis.get(stationId));
+        }
+
+        @Override
+        public synchronized Set<Long> compareAndSet(List<Long> stationIds, List<Long> expectedVersions,
+                                                    List<ChargingStationSlot> updated) {
+            Set<Long> failed = new HashSet<>();
+            for (int i = 0; i < stationIds.size(); i++) {
+                ChargingStationSlot current = redis.get(stationIds.get(i));
+                if (!Objects.equals(current == null ? null : current.getVersion(), expectedVersions.get(i))) {
+                    failed.add(stationIds.get(i));
+                } else if (updated.get(i) == null) {
+                    redis.remove(stationIds.get(i));
+                } else {
+                    put(stationIds.get(i), updated.get(i));
+                }
+            }
+            return failed;
+        }
+
+        @Override
+        public Map<Long, Long> versions(Collection<Long> stationIds) {
+            Map<Long, Long> versions = new HashMap<>();
+            for (Long id : stationIds) {
+                ChargingStationSlot slot = redis.get(id);
+                if (slot != null) versions.put(id, slot.getVersion());
+            }
+            return versions;
+        }
+    }, slotService::copySlot, id -> owned.get(), 4, 10000L);
+
+    @Test
+    void concurrentUpdatesAreSerialized() throws Exception {
+        put(STATION_ID, newSlot(0));
+        int threads = 8;
+        int perThread = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < perThread; i++) {
+                    actors.update(STATION_ID, this::increment);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * perThread, actors.read(STATION_ID).getStatus().getCurrentChargeCount());
+        // 写回前Redis中仍是旧值
+        assertEquals(0, stored().getStatus().getCurrentChargeCount());
+        actors.flush();
+        assertEquals(threads * perThread, stored().getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void failedUpdateLeavesStateUntouched() {
+        put(STATION_ID, newSlot(3));
+        assertThrows(IllegalStateException.class, () -> actors.update(STATION_ID, slot -> {
+            increment(slot);
+            throw new IllegalStateException("拒绝修改");
+        }));
+        assertEquals(3, actors.read(STATION_ID).getStatus().getCurrentChargeCount());
+        actors.flush();
+        assertEquals(3, stored().getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void conflictingFlushReloadsAndReplays() {
+        put(STATION_ID, newSlot(0));
+        actors.update(STATION_ID, this::increment);
+        // 其他节点在写回前直接改了Redis
+        put(STATION_ID, newSlot(100));
+
+        actors.flush();
+        assertEquals(1, actors.getFlushConflictCount());
+        assertEquals(101, actors.read(STATION_ID).getStatus().getCurrentChargeCount());
+
+        actors.flush();
+        assertEquals(101, stored().getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void compareAndSetRejectsStaleSnapshot() {
+        put(STATION_ID, newSlot(0));
+        ChargingStationSlot snapshot = actors.read(STATION_ID);
+        ChargingStationSlot updated = slotService.copySlot(snapshot);
+        increment(updated);
+
+        actors.update(STATION_ID, this::increment);
+        Set<Long> failed = actors.compareAndSetAll(Collections.singletonMap(STATION_ID, snapshot),
+                Collections.singletonMap(STATION_ID, updated));
+        assertEquals(Collections.singleton(STATION_ID), failed);
+
+        ChargingStationSlot current = actors.read(STATION_ID);
+        ChargingStationSlot next = slotService.copySlot(current);
+        increment(next);
+        assertTrue(actors.compareAndSetAll(Collections.singletonMap(STATION_ID, current),
+                Collections.singletonMap(STATION_ID, next)).isEmpty());
+        assertEquals(2, actors.read(STATION_ID).getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void tickReplaysAsDeltaAfterRemoteFieldUpdate() {
+        ChargingStationSlot initial = newSlot(0);
+        initial.getStatus().setStatus(1);
+        initial.getQueue().add("A");
+        initial.setWaitingTime(10L);
+        initial.setRemainingEnergy(5L);
+        put(STATION_ID, initial);
+
+        // 调度推进：队首订单A充满移出，累计一次充电，桩置为空闲；调用方随后即结算A
+        ChargingStationSlot snapshot = actors.read(STATION_ID);
+        ChargingStationSlot ticked = slotService.copySlot(snapshot);
+        ticked.getQueue().remove("A");
+        ticked.setWaitingTime(0L);
+        ticked.setRemainingEnergy(0L);
+        increment(ticked);
+        ticked.getStatus().setStatus(0);
+        assertTrue(actors.compareAndSetAll(Collections.singletonMap(STATION_ID, snapshot),
+                Collections.singletonMap(STATION_ID, ticked)).isEmpty());
+
+        // 写回前其他节点的字段级修改（分配订单C）直接改了Redis
+        ChargingStationSlot remote = slotService.copySlot(stored());
+        remote.getQueue().add("C");
+        remote.setWaitingTime(remote.getWaitingTime() + 30L);
+        remote.setRemainingEnergy(remote.getRemainingEnergy() + 7L);
+        put(STATION_ID, remote);
+
+        actors.flush();
+        assertEquals(1, actors.getFlushConflictCount());
+        ChargingStationSlot replayed = actors.read(STATION_ID);
+        // 已结算的A不能回到队首，C保留，负载和累计数据按增量叠加
+        assertEquals(Collections.singletonList("C"), replayed.getQueue());
+        assertEquals(30L, (long) replayed.getWaitingTime());
+        assertEquals(7L, (long) replayed.getRemainingEnergy());
+        assertEquals(1, replayed.getStatus().getCurrentChargeCount());
+        assertEquals(1, replayed.getStatus().getStatus());
+
+        actors.flush();
+        assertEquals(Collections.singletonList("C"), stored().getQueue());
+        assertEquals(1, stored().getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void deltaUpdateIsNotReExecutedOnConflict() {
+        ChargingStationSlot initial = newSlot(0);
+        initial.getQueue().add("A");
+        put(STATION_ID, initial);
+        int[] calls = new int[1];
+        actors.updateByDelta(STATION_ID, slot -> {
+            calls[0]++;
+            slot.getQueue().remove(0);
+            increment(slot);
+        });
+        ChargingStationSlot remote = slotService.copySlot(stored());
+        remote.getQueue().add("B");
+        put(STATION_ID, remote);
+
+        actors.flush();
+        assertEquals(1, calls[0]);
+        assertEquals(Collections.singletonList("B"), actors.read(STATION_ID).getQueue());
+        assertEquals(1, actors.read(STATION_ID).getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void idleStationSeesOrdersAppendedByAnotherNode() {
+        put(STATION_ID, newSlot(0));
+        assertTrue(actors.read(STATION_ID).getQueue().isEmpty());
+
+        // 另一个节点的分配线程把订单追加到这个空闲的桩
+        ChargingStationSlot remote = slotService.copySlot(stored());
+        remote.getQueue().add("X");
+        remote.setWaitingTime(60L);
+        put(STATION_ID, remote);
+
+        // 空闲的桩没有待写回的修改，不会因写回冲突重新加载；推进前的读取就要看到X
+        ChargingStationSlot snapshot = actors.read(STATION_ID);
+        assertEquals(Collections.singletonList("X"), snapshot.getQueue());
+        assertEquals(60L, (long) snapshot.getWaitingTime());
+
+        ChargingStationSlot started = slotService.copySlot(snapshot);
+        started.getStatus().setStatus(1);
+        assertTrue(actors.compareAndSetAll(Collections.singletonMap(STATION_ID, snapshot),
+                Collections.singletonMap(STATION_ID, started)).isEmpty());
+        actors.flush();
+        assertEquals(0, actors.getFlushConflictCount());
+        assertEquals(1, stored().getStatus().getStatus());
+        assertEquals(Collections.singletonList("X"), stored().getQueue());
+    }
+
+    @Test
+    void tickIsRejectedAfterRemoteCancel() {
+        ChargingStationSlot initial = newSlot(0);
+        initial.getStatus().setStatus(1);
+        initial.getQueue().addAll(Arrays.asList("A", "B"));
+        put(STATION_ID, initial);
+
+        // 本节点取快照：A充满，下一轮将启动B
+        ChargingStationSlot snapshot = actors.read(STATION_ID);
+        ChargingStationSlot ticked = slotService.copySlot(snapshot);
+        ticked.getQueue().remove("A");
+        increment(ticked);
+
+        // 回写前，另一个节点取消了B
+        ChargingStationSlot remote = slotService.copySlot(stored());
+        remote.getQueue().remove("B");
+        put(STATION_ID, remote);
+
+        // 快照已过期，不能按快照写入（否则B会被当作队首启动）
+        assertEquals(Collections.singleton(STATION_ID), actors.compareAndSetAll(
+                Collections.singletonMap(STATION_ID, snapshot), Collections.singletonMap(STATION_ID, ticked)));
+        assertEquals(Collections.singletonList("A"), actors.read(STATION_ID).getQueue());
+
+        // 兜底按重新加载的slot推进
+        actors.updateByDelta(STATION_ID, slot -> {
+            slot.getQueue().remove("A");
+            increment(slot);
+            slot.getStatus().setStatus(slot.getQueue().isEmpty() ? 0 : 1);
+        });
+        actors.flush();
+        assertEquals(0, actors.getFlushConflictCount());
+        assertTrue(stored().getQueue().isEmpty());
+        assertEquals(0, stored().getStatus().getStatus());
+        assertEquals(1, stored().getStatus().getCurrentChargeCount());
+    }
+
+    @Test
+    void failedReplayIsDroppedAndCounted() {
+        put(STATION_ID, newSlot(0));
+        actors.update(STATION_ID, slot -> {
+            if (slot.getStatus().getStatus() == 1) throw new IllegalStateException("使用中");
+            increment(slot);
+        });
+        // 写回前另一个节点把桩置为使用中，重放时检查失败
+        ChargingStationSlot remote = slotService.copySlot(stored());
+        remote.getStatus().setStatus(1);
+        put(STATION_ID, remote);
+
+        actors.flush();
+        assertEquals(1, actors.getReplayFailureCount());
+        assertEquals(0, actors.read(STATION_ID).getStatus().getCurrentChargeCount());
+        actors.flush();
+        assertEquals(1, actors.getReplayFailureCount());
+        assertEquals(1, stored().getStatus().getStatus());
+    }
+
+    @Test
+    void setAndRemoveAreWrittenBack() {
+        actors.set(STATION_ID, newSlot(7));
+        actors.flush();
+        assertEquals(7, stored().getStatus().getCurrentChargeCount());
+
+        actors.remove(STATION_ID);
+        actors.flush();
+        assertFalse(redis.containsKey(STATION_ID));
+    }
+
+    @Test
+    void releasedStationsAreFlushedAndClosed() {
+        put(STATION_ID, newSlot(0));
+        actors.update(STATION_ID, this::increment);
+        assertEquals(1, actors.getActorCount());
+
+        owned.set(false);
+        actors.evict(id -> true);
+        assertEquals(0, actors.getActorCount());
+        assertEquals(1, stored().getStatus().getCurrentChargeCount());
+    }
+
+    private void increment(ChargingStationSlot slot) {
+        ChargingStationStatus status = slot.getStatus();
+        status.setCurrentChargeCount(status.getCurrentChargeCount() + 1);
+    }
+
+    private ChargingStationSlot stored() {
+        return redis.get(STATION_ID);
+    }
+
+    // 模拟其他节点直接写Redis：版本号递增
+    private void put(Long stationId, ChargingStationSlot slot) {
+        ChargingStationSlot current = redis.get(stationId);
+        ChargingStationSlot value = slotService.copySlot(slot);
+        value.setVersion(current == null ? 1L : current.getVersion() + 1);
+        redis.put(stationId, value);
+    }
+
+    private static ChargingStationSlot newSlot(int chargeCount) {
+        ChargingStationStatus status = new ChargingStationStatus();
+        status.setStatus(0);
+        status.setCurrentChargeCount(chargeCount);
+        status.setCurrentChargeTime(0L);
+        status.setCurrentChargeAmount(0D);
+        ChargingStationSlot slot = new ChargingStationSlot();
+        slot.setStatus(status);
+        slot.setWaitingTime(0L);
+        slot.setRemainingEnergy(0L);
+        slot.setQueue(new ArrayList<>());
+        return slot;
+    }
+}
@@ -0,0 +1,178 @@
+package org.zhuzhu_charging_station_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 详单ID：多线程、多节点并发生成不重复，始终为16位，同一节点内递增，时钟回拨时不重复；
+ * 用户/充电桩ID：按块分配时跳过已有ID、多节点不重复，整个范围占满时才失败
+ */
+class IdGeneratorTests {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentIdsAreUniqueAcrossNodes() throws Exception {
+        // 两个节点共用一个固定的时钟，同一毫秒内的序号很快用完，覆盖借用下一毫秒的路径
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        List<IdGenerator> nodes = Arrays.asList(new IdGenerator(0, now::get), new IdGenerator(IdGenerator.MAX_NODES - 1, now::get));
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < THREADS; t++) {
+            IdGenerator generator = nodes.get(t % nodes.size());
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long previous = 0;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        if (i % 1000 == 0) now.incrementAndGet();
+                        String id = generator.nextOrderId();
+                        assertEquals(16, id.length(), id);
+                        long value = Long.parseLong(id);
+                        assertTrue(value > previous, "同一节点内应递增: " + id);
+                        previous = value;
+                        assertTrue(ids.add(id), "重复的ID: " + id);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(errors.isEmpty(), () -> errors.get(0).toString());
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+    }
+
+    @Test
+    void clockMovingBackwardsDoesNotRepeat() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        IdGenerator generator = new IdGenerator(3, now::get);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(ids.add(generator.nextOrderId()));
+        }
+        now.addAndGet(-5000);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(ids.add(generator.nextOrderId()));
+        }
+    }
+
+    @Test
+    void counterIdsFillGapsBetweenExistingIds() throws Exception {
+        long min = 10_000_000L;
+        long max = 99_999_999L;
+        // 旧版本随机生成的ID散布在整个范围内，最大ID已接近上限
+        Set<Long> existing = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            existing.add(min + (long) (random.nextDouble() * (max - min + 1)));
+        }
+        existing.add(max - 1);
+        for (long id = min; id < min + 50; id++) {
+            existing.add(id);
+        }
+        long[] counter = {max - 1};
+        int[] queries = new int[1];
+        List<IdGenerator.BlockAllocator> nodes = new ArrayList<>();
+        for (int n = 0; n < 2; n++) {
+            nodes.add(new IdGenerator.BlockAllocator(min, max, () -> lease(counter, min, max),
+                    (from, to) -> {
+                        synchronized (queries) {
+                            queries[0]++;
+                        }
+                        List<Long> taken = new ArrayList<>();
+                        for (Long id : existing) {
+                            if (id >= from && id <= to) taken.add(id);
+                        }
+                        return taken;
+                    }, "用户"));
+        }
+
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 4; t++) {
+            IdGenerator.BlockAllocator node = nodes.get(t % nodes.size());
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        long id = node.next();
+                        assertTrue(id >= min && id <= max, String.valueOf(id));
+                        assertFalse(existing.contains(id), "已存在的ID: " + id);
+                        assertTrue(ids.add(id), "重复的ID: " + id);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(errors.isEmpty(), () -> errors.get(0).toString());
+        assertEquals(4000, ids.size());
+        // 每块查询一次，而不是每个ID查询一次
+        assertTrue(queries[0] <= 4000 / IdGenerator.ID_BLOCK_SIZE + 4, String.valueOf(queries[0]));
+    }
+
+    @Test
+    void counterIdsFailOnlyWhenRangeIsFull() {
+        long min = 100L;
+        long max = 349L;
+        Set<Long> existing = new HashSet<>();
+        for (long id = min; id <= max; id++) {
+            if (id != 120L && id != 333L) existing.add(id);
+        }
+        long[] counter = {200L};
+        IdGenerator.BlockAllocator allocator = new IdGenerator.BlockAllocator(min, max, () -> lease(counter, min, max),
+                (from, to) -> {
+                    List<Long> taken = new ArrayList<>();
+                    for (long id = from; id <= to; id++) {
+                        if (existing.contains(id)) taken.add(id);
+                    }
+                    return taken;
+                }, "充电桩");
+        Set<Long> ids = new HashSet<>(Arrays.asList(allocator.next(), allocator.next()));
+        assertEquals(new HashSet<>(Arrays.asList(120L, 333L)), ids);
+        existing.addAll(ids);
+        assertThrows(IllegalStateException.class, allocator::next);
+    }
+
+    // 与 id_block_lease.lua 一致
+    private static synchronized long[] lease(long[] counter, long min, long max) {
+        long last = Math.max(counter[0], min - 1);
+        long wrapped = 0;
+        if (last >= max) {
+            last = min - 1;
+            wrapped = 1;
+        }
+        long finish = Math.min(max, last + IdGenerator.ID_BLOCK_SIZE);
+        counter[0] = finish;
+        return new long[]{last + 1, finish, wrapped};
+    }
+
+    @Test
+    void idsAreTimeOrdered() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        String earlier = new IdGenerator(IdGenerator.MAX_NODES - 1, now::get).nextOrderId();
+        now.incrementAndGet();
+        String later = new IdGenerator(0, now::get).nextOrderId();
+        assertTrue(earlier.compareTo(later) < 0, earlier + " / " + later);
+    }
+}
@@ -0,0 +1,174 @@
+package org.zhuzhu_charging_station_backend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.WebSocketSession;
+import org.zhuzhu_charging_station_backend.dto.StandardResponse;
+import org.zhuzhu_charging_station_backend.entity.Order;
+import org.zhuzhu_charging_station_backend.entity.User;
+import org.zhuzhu_charging_station_backend.schedule.ChargingStationScheduler;
+import org.zhuzhu_charging_station_backend.schedule.OrderScheduler;
+import org.zhuzhu_charging_station_backend.service.OrderCacheService;
+import org.zhuzhu_charging_station_backend.service.OrderService;
+import org.zhuzhu_charging_station_backend.util.JwtTokenUtil;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 订单推送压测：模拟大量WebSocket会话，对比旧的逐会话每秒轮询与事件推送的Redis命令数和CPU耗时。
+ * 需要本地MySQL和Redis，默认不执行：mvn test -Dtest=OrderPushLoadTests -Dloadtest=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class OrderPushLoadTests {
+
+    private static final int SESSIONS = Integer.getInteger("loadtest.sessions", 10000);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 5);
+    // 每秒真正发生变化的订单比例（充电中的订单）
+    private static final double CHANGE_RATIO = 0.1;
+
+    @MockBean
+    private OrderScheduler orderScheduler;
+    @MockBean
+    private ChargingStationScheduler chargingStationScheduler;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderCacheService orderCacheService;
+    @Autowired
+    private OrderPushDispatcher orderPushDispatcher;
+    @Autowired
+    private JwtTokenUtil jwtTokenUtil;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final List<Order> orders = new ArrayList<>();
+    private final List<WebSocketSession> sessions = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        sessions.forEach(orderPushDispatcher::unsubscribe);
+        orders.forEach(orderCacheService::deleteOrder);
+    }
+
+    @Test
+    void pushUsesFarFewerRedisOpsThanPolling() throws Exception {
+        User user = new User();
+        user.setUserId(10000000L);
+        user.setRoles("USER");
+        String token = jwtTokenUtil.generateToken(user);
+        for (int i = 0; i < SESSIONS; i++) {
+            Order order = new Order();
+            order.setId("6" + String.format("%015d", i));
+            order.setUserId(user.getUserId());
+            order.setMode(1);
+            order.setStatus(1);
+            order.setRecordTime(LocalDateTime.now());
+            order.setChargeAmount(BigDecimal.valueOf(30));
+            order.setActualCharge(BigDecimal.ZERO);
+            orders.add(order);
+        }
+        orderCacheService.saveOrders(orders);
+
+        // 旧方案：每个会话每秒GET一次订单并校验一次JWT
+        Measurement polling = measure(() -> {
+            for (Order order : orders) {
+                Order current = orderService.getOrder(order.getId(), token);
+                objectMapper.writeValueAsString(StandardResponse.success(current));
+            }
+        });
+
+        // 新方案：会话订阅订单，只有变化的订单产生事件
+        AtomicLong sent = new AtomicLong();
+        for (Order order : orders) {
+            WebSocketSession session = mock(WebSocketSession.class);
+            when(session.getId()).thenReturn("load-" + order.getId());
+            when(session.isOpen()).thenReturn(true);
+            doAnswer(invocation -> {
+                sent.incrementAndGet();
+                return null;
+            }).when(session).sendMessage(any());
+            sessions.add(session);
+            orderPushDispatcher.subscribe(session, order);
+        }
+        long sentAfterSubscribe = sent.get();
+        int changed = (int) (SESSIONS * CHANGE_RATIO);
+        Measurement push = measure(() -> {
+            List<Order> batch = new ArrayList<>(changed);
+            for (int i = 0; i < changed; i++) {
+                Order order = orders.get(i);
+                order.setActualCharge(order.getActualCharge().add(BigDecimal.valueOf(0.01)));
+                batch.add(order);
+            }
+            orderCacheService.saveOrders(batch);
+        });
+        Thread.sleep(1000); // 等待事件分发完成
+
+        System.out.printf("sessions=%d, seconds=%d%n", SESSIONS, SECONDS);
+        System.out.printf("polling: redisOps/s=%.0f, cpuMs/s=%.1f%n", polling.redisOpsPerSecond(), polling.cpuMillisPerSecond());
+        System.out.printf("push:    redisOps/s=%.0f, cpuMs/s=%.1f, messages/s=%.0f%n",
+                push.redisOpsPerSecond(), push.cpuMillisPerSecond(), (sent.get() - sentAfterSubscribe) / (double) SECONDS);
+        assertTrue(push.redisOpsPerSecond() < polling.redisOpsPerSecond());
+    }
+
+    private Measurement measure(ThrowingRunnable perSecond) throws Exception {
+        long commandsBefore = totalCommandsProcessed();
+        long cpuBefore = processCpuNanos();
+        for (int s = 0; s < SECONDS; s++) {
+            long start = System.currentTimeMillis();
+            perSecond.run();
+            long elapsed = System.currentTimeMillis() - start;
+            if (elapsed < 1000) Thread.sleep(1000 - elapsed);
+        }
+        return new Measurement(totalCommandsProcessed() - commandsBefore, processCpuNanos() - cpuBefore);
+    }
+
+    private long totalCommandsProcessed() {
+        Properties info = stringRedisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info("stats"));
+        return Long.parseLong(Objects.requireNonNull(info).getProperty("total_commands_processed").trim());
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    private static class Measurement {
+        private final long redisCommands;
+        private final long cpuNanos;
+
+        private Measurement(long redisCommands, long cpuNanos) {
+            this.redisCommands = redisCommands;
+            this.cpuNanos = cpuNanos;
+        }
+
+        private double redisOpsPerSecond() {
+            return redisCommands / (double) SECONDS;
+        }
+
+        private double cpuMillisPerSecond() {
+            return cpuNanos / 1_000_000.0 / SECONDS;
+        }
+    }
+}